@@ -0,0 +1,33 @@
+package com.enterprise.mail.config;
+
+import com.enterprise.mail.ratelimit.CounterStore;
+import com.enterprise.mail.ratelimit.InMemoryCounterStore;
+import com.enterprise.mail.ratelimit.RedisCounterStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * Shared counters for limits that must hold across nodes.
+ *
+ * {@code mail.counters.store=memory} keeps them in the JVM, for a single node or tests.
+ */
+@Configuration
+public class CounterStoreConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(CounterStore.class)
+    public CounterStore counterStore(
+            @Value("${mail.counters.store:redis}") String store,
+            @Value("${mail.counters.key-prefix:mail:counter:}") String keyPrefix,
+            RedisConnectionFactory connectionFactory) {
+
+        if ("memory".equalsIgnoreCase(store)) {
+            return new InMemoryCounterStore();
+        }
+        return new RedisCounterStore(new StringRedisTemplate(connectionFactory), keyPrefix);
+    }
+}
@@ -0,0 +1,40 @@
+package com.enterprise.mail.config;
+
+import com.enterprise.mail.dns.CachingDnsResolver;
+import com.enterprise.mail.dns.DnsResolver;
+import com.enterprise.mail.dns.UdpDnsResolver;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * DNS resolver for mail authentication.
+ *
+ * Point {@code mail.dns.servers} at a local stub server, or define another
+ * {@link DnsResolver} bean, to run without network access.
+ */
+@Configuration
+public class DnsConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(DnsResolver.class)
+    public DnsResolver dnsResolver(
+            @Value("${mail.dns.servers:}") List<String> servers,
+            @Value("${mail.dns.timeout-ms:2000}") int timeoutMillis,
+            @Value("${mail.dns.attempts:2}") int attempts,
+            @Value("${mail.dns.cache.min-ttl:5}") long minTtl,
+            @Value("${mail.dns.cache.max-ttl:86400}") long maxTtl,
+            @Value("${mail.dns.cache.negative-ttl:300}") long negativeTtl,
+            @Value("${mail.dns.cache.max-entries:100000}") int maxEntries,
+            MeterRegistry meterRegistry) throws IOException {
+
+        UdpDnsResolver upstream = new UdpDnsResolver(UdpDnsResolver.parseServers(servers),
+                timeoutMillis, attempts, negativeTtl);
+        return new CachingDnsResolver(upstream, minTtl, maxTtl, negativeTtl, maxEntries, meterRegistry);
+    }
+}
@@ -76,6 +76,8 @@ public class EnhancedSecurityConfig {
             .requestMatchers("/api/auth/reset-password", "/api/auth/verify-reset-token").permitAll()
             .requestMatchers("/api/actuator/health", "/api/actuator/info").permitAll()
             .requestMatchers("/api/docs/**", "/swagger-ui/**", "/v3/api-docs/**").permitAll()
+            // Mailbox channel authenticates during the handshake
+            .requestMatchers("/ws/**").permitAll()
             
             // Admin endpoints
             .requestMatchers("/api/admin/**").hasRole("ADMIN")
@@ -97,7 +99,7 @@ public class EnhancedSecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList(allowedOrigins.split(",")));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Requested-With"));
-        configuration.setExposedHeaders(Arrays.asList("X-Total-Count", "X-Page-Number", "X-Page-Size"));
+        configuration.setExposedHeaders(Arrays.asList("X-Total-Count", "X-Page-Number", "X-Page-Size", "ETag"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
         
@@ -83,6 +83,8 @@ public class MailServerConfig {
         private boolean dmarcEnabled = true;
         private boolean spamFilterEnabled = true;
         private boolean virusScanEnabled = false;
+        private boolean rateLimitEnabled = true;
+        private int maxRequestsPerMinute = 60;
     }
     
     @Data
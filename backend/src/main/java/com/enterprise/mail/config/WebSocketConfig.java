@@ -0,0 +1,49 @@
+package com.enterprise.mail.config;
+
+import com.enterprise.mail.websocket.JwtHandshakeInterceptor;
+import com.enterprise.mail.websocket.MailboxWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+/**
+ * WebSocket configuration for the mailbox change channel
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final MailboxWebSocketHandler mailboxWebSocketHandler;
+    private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
+
+    @Value("${cors.allowed-origins:http://localhost:3000}")
+    private String allowedOrigins;
+
+    @Value("${mail.websocket.max-idle-timeout-ms:300000}")
+    private long maxIdleTimeoutMs;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(mailboxWebSocketHandler, "/ws/mailbox")
+                .addInterceptors(jwtHandshakeInterceptor)
+                .setAllowedOriginPatterns(allowedOrigins.split(","));
+    }
+
+    /**
+     * 小缓冲区 + 空闲超时，保证空闲连接几乎不占资源
+     */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(8192);
+        container.setMaxBinaryMessageBufferSize(8192);
+        container.setMaxSessionIdleTimeout(maxIdleTimeoutMs);
+        return container;
+    }
+}
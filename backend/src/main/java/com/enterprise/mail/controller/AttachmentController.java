@@ -2,19 +2,25 @@ package com.enterprise.mail.controller;
 
 import com.enterprise.mail.dto.AttachmentDto;
 import com.enterprise.mail.entity.Attachment;
+import com.enterprise.mail.entity.User;
+import com.enterprise.mail.exception.BusinessException;
 import com.enterprise.mail.service.AttachmentService;
+import com.enterprise.mail.service.FileDownloadService;
+import com.enterprise.mail.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
-import java.io.File;
+import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * REST controller for attachment operations
@@ -25,46 +31,67 @@ import java.nio.charset.StandardCharsets;
 public class AttachmentController {
     
     private final AttachmentService attachmentService;
+    private final FileDownloadService fileDownloadService;
+    private final UserService userService;
     
     /**
-     * Download attachment
+     * Download attachment (supports Range/If-Range for resumed downloads)
      */
     @GetMapping("/{id}/download")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<Resource> downloadAttachment(@PathVariable Long id) {
+    public void downloadAttachment(@PathVariable Long id, HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
         Attachment attachment = attachmentService.getAttachment(id);
-        File file = attachmentService.getAttachmentFile(id);
-        
-        Resource resource = new FileSystemResource(file);
         
         String encodedFilename = URLEncoder.encode(attachment.getOriginalFileName(), StandardCharsets.UTF_8)
                 .replaceAll("\\+", "%20");
         
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(attachment.getContentType()))
-                .header(HttpHeaders.CONTENT_DISPOSITION, 
-                        "attachment; filename=\"" + attachment.getOriginalFileName() + 
-                        "\"; filename*=UTF-8''" + encodedFilename)
-                .contentLength(file.length())
-                .body(resource);
+        fileDownloadService.sendFile(request, response,
+                attachmentService.getAttachmentFile(attachment),
+                attachment.getContentType(),
+                "attachment; filename=\"" + attachment.getOriginalFileName() + 
+                        "\"; filename*=UTF-8''" + encodedFilename,
+                contentETag(attachment));
     }
     
     /**
-     * View attachment inline
+     * View attachment inline (supports Range for media/PDF seeking)
      */
     @GetMapping("/{id}/view")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<Resource> viewAttachment(@PathVariable Long id) {
+    public void viewAttachment(@PathVariable Long id, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
         Attachment attachment = attachmentService.getAttachment(id);
-        File file = attachmentService.getAttachmentFile(id);
         
-        Resource resource = new FileSystemResource(file);
+        fileDownloadService.sendFile(request, response,
+                attachmentService.getAttachmentFile(attachment),
+                attachment.getContentType(),
+                "inline",
+                contentETag(attachment));
+    }
+    
+    /**
+     * Download several attachments, or all attachments of one or more emails, as a ZIP
+     * streamed on the fly
+     */
+    @GetMapping("/zip")
+    @PreAuthorize("isAuthenticated()")
+    public void downloadArchive(@AuthenticationPrincipal UserDetails userDetails,
+                                @RequestParam(required = false) List<Long> emailIds,
+                                @RequestParam(required = false) List<Long> attachmentIds,
+                                HttpServletResponse response) throws IOException {
+        User user = userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> BusinessException.userNotFound(0L));
+        
+        List<Attachment> attachments = attachmentService.getAttachmentsForArchive(user.getId(), emailIds, attachmentIds);
+        
+        String fileName = emailIds != null && emailIds.size() == 1 && (attachmentIds == null || attachmentIds.isEmpty())
+                ? "email-" + emailIds.get(0) + "-attachments.zip"
+                : "attachments.zip";
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
         
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(attachment.getContentType()))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline")
-                .contentLength(file.length())
-                .body(resource);
+        attachmentService.writeArchive(attachments, response.getOutputStream());
     }
     
     /**
@@ -86,4 +113,11 @@ public class AttachmentController {
         attachmentService.deleteAttachment(id);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+    
+    /**
+     * Strong ETag from the stored SHA-256 checksum
+     */
+    private String contentETag(Attachment attachment) {
+        return attachment.getChecksum() != null ? "\"" + attachment.getChecksum() + "\"" : null;
+    }
+}
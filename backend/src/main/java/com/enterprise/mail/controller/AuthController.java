@@ -5,7 +5,10 @@ import com.enterprise.mail.dto.LoginResponse;
 import com.enterprise.mail.dto.RegisterRequest;
 import com.enterprise.mail.dto.UserDto;
 import com.enterprise.mail.entity.User;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.security.ClientIpResolver;
 import com.enterprise.mail.security.JwtTokenUtil;
+import com.enterprise.mail.service.LoginAttemptService;
 import com.enterprise.mail.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
@@ -14,6 +17,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.LockedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -31,10 +36,15 @@ public class AuthController {
     private final AuthenticationManager authenticationManager;
     private final UserService userService;
     private final JwtTokenUtil jwtTokenUtil;
+    private final LoginAttemptService loginAttemptService;
+    private final ClientIpResolver clientIpResolver;
     
     @PostMapping("/login")
     public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest request, HttpServletRequest httpRequest) {
         log.info("Login attempt for user: {}", request.getUsername());
+        String clientIp = clientIpResolver.resolve(httpRequest);
+        // 超限的尝试在校验密码之前拒绝，不消耗 BCrypt
+        loginAttemptService.checkAllowed(request.getUsername(), clientIp);
         
         try {
             Authentication authentication = authenticationManager.authenticate(
@@ -47,7 +57,8 @@ public class AuthController {
             
             // Update last login
             User user = userService.findByUsername(userDetails.getUsername()).orElseThrow();
-            userService.updateLastLogin(user.getId(), getClientIp(httpRequest));
+            userService.updateLastLogin(user.getId(), clientIp);
+            loginAttemptService.loginSucceeded(request.getUsername());
             
             LoginResponse response = new LoginResponse();
             response.setToken(token);
@@ -62,6 +73,13 @@ public class AuthController {
             
             return ResponseEntity.ok(response);
             
+        } catch (BadCredentialsException e) {
+            // Unknown users end up here too, as the provider hides UsernameNotFoundException
+            loginAttemptService.loginFailed(request.getUsername(), clientIp);
+            log.warn("Login failed for user: {}", request.getUsername());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        } catch (LockedException e) {
+            throw BusinessException.accountLocked(request.getUsername());
         } catch (Exception e) {
             log.error("Login failed for user: {}", request.getUsername(), e);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
@@ -149,12 +167,4 @@ public class AuthController {
         }
         return ResponseEntity.ok(false);
     }
-    
-    private String getClientIp(HttpServletRequest request) {
-        String xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader == null) {
-            return request.getRemoteAddr();
-        }
-        return xfHeader.split(",")[0];
-    }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.enterprise.mail.controller;
+
+import com.enterprise.mail.dto.DkimBenchmarkDto;
+import com.enterprise.mail.service.DkimService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * DKIM Controller - DKIM 签名管理
+ */
+@Tag(name = "DKIM", description = "DKIM 签名接口")
+@RestController
+@RequestMapping("/admin/dkim")
+@RequiredArgsConstructor
+@PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
+public class DkimController {
+    
+    private final DkimService dkimService;
+    
+    @Operation(summary = "签名吞吐量测试")
+    @PostMapping("/benchmark")
+    public ResponseEntity<DkimBenchmarkDto> benchmark(
+            @RequestParam(required = false) String domain,
+            @RequestParam(defaultValue = "1000") int messages,
+            @RequestParam(defaultValue = "20480") int bodyBytes,
+            @RequestParam(defaultValue = "1") int threads) {
+        
+        return ResponseEntity.ok(dkimService.benchmark(domain, messages, bodyBytes, threads));
+    }
+}
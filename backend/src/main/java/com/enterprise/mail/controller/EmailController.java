@@ -2,27 +2,48 @@ package com.enterprise.mail.controller;
 
 import com.enterprise.mail.dto.*;
 import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.EmailFolder;
+import com.enterprise.mail.entity.ScheduledAction;
 import com.enterprise.mail.entity.User;
 import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.service.EmailBodyService;
 import com.enterprise.mail.service.EmailService;
+import com.enterprise.mail.service.FileDownloadService;
+import com.enterprise.mail.service.HeaderIndexService;
+import com.enterprise.mail.service.ScheduledActionService;
 import com.enterprise.mail.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +58,10 @@ public class EmailController {
     
     private final EmailService emailService;
     private final UserService userService;
+    private final FileDownloadService fileDownloadService;
+    private final EmailBodyService emailBodyService;
+    private final HeaderIndexService headerIndexService;
+    private final ScheduledActionService scheduledActionService;
     
     @Operation(summary = "获取邮件列表")
     @GetMapping
@@ -45,11 +70,34 @@ public class EmailController {
             @RequestParam(required = false) String folder,
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String search,
-            Pageable pageable) {
+            Pageable pageable,
+            WebRequest webRequest) {
         
         User user = userService.findByUsername(userDetails.getUsername())
                 .orElseThrow(() -> BusinessException.userNotFound(0L));
         
+        // 列表未变化时直接返回304，不执行列表查询
+        long modSeq = user.getMailboxModSeq();
+        if ((search == null || search.isEmpty()) && folder != null && !folder.isEmpty()) {
+            modSeq = emailService.getFolderModSeq(user.getId(), Long.parseLong(folder)).orElse(modSeq);
+        }
+        String etag = listETag(modSeq, user.getId(), folder, status, search, pageable);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        
+        // 非搜索请求优先走内存映射的头索引，索引过期时回退到数据库
+        if (headerIndexService.isEnabled() && (search == null || search.isEmpty())) {
+            Long folderId = folder != null && !folder.isEmpty() ? Long.parseLong(folder) : null;
+            Email.EmailStatus emailStatus = folderId == null && status != null && !status.isEmpty()
+                    ? Email.EmailStatus.valueOf(status.toUpperCase()) : null;
+            Optional<Page<EmailDto>> indexed = headerIndexService.list(
+                    user.getId(), user.getMailboxModSeq(), folderId, emailStatus, pageable);
+            if (indexed.isPresent()) {
+                return ResponseEntity.ok().eTag(etag).body(indexed.get());
+            }
+        }
+        
         Page<Email> emails;
         
         if (search != null && !search.isEmpty()) {
@@ -65,7 +113,27 @@ public class EmailController {
         }
         
         Page<EmailDto> emailDtos = emails.map(this::convertToDto);
-        return ResponseEntity.ok(emailDtos);
+        return ResponseEntity.ok().eTag(etag).body(emailDtos);
+    }
+    
+    @Operation(summary = "获取文件夹列表")
+    @GetMapping("/folders")
+    public ResponseEntity<List<FolderDto>> getFolders(
+            @AuthenticationPrincipal UserDetails userDetails,
+            WebRequest webRequest) {
+        
+        User user = userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> BusinessException.userNotFound(0L));
+        
+        String etag = listETag(user.getMailboxModSeq(), user.getId(), "folders");
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        
+        List<FolderDto> folders = emailService.getFolders(user.getId()).stream()
+                .map(this::convertToFolderDto)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok().eTag(etag).body(folders);
     }
     
     @Operation(summary = "获取邮件详情")
@@ -90,9 +158,66 @@ public class EmailController {
             emailService.markAsRead(id);
         }
         
+        // 正文按需解压，列表接口只返回摘要
+        emailBodyService.load(email);
+        
         return ResponseEntity.ok(convertToDto(email));
     }
     
+    @Operation(summary = "下载原始邮件源码 (.eml)")
+    @GetMapping("/{id}/raw")
+    public void getRawEmail(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long id,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        
+        User user = userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> BusinessException.userNotFound(0L));
+        
+        RawLocation location = emailService.getRawLocation(id, user.getId());
+        String disposition = "attachment; filename=\"message-" + id + ".eml\"";
+        // 源码写入后不再变化，邮件 ID 即可作为强校验值
+        String etag = "\"raw-" + id + "\"";
+        
+        if (location.getRawPath() != null) {
+            fileDownloadService.sendFile(request, response, emailService.getRawFile(location), "message/rfc822",
+                    disposition, etag, true);
+            return;
+        }
+        
+        if (location.getPackId() != null && location.getRawSize() != null) {
+            // 冷存储：从归档包中边解压边输出；Range 通过解压并丢弃前面的字节实现
+            fileDownloadService.sendStream(request, response, () -> emailService.openPackedRaw(id, location),
+                    location.getRawSize(), "message/rfc822", disposition, etag);
+            return;
+        }
+        
+        if (location.getPackId() != null) {
+            // 未记录大小的冷存储源码：长度未知，无法支持 Range
+            if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+                return;
+            }
+            response.setContentType("message/rfc822");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+            try (InputStream in = emailService.openPackedRaw(id, location)) {
+                in.transferTo(response.getOutputStream());
+            }
+            return;
+        }
+        
+        // 旧邮件只保存了解码后的文本，无法还原原始字节
+        Email email = emailService.getEmailById(id)
+                .orElseThrow(() -> BusinessException.emailNotFound(id));
+        byte[] content = email.getRawContent() != null
+                ? email.getRawContent().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        response.setContentType("message/rfc822");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition);
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+    }
+    
     @Operation(summary = "发送邮件")
     @PostMapping("/send")
     public ResponseEntity<EmailDto> sendEmail(
@@ -115,10 +240,26 @@ public class EmailController {
         email.setStatus(Email.EmailStatus.SENT);
         email.setDirection(Email.Direction.OUTBOUND);
         
+        // 定时发送：先存为草稿，到时由定时任务发出
+        if (request.getSendAt() != null) {
+            try {
+                Email draft = emailService.saveDraft(email, request.getAttachments());
+                scheduledActionService.scheduleSend(draft, request.getSendAt());
+                log.info("Email {} scheduled for {} by user: {}", draft.getId(), request.getSendAt(), user.getUsername());
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(convertToDto(draft));
+            } catch (IOException e) {
+                throw new BusinessException("Failed to save attachments: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        }
+        
         try {
             Email sentEmail = emailService.sendEmail(email, request.getAttachments());
             log.info("Email sent successfully by user: {}", user.getUsername());
             return ResponseEntity.status(HttpStatus.CREATED).body(convertToDto(sentEmail));
+        } catch (BusinessException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new BusinessException("Failed to save attachments: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         } catch (Exception e) {
             log.error("Failed to send email", e);
             throw new BusinessException("Failed to send email: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
@@ -312,11 +453,61 @@ public class EmailController {
         return ResponseEntity.ok().build();
     }
     
+    @Operation(summary = "稍后提醒 (暂时移入归档)")
+    @PutMapping("/{id}/snooze")
+    public ResponseEntity<Void> snoozeEmail(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime until) {
+        
+        User user = userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> BusinessException.userNotFound(0L));
+        
+        Email email = emailService.getEmailById(id)
+                .orElseThrow(() -> BusinessException.emailNotFound(id));
+        
+        // 验证用户权限
+        if (!email.getUser().getId().equals(user.getId())) {
+            throw new BusinessException("Access denied", HttpStatus.FORBIDDEN);
+        }
+        if (!until.isAfter(LocalDateTime.now())) {
+            throw new BusinessException("Snooze time must be in the future");
+        }
+        
+        scheduledActionService.snooze(email, until);
+        log.info("Email {} snoozed until {} by user: {}", id, until, user.getUsername());
+        return ResponseEntity.ok().build();
+    }
+    
+    @Operation(summary = "取消定时发送")
+    @DeleteMapping("/{id}/send-later")
+    public ResponseEntity<Void> cancelSendLater(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long id) {
+        
+        User user = userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> BusinessException.userNotFound(0L));
+        
+        Email email = emailService.getEmailById(id)
+                .orElseThrow(() -> BusinessException.emailNotFound(id));
+        
+        // 验证用户权限
+        if (!email.getUser().getId().equals(user.getId())) {
+            throw new BusinessException("Access denied", HttpStatus.FORBIDDEN);
+        }
+        
+        if (scheduledActionService.cancel(ScheduledAction.ActionType.SEND_LATER, id) == 0) {
+            throw new BusinessException("No pending scheduled send for this email", HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.noContent().build();
+    }
+    
     @Operation(summary = "上传附件")
     @PostMapping("/attachments")
     public ResponseEntity<AttachmentDto> uploadAttachment(
             @AuthenticationPrincipal UserDetails userDetails,
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "emailId", required = false) Long draftId) {
         
         User user = userService.findByUsername(userDetails.getUsername())
                 .orElseThrow(() -> BusinessException.userNotFound(0L));
@@ -330,15 +521,60 @@ public class EmailController {
         }
         
         try {
-            AttachmentDto attachment = emailService.saveAttachment(file, user.getId());
+            AttachmentDto attachment = emailService.saveAttachment(file, user.getId(), draftId);
             log.info("Attachment uploaded by user: {}", user.getUsername());
             return ResponseEntity.ok(attachment);
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to upload attachment", e);
             throw new BusinessException("Failed to upload attachment: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
     
+    @Operation(summary = "流式上传附件（请求体即文件内容）")
+    @PutMapping(value = "/attachments/stream", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<AttachmentDto> uploadAttachmentStream(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "emailId", required = false) Long draftId,
+            HttpServletRequest request) {
+        
+        User user = userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> BusinessException.userNotFound(0L));
+        
+        try (InputStream in = request.getInputStream()) {
+            AttachmentDto attachment = emailService.saveAttachment(in, filename, request.getContentType(), user.getId(), draftId);
+            log.info("Attachment streamed by user: {}", user.getUsername());
+            return ResponseEntity.ok(attachment);
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to upload attachment", e);
+            throw new BusinessException("Failed to upload attachment: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+    
+    // Weak ETag: the modification counter plus everything else that shapes the response
+    private String listETag(long modSeq, Object... shape) {
+        return "W/\"" + modSeq + "-" + Integer.toHexString(Objects.hash(shape)) + "\"";
+    }
+    
+    private FolderDto convertToFolderDto(EmailFolder folder) {
+        FolderDto dto = new FolderDto();
+        dto.setId(folder.getId());
+        dto.setName(folder.getName());
+        dto.setType(folder.getType().name());
+        dto.setIcon(folder.getIcon());
+        dto.setColor(folder.getColor());
+        dto.setSortOrder(folder.getSortOrder());
+        dto.setIsSystem(folder.getIsSystem());
+        dto.setUnreadCount(folder.getUnreadCount());
+        dto.setTotalCount(folder.getTotalCount());
+        dto.setParentId(folder.getParent() != null ? folder.getParent().getId() : null);
+        return dto;
+    }
+    
     // Helper method to convert Email entity to DTO
     private EmailDto convertToDto(Email email) {
         EmailDto dto = new EmailDto();
@@ -352,6 +588,7 @@ public class EmailController {
         dto.setSubject(email.getSubject());
         dto.setContentText(email.getContentText());
         dto.setContentHtml(email.getContentHtml());
+        dto.setPreview(email.getPreview());
         dto.setStatus(email.getStatus().name());
         dto.setDirection(email.getDirection().name());
         dto.setSentDate(email.getSentDate());
@@ -361,8 +598,12 @@ public class EmailController {
         dto.setIsImportant(email.getIsImportant());
         dto.setHasAttachments(email.getHasAttachments());
         dto.setSizeBytes(email.getSizeBytes());
-        dto.setCreatedAt(email.getCreatedAt());
-        dto.setUpdatedAt(email.getUpdatedAt());
+        dto.setCreatedAt(toDate(email.getCreatedAt()));
+        dto.setUpdatedAt(toDate(email.getUpdatedAt()));
         return dto;
     }
+    
+    private static Date toDate(LocalDateTime value) {
+        return value != null ? Date.from(value.atZone(ZoneId.systemDefault()).toInstant()) : null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.enterprise.mail.controller;
+
+import com.enterprise.mail.websocket.WebSocketTicketService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Mailbox Channel Controller - 推送通道握手票据
+ */
+@Tag(name = "Mailbox Channel", description = "邮箱推送通道接口")
+@RestController
+@RequiredArgsConstructor
+public class MailboxChannelController {
+    
+    private final WebSocketTicketService ticketService;
+    
+    @Operation(summary = "获取推送通道的一次性握手票据")
+    @PostMapping("/mailbox/ticket")
+    public ResponseEntity<Map<String, String>> issueTicket(@AuthenticationPrincipal UserDetails userDetails) {
+        return ResponseEntity.ok(Map.of("ticket", ticketService.issue(userDetails.getUsername())));
+    }
+}
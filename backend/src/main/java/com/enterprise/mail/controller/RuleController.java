@@ -0,0 +1,105 @@
+package com.enterprise.mail.controller;
+
+import com.enterprise.mail.dto.RuleDto;
+import com.enterprise.mail.dto.RuleJobDto;
+import com.enterprise.mail.dto.RuleRequest;
+import com.enterprise.mail.service.RuleApplicationService;
+import com.enterprise.mail.service.RuleService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Rule Controller - 别名邮件过滤规则
+ */
+@Tag(name = "Mail Rules", description = "邮件过滤规则接口")
+@RestController
+@RequestMapping("/aliases/{aliasId}/rules")
+@RequiredArgsConstructor
+public class RuleController {
+    
+    private final RuleService ruleService;
+    private final RuleApplicationService ruleApplicationService;
+    
+    @Operation(summary = "获取规则列表")
+    @GetMapping
+    public ResponseEntity<List<RuleDto>> getRules(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long aliasId) {
+        
+        return ResponseEntity.ok(ruleService.getRules(aliasId, userDetails.getUsername()));
+    }
+    
+    @Operation(summary = "创建规则")
+    @PostMapping
+    public ResponseEntity<RuleDto> createRule(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long aliasId,
+            @Valid @RequestBody RuleRequest request) {
+        
+        RuleDto rule = ruleService.createRule(aliasId, request, userDetails.getUsername());
+        return ResponseEntity.status(HttpStatus.CREATED).body(rule);
+    }
+    
+    @Operation(summary = "更新规则")
+    @PutMapping("/{id}")
+    public ResponseEntity<RuleDto> updateRule(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long aliasId,
+            @PathVariable Long id,
+            @Valid @RequestBody RuleRequest request) {
+        
+        return ResponseEntity.ok(ruleService.updateRule(aliasId, id, request, userDetails.getUsername()));
+    }
+    
+    @Operation(summary = "删除规则")
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteRule(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long aliasId,
+            @PathVariable Long id) {
+        
+        ruleService.deleteRule(aliasId, id, userDetails.getUsername());
+        return ResponseEntity.noContent().build();
+    }
+    
+    @Operation(summary = "对已有邮件应用规则")
+    @PostMapping("/apply")
+    public ResponseEntity<RuleJobDto> applyRules(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long aliasId,
+            @RequestParam(required = false) Long folderId,
+            @RequestParam(required = false) Integer days) {
+        
+        RuleJobDto job = ruleApplicationService.submit(aliasId, folderId, days, userDetails.getUsername());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+    
+    @Operation(summary = "查询规则应用进度")
+    @GetMapping("/apply/{jobId}")
+    public ResponseEntity<RuleJobDto> getApplyJob(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long aliasId,
+            @PathVariable String jobId) {
+        
+        return ResponseEntity.ok(ruleApplicationService.getJob(aliasId, jobId, userDetails.getUsername()));
+    }
+    
+    @Operation(summary = "取消规则应用")
+    @DeleteMapping("/apply/{jobId}")
+    public ResponseEntity<RuleJobDto> cancelApplyJob(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long aliasId,
+            @PathVariable String jobId) {
+        
+        return ResponseEntity.ok(ruleApplicationService.cancel(aliasId, jobId, userDetails.getUsername()));
+    }
+}
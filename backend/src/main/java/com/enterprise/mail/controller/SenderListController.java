@@ -0,0 +1,83 @@
+package com.enterprise.mail.controller;
+
+import com.enterprise.mail.dto.SenderListDto;
+import com.enterprise.mail.dto.SenderListRequest;
+import com.enterprise.mail.service.SenderListService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Sender List Controller - 发件人黑白名单
+ */
+@Tag(name = "Sender Lists", description = "发件人黑白名单接口")
+@RestController
+@RequiredArgsConstructor
+public class SenderListController {
+    
+    private final SenderListService senderListService;
+    
+    @Operation(summary = "获取我的名单")
+    @GetMapping("/sender-lists")
+    public ResponseEntity<List<SenderListDto>> getEntries(@AuthenticationPrincipal UserDetails userDetails) {
+        return ResponseEntity.ok(senderListService.getUserEntries(userDetails.getUsername()));
+    }
+    
+    @Operation(summary = "添加名单条目")
+    @PostMapping("/sender-lists")
+    public ResponseEntity<SenderListDto> addEntry(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @Valid @RequestBody SenderListRequest request) {
+        
+        SenderListDto entry = senderListService.addUserEntry(request, userDetails.getUsername());
+        return ResponseEntity.status(HttpStatus.CREATED).body(entry);
+    }
+    
+    @Operation(summary = "删除名单条目")
+    @DeleteMapping("/sender-lists/{id}")
+    public ResponseEntity<Void> deleteEntry(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable Long id) {
+        
+        senderListService.deleteUserEntry(id, userDetails.getUsername());
+        return ResponseEntity.noContent().build();
+    }
+    
+    @Operation(summary = "获取域级名单")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
+    @GetMapping("/admin/domains/{domainName}/sender-lists")
+    public ResponseEntity<List<SenderListDto>> getDomainEntries(@PathVariable String domainName) {
+        return ResponseEntity.ok(senderListService.getDomainEntries(domainName));
+    }
+    
+    @Operation(summary = "添加域级名单条目")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
+    @PostMapping("/admin/domains/{domainName}/sender-lists")
+    public ResponseEntity<SenderListDto> addDomainEntry(
+            @PathVariable String domainName,
+            @Valid @RequestBody SenderListRequest request) {
+        
+        SenderListDto entry = senderListService.addDomainEntry(domainName, request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(entry);
+    }
+    
+    @Operation(summary = "删除域级名单条目")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
+    @DeleteMapping("/admin/domains/{domainName}/sender-lists/{id}")
+    public ResponseEntity<Void> deleteDomainEntry(
+            @PathVariable String domainName,
+            @PathVariable Long id) {
+        
+        senderListService.deleteDomainEntry(domainName, id);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,101 @@
+package com.enterprise.mail.controller;
+
+import com.enterprise.mail.dto.AttachmentDto;
+import com.enterprise.mail.dto.CreateUploadRequest;
+import com.enterprise.mail.dto.UploadSessionDto;
+import com.enterprise.mail.entity.User;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.service.ChunkedUploadService;
+import com.enterprise.mail.service.UserService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Upload Controller - 断点续传分片上传
+ */
+@Tag(name = "Chunked Upload", description = "大附件分片上传接口")
+@RestController
+@RequestMapping("/uploads")
+@RequiredArgsConstructor
+public class UploadController {
+    
+    private final ChunkedUploadService chunkedUploadService;
+    private final UserService userService;
+    
+    @Operation(summary = "创建上传会话")
+    @PostMapping
+    public ResponseEntity<UploadSessionDto> createSession(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @Valid @RequestBody CreateUploadRequest request) throws IOException {
+        
+        UploadSessionDto session = chunkedUploadService.createSession(request, currentUser(userDetails).getId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(session);
+    }
+    
+    @Operation(summary = "上传分片（请求体为分片内容）")
+    @PutMapping(value = "/{uploadId}", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<UploadSessionDto> uploadChunk(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable String uploadId,
+            @RequestParam long offset,
+            HttpServletRequest request) throws IOException {
+        
+        long length = request.getContentLengthLong();
+        if (length < 0) {
+            throw new BusinessException("Content-Length is required", HttpStatus.LENGTH_REQUIRED);
+        }
+        
+        try (InputStream in = request.getInputStream()) {
+            UploadSessionDto session = chunkedUploadService.writeChunk(
+                    uploadId, currentUser(userDetails).getId(), offset, length, in);
+            return ResponseEntity.ok(session);
+        }
+    }
+    
+    @Operation(summary = "查询上传进度")
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<UploadSessionDto> getProgress(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable String uploadId) {
+        
+        return ResponseEntity.ok(chunkedUploadService.getProgress(uploadId, currentUser(userDetails).getId()));
+    }
+    
+    @Operation(summary = "完成上传")
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<AttachmentDto> complete(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable String uploadId,
+            @RequestParam(required = false) String checksum,
+            @RequestParam(value = "emailId", required = false) Long draftId) throws IOException {
+        
+        return ResponseEntity.ok(chunkedUploadService.complete(uploadId, currentUser(userDetails).getId(), checksum, draftId));
+    }
+    
+    @Operation(summary = "取消上传")
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> abort(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @PathVariable String uploadId) {
+        
+        chunkedUploadService.abort(uploadId, currentUser(userDetails).getId());
+        return ResponseEntity.noContent().build();
+    }
+    
+    private User currentUser(UserDetails userDetails) {
+        return userService.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> BusinessException.userNotFound(0L));
+    }
+}
@@ -0,0 +1,131 @@
+package com.enterprise.mail.dns;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * In-memory cache in front of another resolver.
+ *
+ * Answers are kept for their own TTL, clamped to [minTtl, maxTtl]; "no such name" and
+ * "no records" answers are kept too, for the SOA minimum but at most negativeTtl, so a
+ * sender without SPF or DMARC records costs no lookups either. Failures are not cached.
+ * Concurrent lookups of the same name and type share one query to the delegate.
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    private final DnsResolver delegate;
+    private final long minTtl;
+    private final long maxTtl;
+    private final long negativeTtl;
+    private final int maxEntries;
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Answer>> inFlight = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    private record Entry(Answer answer, long expiresAt) {
+    }
+
+    public CachingDnsResolver(DnsResolver delegate, long minTtl, long maxTtl, long negativeTtl, int maxEntries,
+                              MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.minTtl = minTtl;
+        this.maxTtl = maxTtl;
+        this.negativeTtl = negativeTtl;
+        this.maxEntries = maxEntries;
+        this.hits = Counter.builder("mail.dns.cache")
+                .description("DNS lookups by cache outcome")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("mail.dns.cache")
+                .description("DNS lookups by cache outcome")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("mail.dns.cache.size", cache, Map::size)
+                .description("Cached DNS answers")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Answer lookup(String name, Type type) throws IOException {
+        String key = type.name() + ' ' + name.toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expiresAt() > now) {
+            hits.increment();
+            return entry.answer();
+        }
+
+        CompletableFuture<Answer> mine = new CompletableFuture<>();
+        CompletableFuture<Answer> running;
+        while ((running = inFlight.putIfAbsent(key, mine)) != null) {
+            hits.increment();
+            try {
+                return await(running);
+            } catch (InterruptedIOException e) {
+                // 是执行查询的线程被取消，而不是本线程：自己重新查询
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+            }
+        }
+
+        misses.increment();
+        try {
+            Answer answer = delegate.lookup(name, type);
+            long ttl = answer.isEmpty() ? Math.min(answer.ttl(), negativeTtl) : answer.ttl();
+            ttl = Math.max(minTtl, Math.min(ttl, maxTtl));
+            if (ttl > 0) {
+                if (cache.size() >= maxEntries) {
+                    evict(now);
+                }
+                cache.put(key, new Entry(answer, now + ttl * 1000));
+            }
+            mine.complete(answer);
+            return answer;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    // Helper methods
+
+    private void evict(long now) {
+        cache.values().removeIf(entry -> entry.expiresAt() <= now);
+        if (cache.size() >= maxEntries) {
+            // 仍然过多时整体清空，比维护 LRU 顺序便宜，且很快会重新填满热门域名
+            cache.clear();
+        }
+    }
+
+    private static Answer await(CompletableFuture<Answer> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for DNS lookup");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("DNS lookup failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.enterprise.mail.dns;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * DNS lookups used by mail authentication (SPF, DKIM, DMARC).
+ *
+ * Implementations report "no such name" and "no records of this type" as answers, so
+ * they can be cached, and throw {@link IOException} for failures worth retrying later
+ * (timeouts, SERVFAIL), which authentication reports as a temporary error.
+ */
+public interface DnsResolver {
+    
+    enum Type {
+        A(1), MX(15), TXT(16), AAAA(28);
+        
+        private final int code;
+        
+        Type(int code) {
+            this.code = code;
+        }
+        
+        public int code() {
+            return code;
+        }
+    }
+    
+    /**
+     * Records of one type: addresses as text, MX hosts by preference, TXT strings joined
+     *
+     * @param nxdomain the name does not exist
+     * @param ttl      seconds the answer may be cached
+     */
+    record Answer(List<String> records, boolean nxdomain, long ttl) {
+        
+        public static Answer notFound(long ttl) {
+            return new Answer(List.of(), true, ttl);
+        }
+        
+        public boolean isEmpty() {
+            return records.isEmpty();
+        }
+    }
+    
+    Answer lookup(String name, Type type) throws IOException;
+}
@@ -0,0 +1,344 @@
+package com.enterprise.mail.dns;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stub resolver speaking the DNS wire protocol to recursive name servers.
+ *
+ * Unlike the JDK's JNDI provider it returns record TTLs, and negative answers carry the
+ * zone's SOA minimum, so a cache in front of it can honour both. Queries go over UDP
+ * with EDNS0 and are repeated over TCP when the answer is truncated; servers are tried
+ * in turn until one answers. Stateless; safe to share between threads.
+ */
+@Slf4j
+public class UdpDnsResolver implements DnsResolver {
+
+    private static final int PORT = 53;
+    private static final int UDP_PAYLOAD = 4096;
+    private static final int RCODE_OK = 0;
+    private static final int RCODE_NXDOMAIN = 3;
+    private static final int TYPE_CNAME = 5;
+    private static final int TYPE_SOA = 6;
+    private static final int TYPE_OPT = 41;
+    private static final int MAX_POINTERS = 64;
+
+    private final List<InetSocketAddress> servers;
+    private final int timeoutMillis;
+    private final int attempts;
+    private final long defaultNegativeTtl;
+
+    public UdpDnsResolver(List<InetSocketAddress> servers, int timeoutMillis, int attempts, long defaultNegativeTtl) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("No DNS servers configured");
+        }
+        this.servers = List.copyOf(servers);
+        this.timeoutMillis = timeoutMillis;
+        this.attempts = Math.max(1, attempts);
+        this.defaultNegativeTtl = defaultNegativeTtl;
+    }
+
+    /**
+     * Parse {@code host}, {@code host:port} or {@code [v6]:port}; an empty list means the
+     * name servers of /etc/resolv.conf, or a resolver on localhost without one
+     */
+    public static List<InetSocketAddress> parseServers(List<String> configured) throws IOException {
+        List<String> entries = new ArrayList<>();
+        if (configured != null) {
+            configured.stream().map(String::trim).filter(s -> !s.isEmpty()).forEach(entries::add);
+        }
+        Path resolvConf = Path.of("/etc/resolv.conf");
+        if (entries.isEmpty() && Files.isReadable(resolvConf)) {
+            for (String line : Files.readAllLines(resolvConf)) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length >= 2 && fields[0].equals("nameserver")) {
+                    entries.add(fields[1].contains(":") ? "[" + fields[1] + "]" : fields[1]);
+                }
+            }
+        }
+
+        List<InetSocketAddress> servers = new ArrayList<>();
+        for (String entry : entries) {
+            String host = entry;
+            int port = PORT;
+            if (entry.startsWith("[")) {
+                int close = entry.indexOf(']');
+                host = entry.substring(1, close);
+                if (entry.startsWith(":", close + 1)) {
+                    port = Integer.parseInt(entry.substring(close + 2));
+                }
+            } else if (entry.indexOf(':') > 0 && entry.indexOf(':') == entry.lastIndexOf(':')) {
+                host = entry.substring(0, entry.indexOf(':'));
+                port = Integer.parseInt(entry.substring(entry.indexOf(':') + 1));
+            }
+            // Literal addresses only, so configuring a server never needs DNS itself
+            if (!host.contains(":") && !host.matches("\\d{1,3}(\\.\\d{1,3}){3}")) {
+                throw new IllegalArgumentException("DNS server must be an IP address: " + entry);
+            }
+            servers.add(new InetSocketAddress(InetAddress.getByName(host), port));
+        }
+        if (servers.isEmpty()) {
+            servers.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT));
+        }
+        return servers;
+    }
+
+    @Override
+    public Answer lookup(String name, Type type) throws IOException {
+        byte[] query = buildQuery(name, type);
+        IOException failure = null;
+        for (int attempt = 0; attempt < attempts * servers.size(); attempt++) {
+            // 调用方已放弃（认证超时被取消）时不再重试其他服务器
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("DNS lookup " + type + " " + name + " cancelled");
+            }
+            InetSocketAddress server = servers.get(attempt % servers.size());
+            try {
+                ByteBuffer response = exchangeUdp(server, query);
+                if ((response.getShort(2) & 0x0200) != 0) {
+                    // 截断的 UDP 应答改用 TCP 重查
+                    response = exchangeTcp(server, query);
+                }
+                return parse(response, type);
+            } catch (SocketTimeoutException e) {
+                failure = new IOException("DNS timeout from " + server + " for " + name, e);
+            } catch (IOException e) {
+                failure = e;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                failure = new IOException("Malformed DNS response from " + server + " for " + name, e);
+            }
+        }
+        log.debug("DNS lookup {} {} failed: {}", type, name, failure.getMessage());
+        throw failure;
+    }
+
+    // Helper methods
+
+    private ByteBuffer exchangeUdp(InetSocketAddress server, byte[] query) throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(timeoutMillis);
+            socket.connect(server);
+            socket.send(new DatagramPacket(query, query.length));
+            byte[] buffer = new byte[UDP_PAYLOAD];
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                ByteBuffer response = ByteBuffer.wrap(buffer, 0, packet.getLength()).slice();
+                // Ignore stray datagrams that do not answer this query
+                if (packet.getLength() >= 12 && response.getShort(0) == ByteBuffer.wrap(query).getShort(0)) {
+                    return response;
+                }
+                int remaining = (int) (deadline - System.currentTimeMillis());
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException();
+                }
+                socket.setSoTimeout(remaining);
+            }
+        }
+    }
+
+    private ByteBuffer exchangeTcp(InetSocketAddress server, byte[] query) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(server, timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeShort(query.length);
+            out.write(query);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] response = new byte[in.readUnsignedShort()];
+            in.readFully(response);
+            return ByteBuffer.wrap(response);
+        }
+    }
+
+    private static byte[] buildQuery(String name, Type type) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        buffer.putShort((short) ThreadLocalRandom.current().nextInt(1 << 16));
+        buffer.putShort((short) 0x0100); // recursion desired
+        buffer.putShort((short) 1);      // one question
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 1);      // OPT record
+
+        String fqdn = name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+        if (fqdn.isEmpty() || fqdn.length() > 253) {
+            throw new IOException("Invalid DNS name: " + name);
+        }
+        for (String label : fqdn.split("\\.", -1)) {
+            byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+            if (bytes.length == 0 || bytes.length > 63) {
+                throw new IOException("Invalid DNS name: " + name);
+            }
+            buffer.put((byte) bytes.length).put(bytes);
+        }
+        buffer.put((byte) 0);
+        buffer.putShort((short) type.code());
+        buffer.putShort((short) 1); // IN
+
+        // EDNS0: root name, OPT, advertised UDP payload size, no extended flags
+        buffer.put((byte) 0);
+        buffer.putShort((short) TYPE_OPT);
+        buffer.putShort((short) UDP_PAYLOAD);
+        buffer.putInt(0);
+        buffer.putShort((short) 0);
+
+        byte[] query = new byte[buffer.position()];
+        buffer.flip().get(query);
+        return query;
+    }
+
+    private Answer parse(ByteBuffer response, Type type) throws IOException {
+        int flags = response.getShort(2) & 0xffff;
+        int rcode = flags & 0x0f;
+        if ((flags & 0x8000) == 0 || (rcode != RCODE_OK && rcode != RCODE_NXDOMAIN)) {
+            throw new IOException("DNS server returned rcode " + rcode);
+        }
+        int questions = response.getShort(4) & 0xffff;
+        int answers = response.getShort(6) & 0xffff;
+        int authorities = response.getShort(8) & 0xffff;
+
+        response.position(12);
+        for (int i = 0; i < questions; i++) {
+            skipName(response);
+            response.position(response.position() + 4);
+        }
+
+        List<String> records = new ArrayList<>();
+        List<int[]> mxOrder = new ArrayList<>();
+        long ttl = Long.MAX_VALUE;
+        for (int i = 0; i < answers; i++) {
+            skipName(response);
+            int recordType = response.getShort() & 0xffff;
+            response.getShort(); // class
+            long recordTtl = response.getInt() & 0xffffffffL;
+            int length = response.getShort() & 0xffff;
+            int start = response.position();
+            if (recordType == type.code()) {
+                String value = readRecord(response, type, start, length);
+                if (type == Type.MX) {
+                    mxOrder.add(new int[]{response.getShort(start) & 0xffff, records.size()});
+                }
+                records.add(value);
+                ttl = Math.min(ttl, recordTtl);
+            } else if (recordType == TYPE_CNAME) {
+                // An alias is only as fresh as the records it leads to
+                ttl = Math.min(ttl, recordTtl);
+            }
+            response.position(start + length);
+        }
+
+        if (!records.isEmpty()) {
+            if (type == Type.MX) {
+                List<String> byPreference = new ArrayList<>();
+                mxOrder.sort(Comparator.comparingInt(mx -> mx[0]));
+                mxOrder.forEach(mx -> byPreference.add(records.get(mx[1])));
+                return new Answer(byPreference, false, ttl);
+            }
+            return new Answer(records, false, ttl);
+        }
+
+        // Negative answer: cacheable for the SOA minimum (RFC 2308)
+        long negativeTtl = defaultNegativeTtl;
+        for (int i = 0; i < authorities; i++) {
+            skipName(response);
+            int recordType = response.getShort() & 0xffff;
+            response.getShort();
+            long recordTtl = response.getInt() & 0xffffffffL;
+            int length = response.getShort() & 0xffff;
+            int start = response.position();
+            if (recordType == TYPE_SOA && length >= 20) {
+                long minimum = response.getInt(start + length - 4) & 0xffffffffL;
+                negativeTtl = Math.min(recordTtl, minimum);
+            }
+            response.position(start + length);
+        }
+        return new Answer(List.of(), rcode == RCODE_NXDOMAIN, negativeTtl);
+    }
+
+    private static String readRecord(ByteBuffer response, Type type, int start, int length) throws IOException {
+        switch (type) {
+            case A, AAAA -> {
+                byte[] address = new byte[length];
+                response.get(start, address);
+                return InetAddress.getByAddress(address).getHostAddress();
+            }
+            case MX -> {
+                return readName(response, start + 2);
+            }
+            default -> {
+                // TXT: one or more character strings, joined as SPF and DKIM expect
+                StringBuilder text = new StringBuilder();
+                int position = start;
+                while (position < start + length) {
+                    int size = response.get(position) & 0xff;
+                    byte[] bytes = new byte[size];
+                    response.get(position + 1, bytes);
+                    text.append(new String(bytes, StandardCharsets.ISO_8859_1));
+                    position += 1 + size;
+                }
+                return text.toString();
+            }
+        }
+    }
+
+    private static String readName(ByteBuffer response, int position) throws IOException {
+        StringBuilder name = new StringBuilder();
+        int pointers = 0;
+        while (true) {
+            int length = response.get(position) & 0xff;
+            if (length == 0) {
+                break;
+            }
+            if ((length & 0xc0) == 0xc0) {
+                if (++pointers > MAX_POINTERS) {
+                    throw new IOException("DNS name compression loop");
+                }
+                position = ((length & 0x3f) << 8) | (response.get(position + 1) & 0xff);
+                continue;
+            }
+            byte[] label = new byte[length];
+            response.get(position + 1, label);
+            if (name.length() > 0) {
+                name.append('.');
+            }
+            name.append(new String(label, StandardCharsets.US_ASCII));
+            position += 1 + length;
+        }
+        return name.toString();
+    }
+
+    private static void skipName(ByteBuffer response) {
+        while (true) {
+            int length = response.get() & 0xff;
+            if (length == 0) {
+                return;
+            }
+            if ((length & 0xc0) == 0xc0) {
+                response.get();
+                return;
+            }
+            response.position(response.position() + length);
+        }
+    }
+}
@@ -20,6 +20,7 @@ public class AliasDto {
     private String signature;
     private Long quotaBytes;
     private Long usedBytes;
+    private LocalDateTime expiresAt;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
\ No newline at end of file
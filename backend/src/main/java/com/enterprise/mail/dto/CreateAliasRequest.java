@@ -1,9 +1,12 @@
 package com.enterprise.mail.dto;
 
+import jakarta.validation.constraints.Future;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+
 @Data
 public class CreateAliasRequest {
     
@@ -19,4 +22,8 @@ public class CreateAliasRequest {
     private String description;
     
     private String signature;
+    
+    // 设置后创建为临时别名，到期自动停用
+    @Future(message = "过期时间必须晚于当前时间")
+    private LocalDateTime expiresAt;
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.enterprise.mail.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+
+@Data
+public class CreateUploadRequest {
+    
+    @NotBlank(message = "文件名不能为空")
+    private String fileName;
+    
+    private String contentType;
+    
+    @NotNull(message = "文件大小不能为空")
+    @Positive(message = "文件大小必须大于0")
+    private Long totalSize;
+}
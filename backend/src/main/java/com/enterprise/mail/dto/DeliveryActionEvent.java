@@ -0,0 +1,30 @@
+package com.enterprise.mail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Forwards and a vacation reply owed for a delivered email, carried out after the delivery commits
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryActionEvent {
+    private Long emailId;
+    private Long aliasId;
+    private String aliasAddress;
+    private String sender;
+    private String subject;
+    private String messageId;
+    private String references;
+    private String rawPath;
+    private List<String> forwardTo;
+    private boolean autoReply;
+    private String replySubject;
+    private String replyMessage;
+}
@@ -0,0 +1,26 @@
+package com.enterprise.mail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DKIM signing throughput measured on this node
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DkimBenchmarkDto {
+    private String domain;
+    private Boolean domainKey;
+    private Integer keyBits;
+    private Integer bodyBytes;
+    private Integer threads;
+    private Integer messages;
+    private Long elapsedMillis;
+    private Double messagesPerSecond;
+    private Double messagesPerSecondPerThread;
+    private Double averageMicros;
+}
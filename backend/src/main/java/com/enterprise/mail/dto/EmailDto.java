@@ -25,6 +25,7 @@ public class EmailDto {
     private String subject;
     private String contentText;
     private String contentHtml;
+    private String preview;
     private String status;
     private String direction;
     private Date sentDate;
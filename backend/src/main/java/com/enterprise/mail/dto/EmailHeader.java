@@ -0,0 +1,38 @@
+package com.enterprise.mail.dto;
+
+import com.enterprise.mail.entity.Email;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+
+/**
+ * Listing fields of an email, loaded without the body columns
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmailHeader {
+    private Long id;
+    private Long folderId;
+    private Email.EmailStatus status;
+    private Boolean isStarred;
+    private Boolean isImportant;
+    private Boolean hasAttachments;
+    private Date sentDate;
+    private Date receivedDate;
+    private Long sizeBytes;
+    private String fromAddress;
+    private String fromName;
+    private String toAddresses;
+    private String subject;
+    private String preview;
+    private String messageId;
+    private String ccAddresses;
+    private String bccAddresses;
+    private Email.Direction direction;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,20 @@
+package com.enterprise.mail.dto;
+
+import lombok.Data;
+
+/**
+ * Folder DTO for folder listings
+ */
+@Data
+public class FolderDto {
+    private Long id;
+    private String name;
+    private String type;
+    private String icon;
+    private String color;
+    private Integer sortOrder;
+    private Boolean isSystem;
+    private Integer unreadCount;
+    private Integer totalCount;
+    private Long parentId;
+}
@@ -0,0 +1,36 @@
+package com.enterprise.mail.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compact mailbox change event pushed to connected clients
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MailboxEvent {
+
+    @JsonIgnore
+    private Long userId;
+
+    private EventType type;
+    private Long emailId;
+    private Long folderId;
+    private Long fromFolderId;
+    private String status;
+    private Boolean starred;
+    private Boolean important;
+    private Integer unreadCount;
+    private Integer totalCount;
+
+    public enum EventType {
+        NEW, FLAGS, MOVED, DELETED, FOLDER_COUNTS
+    }
+}
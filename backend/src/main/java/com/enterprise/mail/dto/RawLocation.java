@@ -0,0 +1,15 @@
+package com.enterprise.mail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Where the source of an email is stored: a raw file, a pack record, or neither (legacy)
+ */
+@Data
+@AllArgsConstructor
+public class RawLocation {
+    private String rawPath;
+    private Long rawSize;
+    private Long packId;
+}
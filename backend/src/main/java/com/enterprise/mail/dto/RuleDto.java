@@ -0,0 +1,33 @@
+package com.enterprise.mail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Mail filter rule DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RuleDto {
+    private Long id;
+    private Long aliasId;
+    private String name;
+    private String description;
+    private Boolean isActive;
+    private Integer priority;
+    private String conditionType;
+    private String conditionField;
+    private String conditionOperator;
+    private String conditionValue;
+    private String actionType;
+    private String actionValue;
+    private Boolean stopProcessing;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
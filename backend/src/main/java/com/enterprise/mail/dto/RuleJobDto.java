@@ -0,0 +1,31 @@
+package com.enterprise.mail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a retroactive rule run over existing mail
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RuleJobDto {
+    private String id;
+    private Long aliasId;
+    private Long folderId;
+    private String status;
+    private Long total;
+    private Long processed;
+    private Long matched;
+    private Long moved;
+    private Integer percent;
+    private Long etaSeconds;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
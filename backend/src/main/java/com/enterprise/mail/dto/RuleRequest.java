@@ -0,0 +1,40 @@
+package com.enterprise.mail.dto;
+
+import com.enterprise.mail.entity.EmailRule;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class RuleRequest {
+    
+    @NotBlank(message = "规则名称不能为空")
+    @Size(max = 100, message = "规则名称不能超过100个字符")
+    private String name;
+    
+    private String description;
+    
+    private Boolean isActive = true;
+    
+    // 数值越大越先执行
+    private Integer priority = 0;
+    
+    @NotNull(message = "条件类型不能为空")
+    private EmailRule.ConditionType conditionType;
+    
+    private String conditionField; // Header name for HEADER conditions
+    
+    private EmailRule.ConditionOperator conditionOperator = EmailRule.ConditionOperator.CONTAINS;
+    
+    @Size(max = 500, message = "条件值不能超过500个字符")
+    private String conditionValue;
+    
+    @NotNull(message = "动作类型不能为空")
+    private EmailRule.ActionType actionType;
+    
+    @Size(max = 500, message = "动作参数不能超过500个字符")
+    private String actionValue;
+    
+    private Boolean stopProcessing = false;
+}
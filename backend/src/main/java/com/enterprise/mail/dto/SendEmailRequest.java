@@ -1,6 +1,7 @@
 package com.enterprise.mail.dto;
 
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Future;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
@@ -9,6 +10,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -46,4 +48,7 @@ public class SendEmailRequest {
     private Boolean requestReadReceipt;
     
     private String priority; // HIGH, NORMAL, LOW
+    
+    @Future(message = "Send time must be in the future")
+    private LocalDateTime sendAt; // Send later; null sends immediately
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.enterprise.mail.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Allow/block list entry DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SenderListDto {
+    private Long id;
+    private String domainName;
+    private String pattern;
+    private String action;
+    private String note;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,22 @@
+package com.enterprise.mail.dto;
+
+import com.enterprise.mail.entity.SenderListEntry;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class SenderListRequest {
+    
+    // 地址、域名或 *.域名
+    @NotBlank(message = "发件人或域名不能为空")
+    @Size(max = 255, message = "发件人或域名不能超过255个字符")
+    private String pattern;
+    
+    @NotNull(message = "动作不能为空")
+    private SenderListEntry.Action action;
+    
+    @Size(max = 255, message = "备注不能超过255个字符")
+    private String note;
+}
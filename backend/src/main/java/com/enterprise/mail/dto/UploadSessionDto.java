@@ -0,0 +1,19 @@
+package com.enterprise.mail.dto;
+
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+public class UploadSessionDto {
+    private String uploadId;
+    private String fileName;
+    private String contentType;
+    private Long totalSize;
+    private Long receivedBytes;
+    private List<String> receivedRanges;
+    private Boolean complete;
+    private String status;
+    private Date expiresAt;
+}
@@ -0,0 +1,45 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.util.Date;
+
+/**
+ * Content-addressed attachment bytes, stored once per SHA-256 and shared by
+ * every {@link Attachment} row with the same checksum
+ */
+@Entity
+@Table(name = "attachment_blobs",
+    indexes = {
+        @Index(name = "idx_blob_ref_count_released", columnList = "ref_count, last_released_at")
+    }
+)
+@Data
+@NoArgsConstructor
+public class AttachmentBlob {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "sha256", unique = true, nullable = false, length = 64)
+    private String sha256;
+    
+    @Column(name = "size_bytes", nullable = false)
+    private Long sizeBytes;
+    
+    // 引用计数，只通过批量 UPDATE 修改，避免并发覆盖
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 0;
+    
+    @Column(name = "last_released_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date lastReleasedAt;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Date createdAt;
+}
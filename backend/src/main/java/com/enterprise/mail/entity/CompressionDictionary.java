@@ -0,0 +1,33 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Preset deflate dictionary trained on a domain's mail.
+ * Dictionaries are immutable; retraining adds a new version and bodies keep
+ * referencing the version they were compressed with.
+ */
+@Entity
+@Table(name = "compression_dictionaries",
+    indexes = {
+        @Index(name = "idx_compression_dictionary_domain", columnList = "domain_name, id")
+    }
+)
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class CompressionDictionary extends BaseEntity {
+    
+    @Column(name = "domain_name", nullable = false, length = 100)
+    private String domainName;
+    
+    @Column(name = "data", nullable = false, columnDefinition = "BLOB")
+    private byte[] data;
+    
+    @Column(name = "sample_count", nullable = false)
+    private Integer sampleCount;
+    
+    @Column(name = "sample_bytes", nullable = false)
+    private Long sampleBytes;
+}
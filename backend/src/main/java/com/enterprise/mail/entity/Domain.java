@@ -74,6 +74,11 @@ public class Domain extends BaseEntity {
     @Column(name = "max_storage_gb")
     private Integer maxStorageGb = 100;
     
+    // 域级黑白名单变更计数；只通过批量更新递增
+    @Column(name = "sender_list_version", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long senderListVersion = 0L;
+    
     @ManyToMany(mappedBy = "domains")
     private Set<User> users = new HashSet<>();
     
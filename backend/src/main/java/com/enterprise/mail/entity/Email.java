@@ -50,14 +50,35 @@ public class Email extends BaseEntity {
     @Column(name = "reply_to", length = 255)
     private String replyTo;
     
-    @Column(name = "content_text", columnDefinition = "LONGTEXT")
+    // 正文压缩存储在 email_bodies 中，由 EmailBodyService 写入和按需解压
+    @Transient
     private String contentText;
     
-    @Column(name = "content_html", columnDefinition = "LONGTEXT")
+    @Transient
     private String contentHtml;
     
+    @Column(name = "preview", length = 512)
+    private String preview; // Leading plain text for listings and search
+    
+    // Legacy: uncompressed bodies of mail stored before email_bodies, migrated in the background
+    @Column(name = "content_text", columnDefinition = "LONGTEXT")
+    private String legacyContentText;
+    
+    @Column(name = "content_html", columnDefinition = "LONGTEXT")
+    private String legacyContentHtml;
+    
     @Column(name = "raw_content", columnDefinition = "LONGTEXT")
-    private String rawContent;
+    private String rawContent; // Legacy: decoded source of mail stored before raw files
+    
+    @Column(name = "raw_path", length = 512)
+    private String rawPath; // Exact RFC 822 bytes on disk
+    
+    @Column(name = "raw_size")
+    private Long rawSize;
+    
+    // 冷存储：正文和源码已移入该归档包，为空表示仍在热存储
+    @Column(name = "pack_id")
+    private Long packId;
     
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -67,6 +88,10 @@ public class Email extends BaseEntity {
     @Column(nullable = false)
     private EmailType type = EmailType.RECEIVED;
     
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "VARCHAR(10) NOT NULL DEFAULT 'INBOUND'")
+    private Direction direction = Direction.INBOUND;
+    
     @Column(name = "is_starred")
     private Boolean isStarred = false;
     
@@ -99,6 +124,9 @@ public class Email extends BaseEntity {
     @Column(name = "spam_score")
     private Double spamScore;
     
+    @Column(name = "spam_trained")
+    private Boolean spamTrained; // Lesson given to the spam filter: true spam, false ham, null none
+    
     @Column(name = "virus_scan_result", length = 100)
     private String virusScanResult;
     
@@ -142,10 +170,14 @@ public class Email extends BaseEntity {
     private Set<EmailAttachment> attachments = new HashSet<>();
     
     public enum EmailStatus {
-        UNREAD, READ, REPLIED, FORWARDED, DELETED
+        UNREAD, READ, REPLIED, FORWARDED, DELETED, SENT, DRAFT
     }
     
     public enum EmailType {
         RECEIVED, SENT, DRAFT
     }
+    
+    public enum Direction {
+        INBOUND, OUTBOUND
+    }
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -66,12 +68,27 @@ public class EmailAlias extends BaseEntity {
     @Column(name = "max_send_per_day")
     private Integer maxSendPerDay = 500;
     
-    @Column(name = "sent_today")
+    // 当日已发送数，由限流服务定期批量累加、每天零点清零；实体保存时不写回
+    @Column(name = "sent_today", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "INT NOT NULL DEFAULT 0")
     private Integer sentToday = 0;
     
+    // sent_today 所属的日期；不是今天时 sent_today 视为 0
+    @Column(name = "sent_date", insertable = false, updatable = false)
+    private LocalDate sentDate;
+    
     @Column(name = "catch_all")
     private Boolean catchAll = false;
     
+    // 临时别名到期后停用
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+    
+    // 规则变更计数，投递时据此判断已编译的规则是否过期；只通过批量更新递增
+    @Column(name = "rules_version", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long rulesVersion = 0L;
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
@@ -0,0 +1,36 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compressed text/HTML body of an email, kept out of the {@code emails} row so
+ * listings never read it. Shares the email's primary key.
+ */
+@Entity
+@Table(name = "email_bodies")
+@Data
+@NoArgsConstructor
+public class EmailBody {
+    
+    @Id
+    @Column(name = "email_id")
+    private Long emailId;
+    
+    // 压缩所用字典版本，为空表示未使用字典
+    @Column(name = "dictionary_id")
+    private Long dictionaryId;
+    
+    @Column(name = "text_data", columnDefinition = "LONGBLOB")
+    private byte[] textData;
+    
+    @Column(name = "html_data", columnDefinition = "LONGBLOB")
+    private byte[] htmlData;
+    
+    @Column(name = "original_bytes", nullable = false)
+    private Long originalBytes;
+    
+    @Column(name = "stored_bytes", nullable = false)
+    private Long storedBytes;
+}
@@ -41,6 +41,11 @@ public class EmailFolder extends BaseEntity {
     @Column(name = "total_count")
     private Integer totalCount = 0;
     
+    // Bumped on every change to the folder's contents via bulk update; never written from the entity
+    @Column(name = "mod_seq", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long modSeq = 0L;
+    
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
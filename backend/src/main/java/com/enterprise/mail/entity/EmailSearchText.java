@@ -0,0 +1,25 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lower-cased body text from just before the end of the preview up to the searchable
+ * prefix length, so LIKE search reaches past the preview now that bodies are stored
+ * deflated. Shares the email's primary key and stays in the database when the body
+ * itself moves to a pack.
+ */
+@Entity
+@Table(name = "email_search_text")
+@Data
+@NoArgsConstructor
+public class EmailSearchText {
+    
+    @Id
+    @Column(name = "email_id")
+    private Long emailId;
+    
+    @Column(name = "content", columnDefinition = "TEXT")
+    private String content;
+}
@@ -0,0 +1,29 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Append-only archive file holding bodies and raw sources of cold messages,
+ * with a fixed-width {@code .idx} sidecar mapping email id to record offset
+ */
+@Entity
+@Table(name = "message_packs")
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class MessagePack extends BaseEntity {
+    
+    @Column(name = "file_name", unique = true, nullable = false, length = 100)
+    private String fileName;
+    
+    @Column(name = "record_count", nullable = false)
+    private Integer recordCount = 0;
+    
+    @Column(name = "data_bytes", nullable = false)
+    private Long dataBytes = 0L;
+    
+    // 封存后不再追加
+    @Column(name = "sealed", nullable = false)
+    private Boolean sealed = false;
+}
@@ -0,0 +1,32 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * How long mail is kept in a folder type before it is purged.
+ * A row without a domain applies to every domain that has no row of its own.
+ */
+@Entity
+@Table(name = "retention_policies",
+    uniqueConstraints = @UniqueConstraint(name = "uk_retention_domain_folder", columnNames = {"domain_name", "folder_type"})
+)
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class RetentionPolicy extends BaseEntity {
+    
+    @Column(name = "domain_name", length = 255)
+    private String domainName;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "folder_type", nullable = false, length = 20)
+    private EmailFolder.FolderType folderType;
+    
+    // 0 表示永久保留
+    @Column(name = "retention_days", nullable = false)
+    private Integer retentionDays;
+    
+    @Column(name = "enabled", nullable = false)
+    private Boolean enabled = true;
+}
@@ -0,0 +1,65 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.time.LocalDateTime;
+
+/**
+ * Durable delayed action (send later, snooze, alias expiry).
+ * Rows due soon are held in an in-memory timing wheel; the row is the source of truth
+ * and is claimed with a conditional update before the action runs.
+ */
+@Entity
+@Table(name = "scheduled_actions",
+    indexes = {
+        @Index(name = "idx_scheduled_action_due", columnList = "status, due_at"),
+        @Index(name = "idx_scheduled_action_target", columnList = "type, target_id")
+    }
+)
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class ScheduledAction extends BaseEntity {
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private ActionType type;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private ActionStatus status = ActionStatus.PENDING;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    // 邮件 ID 或别名 ID，取决于 type
+    @Column(name = "target_id", nullable = false)
+    private Long targetId;
+    
+    @Column(name = "payload", length = 255)
+    private String payload;
+    
+    @Column(name = "due_at", nullable = false)
+    private LocalDateTime dueAt;
+    
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+    
+    @Column(name = "claimed_by", length = 100)
+    private String claimedBy;
+    
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+    
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+    
+    public enum ActionType {
+        SEND_LATER, SNOOZE, ALIAS_EXPIRY
+    }
+    
+    public enum ActionStatus {
+        PENDING, RUNNING, DONE, FAILED, CANCELLED
+    }
+}
@@ -0,0 +1,47 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * One allow/block list entry for a user, or for every user of a domain when it has no user.
+ *
+ * The pattern is an address ({@code bob@example.com}), a domain ({@code example.com}) or
+ * every subdomain of a domain ({@code *.example.com}).
+ */
+@Entity
+@Table(name = "sender_list_entries",
+    indexes = {
+        @Index(name = "idx_sender_list_user", columnList = "user_id"),
+        @Index(name = "idx_sender_list_domain", columnList = "domain_name")
+    },
+    uniqueConstraints = @UniqueConstraint(name = "uk_sender_list_owner_pattern",
+        columnNames = {"user_id", "domain_name", "pattern"})
+)
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class SenderListEntry extends BaseEntity {
+    
+    @Column(name = "user_id")
+    private Long userId;
+    
+    @Column(name = "domain_name", length = 255)
+    private String domainName;
+    
+    @Column(name = "pattern", nullable = false, length = 255)
+    private String pattern;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "action", nullable = false, length = 20)
+    private Action action;
+    
+    @Column(name = "note", length = 255)
+    private String note;
+    
+    public enum Action {
+        ALLOW,   // Never treated as spam
+        SPAM,    // Delivered straight to the Spam folder
+        REJECT   // Refused before the message is parsed
+    }
+}
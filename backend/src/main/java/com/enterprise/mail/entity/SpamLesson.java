@@ -0,0 +1,30 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * One training step of the spam filter: a message learned as spam or ham, or an earlier
+ * lesson forgotten. Every node applies the lessons in id order, so all nodes build the
+ * same model.
+ */
+@Entity
+@Table(name = "spam_lessons",
+    indexes = {
+        @Index(name = "idx_spam_lesson_created", columnList = "created_at")
+    }
+)
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class SpamLesson extends BaseEntity {
+    
+    @Column(name = "tokens", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] tokens; // Distinct 64-bit token hashes, 8 bytes each, big-endian
+    
+    @Column(name = "is_spam", nullable = false)
+    private Boolean spam;
+    
+    @Column(name = "is_forget", nullable = false)
+    private Boolean forget;
+}
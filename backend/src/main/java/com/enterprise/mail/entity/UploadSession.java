@@ -0,0 +1,58 @@
+package com.enterprise.mail.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.Date;
+
+/**
+ * Resumable chunked upload session
+ */
+@Entity
+@Table(name = "upload_sessions",
+    indexes = {
+        @Index(name = "idx_upload_session_status_expires", columnList = "status, expires_at")
+    }
+)
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class UploadSession extends BaseEntity {
+    
+    @Column(name = "upload_id", unique = true, nullable = false, length = 36)
+    private String uploadId;
+    
+    @Column(name = "file_name", nullable = false, length = 255)
+    private String fileName;
+    
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+    
+    @Column(name = "total_size", nullable = false)
+    private Long totalSize;
+    
+    @Column(name = "received_bytes", nullable = false)
+    private Long receivedBytes = 0L;
+    
+    @Column(name = "received_ranges", columnDefinition = "TEXT")
+    private String receivedRanges; // Comma-separated start-end (end exclusive) ranges
+    
+    @Column(name = "staging_path", nullable = false, length = 512)
+    private String stagingPath;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private UploadStatus status = UploadStatus.OPEN;
+    
+    @Column(name = "expires_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date expiresAt;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+    
+    public enum UploadStatus {
+        OPEN, COMPLETED, ABORTED
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.time.LocalDate;
 import java.util.*;
 
 /**
@@ -62,12 +63,35 @@ public class User extends BaseEntity implements UserDetails {
     @Column(name = "last_login_ip", length = 45)
     private String lastLoginIp;
     
+    // 登录失败过多时自动锁定的截止时间；为空表示需管理员手动解锁
+    @Column(name = "locked_until")
+    private Date lockedUntil;
+    
     @Column(name = "storage_quota")
     private Long storageQuota = 1073741824L; // 1GB default
     
     @Column(name = "storage_used")
     private Long storageUsed = 0L;
     
+    // Bumped on every mailbox change via bulk update; never written from the entity
+    @Column(name = "mailbox_mod_seq", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long mailboxModSeq = 0L;
+    
+    // 黑白名单变更计数，投递时据此判断缓存的名单是否过期；只通过批量更新递增
+    @Column(name = "sender_list_version", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private Long senderListVersion = 0L;
+    
+    // 当日已发送数，由限流服务定期批量累加、每天零点清零；实体保存时不写回
+    @Column(name = "sent_today", nullable = false, insertable = false, updatable = false,
+            columnDefinition = "INT NOT NULL DEFAULT 0")
+    private Integer sentToday = 0;
+    
+    // sent_today 所属的日期；不是今天时 sent_today 视为 0
+    @Column(name = "sent_date", insertable = false, updatable = false)
+    private LocalDate sentDate;
+    
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Set<EmailAlias> aliases = new HashSet<>();
     
@@ -97,7 +121,7 @@ public class User extends BaseEntity implements UserDetails {
     
     @Override
     public boolean isAccountNonLocked() {
-        return status != UserStatus.LOCKED;
+        return status != UserStatus.LOCKED || lockExpired();
     }
     
     @Override
@@ -107,7 +131,12 @@ public class User extends BaseEntity implements UserDetails {
     
     @Override
     public boolean isEnabled() {
-        return status == UserStatus.ACTIVE;
+        return status == UserStatus.ACTIVE || (status == UserStatus.LOCKED && lockExpired());
+    }
+    
+    // A temporary lock counts as lifted once it has run out, even before the unlock job clears it
+    private boolean lockExpired() {
+        return lockedUntil != null && lockedUntil.before(new Date());
     }
     
     public enum UserRole {
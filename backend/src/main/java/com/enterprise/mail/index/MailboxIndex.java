@@ -0,0 +1,477 @@
+package com.enterprise.mail.index;
+
+import com.enterprise.mail.dto.EmailHeader;
+import com.enterprise.mail.entity.Email;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Memory-mapped header index of one mailbox.
+ *
+ * The {@code .hdr} file is a small header followed by fixed-width records (ids, folder,
+ * dates, size, flags and offsets into the string table). It is mapped into memory, so
+ * listings are plain scans of off-heap memory. New mail is appended and flag or folder
+ * changes are written in place. Variable-length fields (addresses, subject, preview,
+ * message id) are appended to the {@code .str} file and only read for the rows of the
+ * requested page.
+ *
+ * The slot order for each sort key is computed once with a primitive sort and reused
+ * until a message is added, rewritten or removed; flag and folder changes keep it.
+ *
+ * The index carries the mailbox modification counter it reflects; it is only trusted
+ * while that equals the counter in the database.
+ */
+public class MailboxIndex implements Closeable {
+    
+    private static final int MAGIC = 0x4D495831; // "MIX1"
+    private static final int VERSION = 2;
+    
+    // Header: magic, version, count, reserved, modSeq, string table size
+    private static final int HEADER_SIZE = 32;
+    private static final int H_COUNT = 8;
+    private static final int H_MOD_SEQ = 16;
+    private static final int H_STRING_BYTES = 24;
+    
+    // Record layout
+    private static final int RECORD_SIZE = 128;
+    private static final int R_ID = 0;
+    private static final int R_FOLDER = 8;
+    private static final int R_SENT = 16;
+    private static final int R_RECEIVED = 24;
+    private static final int R_SIZE = 32;
+    private static final int R_FLAGS = 40;
+    private static final int R_STATUS = 44;
+    private static final int R_DIRECTION = 45;
+    private static final int R_CREATED = 48;
+    private static final int R_UPDATED = 56;
+    private static final int R_STRINGS = 64; // 8 x (int offset, int length)
+    
+    private static final int STRING_FROM_ADDRESS = 0;
+    private static final int STRING_FROM_NAME = 1;
+    private static final int STRING_TO = 2;
+    private static final int STRING_SUBJECT = 3;
+    private static final int STRING_PREVIEW = 4;
+    private static final int STRING_MESSAGE_ID = 5;
+    private static final int STRING_CC = 6;
+    private static final int STRING_BCC = 7;
+    private static final int STRING_MAX_CHARS = 512;
+    
+    private static final int FLAG_STARRED = 1;
+    private static final int FLAG_IMPORTANT = 1 << 1;
+    private static final int FLAG_ATTACHMENTS = 1 << 2;
+    private static final int FLAG_REMOVED = 1 << 3;
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Email.EmailStatus[] STATUSES = Email.EmailStatus.values();
+    private static final Email.Direction[] DIRECTIONS = Email.Direction.values();
+    
+    private final FileChannel records;
+    private final FileChannel strings;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> slots = new HashMap<>();
+    // 每种排序键下的有序槽位，写入新记录或删除时失效
+    private final AtomicReferenceArray<int[]> sortedSlots = new AtomicReferenceArray<>(SortKey.values().length);
+    private MappedByteBuffer map;
+    private int capacity;
+    
+    private MailboxIndex(Path recordFile, Path stringFile, boolean create) throws IOException {
+        StandardOpenOption mode = create ? StandardOpenOption.CREATE_NEW : StandardOpenOption.READ;
+        this.records = FileChannel.open(recordFile, mode, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.strings = FileChannel.open(stringFile, mode, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        
+        if (create) {
+            remap(INITIAL_CAPACITY);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+        } else {
+            remap((int) Math.max(INITIAL_CAPACITY, (records.size() - HEADER_SIZE) / RECORD_SIZE));
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                close();
+                throw new IOException("Unsupported mailbox index: " + recordFile);
+            }
+            int count = map.getInt(H_COUNT);
+            for (int slot = 0; slot < count; slot++) {
+                if ((map.getInt(offset(slot) + R_FLAGS) & FLAG_REMOVED) == 0) {
+                    slots.put(map.getLong(offset(slot) + R_ID), slot);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Open an existing index
+     */
+    public static MailboxIndex open(Path recordFile, Path stringFile) throws IOException {
+        return new MailboxIndex(recordFile, stringFile, false);
+    }
+    
+    /**
+     * Create an empty index; fails if the files exist
+     */
+    public static MailboxIndex create(Path recordFile, Path stringFile) throws IOException {
+        return new MailboxIndex(recordFile, stringFile, true);
+    }
+    
+    public long getModSeq() {
+        lock.readLock().lock();
+        try {
+            return map.getLong(H_MOD_SEQ);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public void setModSeq(long modSeq) {
+        lock.writeLock().lock();
+        try {
+            map.putLong(H_MOD_SEQ, modSeq);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Count one applied mailbox change
+     */
+    public void advanceModSeq() {
+        lock.writeLock().lock();
+        try {
+            map.putLong(H_MOD_SEQ, map.getLong(H_MOD_SEQ) + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Append a message, or overwrite it in place if it is already indexed
+     */
+    public void put(EmailHeader header) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(header.getId());
+            if (slot == null) {
+                slot = map.getInt(H_COUNT);
+                if (slot >= capacity) {
+                    remap(capacity * 2);
+                }
+                map.putInt(H_COUNT, slot + 1);
+                slots.put(header.getId(), slot);
+            }
+            
+            int base = offset(slot);
+            map.putLong(base + R_ID, header.getId());
+            map.putLong(base + R_FOLDER, header.getFolderId() != null ? header.getFolderId() : 0);
+            map.putLong(base + R_SENT, header.getSentDate() != null ? header.getSentDate().getTime() : 0);
+            map.putLong(base + R_RECEIVED, header.getReceivedDate() != null ? header.getReceivedDate().getTime() : 0);
+            map.putLong(base + R_SIZE, header.getSizeBytes() != null ? header.getSizeBytes() : 0);
+            map.putInt(base + R_FLAGS, flagsOf(header));
+            map.put(base + R_STATUS, (byte) (header.getStatus() != null ? header.getStatus().ordinal() : 0));
+            map.put(base + R_DIRECTION, (byte) (header.getDirection() != null ? header.getDirection().ordinal() : 0));
+            map.putLong(base + R_CREATED, toMillis(header.getCreatedAt()));
+            map.putLong(base + R_UPDATED, toMillis(header.getUpdatedAt()));
+            
+            putString(base, STRING_FROM_ADDRESS, header.getFromAddress());
+            putString(base, STRING_FROM_NAME, header.getFromName());
+            putString(base, STRING_TO, header.getToAddresses());
+            putString(base, STRING_SUBJECT, header.getSubject());
+            putString(base, STRING_PREVIEW, header.getPreview());
+            putString(base, STRING_MESSAGE_ID, header.getMessageId());
+            putString(base, STRING_CC, header.getCcAddresses());
+            putString(base, STRING_BCC, header.getBccAddresses());
+            invalidateOrder();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * In-place flag update; returns false if the message is not indexed
+     */
+    public boolean updateFlags(long emailId, Email.EmailStatus status, Boolean starred, Boolean important,
+                               LocalDateTime updatedAt) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(emailId);
+            if (slot == null) {
+                return false;
+            }
+            int base = offset(slot);
+            map.putLong(base + R_UPDATED, toMillis(updatedAt));
+            int flags = map.getInt(base + R_FLAGS);
+            if (starred != null) {
+                flags = starred ? flags | FLAG_STARRED : flags & ~FLAG_STARRED;
+            }
+            if (important != null) {
+                flags = important ? flags | FLAG_IMPORTANT : flags & ~FLAG_IMPORTANT;
+            }
+            map.putInt(base + R_FLAGS, flags);
+            if (status != null) {
+                map.put(base + R_STATUS, (byte) status.ordinal());
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * In-place folder update; returns false if the message is not indexed
+     */
+    public boolean updateFolder(long emailId, long folderId, LocalDateTime updatedAt) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(emailId);
+            if (slot == null) {
+                return false;
+            }
+            map.putLong(offset(slot) + R_FOLDER, folderId);
+            map.putLong(offset(slot) + R_UPDATED, toMillis(updatedAt));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Mark a message as removed; its record stays until the next rebuild
+     */
+    public boolean remove(long emailId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(emailId);
+            if (slot == null) {
+                return false;
+            }
+            int base = offset(slot);
+            map.putInt(base + R_FLAGS, map.getInt(base + R_FLAGS) | FLAG_REMOVED);
+            invalidateOrder();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Walk the records in date order, filter by folder and status and return one page.
+     *
+     * @param folderId folder to list, or null for all folders
+     * @param status   status to keep, or null for any
+     */
+    public Result list(Long folderId, Email.EmailStatus status, SortKey sortKey, boolean ascending,
+                       long offset, int pageSize) throws IOException {
+        lock.readLock().lock();
+        try {
+            int[] order = sortedSlots(sortKey);
+            List<EmailHeader> page = new ArrayList<>();
+            long matched = 0;
+            
+            for (int i = 0; i < order.length; i++) {
+                int slot = order[ascending ? i : order.length - 1 - i];
+                int base = offset(slot);
+                if ((map.getInt(base + R_FLAGS) & FLAG_REMOVED) != 0) {
+                    continue;
+                }
+                if (folderId != null && map.getLong(base + R_FOLDER) != folderId) {
+                    continue;
+                }
+                if (status != null && map.get(base + R_STATUS) != status.ordinal()) {
+                    continue;
+                }
+                if (matched >= offset && matched < offset + pageSize) {
+                    page.add(read(slot));
+                }
+                matched++;
+            }
+            return new Result(page, matched);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (map != null) {
+                map.force();
+            }
+            records.close();
+            strings.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Orders a listing can be served in
+     */
+    public enum SortKey {
+        ID, SENT_DATE, RECEIVED_DATE
+    }
+    
+    /**
+     * Listing page and the total number of matching messages
+     */
+    public record Result(List<EmailHeader> headers, long total) {
+    }
+    
+    // Helper methods
+    
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+    
+    /**
+     * All slots in ascending order of the sort key (ties by slot), built on first use after
+     * a change. Readers racing to build it compute the same array, so the last store wins.
+     */
+    private int[] sortedSlots(SortKey sortKey) {
+        int[] cached = sortedSlots.get(sortKey.ordinal());
+        if (cached != null) {
+            return cached;
+        }
+        int count = map.getInt(H_COUNT);
+        long[] keys = new long[count];
+        int[] order = new int[count];
+        for (int slot = 0; slot < count; slot++) {
+            keys[slot] = sortValue(offset(slot), sortKey);
+            order[slot] = slot;
+        }
+        SlotSort.sort(order, keys);
+        sortedSlots.set(sortKey.ordinal(), order);
+        return order;
+    }
+    
+    private void invalidateOrder() {
+        for (int i = 0; i < sortedSlots.length(); i++) {
+            sortedSlots.set(i, null);
+        }
+    }
+    
+    private static long toMillis(LocalDateTime value) {
+        return value != null ? value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0;
+    }
+    
+    private static LocalDateTime fromMillis(long millis) {
+        return millis != 0 ? LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()) : null;
+    }
+    
+    private long sortValue(int base, SortKey sortKey) {
+        switch (sortKey) {
+            case SENT_DATE:
+                return map.getLong(base + R_SENT);
+            case RECEIVED_DATE:
+                return map.getLong(base + R_RECEIVED);
+            default:
+                return map.getLong(base + R_ID);
+        }
+    }
+    
+    private void remap(int newCapacity) throws IOException {
+        if (map != null) {
+            map.force();
+        }
+        map = records.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * RECORD_SIZE);
+        capacity = newCapacity;
+    }
+    
+    private int flagsOf(EmailHeader header) {
+        int flags = 0;
+        if (Boolean.TRUE.equals(header.getIsStarred())) {
+            flags |= FLAG_STARRED;
+        }
+        if (Boolean.TRUE.equals(header.getIsImportant())) {
+            flags |= FLAG_IMPORTANT;
+        }
+        if (Boolean.TRUE.equals(header.getHasAttachments())) {
+            flags |= FLAG_ATTACHMENTS;
+        }
+        return flags;
+    }
+    
+    private void putString(int base, int field, String value) throws IOException {
+        int position = base + R_STRINGS + field * 8;
+        if (value == null) {
+            map.putInt(position, 0);
+            map.putInt(position + 4, -1);
+            return;
+        }
+        String truncated = value.length() > STRING_MAX_CHARS ? value.substring(0, STRING_MAX_CHARS) : value;
+        ByteBuffer bytes = ByteBuffer.wrap(truncated.getBytes(StandardCharsets.UTF_8));
+        
+        long stringOffset = map.getLong(H_STRING_BYTES);
+        int length = bytes.remaining();
+        long writeAt = stringOffset;
+        while (bytes.hasRemaining()) {
+            writeAt += strings.write(bytes, writeAt);
+        }
+        map.putLong(H_STRING_BYTES, stringOffset + length);
+        map.putInt(position, (int) stringOffset);
+        map.putInt(position + 4, length);
+    }
+    
+    private String getString(int base, int field) throws IOException {
+        int position = base + R_STRINGS + field * 8;
+        int length = map.getInt(position + 4);
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        long readAt = Integer.toUnsignedLong(map.getInt(position));
+        while (bytes.hasRemaining()) {
+            int read = strings.read(bytes, readAt + bytes.position());
+            if (read < 0) {
+                throw new IOException("Truncated mailbox index string table");
+            }
+        }
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+    
+    private EmailHeader read(int slot) throws IOException {
+        int base = offset(slot);
+        int flags = map.getInt(base + R_FLAGS);
+        long folderId = map.getLong(base + R_FOLDER);
+        long sent = map.getLong(base + R_SENT);
+        long received = map.getLong(base + R_RECEIVED);
+        
+        return new EmailHeader(
+                map.getLong(base + R_ID),
+                folderId != 0 ? folderId : null,
+                STATUSES[map.get(base + R_STATUS)],
+                (flags & FLAG_STARRED) != 0,
+                (flags & FLAG_IMPORTANT) != 0,
+                (flags & FLAG_ATTACHMENTS) != 0,
+                sent != 0 ? new Date(sent) : null,
+                received != 0 ? new Date(received) : null,
+                map.getLong(base + R_SIZE),
+                getString(base, STRING_FROM_ADDRESS),
+                getString(base, STRING_FROM_NAME),
+                getString(base, STRING_TO),
+                getString(base, STRING_SUBJECT),
+                getString(base, STRING_PREVIEW),
+                getString(base, STRING_MESSAGE_ID),
+                getString(base, STRING_CC),
+                getString(base, STRING_BCC),
+                DIRECTIONS[map.get(base + R_DIRECTION)],
+                fromMillis(map.getLong(base + R_CREATED)),
+                fromMillis(map.getLong(base + R_UPDATED)));
+    }
+}
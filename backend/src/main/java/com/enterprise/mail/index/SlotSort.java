@@ -0,0 +1,44 @@
+package com.enterprise.mail.index;
+
+/**
+ * Stable sort of record slots by a primitive key, without boxing.
+ *
+ * Bottom-up merge sort over an {@code int[]} of slots with one scratch array; the key of
+ * a slot is {@code keys[slot]}. Equal keys keep their input order.
+ */
+final class SlotSort {
+    
+    private SlotSort() {
+    }
+    
+    static void sort(int[] slots, long[] keys) {
+        int length = slots.length;
+        int[] source = slots;
+        int[] target = new int[length];
+        for (int width = 1; width < length; width <<= 1) {
+            for (int low = 0; low < length; low += width << 1) {
+                int middle = Math.min(low + width, length);
+                int high = Math.min(low + (width << 1), length);
+                merge(source, target, keys, low, middle, high);
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != slots) {
+            System.arraycopy(source, 0, slots, 0, length);
+        }
+    }
+    
+    private static void merge(int[] source, int[] target, long[] keys, int low, int middle, int high) {
+        int left = low;
+        int right = middle;
+        for (int i = low; i < high; i++) {
+            if (left < middle && (right >= high || keys[source[left]] <= keys[source[right]])) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+}
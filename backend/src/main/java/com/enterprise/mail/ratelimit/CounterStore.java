@@ -0,0 +1,29 @@
+package com.enterprise.mail.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * Counters shared by every node of a deployment, used to hold limits across nodes.
+ *
+ * Each key expires {@code ttl} after it was created; callers put the period (e.g. the day)
+ * into the key, so an expired counter is simply one nobody asks for any more.
+ */
+public interface CounterStore {
+
+    /**
+     * Add to a counter, creating it at zero first
+     *
+     * @return the value after the addition
+     */
+    long increment(String key, long delta, Duration ttl);
+
+    /**
+     * Create a counter with a starting value; does nothing when it already exists
+     */
+    void seed(String key, long value, Duration ttl);
+
+    /**
+     * Remove a counter, e.g. after a successful login
+     */
+    void delete(String key);
+}
@@ -0,0 +1,52 @@
+package com.enterprise.mail.ratelimit;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters in this JVM only: for single-node deployments and tests, and as the stand-in
+ * while the shared store is unreachable.
+ */
+public class InMemoryCounterStore implements CounterStore {
+
+    private static final int PURGE_EVERY = 1024;
+
+    private final Map<String, Entry> counters = new ConcurrentHashMap<>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    private record Entry(AtomicLong value, long expiresAt) {
+    }
+
+    @Override
+    public long increment(String key, long delta, Duration ttl) {
+        return entry(key, 0, ttl).value().addAndGet(delta);
+    }
+
+    @Override
+    public void seed(String key, long value, Duration ttl) {
+        entry(key, value, ttl);
+    }
+
+    @Override
+    public void delete(String key) {
+        counters.remove(key);
+    }
+
+    // Helper methods
+
+    private Entry entry(String key, long initial, Duration ttl) {
+        long now = System.currentTimeMillis();
+        Entry entry = counters.get(key);
+        if (entry != null && entry.expiresAt() > now) {
+            return entry;
+        }
+        if (created.incrementAndGet() % PURGE_EVERY == 0) {
+            counters.values().removeIf(e -> e.expiresAt() <= now);
+        }
+        return counters.compute(key, (k, old) -> old != null && old.expiresAt() > now
+                ? old : new Entry(new AtomicLong(initial), now + ttl.toMillis()));
+    }
+}
@@ -0,0 +1,116 @@
+package com.enterprise.mail.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A per-period limit shared through a {@link CounterStore}, consumed locally.
+ *
+ * The node reserves a block of the shared count at a time and hands it out with a CAS on a
+ * local counter, so only one call in a block reaches the store. A block is never larger than
+ * a tenth of the limit, which bounds what other nodes can strand in unused blocks. The first
+ * reservation of a period seeds the shared counter with what was already used (e.g. from the
+ * database after a restart).
+ */
+public final class LeasedQuota {
+
+    private static final Duration TTL = Duration.ofDays(2);
+
+    private final String key;
+    private final int leaseSize;
+    private final AtomicLong leased = new AtomicLong();
+    private final AtomicLong used = new AtomicLong();
+    private volatile long period = Long.MIN_VALUE;
+
+    public LeasedQuota(String key, int leaseSize) {
+        this.key = key;
+        this.leaseSize = Math.max(1, leaseSize);
+    }
+
+    /**
+     * Take one unit of the limit for the given period
+     *
+     * @param alreadyUsed count to seed the shared counter with on the first call of a period
+     * @return false when the limit is reached
+     */
+    public boolean tryAcquire(long currentPeriod, long limit, CounterStore store, LongSupplier alreadyUsed) {
+        if (period == currentPeriod && takeLeased()) {
+            return true;
+        }
+        synchronized (this) {
+            if (period != currentPeriod) {
+                period = currentPeriod;
+                leased.set(0);
+                used.set(0);
+                store.seed(periodKey(), alreadyUsed.getAsLong(), TTL);
+            }
+            if (takeLeased()) {
+                return true;
+            }
+            long block = Math.max(1, Math.min(leaseSize, limit / 10));
+            long total = store.increment(periodKey(), block, TTL);
+            long granted = Math.min(block, limit - (total - block));
+            if (granted < block) {
+                store.increment(periodKey(), -(block - Math.max(0, granted)), TTL);
+            }
+            if (granted <= 0) {
+                return false;
+            }
+            leased.addAndGet(granted - 1);
+            used.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Give back a unit taken by {@link #tryAcquire} that was not used
+     */
+    public void release() {
+        leased.incrementAndGet();
+        used.decrementAndGet();
+    }
+
+    /**
+     * Units taken in the given period since the last drain; zero once the period is over
+     */
+    public long drainUsed(long currentPeriod) {
+        long count = used.getAndSet(0);
+        return period == currentPeriod ? count : 0;
+    }
+
+    /**
+     * True when the quota belongs to an earlier period and its count has been drained, so
+     * it holds nothing a new instance would not
+     */
+    public boolean isIdle(long currentPeriod) {
+        return period != currentPeriod && used.get() == 0;
+    }
+
+    /**
+     * Put the unused part of the current block back into the shared count
+     */
+    public void returnLease(CounterStore store) {
+        long unused = leased.getAndSet(0);
+        if (unused > 0) {
+            store.increment(periodKey(), -unused, TTL);
+        }
+    }
+
+    // Helper methods
+
+    private boolean takeLeased() {
+        long current;
+        while ((current = leased.get()) > 0) {
+            if (leased.compareAndSet(current, current - 1)) {
+                used.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String periodKey() {
+        return key + ":" + period;
+    }
+}
@@ -0,0 +1,82 @@
+package com.enterprise.mail.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Counters in Redis, shared by all nodes.
+ *
+ * Increment and expiry are set in one script so a counter never outlives its period. While
+ * Redis cannot be reached, counts go to a local store instead: limits then hold per node
+ * rather than blocking all sending.
+ */
+@Slf4j
+public class RedisCounterStore implements CounterStore {
+
+    private static final RedisScript<Long> INCREMENT = new DefaultRedisScript<>(
+            "local v = redis.call('INCRBY', KEYS[1], ARGV[1]) "
+                    + "if redis.call('PTTL', KEYS[1]) < 0 then redis.call('PEXPIRE', KEYS[1], ARGV[2]) end "
+                    + "return v", Long.class);
+
+    private static final long WARN_INTERVAL_MS = 60_000;
+
+    private final StringRedisTemplate redis;
+    private final String prefix;
+    private final CounterStore fallback = new InMemoryCounterStore();
+    private volatile long lastWarning;
+
+    public RedisCounterStore(StringRedisTemplate redis, String prefix) {
+        this.redis = redis;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public long increment(String key, long delta, Duration ttl) {
+        try {
+            Long value = redis.execute(INCREMENT, List.of(prefix + key),
+                    String.valueOf(delta), String.valueOf(ttl.toMillis()));
+            if (value != null) {
+                return value;
+            }
+        } catch (DataAccessException e) {
+            warn(e);
+        }
+        return fallback.increment(key, delta, ttl);
+    }
+
+    @Override
+    public void seed(String key, long value, Duration ttl) {
+        try {
+            redis.opsForValue().setIfAbsent(prefix + key, String.valueOf(value), ttl);
+        } catch (DataAccessException e) {
+            warn(e);
+        }
+        fallback.seed(key, value, ttl);
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            redis.delete(prefix + key);
+        } catch (DataAccessException e) {
+            warn(e);
+        }
+        fallback.delete(key);
+    }
+
+    // Helper methods
+
+    private void warn(DataAccessException e) {
+        long now = System.currentTimeMillis();
+        if (now - lastWarning > WARN_INTERVAL_MS) {
+            lastWarning = now;
+            log.warn("Shared counters unavailable, limits are enforced per node: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.enterprise.mail.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Approximate sliding-window event counts per key, one long per key.
+ *
+ * Each key packs the index of its current fixed window (32 bits) with the counts of that
+ * window and the one before (16 bits each). The sliding count weighs the previous window by
+ * the part of it still inside the sliding window, as in the usual two-bucket estimate.
+ * Entries older than two windows count as zero and are dropped by {@link #purge()}.
+ */
+public final class SlidingWindowCounter {
+
+    private static final long MAX_COUNT = 0xFFFF;
+
+    private final long windowMillis;
+    private final int maxEntries;
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    public SlidingWindowCounter(long windowMillis, int maxEntries) {
+        this.windowMillis = Math.max(1000, windowMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Index of the fixed window containing now, for keying shared counters
+     */
+    public long currentWindow() {
+        return System.currentTimeMillis() / windowMillis;
+    }
+
+    /**
+     * Events in the last window length
+     */
+    public double count(String key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long packed = roll(counter.get(), now / windowMillis);
+        double elapsed = (double) (now % windowMillis) / windowMillis;
+        return previous(packed) * (1 - elapsed) + current(packed);
+    }
+
+    /**
+     * Raise the count of the given window to at least {@code total}, e.g. the total that a
+     * shared counter returned after this node added one
+     */
+    public void observe(String key, long window, long total) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxEntries) {
+                purge();
+            }
+            counter = counters.computeIfAbsent(key, k -> new AtomicLong(pack(window, 0, 0)));
+        }
+        while (true) {
+            long packed = counter.get();
+            if (window < (packed >>> 32)) {
+                return;
+            }
+            long rolled = roll(packed, window);
+            long updated = pack(window, previous(rolled), Math.max(current(rolled), Math.min(total, MAX_COUNT)));
+            if (updated == packed || counter.compareAndSet(packed, updated)) {
+                return;
+            }
+        }
+    }
+
+    public void clear(String key) {
+        counters.remove(key);
+    }
+
+    /**
+     * Drop keys with nothing in the current or previous window
+     */
+    public void purge() {
+        long window = currentWindow();
+        counters.values().removeIf(counter -> (counter.get() >>> 32) < window - 1);
+    }
+
+    // Helper methods
+
+    private static long roll(long packed, long window) {
+        long index = packed >>> 32;
+        if (index == window) {
+            return packed;
+        }
+        if (index == window - 1) {
+            return pack(window, current(packed), 0);
+        }
+        return pack(window, 0, 0);
+    }
+
+    private static long pack(long window, long previous, long current) {
+        return (window << 32) | (previous << 16) | current;
+    }
+
+    private static long previous(long packed) {
+        return (packed >>> 16) & MAX_COUNT;
+    }
+
+    private static long current(long packed) {
+        return packed & MAX_COUNT;
+    }
+}
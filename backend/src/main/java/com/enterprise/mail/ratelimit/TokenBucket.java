@@ -0,0 +1,79 @@
+package com.enterprise.mail.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket holding up to {@code capacity} tokens, refilled at a fixed rate.
+ *
+ * Kept as a single "theoretical arrival time" (GCRA): the instant at which the bucket would
+ * be full again. Taking a token pushes it one refill interval forward; the take is refused
+ * when that would put it more than {@code capacity} intervals ahead of now. One CAS per call,
+ * no timer and no lock.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long windowNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param capacity        burst size
+     * @param tokensPerMinute refill rate
+     */
+    public TokenBucket(int capacity, double tokensPerMinute) {
+        this.intervalNanos = Math.max(1, (long) (60_000_000_000L / tokensPerMinute));
+        this.windowNanos = intervalNanos * Math.max(1, capacity);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Take one token
+     *
+     * @return 0 when taken, otherwise nanoseconds until one will be available
+     */
+    public long tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Take several tokens at once, e.g. for a request that costs more than one
+     *
+     * @return 0 when taken, otherwise nanoseconds until enough will be available
+     */
+    public long tryAcquire(int tokens) {
+        long cost = intervalNanos * tokens;
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + cost;
+            long ahead = next - now;
+            if (ahead > windowNanos) {
+                return ahead - windowNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Give back a token taken by {@link #tryAcquire()} that was not used
+     */
+    public void release() {
+        release(1);
+    }
+
+    /**
+     * Give back tokens taken by {@link #tryAcquire(int)} that were not used
+     */
+    public void release(int tokens) {
+        fullAt.addAndGet(-intervalNanos * tokens);
+    }
+
+    /**
+     * True when the bucket is full, i.e. it holds no state worth keeping
+     */
+    public boolean isIdle() {
+        return fullAt.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,62 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.AttachmentBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AttachmentBlobRepository extends JpaRepository<AttachmentBlob, Long> {
+    
+    Optional<AttachmentBlob> findBySha256(String sha256);
+    
+    /**
+     * Locking read; waits for a concurrent, not yet committed insert of the same hash
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM AttachmentBlob b WHERE b.sha256 = :sha256")
+    Optional<AttachmentBlob> lockBySha256(@Param("sha256") String sha256);
+    
+    /**
+     * Insert the blob with one reference, or add a reference if it already exists.
+     * Returns 1 when a new row was inserted and 2 when an existing row was updated (MySQL).
+     */
+    @Modifying
+    @Query(value = "INSERT INTO attachment_blobs (sha256, size_bytes, ref_count, created_at) " +
+            "VALUES (:sha256, :sizeBytes, 1, NOW()) " +
+            "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, last_released_at = NULL",
+            nativeQuery = true)
+    int addReference(@Param("sha256") String sha256, @Param("sizeBytes") long sizeBytes);
+    
+    @Modifying
+    @Query("UPDATE AttachmentBlob b SET b.refCount = b.refCount - 1, b.lastReleasedAt = :now " +
+           "WHERE b.sha256 = :sha256 AND b.refCount > 0")
+    int releaseReference(@Param("sha256") String sha256, @Param("now") Date now);
+    
+    @Query("SELECT b FROM AttachmentBlob b WHERE b.id > :afterId AND b.refCount = 0 " +
+           "AND b.lastReleasedAt < :cutoff ORDER BY b.id")
+    List<AttachmentBlob> findUnreferenced(@Param("afterId") Long afterId, @Param("cutoff") Date cutoff,
+                                          Pageable pageable);
+    
+    /**
+     * Conditional delete: only succeeds if the blob is still unreferenced
+     */
+    @Modifying
+    @Query("DELETE FROM AttachmentBlob b WHERE b.id = :id AND b.refCount = 0 AND b.lastReleasedAt < :cutoff")
+    int deleteIfUnreferenced(@Param("id") Long id, @Param("cutoff") Date cutoff);
+    
+    @Query("SELECT COALESCE(SUM(b.sizeBytes), 0) FROM AttachmentBlob b")
+    long sumStoredBytes();
+    
+    @Query("SELECT COALESCE(SUM(b.sizeBytes * b.refCount), 0) FROM AttachmentBlob b")
+    long sumReferencedBytes();
+}
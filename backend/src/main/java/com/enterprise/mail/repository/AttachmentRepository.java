@@ -4,6 +4,7 @@ import com.enterprise.mail.entity.Attachment;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,4 +15,10 @@ public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
     List<Attachment> findByEmailIdAndIsInline(Long emailId, Boolean isInline);
     
     void deleteByEmailId(Long emailId);
+    
+    List<Attachment> findByEmailIdIn(Collection<Long> emailIds);
+    
+    List<Attachment> findByEmailIdInAndEmailUserIdOrderByEmailIdAscIdAsc(Collection<Long> emailIds, Long userId);
+    
+    List<Attachment> findByIdInAndEmailUserIdOrderByEmailIdAscIdAsc(Collection<Long> ids, Long userId);
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.CompressionDictionary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CompressionDictionaryRepository extends JpaRepository<CompressionDictionary, Long> {
+    
+    Optional<CompressionDictionary> findFirstByDomainNameOrderByIdDesc(String domainName);
+    
+    /**
+     * Latest dictionary of every domain
+     */
+    @Query("SELECT d FROM CompressionDictionary d WHERE d.id IN " +
+           "(SELECT MAX(d2.id) FROM CompressionDictionary d2 GROUP BY d2.domainName)")
+    List<CompressionDictionary> findLatestPerDomain();
+}
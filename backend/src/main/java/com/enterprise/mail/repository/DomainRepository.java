@@ -2,6 +2,9 @@ package com.enterprise.mail.repository;
 
 import com.enterprise.mail.entity.Domain;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -14,4 +17,8 @@ public interface DomainRepository extends JpaRepository<Domain, Long> {
     boolean existsByDomainName(String domainName);
     
     Optional<Domain> findByIsDefaultTrue();
+    
+    @Modifying
+    @Query("UPDATE Domain d SET d.senderListVersion = d.senderListVersion + 1 WHERE d.domainName = :domainName")
+    int incrementSenderListVersion(@Param("domainName") String domainName);
 }
\ No newline at end of file
@@ -4,8 +4,12 @@ import com.enterprise.mail.entity.EmailAlias;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,4 +25,21 @@ public interface EmailAliasRepository extends JpaRepository<EmailAlias, Long> {
     List<EmailAlias> findByDomainId(Long domainId);
     
     boolean existsByAliasAddress(String aliasAddress);
-}
\ No newline at end of file
+    
+    @Modifying
+    @Query("UPDATE EmailAlias a SET a.rulesVersion = a.rulesVersion + 1 WHERE a.id = :aliasId")
+    int incrementRulesVersion(@Param("aliasId") Long aliasId);
+    
+    @Query("SELECT a FROM EmailAlias a JOIN FETCH a.user WHERE a.id = :aliasId")
+    Optional<EmailAlias> findWithUserById(@Param("aliasId") Long aliasId);
+    
+    // sent_today 先于 sent_date 赋值，CASE 读到的是旧日期
+    @Modifying
+    @Query("UPDATE EmailAlias a SET a.sentToday = CASE WHEN a.sentDate = :today THEN a.sentToday + :count ELSE :count END, " +
+           "a.sentDate = :today WHERE a.id = :aliasId")
+    int addSentToday(@Param("aliasId") Long aliasId, @Param("count") int count, @Param("today") LocalDate today);
+    
+    @Modifying
+    @Query("UPDATE EmailAlias a SET a.sentToday = 0 WHERE a.sentToday <> 0 AND (a.sentDate IS NULL OR a.sentDate < :today)")
+    int resetSentToday(@Param("today") LocalDate today);
+}
@@ -0,0 +1,14 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.EmailBody;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EmailBodyRepository extends JpaRepository<EmailBody, Long> {
+    
+    List<EmailBody> findByEmailIdIn(Collection<Long> emailIds);
+}
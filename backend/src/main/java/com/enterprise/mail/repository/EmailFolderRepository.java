@@ -1,9 +1,14 @@
 package com.enterprise.mail.repository;
 
 import com.enterprise.mail.entity.EmailFolder;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,4 +22,15 @@ public interface EmailFolderRepository extends JpaRepository<EmailFolder, Long>
     Optional<EmailFolder> findByUserIdAndName(Long userId, String name);
     
     List<EmailFolder> findByUserIdOrderBySortOrder(Long userId);
+    
+    @Query("SELECT f.modSeq FROM EmailFolder f WHERE f.id = :folderId AND f.user.id = :userId")
+    Optional<Long> findModSeq(@Param("userId") Long userId, @Param("folderId") Long folderId);
+    
+    @Query("SELECT f FROM EmailFolder f JOIN FETCH f.user WHERE f.type IN :types AND f.id > :afterId ORDER BY f.id")
+    List<EmailFolder> findPageByTypeIn(@Param("types") Collection<EmailFolder.FolderType> types,
+                                       @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE EmailFolder f SET f.modSeq = f.modSeq + 1 WHERE f.id IN :folderIds")
+    int incrementModSeq(@Param("folderIds") List<Long> folderIds);
 }
\ No newline at end of file
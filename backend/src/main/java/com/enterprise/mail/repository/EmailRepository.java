@@ -1,13 +1,19 @@
 package com.enterprise.mail.repository;
 
+import com.enterprise.mail.dto.EmailHeader;
+import com.enterprise.mail.dto.RawLocation;
 import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.EmailFolder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -32,7 +38,8 @@ public interface EmailRepository extends JpaRepository<Email, Long> {
     @Query("SELECT e FROM Email e WHERE e.user.id = :userId AND e.isImportant = true")
     Page<Email> findImportantEmails(@Param("userId") Long userId, Pageable pageable);
     
-    @Query("SELECT e FROM Email e WHERE e.user.id = :userId AND (LOWER(e.subject) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR LOWER(e.contentText) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR LOWER(e.fromAddress) LIKE LOWER(CONCAT('%', :searchTerm, '%')))")
+    @Query("SELECT e FROM Email e WHERE e.user.id = :userId AND (LOWER(e.subject) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR LOWER(e.preview) LIKE LOWER(CONCAT('%', :searchTerm, '%')) OR LOWER(e.fromAddress) LIKE LOWER(CONCAT('%', :searchTerm, '%')) " +
+           "OR EXISTS (SELECT t FROM EmailSearchText t WHERE t.emailId = e.id AND t.content LIKE LOWER(CONCAT('%', :searchTerm, '%'))))")
     Page<Email> searchEmails(@Param("userId") Long userId, @Param("searchTerm") String searchTerm, Pageable pageable);
     
     @Query("SELECT e FROM Email e WHERE e.user.id = :userId AND e.sentDate BETWEEN :startDate AND :endDate")
@@ -49,4 +56,122 @@ public interface EmailRepository extends JpaRepository<Email, Long> {
     
     @Query("SELECT COALESCE(SUM(e.sizeBytes), 0) FROM Email e WHERE e.user.id = :userId")
     Long calculateTotalStorageUsed(@Param("userId") Long userId);
-}
\ No newline at end of file
+    
+    /**
+     * Source location of an email owned by the user, without loading the row
+     */
+    @Query("SELECT new com.enterprise.mail.dto.RawLocation(e.rawPath, e.rawSize, e.packId) " +
+           "FROM Email e WHERE e.id = :emailId AND e.user.id = :userId")
+    Optional<RawLocation> findRawLocation(@Param("emailId") Long emailId, @Param("userId") Long userId);
+    
+    @Query("SELECT e.id FROM Email e WHERE e.alias.domain.domainName = :domainName ORDER BY e.id DESC")
+    List<Long> findRecentIdsByDomain(@Param("domainName") String domainName, Pageable pageable);
+    
+    @Query("SELECT e FROM Email e WHERE e.id > :afterId " +
+           "AND (e.legacyContentText IS NOT NULL OR e.legacyContentHtml IS NOT NULL) ORDER BY e.id")
+    List<Email> findWithLegacyBody(@Param("afterId") Long afterId, Pageable pageable);
+    
+    /**
+     * Hot emails old enough to be moved to a pack
+     */
+    @Query("SELECT e.id FROM Email e WHERE e.id > :afterId AND e.packId IS NULL AND e.sentDate < :cutoff " +
+           "AND e.folder.type IN :folderTypes ORDER BY e.id")
+    List<Long> findTieringCandidates(@Param("afterId") Long afterId, @Param("cutoff") Date cutoff,
+                                     @Param("folderTypes") Collection<EmailFolder.FolderType> folderTypes,
+                                     Pageable pageable);
+    
+    /**
+     * Switch an email to its pack copy; fails if another run already moved it
+     */
+    @Modifying
+    @Query("UPDATE Email e SET e.packId = :packId, e.rawPath = NULL WHERE e.id = :emailId AND e.packId IS NULL")
+    int markPacked(@Param("emailId") Long emailId, @Param("packId") Long packId);
+    
+    @Modifying
+    @Query("UPDATE Email e SET e.rawPath = :rawPath, e.rawSize = :rawSize WHERE e.id = :emailId")
+    int setRawLocation(@Param("emailId") Long emailId, @Param("rawPath") String rawPath, @Param("rawSize") Long rawSize);
+    
+    @Query("SELECT e.id FROM Email e WHERE e.packId = :packId")
+    List<Long> findIdsByPackId(@Param("packId") Long packId);
+    
+    /**
+     * Point emails at the pack their records were copied to, unless they moved meanwhile
+     */
+    @Modifying
+    @Query("UPDATE Email e SET e.packId = :newPackId WHERE e.id IN :emailIds AND e.packId = :oldPackId")
+    int repack(@Param("emailIds") Collection<Long> emailIds, @Param("oldPackId") Long oldPackId,
+               @Param("newPackId") Long newPackId);
+    
+    @Query("SELECT new com.enterprise.mail.dto.EmailHeader(e.id, f.id, e.status, e.isStarred, e.isImportant, " +
+           "e.hasAttachments, e.sentDate, e.receivedDate, e.sizeBytes, e.fromAddress, e.fromName, e.toAddresses, " +
+           "e.subject, e.preview, e.messageId, e.ccAddresses, e.bccAddresses, e.direction, e.createdAt, e.updatedAt) " +
+           "FROM Email e LEFT JOIN e.folder f " +
+           "WHERE e.user.id = :userId AND e.id > :afterId ORDER BY e.id")
+    List<EmailHeader> findHeaders(@Param("userId") Long userId, @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query("SELECT new com.enterprise.mail.dto.EmailHeader(e.id, f.id, e.status, e.isStarred, e.isImportant, " +
+           "e.hasAttachments, e.sentDate, e.receivedDate, e.sizeBytes, e.fromAddress, e.fromName, e.toAddresses, " +
+           "e.subject, e.preview, e.messageId, e.ccAddresses, e.bccAddresses, e.direction, e.createdAt, e.updatedAt) " +
+           "FROM Email e LEFT JOIN e.folder f WHERE e.id = :emailId")
+    Optional<EmailHeader> findHeader(@Param("emailId") Long emailId);
+    
+    @Query("SELECT e.updatedAt FROM Email e WHERE e.id = :emailId")
+    Optional<LocalDateTime> findUpdatedAt(@Param("emailId") Long emailId);
+    
+    // updated_at 在移入回收站/垃圾箱时刷新，作为保留期起点
+    @Query("SELECT e.id FROM Email e WHERE e.folder.id = :folderId AND e.id > :afterId AND e.updatedAt < :cutoff ORDER BY e.id")
+    List<Long> findExpired(@Param("folderId") Long folderId, @Param("afterId") Long afterId,
+                           @Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+    
+    /**
+     * Received mail of an alias for retroactive rule runs; without a folder, skipped folder types are left out
+     */
+    @Query("SELECT e FROM Email e WHERE e.alias.id = :aliasId AND e.id > :afterId AND e.receivedDate >= :since " +
+           "AND e.type = com.enterprise.mail.entity.Email$EmailType.RECEIVED " +
+           "AND ((:folderId IS NULL AND e.folder.type NOT IN :skippedTypes) OR e.folder.id = :folderId) ORDER BY e.id")
+    List<Email> findForRules(@Param("aliasId") Long aliasId, @Param("folderId") Long folderId,
+                             @Param("skippedTypes") Collection<EmailFolder.FolderType> skippedTypes,
+                             @Param("since") Date since, @Param("afterId") Long afterId, Pageable pageable);
+    
+    @Query("SELECT COUNT(e) FROM Email e WHERE e.alias.id = :aliasId AND e.receivedDate >= :since " +
+           "AND e.type = com.enterprise.mail.entity.Email$EmailType.RECEIVED " +
+           "AND ((:folderId IS NULL AND e.folder.type NOT IN :skippedTypes) OR e.folder.id = :folderId)")
+    long countForRules(@Param("aliasId") Long aliasId, @Param("folderId") Long folderId,
+                       @Param("skippedTypes") Collection<EmailFolder.FolderType> skippedTypes,
+                       @Param("since") Date since);
+    
+    // 以下批量更新都限定原文件夹，返回值即实际变更行数，用于计算文件夹计数增量
+    
+    @Modifying
+    @Query("UPDATE Email e SET e.status = :status, e.updatedAt = :now, e.version = e.version + 1 " +
+           "WHERE e.id IN :ids AND e.folder.id = :folderId AND e.status = com.enterprise.mail.entity.Email$EmailStatus.UNREAD")
+    int updateUnreadStatus(@Param("ids") Collection<Long> ids, @Param("folderId") Long folderId,
+                           @Param("status") Email.EmailStatus status, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Email e SET e.status = :status, e.updatedAt = :now, e.version = e.version + 1 " +
+           "WHERE e.id IN :ids AND e.folder.id = :folderId")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("folderId") Long folderId,
+                     @Param("status") Email.EmailStatus status, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Email e SET e.folder = :target, e.updatedAt = :now, e.version = e.version + 1 " +
+           "WHERE e.id IN :ids AND e.folder.id = :folderId " +
+           "AND (:unreadOnly = false OR e.status = com.enterprise.mail.entity.Email$EmailStatus.UNREAD)")
+    int moveBatch(@Param("ids") Collection<Long> ids, @Param("folderId") Long folderId,
+                  @Param("target") EmailFolder target, @Param("unreadOnly") boolean unreadOnly,
+                  @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Email e SET e.isImportant = :important, e.updatedAt = :now, e.version = e.version + 1 WHERE e.id IN :ids")
+    int updateImportant(@Param("ids") Collection<Long> ids, @Param("important") Boolean important,
+                        @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Email e SET e.isSpam = true, e.updatedAt = :now, e.version = e.version + 1 WHERE e.id IN :ids")
+    int markSpam(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE Email e SET e.labels = :labels, e.updatedAt = :now, e.version = e.version + 1 WHERE e.id IN :ids")
+    int updateLabels(@Param("ids") Collection<Long> ids, @Param("labels") String labels, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,15 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.EmailRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EmailRuleRepository extends JpaRepository<EmailRule, Long> {
+    
+    List<EmailRule> findByAliasIdOrderByPriorityDescIdAsc(Long aliasId);
+    
+    List<EmailRule> findByAliasIdAndIsActiveTrueOrderByPriorityDescIdAsc(Long aliasId);
+}
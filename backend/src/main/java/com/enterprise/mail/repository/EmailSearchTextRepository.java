@@ -0,0 +1,9 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.EmailSearchText;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EmailSearchTextRepository extends JpaRepository<EmailSearchText, Long> {
+}
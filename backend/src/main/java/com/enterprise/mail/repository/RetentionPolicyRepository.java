@@ -0,0 +1,13 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.RetentionPolicy;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RetentionPolicyRepository extends JpaRepository<RetentionPolicy, Long> {
+    
+    List<RetentionPolicy> findByEnabledTrue();
+}
@@ -0,0 +1,51 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.ScheduledAction;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ScheduledActionRepository extends JpaRepository<ScheduledAction, Long> {
+    
+    @Query("SELECT a FROM ScheduledAction a WHERE a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.PENDING " +
+           "AND a.dueAt < :horizon AND a.id > :afterId ORDER BY a.id")
+    List<ScheduledAction> findPendingBefore(@Param("horizon") LocalDateTime horizon, @Param("afterId") Long afterId,
+                                            Pageable pageable);
+    
+    /**
+     * Take ownership of a due action; 0 means another node claimed, or it was cancelled
+     */
+    @Modifying
+    @Query("UPDATE ScheduledAction a SET a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.RUNNING, " +
+           "a.claimedBy = :node, a.claimedAt = :now, a.attempts = a.attempts + 1 " +
+           "WHERE a.id = :id AND a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.PENDING AND a.dueAt <= :now")
+    int claim(@Param("id") Long id, @Param("node") String node, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE ScheduledAction a SET a.status = :status, a.lastError = :error, a.dueAt = :dueAt, a.claimedBy = NULL " +
+           "WHERE a.id = :id AND a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.RUNNING")
+    int finish(@Param("id") Long id, @Param("status") ScheduledAction.ActionStatus status,
+               @Param("error") String error, @Param("dueAt") LocalDateTime dueAt);
+    
+    @Modifying
+    @Query("UPDATE ScheduledAction a SET a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.CANCELLED " +
+           "WHERE a.type = :type AND a.targetId = :targetId " +
+           "AND a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.PENDING")
+    int cancel(@Param("type") ScheduledAction.ActionType type, @Param("targetId") Long targetId);
+    
+    /**
+     * Return actions whose node died mid-run to the pending state
+     */
+    @Modifying
+    @Query("UPDATE ScheduledAction a SET a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.PENDING, " +
+           "a.claimedBy = NULL WHERE a.status = com.enterprise.mail.entity.ScheduledAction$ActionStatus.RUNNING " +
+           "AND a.claimedAt < :cutoff")
+    int releaseStale(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,19 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.SenderListEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface SenderListEntryRepository extends JpaRepository<SenderListEntry, Long> {
+    
+    List<SenderListEntry> findByUserIdOrderByIdAsc(Long userId);
+    
+    List<SenderListEntry> findByUserIdIsNullAndDomainNameOrderByIdAsc(String domainName);
+    
+    boolean existsByUserIdAndPattern(Long userId, String pattern);
+    
+    boolean existsByUserIdIsNullAndDomainNameAndPattern(String domainName, String pattern);
+}
@@ -0,0 +1,22 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.SpamLesson;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface SpamLessonRepository extends JpaRepository<SpamLesson, Long> {
+    
+    List<SpamLesson> findByIdGreaterThanAndCreatedAtBeforeOrderByIdAsc(Long id, LocalDateTime before, Pageable pageable);
+    
+    @Modifying
+    @Query("DELETE FROM SpamLesson l WHERE l.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,28 @@
+package com.enterprise.mail.repository;
+
+import com.enterprise.mail.entity.UploadSession;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+    
+    Optional<UploadSession> findByUploadId(String uploadId);
+    
+    /**
+     * Locking read; held until the surrounding transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UploadSession s WHERE s.uploadId = :uploadId")
+    Optional<UploadSession> lockByUploadId(@Param("uploadId") String uploadId);
+    
+    List<UploadSession> findByStatusAndExpiresAtBefore(UploadSession.UploadStatus status, Date cutoff);
+}
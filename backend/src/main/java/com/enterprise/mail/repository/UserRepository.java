@@ -2,10 +2,13 @@ package com.enterprise.mail.repository;
 
 import com.enterprise.mail.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,4 +30,41 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     @Query("SELECT u FROM User u WHERE u.role = :role")
     List<User> findByRole(@Param("role") User.UserRole role);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.mailboxModSeq = u.mailboxModSeq + :delta WHERE u.id = :userId")
+    int addMailboxModSeq(@Param("userId") Long userId, @Param("delta") Long delta);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.senderListVersion = u.senderListVersion + 1 WHERE u.id = :userId")
+    int incrementSenderListVersion(@Param("userId") Long userId);
+    
+    // sent_today 先于 sent_date 赋值，CASE 读到的是旧日期
+    @Modifying
+    @Query("UPDATE User u SET u.sentToday = CASE WHEN u.sentDate = :today THEN u.sentToday + :count ELSE :count END, " +
+           "u.sentDate = :today WHERE u.id = :userId")
+    int addSentToday(@Param("userId") Long userId, @Param("count") int count, @Param("today") LocalDate today);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.sentToday = 0 WHERE u.sentToday <> 0 AND (u.sentDate IS NULL OR u.sentDate < :today)")
+    int resetSentToday(@Param("today") LocalDate today);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.status = com.enterprise.mail.entity.User$UserStatus.LOCKED, u.lockedUntil = :until " +
+           "WHERE (u.username = :login OR u.email = :login) AND (u.status = com.enterprise.mail.entity.User$UserStatus.ACTIVE " +
+           "OR (u.status = com.enterprise.mail.entity.User$UserStatus.LOCKED AND u.lockedUntil < :now))")
+    int lockUntil(@Param("login") String login, @Param("until") Date until, @Param("now") Date now);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.status = com.enterprise.mail.entity.User$UserStatus.ACTIVE, u.lockedUntil = NULL " +
+           "WHERE u.status = com.enterprise.mail.entity.User$UserStatus.LOCKED AND u.lockedUntil < :now")
+    int unlockExpired(@Param("now") Date now);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.storageUsed = CASE WHEN u.storageUsed > :bytes THEN u.storageUsed - :bytes ELSE 0 END " +
+           "WHERE u.id = :userId")
+    int releaseStorage(@Param("userId") Long userId, @Param("bytes") Long bytes);
+    
+    @Query("SELECT u.mailboxModSeq FROM User u WHERE u.id = :userId")
+    Optional<Long> findMailboxModSeq(@Param("userId") Long userId);
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.enterprise.mail.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Client address of an HTTP request, for per-IP limits and login tracking.
+ *
+ * X-Forwarded-For is only believed with {@code mail.api-limits.trust-forwarded-for}, i.e.
+ * behind a proxy of ours that sets it; otherwise any client could choose the address its
+ * attempts are counted under.
+ */
+@Component
+public class ClientIpResolver {
+
+    @Value("${mail.api-limits.trust-forwarded-for:false}")
+    private boolean trustForwardedFor;
+
+    public String resolve(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (StringUtils.hasText(forwarded)) {
+                return forwarded.split(",")[0].trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
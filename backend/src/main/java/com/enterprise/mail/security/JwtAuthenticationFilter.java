@@ -1,6 +1,7 @@
 package com.enterprise.mail.security;
 
 import com.enterprise.mail.service.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -12,7 +13,6 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
@@ -33,10 +33,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         
         try {
-            String jwt = extractJwtFromRequest(request);
-            
-            if (StringUtils.hasText(jwt) && jwtTokenUtil.validateToken(jwt)) {
-                String username = jwtTokenUtil.extractUsername(jwt);
+            // Usually parsed already by the rate limiter
+            Claims claims = jwtTokenUtil.requestClaims(request);
+            // WebSocket tickets only open the mailbox channel; they never authenticate API calls
+            if (claims != null && jwtTokenUtil.isAccessToken(claims)) {
+                String username = claims.getSubject();
                 
                 UserDetails userDetails = userService.loadUserByUsername(username);
                 
@@ -55,12 +56,4 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         
         filterChain.doFilter(request, response);
     }
-    
-    private String extractJwtFromRequest(HttpServletRequest request) {
-        String bearerToken = request.getHeader("Authorization");
-        if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
-            return bearerToken.substring(7);
-        }
-        return null;
-    }
 }
\ No newline at end of file
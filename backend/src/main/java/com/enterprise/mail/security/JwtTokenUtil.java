@@ -4,15 +4,18 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
-import jakarta.crypto.SecretKey;
+import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.function.Function;
 
 /**
@@ -21,6 +24,11 @@ import java.util.function.Function;
 @Component
 public class JwtTokenUtil {
     
+    public static final String TICKET_TYPE = "ws-ticket";
+    
+    // Parsed bearer token of the current request, as Optional<Claims>
+    private static final String CLAIMS_ATTRIBUTE = JwtTokenUtil.class.getName() + ".claims";
+    
     @Value("${jwt.secret}")
     private String secret;
     
@@ -63,6 +71,39 @@ public class JwtTokenUtil {
         return claimsResolver.apply(claims);
     }
     
+    /**
+     * Claims of a validly signed, unexpired token, or null
+     */
+    public Claims parseClaims(String token) {
+        try {
+            return extractAllClaims(token);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Claims of the request's bearer token, or null when it has none or it is invalid. The
+     * signature is checked once per request: the result is kept as a request attribute, so
+     * rate limiting and authentication share it.
+     */
+    public Claims requestClaims(HttpServletRequest request) {
+        if (request.getAttribute(CLAIMS_ATTRIBUTE) instanceof Optional<?> parsed) {
+            return (Claims) parsed.orElse(null);
+        }
+        String header = request.getHeader("Authorization");
+        Claims claims = header != null && header.startsWith("Bearer ") ? parseClaims(header.substring(7)) : null;
+        request.setAttribute(CLAIMS_ATTRIBUTE, Optional.ofNullable(claims));
+        return claims;
+    }
+    
+    /**
+     * True for tokens that may authenticate API requests; WebSocket tickets may not
+     */
+    public boolean isAccessToken(Claims claims) {
+        return !TICKET_TYPE.equals(claims.get("type"));
+    }
+    
     private Claims extractAllClaims(String token) {
         return Jwts.parserBuilder()
                 .setSigningKey(getSigningKey())
@@ -86,6 +127,17 @@ public class JwtTokenUtil {
         return createToken(claims, userDetails.getUsername(), refreshExpiration);
     }
     
+    /**
+     * Short-lived single-purpose ticket for opening the mailbox WebSocket; carries a jti so
+     * it can be redeemed only once
+     */
+    public String generateWebSocketTicket(String username, long ttlMillis) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("type", TICKET_TYPE);
+        claims.put(Claims.ID, UUID.randomUUID().toString());
+        return createToken(claims, username, ttlMillis);
+    }
+    
     private String createToken(Map<String, Object> claims, String subject, Long expiration) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + expiration);
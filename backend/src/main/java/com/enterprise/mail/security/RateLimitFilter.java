@@ -0,0 +1,275 @@
+package com.enterprise.mail.security;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.ratelimit.TokenBucket;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Rate limiting and admission control for the REST API.
+ *
+ * Runs ahead of JWT authentication, so a rejected request never reaches the database. Each
+ * request is weighed by its endpoint class (a search costs more than a read) and charged to
+ * a token bucket per client IP and, when it carries a valid token, per user; an empty bucket
+ * answers 429. Each class also has a global limit on requests in flight; a request that
+ * cannot get a slot within the queue wait answers 503. Both carry Retry-After.
+ *
+ * Downloads (raw messages, attachments, ZIP archives) form their own class: they hold a slot
+ * for as long as the client takes to read the body, so sharing the read slots would let a
+ * few slow downloads starve mailbox listing. They still count against the pool because
+ * open-in-view keeps the request's connection until the response is written.
+ *
+ * Every class uses database connections, so the default slots (8 + 6 + 3 + 2) stay below the
+ * connection pool (20), leaving connections for delivery and scheduled jobs; a larger
+ * combined limit only moves the queueing into the pool, where requests wait up to the
+ * connection timeout instead of failing fast. Startup warns when the limits exceed the pool.
+ */
+@Slf4j
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    enum EndpointClass {
+        READ, WRITE, SEARCH, DOWNLOAD
+    }
+
+    private static final Pattern DOWNLOAD_PATH =
+            Pattern.compile("^/(emails/\\d+/raw|attachments/(\\d+/(download|view)|zip))/?$");
+
+    private final MailServerConfig mailServerConfig;
+    private final JwtTokenUtil jwtTokenUtil;
+    private final ClientIpResolver clientIpResolver;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${mail.api-limits.ip-per-minute:300}")
+    private int ipPerMinute;
+
+    @Value("${mail.api-limits.costs.read:1}")
+    private int readCost;
+
+    @Value("${mail.api-limits.costs.write:2}")
+    private int writeCost;
+
+    @Value("${mail.api-limits.costs.search:5}")
+    private int searchCost;
+
+    @Value("${mail.api-limits.costs.download:2}")
+    private int downloadCost;
+
+    @Value("${mail.api-limits.concurrency.read:8}")
+    private int readConcurrency;
+
+    @Value("${mail.api-limits.concurrency.write:6}")
+    private int writeConcurrency;
+
+    @Value("${mail.api-limits.concurrency.search:3}")
+    private int searchConcurrency;
+
+    @Value("${mail.api-limits.concurrency.download:2}")
+    private int downloadConcurrency;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
+
+    @Value("${mail.api-limits.queue-wait-ms:50}")
+    private long queueWaitMillis;
+
+    @Value("${mail.api-limits.max-tracked-clients:100000}")
+    private int maxTrackedClients;
+
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<EndpointClass, Semaphore> slots = new EnumMap<>(EndpointClass.class);
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+
+    public RateLimitFilter(MailServerConfig mailServerConfig, JwtTokenUtil jwtTokenUtil,
+                           ClientIpResolver clientIpResolver, MeterRegistry meterRegistry) {
+        this.mailServerConfig = mailServerConfig;
+        this.jwtTokenUtil = jwtTokenUtil;
+        this.clientIpResolver = clientIpResolver;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        int combined = readConcurrency + writeConcurrency + searchConcurrency + downloadConcurrency;
+        if (combined > connectionPoolSize) {
+            log.warn("API concurrency limits allow {} requests in flight but the connection pool has {}; "
+                    + "the excess waits for connections instead of being refused", combined, connectionPoolSize);
+        }
+        slots.put(EndpointClass.READ, new Semaphore(readConcurrency));
+        slots.put(EndpointClass.WRITE, new Semaphore(writeConcurrency));
+        slots.put(EndpointClass.SEARCH, new Semaphore(searchConcurrency));
+        slots.put(EndpointClass.DOWNLOAD, new Semaphore(downloadConcurrency));
+        slots.forEach((endpointClass, semaphore) -> Gauge.builder("mail.api.in-flight", semaphore,
+                        s -> maxConcurrency(endpointClass) - s.availablePermits())
+                .description("API requests being processed")
+                .tag("class", endpointClass.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!mailServerConfig.getSecurity().isRateLimitEnabled() || "OPTIONS".equals(request.getMethod())) {
+            return true;
+        }
+        String path = path(request);
+        return path.startsWith("/actuator") || path.startsWith("/ws") || path.startsWith("/swagger-ui")
+                || path.startsWith("/v3/api-docs") || path.startsWith("/docs");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        EndpointClass endpointClass = classify(request);
+        String tag = endpointClass.name().toLowerCase(Locale.ROOT);
+
+        // 1. Rate: per IP always, per user when the token is valid
+        int userLimit = mailServerConfig.getSecurity().getMaxRequestsPerMinute();
+        String username = username(request);
+        TokenBucket userBucket = username != null ? bucket(userBuckets, username, userLimit) : null;
+        TokenBucket ipBucket = bucket(ipBuckets, clientIpResolver.resolve(request), ipPerMinute);
+        int cost = cost(endpointClass);
+
+        long wait = userBucket != null ? userBucket.tryAcquire(Math.min(cost, userLimit)) : 0;
+        if (wait > 0) {
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, wait, "user", tag);
+            return;
+        }
+        wait = ipBucket.tryAcquire(Math.min(cost, ipPerMinute));
+        if (wait > 0) {
+            if (userBucket != null) {
+                userBucket.release(Math.min(cost, userLimit));
+            }
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, wait, "ip", tag);
+            return;
+        }
+
+        // 2. Admission: bounded requests in flight per endpoint class
+        Semaphore semaphore = slots.get(endpointClass);
+        boolean admitted;
+        try {
+            admitted = semaphore.tryAcquire(queueWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1), "concurrency", tag);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Drop buckets that have refilled completely; they hold nothing a new bucket would not
+     */
+    @Scheduled(fixedDelayString = "${mail.api-limits.cleanup-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        userBuckets.values().removeIf(TokenBucket::isIdle);
+        ipBuckets.values().removeIf(TokenBucket::isIdle);
+    }
+
+    // Helper methods
+
+    private EndpointClass classify(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return EndpointClass.WRITE;
+        }
+        String path = path(request);
+        if (DOWNLOAD_PATH.matcher(path).matches()) {
+            return EndpointClass.DOWNLOAD;
+        }
+        if (path.contains("/search") || StringUtils.hasText(request.getParameter("search"))) {
+            return EndpointClass.SEARCH;
+        }
+        return EndpointClass.READ;
+    }
+
+    private int cost(EndpointClass endpointClass) {
+        return switch (endpointClass) {
+            case READ -> readCost;
+            case WRITE -> writeCost;
+            case SEARCH -> searchCost;
+            case DOWNLOAD -> downloadCost;
+        };
+    }
+
+    private int maxConcurrency(EndpointClass endpointClass) {
+        return switch (endpointClass) {
+            case READ -> readConcurrency;
+            case WRITE -> writeConcurrency;
+            case SEARCH -> searchConcurrency;
+            case DOWNLOAD -> downloadConcurrency;
+        };
+    }
+
+    private TokenBucket bucket(Map<String, TokenBucket> buckets, String key, int perMinute) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxTrackedClients) {
+            buckets.values().removeIf(TokenBucket::isIdle);
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(perMinute, perMinute));
+    }
+
+    /**
+     * Subject of a valid bearer token; signature check only, no user lookup. The parsed
+     * token stays on the request for {@link JwtAuthenticationFilter}.
+     */
+    private String username(HttpServletRequest request) {
+        Claims claims = jwtTokenUtil.requestClaims(request);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, long waitNanos, String reason, String tag)
+            throws IOException {
+        rejections.computeIfAbsent(reason + ':' + tag, key -> Counter.builder("mail.api.rejected")
+                        .description("API requests rejected by rate limiting or admission control")
+                        .tag("reason", reason)
+                        .tag("class", tag)
+                        .register(meterRegistry))
+                .increment();
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+        response.setStatus(status.value());
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        response.setContentType("application/json");
+        response.getWriter().write("{\"error\": \"" + status.getReasonPhrase() + "\", \"message\": \"Retry in "
+                + retryAfter + " seconds\"}");
+        log.debug("Rejected {} request: {} limit, retry after {}s", tag, reason, retryAfter);
+    }
+}
@@ -2,6 +2,7 @@ package com.enterprise.mail.service;
 
 import com.enterprise.mail.dto.*;
 import com.enterprise.mail.entity.EmailAlias;
+import com.enterprise.mail.entity.ScheduledAction;
 import com.enterprise.mail.entity.User;
 import com.enterprise.mail.entity.Domain;
 import com.enterprise.mail.repository.EmailAliasRepository;
@@ -25,6 +26,7 @@ public class AliasService {
     private final EmailAliasRepository aliasRepository;
     private final DomainRepository domainRepository;
     private final UserService userService;
+    private final ScheduledActionService scheduledActionService;
     
     /**
      * 获取用户的别名列表
@@ -70,9 +72,14 @@ public class AliasService {
         alias.setUser(user);
         alias.setDomain(domain);
         alias.setStatus(EmailAlias.AliasStatus.ACTIVE);
-        alias.setType(EmailAlias.AliasType.STANDARD);
+        alias.setType(request.getExpiresAt() != null ? EmailAlias.AliasType.TEMPORARY : EmailAlias.AliasType.STANDARD);
+        alias.setExpiresAt(request.getExpiresAt());
         
         alias = aliasRepository.save(alias);
+        if (alias.getExpiresAt() != null) {
+            scheduledActionService.schedule(ScheduledAction.ActionType.ALIAS_EXPIRY, user.getId(), alias.getId(),
+                    null, alias.getExpiresAt());
+        }
         log.info("Created alias: {} for user: {}", fullAddress, username);
         
         return toDto(alias);
@@ -110,6 +117,7 @@ public class AliasService {
         alias.setStatus(EmailAlias.AliasStatus.DELETED);
         alias.setIsDeleted(true);
         aliasRepository.save(alias);
+        scheduledActionService.cancel(ScheduledAction.ActionType.ALIAS_EXPIRY, aliasId);
         
         log.info("Deleted alias: {} for user: {}", alias.getAliasAddress(), username);
     }
@@ -197,6 +205,7 @@ public class AliasService {
         dto.setSignature(alias.getSignature());
         dto.setQuotaBytes(alias.getQuotaBytes());
         dto.setUsedBytes(alias.getUsedBytes());
+        dto.setExpiresAt(alias.getExpiresAt());
         dto.setCreatedAt(alias.getCreatedAt());
         dto.setUpdatedAt(alias.getUpdatedAt());
         return dto;
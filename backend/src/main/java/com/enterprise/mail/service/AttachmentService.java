@@ -1,29 +1,51 @@
 package com.enterprise.mail.service;
 
+import com.enterprise.mail.config.MailServerConfig;
 import com.enterprise.mail.dto.AttachmentDto;
 import com.enterprise.mail.entity.Attachment;
 import com.enterprise.mail.entity.Email;
 import com.enterprise.mail.entity.User;
 import com.enterprise.mail.exception.BusinessException;
 import com.enterprise.mail.repository.AttachmentRepository;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.internet.ContentType;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimePart;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.ParseException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Service for managing email attachments
@@ -35,6 +57,8 @@ import java.util.UUID;
 public class AttachmentService {
     
     private final AttachmentRepository attachmentRepository;
+    private final BlobStoreService blobStoreService;
+    private final MailServerConfig mailServerConfig;
     
     @Value("${mail.attachments.storage-path:/var/mail/attachments}")
     private String storageBasePath;
@@ -42,37 +66,127 @@ public class AttachmentService {
     @Value("${mail.attachments.max-size:10485760}") // 10MB default
     private Long maxFileSize;
     
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private static final int MAX_ARCHIVE_SELECTION = 500;
+    
     /**
      * Save attachment for email
      */
     public Attachment saveAttachment(MultipartFile file, Email email) throws IOException {
-        // Validate file size
+        // Reject early when the container already knows the size
         if (file.getSize() > maxFileSize) {
-            throw new BusinessException("File size exceeds maximum allowed: " + maxFileSize + " bytes");
+            throw new BusinessException("File size exceeds maximum allowed: " + maxFileSize + " bytes",
+                    HttpStatus.PAYLOAD_TOO_LARGE);
         }
         
-        // Generate unique filename
-        String originalFilename = file.getOriginalFilename();
-        String fileExtension = getFileExtension(originalFilename);
-        String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
+        try (InputStream in = file.getInputStream()) {
+            return saveAttachment(in, file.getOriginalFilename(), file.getContentType(), email);
+        }
+    }
+    
+    /**
+     * Save attachment from a stream in a single pass.
+     *
+     * The stream is copied to disk through a fixed-size buffer while the size limit is
+     * enforced, the SHA-256 checksum is computed and the leading bytes are sniffed, so the
+     * file is never re-read and heap use does not depend on the attachment size.
+     * Content that is already stored is not kept twice; the new row references the existing blob.
+     */
+    public Attachment saveAttachment(InputStream in, String originalFilename, String declaredContentType,
+                                     Email email) throws IOException {
+        return storeStream(in, originalFilename, declaredContentType, null, false, maxFileSize, email);
+    }
+    
+    /**
+     * Extract every attachment part of a delivered message into attachment storage.
+     *
+     * Parts are streamed through {@link Part#getInputStream()}, which decodes base64 and
+     * quoted-printable on the fly, so no part is ever held in memory. Inbound parts are
+     * bounded by the message size limit rather than the upload limit; a part that decodes
+     * to more than that is skipped.
+     */
+    public List<Attachment> extractAttachments(MimeMessage message, Email email) throws MessagingException, IOException {
+        List<Attachment> attachments = new ArrayList<>();
+        collectAttachmentParts(message, email, attachments);
+        return attachments;
+    }
+    
+    private Attachment storeStream(InputStream in, String originalFilename, String declaredContentType,
+                                   String contentId, boolean inline, long sizeLimit, Email email) throws IOException {
+        Path partPath = getStagingDirectory().resolve(UUID.randomUUID() + ".part");
         
-        // Create storage directory if not exists
-        Path userStoragePath = Paths.get(storageBasePath, email.getUser().getId().toString());
-        Files.createDirectories(userStoragePath);
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] head = new byte[ContentSniffer.SNIFF_LENGTH];
+        int headLength = 0;
+        long size = 0;
         
-        // Save file to disk
-        Path filePath = userStoragePath.resolve(uniqueFilename);
-        file.transferTo(filePath.toFile());
+        try (OutputStream out = Files.newOutputStream(partPath)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+                if (size > sizeLimit) {
+                    throw new BusinessException("File size exceeds maximum allowed: " + sizeLimit + " bytes",
+                            HttpStatus.PAYLOAD_TOO_LARGE);
+                }
+                if (headLength < head.length) {
+                    int copy = Math.min(read, head.length - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, copy);
+                    headLength += copy;
+                }
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partPath);
+            throw e;
+        }
         
-        // Calculate checksum
-        String checksum = calculateChecksum(filePath.toFile());
+        String checksum = HexFormat.of().formatHex(digest.digest());
+        Path filePath = blobStoreService.store(partPath, checksum, size);
         
         // Create attachment entity
         Attachment attachment = new Attachment();
-        attachment.setFileName(uniqueFilename);
+        attachment.setFileName(checksum + getFileExtension(originalFilename));
         attachment.setOriginalFileName(originalFilename);
-        attachment.setContentType(file.getContentType());
-        attachment.setFileSize(file.getSize());
+        attachment.setContentType(ContentSniffer.resolve(declaredContentType, ContentSniffer.sniff(head, headLength)));
+        attachment.setFileSize(size);
+        attachment.setStoragePath(filePath.toString());
+        attachment.setChecksum(checksum);
+        attachment.setEmail(email);
+        attachment.setUploadDate(new Date());
+        attachment.setIsInline(inline);
+        attachment.setContentId(contentId);
+        
+        return attachmentRepository.save(attachment);
+    }
+    
+    /**
+     * Adopt a fully written staging file (e.g. a finished chunked upload) by renaming
+     * it atomically into the blob store
+     */
+    public Attachment saveStagedFile(Path stagedFile, String originalFilename, String declaredContentType,
+                                     String checksum, Email email) throws IOException {
+        long size = Files.size(stagedFile);
+        if (size > maxFileSize) {
+            throw new BusinessException("File size exceeds maximum allowed: " + maxFileSize + " bytes",
+                    HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        
+        byte[] head = new byte[ContentSniffer.SNIFF_LENGTH];
+        int headLength;
+        try (InputStream in = Files.newInputStream(stagedFile)) {
+            headLength = in.readNBytes(head, 0, head.length);
+        }
+        
+        Path filePath = blobStoreService.store(stagedFile, checksum, size);
+        
+        Attachment attachment = new Attachment();
+        attachment.setFileName(checksum + getFileExtension(originalFilename));
+        attachment.setOriginalFileName(originalFilename);
+        attachment.setContentType(ContentSniffer.resolve(declaredContentType, ContentSniffer.sniff(head, headLength)));
+        attachment.setFileSize(size);
         attachment.setStoragePath(filePath.toString());
         attachment.setChecksum(checksum);
         attachment.setEmail(email);
@@ -82,6 +196,20 @@ public class AttachmentService {
         return attachmentRepository.save(attachment);
     }
     
+    /**
+     * Directory for in-progress uploads; on the same filesystem as attachment storage
+     * so completed uploads can be renamed into place
+     */
+    public Path getStagingDirectory() throws IOException {
+        Path staging = Paths.get(storageBasePath, "staging");
+        Files.createDirectories(staging);
+        return staging;
+    }
+    
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+    
     /**
      * Save multiple attachments
      */
@@ -106,36 +234,133 @@ public class AttachmentService {
     }
     
     /**
-     * Get attachment file
+     * Attachments of one email in upload order
      */
-    public File getAttachmentFile(Long attachmentId) {
-        Attachment attachment = getAttachment(attachmentId);
-        File file = new File(attachment.getStoragePath());
+    public List<Attachment> getAttachments(Long emailId) {
+        return attachmentRepository.findByEmailId(emailId);
+    }
+    
+    /**
+     * Get attachment file for an already loaded attachment
+     */
+    public Path getAttachmentFile(Attachment attachment) {
+        Path file = Paths.get(attachment.getStoragePath());
         
-        if (!file.exists()) {
-            throw new BusinessException("Attachment file not found: " + attachment.getStoragePath());
+        if (!Files.isReadable(file)) {
+            throw new BusinessException("Attachment file not found: " + attachment.getStoragePath(), HttpStatus.NOT_FOUND);
         }
         
         return file;
     }
     
+    /**
+     * Attachments owned by the user, selected by email and/or attachment id
+     */
+    @Transactional(readOnly = true)
+    public List<Attachment> getAttachmentsForArchive(Long userId, List<Long> emailIds, List<Long> attachmentIds) {
+        int requested = (emailIds == null ? 0 : emailIds.size()) + (attachmentIds == null ? 0 : attachmentIds.size());
+        if (requested == 0) {
+            throw new BusinessException("No emails or attachments selected");
+        }
+        if (requested > MAX_ARCHIVE_SELECTION) {
+            throw new BusinessException("At most " + MAX_ARCHIVE_SELECTION + " emails or attachments can be archived at once");
+        }
+        
+        Map<Long, Attachment> selected = new LinkedHashMap<>();
+        if (emailIds != null && !emailIds.isEmpty()) {
+            attachmentRepository.findByEmailIdInAndEmailUserIdOrderByEmailIdAscIdAsc(emailIds, userId)
+                    .forEach(a -> selected.put(a.getId(), a));
+        }
+        if (attachmentIds != null && !attachmentIds.isEmpty()) {
+            attachmentRepository.findByIdInAndEmailUserIdOrderByEmailIdAscIdAsc(attachmentIds, userId)
+                    .forEach(a -> selected.putIfAbsent(a.getId(), a));
+        }
+        if (selected.isEmpty()) {
+            throw new BusinessException("No attachments found", HttpStatus.NOT_FOUND);
+        }
+        return new ArrayList<>(selected.values());
+    }
+    
+    /**
+     * Stream a ZIP of the given attachments straight to the output.
+     *
+     * Entries are copied from the attachment store through a small buffer, so memory use
+     * does not depend on the archive size and nothing is staged on disk. Already-compressed
+     * types are deflated at level 0 (stored blocks): STORED entries would need the CRC
+     * before the data, which means reading every file twice.
+     */
+    public void writeArchive(List<Attachment> attachments, OutputStream out) throws IOException {
+        boolean multipleEmails = attachments.stream().map(a -> a.getEmail().getId()).distinct().count() > 1;
+        Set<String> usedNames = new HashSet<>();
+        
+        // Resolve every file before the first byte is written, while an error can still be reported
+        List<Path> files = attachments.stream().map(this::getAttachmentFile).toList();
+        
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        for (int i = 0; i < attachments.size(); i++) {
+            Attachment attachment = attachments.get(i);
+            Path file = files.get(i);
+            
+            String name = sanitizeEntryName(attachment.getOriginalFileName());
+            if (multipleEmails) {
+                name = "email-" + attachment.getEmail().getId() + "/" + name;
+            }
+            
+            ZipEntry entry = new ZipEntry(uniqueEntryName(name, usedNames));
+            entry.setTime(attachment.getUploadDate() != null ? attachment.getUploadDate().getTime() : System.currentTimeMillis());
+            zip.setLevel(ContentSniffer.isCompressed(attachment.getContentType())
+                    ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            
+            zip.putNextEntry(entry);
+            Files.copy(file, zip);
+            zip.closeEntry();
+            // Push each finished entry to the client instead of waiting for the container buffer
+            zip.flush();
+        }
+        zip.finish();
+    }
+    
     /**
      * Delete attachment
      */
     public void deleteAttachment(Long attachmentId) {
         Attachment attachment = getAttachment(attachmentId);
         
-        // Delete file from disk
-        try {
-            Files.deleteIfExists(Paths.get(attachment.getStoragePath()));
-        } catch (IOException e) {
-            log.error("Failed to delete attachment file: " + attachment.getStoragePath(), e);
+        if (blobStoreService.isBlobPath(attachment.getStoragePath())) {
+            // Shared content: the collector removes the bytes once nothing references them
+            blobStoreService.release(attachment.getChecksum());
+        } else {
+            // Stored before deduplication, owned by this row alone
+            try {
+                Files.deleteIfExists(Paths.get(attachment.getStoragePath()));
+            } catch (IOException e) {
+                log.error("Failed to delete attachment file: " + attachment.getStoragePath(), e);
+            }
         }
         
         // Delete from database
         attachmentRepository.delete(attachment);
     }
     
+    /**
+     * Delete the attachments of purged emails within the caller's transaction.
+     * Blob references are released (the collector removes unreferenced bytes later);
+     * files of legacy rows are returned so the caller unlinks them after commit.
+     */
+    public List<Path> deleteByEmails(Collection<Long> emailIds) {
+        List<Attachment> attachments = attachmentRepository.findByEmailIdIn(emailIds);
+        List<Path> legacyFiles = new ArrayList<>();
+        for (Attachment attachment : attachments) {
+            if (blobStoreService.isBlobPath(attachment.getStoragePath())) {
+                blobStoreService.release(attachment.getChecksum());
+            } else {
+                legacyFiles.add(Paths.get(attachment.getStoragePath()));
+            }
+        }
+        attachmentRepository.deleteAll(attachments);
+        return legacyFiles;
+    }
+    
     /**
      * Convert attachment to DTO
      */
@@ -159,6 +384,91 @@ public class AttachmentService {
     
     // Helper methods
     
+    private void collectAttachmentParts(Part part, Email email, List<Attachment> attachments)
+            throws MessagingException, IOException {
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                collectAttachmentParts(multipart.getBodyPart(i), email, attachments);
+            }
+            return;
+        }
+        if (!isAttachmentPart(part)) {
+            return;
+        }
+        
+        String contentId = part instanceof MimePart ? ((MimePart) part).getContentID() : null;
+        if (contentId != null) {
+            contentId = contentId.replaceAll("^<|>$", "");
+        }
+        boolean inline = Part.INLINE.equalsIgnoreCase(part.getDisposition()) || contentId != null;
+        
+        try (InputStream in = part.getInputStream()) {
+            attachments.add(storeStream(in, getPartFileName(part, attachments.size() + 1), getBaseType(part),
+                    contentId, inline, mailServerConfig.getStorage().getMaxMessageSize(), email));
+        } catch (IOException | BusinessException e) {
+            // A corrupt or oversized part should not block delivery of the rest of the message
+            log.warn("Skipping attachment part of email {}: {}", email.getId(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Explicit attachments, anything carrying a file name, and non-text parts referenced
+     * by Content-ID (inline images in multipart/related)
+     */
+    private boolean isAttachmentPart(Part part) throws MessagingException {
+        if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition()) || part.getFileName() != null) {
+            return true;
+        }
+        return part instanceof MimePart && ((MimePart) part).getContentID() != null && !part.isMimeType("text/*");
+    }
+    
+    private String sanitizeEntryName(String fileName) {
+        if (fileName == null || fileName.isBlank()) {
+            return "attachment";
+        }
+        // No directories or traversal from user-supplied names
+        String name = fileName.replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1);
+        return name.isBlank() || name.equals("..") ? "attachment" : name;
+    }
+    
+    private String uniqueEntryName(String name, Set<String> usedNames) {
+        if (usedNames.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        int slash = name.lastIndexOf('/');
+        String base = dot > slash + 1 ? name.substring(0, dot) : name;
+        String extension = dot > slash + 1 ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            String candidate = base + " (" + i + ")" + extension;
+            if (usedNames.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+    
+    private String getPartFileName(Part part, int index) throws MessagingException {
+        String fileName = part.getFileName();
+        if (fileName == null) {
+            return "attachment-" + index;
+        }
+        try {
+            return MimeUtility.decodeText(fileName);
+        } catch (UnsupportedEncodingException e) {
+            return fileName;
+        }
+    }
+    
+    private String getBaseType(Part part) throws MessagingException {
+        try {
+            return new ContentType(part.getContentType()).getBaseType();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+    
     private String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) {
             return "";
@@ -166,20 +476,11 @@ public class AttachmentService {
         return filename.substring(filename.lastIndexOf("."));
     }
     
-    private String calculateChecksum(File file) {
+    private MessageDigest newDigest() {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] fileBytes = Files.readAllBytes(file.toPath());
-            byte[] digestBytes = md.digest(fileBytes);
-            
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digestBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException | IOException e) {
-            log.error("Failed to calculate checksum", e);
-            return null;
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.enterprise.mail.service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Header checks that keep forwards and vacation replies from looping or answering robots.
+ *
+ * Follows RFC 3834: never answer mail that is itself automatic (Auto-Submitted other than
+ * "no", Precedence bulk/list/junk, mailing-list headers), mail from system senders, or mail
+ * that does not name the alias in To or Cc. Forwarded copies carry X-Loop and Delivered-To
+ * naming the alias, so a copy that comes back is recognized and not forwarded again.
+ */
+final class AutoResponses {
+
+    static final String LOOP_HEADER = "X-Loop";
+    static final String DELIVERED_TO_HEADER = "Delivered-To";
+
+    private static final int MAX_HOPS = 25;
+    private static final Set<String> SYSTEM_SENDERS = Set.of(
+            "mailer-daemon", "postmaster", "noreply", "no-reply", "donotreply", "do-not-reply", "listserv", "majordomo");
+    private static final String[] LIST_HEADERS = {
+            "List-Id", "List-Unsubscribe", "List-Post", "List-Help", "Mailing-List", "X-Mailing-List"};
+
+    private AutoResponses() {
+    }
+
+    /**
+     * Whether a vacation reply may answer this message at all (suppression aside)
+     */
+    static boolean mayReply(MimeMessage message, String sender, String aliasAddress) {
+        try {
+            return !isSystemSender(sender) && !isAutomatic(message) && !isLooped(message, aliasAddress)
+                    && isAddressedTo(message, aliasAddress);
+        } catch (MessagingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether this message has already passed through the alias, or through too many hops
+     */
+    static boolean isLooped(MimeMessage message, String aliasAddress) {
+        try {
+            String[] received = message.getHeader("Received");
+            if (received != null && received.length > MAX_HOPS) {
+                return true;
+            }
+            return contains(message.getHeader(LOOP_HEADER), aliasAddress)
+                    || contains(message.getHeader(DELIVERED_TO_HEADER), aliasAddress);
+        } catch (MessagingException e) {
+            return true;
+        }
+    }
+
+    // Helper methods
+
+    private static boolean isAutomatic(MimeMessage message) throws MessagingException {
+        String autoSubmitted = message.getHeader("Auto-Submitted", null);
+        if (autoSubmitted != null && !autoSubmitted.trim().toLowerCase(Locale.ROOT).startsWith("no")) {
+            return true;
+        }
+        String precedence = message.getHeader("Precedence", null);
+        if (precedence != null && Set.of("bulk", "list", "junk").contains(precedence.trim().toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        String suppress = message.getHeader("X-Auto-Response-Suppress", null);
+        if (suppress != null && suppress.matches("(?i).*\\b(all|oof|autoreply)\\b.*")) {
+            return true;
+        }
+        for (String header : LIST_HEADERS) {
+            if (message.getHeader(header) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSystemSender(String sender) {
+        if (sender == null || sender.isBlank() || sender.trim().equals("<>")) {
+            return true;
+        }
+        String address = sender.trim().toLowerCase(Locale.ROOT);
+        int at = address.lastIndexOf('@');
+        String local = (at >= 0 ? address.substring(0, at) : address).replace("<", "");
+        return SYSTEM_SENDERS.contains(local) || local.startsWith("owner-") || local.endsWith("-request")
+                || local.endsWith("-bounces");
+    }
+
+    private static boolean isAddressedTo(MimeMessage message, String aliasAddress) throws MessagingException {
+        // Bcc 或列表分发的邮件不在 To/Cc 中出现本地址，不回复
+        return contains(message.getHeader("To"), aliasAddress) || contains(message.getHeader("Cc"), aliasAddress);
+    }
+
+    private static boolean contains(String[] values, String address) {
+        if (values == null || address == null) {
+            return false;
+        }
+        String needle = address.toLowerCase(Locale.ROOT);
+        for (String value : values) {
+            if (value.toLowerCase(Locale.ROOT).contains(needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
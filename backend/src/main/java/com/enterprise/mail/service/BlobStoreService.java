@@ -0,0 +1,216 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.AttachmentBlob;
+import com.enterprise.mail.repository.AttachmentBlobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed store for attachment bytes.
+ *
+ * Each distinct SHA-256 is kept once under {@code blobs/ab/cd/<hash>} and reference
+ * counted in {@code attachment_blobs}. Unreferenced blobs are removed by a background
+ * collector after a grace period.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BlobStoreService {
+    
+    private final AttachmentBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${mail.attachments.storage-path:/var/mail/attachments}")
+    private String storageBasePath;
+    
+    // 释放后保留一段时间，避免正在进行的下载（sendfile 按文件名打开）读到已删除的文件
+    @Value("${mail.attachments.blob-grace-period-minutes:60}")
+    private long gracePeriodMinutes;
+    
+    private static final int GC_BATCH_SIZE = 500;
+    
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong referencedBytes = new AtomicLong();
+    
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("mail.attachments.stored.bytes", storedBytes, AtomicLong::get)
+                .description("Attachment bytes on disk after deduplication")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("mail.attachments.referenced.bytes", referencedBytes, AtomicLong::get)
+                .description("Attachment bytes as seen by users, before deduplication")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("mail.attachments.dedup.saved.bytes", this, s -> s.referencedBytes.get() - s.storedBytes.get())
+                .description("Bytes saved by storing identical attachments once")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Take a reference on the blob for {@code sha256}, moving the fully written temp file
+     * into place if the content is new or deleting it if the content is already stored.
+     *
+     * Must run in the transaction that persists the referencing row: the upsert locks the
+     * blob row until commit, so a concurrent collector either sees the new reference or
+     * has already removed the old file before this method checks for it. A file moved into
+     * place here is removed again if that transaction rolls back.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Path store(Path tempFile, String sha256, long size) throws IOException {
+        try {
+            blobRepository.addReference(sha256, size);
+            
+            Path blobFile = resolve(sha256);
+            if (Files.exists(blobFile)) {
+                Files.delete(tempFile);
+            } else {
+                Files.createDirectories(blobFile.getParent());
+                Files.move(tempFile, blobFile, StandardCopyOption.ATOMIC_MOVE);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == STATUS_ROLLED_BACK) {
+                            removeIfNoRow(sha256);
+                        }
+                    }
+                });
+            }
+            return blobFile;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+    
+    /**
+     * Drop one reference; the bytes are removed later by the collector
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(String sha256) {
+        if (blobRepository.releaseReference(sha256, new Date()) == 0) {
+            log.warn("Released blob {} that has no references", sha256);
+        }
+    }
+    
+    /**
+     * Whether a stored attachment path lives in the blob store (rather than the
+     * per-user layout used before deduplication)
+     */
+    public boolean isBlobPath(String storagePath) {
+        return storagePath != null && Paths.get(storagePath).startsWith(blobRoot());
+    }
+    
+    /**
+     * Remove unreferenced blobs whose grace period has passed
+     */
+    @Scheduled(fixedDelayString = "${mail.attachments.blob-gc-interval-ms:600000}", initialDelay = 60000)
+    public void collectUnreferencedBlobs() {
+        Date cutoff = new Date(System.currentTimeMillis() - gracePeriodMinutes * 60_000L);
+        long afterId = 0;
+        int removed = 0;
+        
+        List<AttachmentBlob> candidates;
+        do {
+            candidates = blobRepository.findUnreferenced(afterId, cutoff, PageRequest.of(0, GC_BATCH_SIZE));
+            for (AttachmentBlob blob : candidates) {
+                afterId = blob.getId();
+                try {
+                    if (removeIfUnreferenced(blob, cutoff)) {
+                        removed++;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Failed to remove blob {}, will retry: {}", blob.getSha256(), e.getMessage());
+                }
+            }
+        } while (candidates.size() == GC_BATCH_SIZE);
+        
+        if (removed > 0) {
+            log.info("Removed {} unreferenced attachment blobs", removed);
+        }
+        refreshMetrics();
+    }
+    
+    // Helper methods
+    
+    /**
+     * Delete the row and the file in one short transaction. The row lock is held while
+     * the file is unlinked, so an upload of the same content waits and then re-creates both.
+     */
+    private boolean removeIfUnreferenced(AttachmentBlob blob, Date cutoff) {
+        Boolean deleted = transactionTemplate.execute(status -> {
+            if (blobRepository.deleteIfUnreferenced(blob.getId(), cutoff) == 0) {
+                return false;
+            }
+            try {
+                Files.deleteIfExists(resolve(blob.getSha256()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(deleted);
+    }
+    
+    /**
+     * Delete the file of a blob whose inserting transaction rolled back, unless another
+     * upload of the same content has created the row meanwhile; the locking read waits for
+     * such an upload to commit or roll back first.
+     */
+    private void removeIfNoRow(String sha256) {
+        // afterCompletion 中原事务的资源仍绑定在线程上，必须另开新事务
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            requiresNew.executeWithoutResult(status -> {
+                if (blobRepository.lockBySha256(sha256).isEmpty()) {
+                    try {
+                        Files.deleteIfExists(resolve(sha256));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to remove blob {} after rollback: {}", sha256, e.getMessage());
+        }
+    }
+    
+    private void refreshMetrics() {
+        storedBytes.set(blobRepository.sumStoredBytes());
+        referencedBytes.set(blobRepository.sumReferencedBytes());
+    }
+    
+    private Path blobRoot() {
+        return Paths.get(storageBasePath, "blobs");
+    }
+    
+    private Path resolve(String sha256) {
+        return blobRoot().resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+}
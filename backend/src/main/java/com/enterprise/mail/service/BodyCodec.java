@@ -0,0 +1,99 @@
+package com.enterprise.mail.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encoding of stored message bodies: one format byte followed by either plain UTF-8
+ * or a zlib stream, optionally compressed against a preset dictionary.
+ */
+final class BodyCodec {
+    
+    private static final byte FORMAT_PLAIN = 0;
+    private static final byte FORMAT_DEFLATE = 1;
+    
+    // Below this size the zlib header and checksum outweigh any saving
+    private static final int MIN_COMPRESS_BYTES = 64;
+    
+    private BodyCodec() {
+    }
+    
+    static byte[] encode(String value, byte[] dictionary, int level) {
+        if (value == null) {
+            return null;
+        }
+        byte[] input = value.getBytes(StandardCharsets.UTF_8);
+        if (input.length >= MIN_COMPRESS_BYTES) {
+            byte[] compressed = deflate(input, dictionary, level);
+            if (compressed.length < input.length) {
+                return compressed;
+            }
+        }
+        byte[] plain = new byte[input.length + 1];
+        plain[0] = FORMAT_PLAIN;
+        System.arraycopy(input, 0, plain, 1, input.length);
+        return plain;
+    }
+    
+    static String decode(byte[] data, byte[] dictionary) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        if (data[0] == FORMAT_PLAIN) {
+            return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+        }
+        return new String(inflate(data, dictionary), StandardCharsets.UTF_8);
+    }
+    
+    private static byte[] deflate(byte[] input, byte[] dictionary, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            deflater.finish();
+            
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 3 + 16);
+            out.write(FORMAT_DEFLATE);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static byte[] inflate(byte[] data, byte[] dictionary) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new IllegalStateException("Body was compressed with a dictionary that is not available");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Truncated compressed body");
+                    }
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
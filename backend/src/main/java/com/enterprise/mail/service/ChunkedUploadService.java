@@ -0,0 +1,373 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dto.AttachmentDto;
+import com.enterprise.mail.dto.CreateUploadRequest;
+import com.enterprise.mail.dto.UploadSessionDto;
+import com.enterprise.mail.entity.Attachment;
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.UploadSession;
+import com.enterprise.mail.entity.User;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable chunked uploads.
+ *
+ * Chunks may arrive in any order; each is written at its offset into a staging file.
+ * The SHA-256 digest follows the contiguous prefix: an in-order chunk is hashed while it
+ * is written, and a chunk that closes a gap triggers hashing of the data that was waiting
+ * behind it. Completion renames the staging file into attachment storage.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class ChunkedUploadService {
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final AttachmentService attachmentService;
+    private final UserService userService;
+    private final EmailService emailService;
+
+    @Value("${mail.uploads.max-chunk-size:8388608}") // 8MB default
+    private long maxChunkSize;
+
+    @Value("${mail.uploads.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 摘要状态只保存在内存中；节点重启后会从暂存文件重新计算
+    private final Map<String, DigestState> digestStates = new ConcurrentHashMap<>();
+
+    /**
+     * Open an upload session
+     */
+    public UploadSessionDto createSession(CreateUploadRequest request, Long userId) throws IOException {
+        if (request.getTotalSize() > attachmentService.getMaxFileSize()) {
+            throw new BusinessException("File size exceeds maximum allowed: " + attachmentService.getMaxFileSize() + " bytes",
+                    HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+
+        User user = userService.findById(userId);
+        String uploadId = UUID.randomUUID().toString();
+        Path stagingFile = attachmentService.getStagingDirectory().resolve(uploadId + ".part");
+        Files.createFile(stagingFile);
+
+        UploadSession session = new UploadSession();
+        session.setUploadId(uploadId);
+        session.setFileName(request.getFileName());
+        session.setContentType(request.getContentType());
+        session.setTotalSize(request.getTotalSize());
+        session.setStagingPath(stagingFile.toString());
+        session.setExpiresAt(new Date(System.currentTimeMillis() + sessionTtlHours * 3600_000L));
+        session.setUser(user);
+        session = uploadSessionRepository.save(session);
+
+        log.info("Opened upload session {} for user {} ({} bytes)", uploadId, userId, request.getTotalSize());
+        return toDto(session);
+    }
+
+    /**
+     * Write one chunk at the given offset. Runs outside a transaction so no database
+     * connection is held while the chunk body is read from the client.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UploadSessionDto writeChunk(String uploadId, Long userId, long offset, long length, InputStream in) throws IOException {
+        UploadSession session = findOpenSession(uploadId, userId);
+
+        if (length <= 0 || length > maxChunkSize) {
+            throw new BusinessException("Chunk size must be between 1 and " + maxChunkSize + " bytes");
+        }
+        if (offset < 0 || offset + length > session.getTotalSize()) {
+            throw new BusinessException("Chunk [" + offset + ", " + (offset + length) + ") is outside the upload",
+                    HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        }
+
+        Path stagingFile = Paths.get(session.getStagingPath());
+        DigestState state = digestStates.computeIfAbsent(uploadId, id -> new DigestState());
+
+        synchronized (state) {
+            // 在锁内重新读取会话，拿到上一个分块保存后的版本，避免乐观锁冲突
+            session = findOpenSession(uploadId, userId);
+            TreeMap<Long, Long> ranges = parseRanges(session.getReceivedRanges());
+            boolean hashInline = offset == state.hashedUpTo;
+
+            try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long position = offset;
+                long remaining = length;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new BusinessException("Chunk ended after " + (length - remaining) + " of " + length + " bytes");
+                    }
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        position += channel.write(data, position);
+                    }
+                    if (hashInline) {
+                        state.digest.update(buffer, 0, read);
+                    }
+                    remaining -= read;
+                }
+            } catch (IOException | RuntimeException e) {
+                // A partially hashed chunk leaves the digest ahead of the recorded ranges
+                if (hashInline) {
+                    digestStates.remove(uploadId);
+                }
+                throw e;
+            }
+
+            if (hashInline) {
+                state.hashedUpTo = offset + length;
+            }
+            addRange(ranges, offset, offset + length);
+            catchUpDigest(state, ranges, stagingFile);
+
+            session.setReceivedRanges(formatRanges(ranges));
+            session.setReceivedBytes(ranges.entrySet().stream().mapToLong(r -> r.getValue() - r.getKey()).sum());
+            session = uploadSessionRepository.save(session);
+        }
+
+        return toDto(session);
+    }
+
+    /**
+     * Query upload progress
+     */
+    public UploadSessionDto getProgress(String uploadId, Long userId) {
+        return toDto(findSession(uploadId, userId));
+    }
+
+    /**
+     * Finalise: verify all bytes arrived, then move the staging file into attachment storage
+     *
+     * The session row stays locked until the transaction ends, so a second {@code complete} or an
+     * {@code abort} waits and then finds the session closed. A chunk racing completion fails its
+     * version check when it saves the ranges.
+     *
+     * @param draftId draft to attach to; a new empty draft is created when null
+     */
+    public AttachmentDto complete(String uploadId, Long userId, String expectedChecksum, Long draftId) throws IOException {
+        UploadSession session = lockOpenSession(uploadId, userId);
+        if (session.getReceivedBytes() < session.getTotalSize()) {
+            throw new BusinessException("Upload incomplete: " + session.getReceivedBytes() + " of "
+                    + session.getTotalSize() + " bytes received", HttpStatus.CONFLICT);
+        }
+
+        Path stagingFile = Paths.get(session.getStagingPath());
+        DigestState state = digestStates.computeIfAbsent(uploadId, id -> new DigestState());
+        String checksum;
+        synchronized (state) {
+            catchUpDigest(state, parseRanges(session.getReceivedRanges()), stagingFile);
+            checksum = HexFormat.of().formatHex(state.digest.digest());
+        }
+        digestStates.remove(uploadId);
+
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            throw new BusinessException("Checksum mismatch: expected " + expectedChecksum + " but received " + checksum,
+                    HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+
+        Email draft = emailService.attachmentDraft(userId, draftId);
+        Attachment attachment = attachmentService.saveStagedFile(stagingFile, session.getFileName(),
+                session.getContentType(), checksum, draft);
+        emailService.addAttachmentToDraft(draft);
+
+        session.setStatus(UploadSession.UploadStatus.COMPLETED);
+        uploadSessionRepository.save(session);
+
+        log.info("Completed upload session {} as attachment {}", uploadId, attachment.getId());
+        return attachmentService.toDto(attachment);
+    }
+
+    /**
+     * Abort an upload and discard its staging file
+     */
+    public void abort(String uploadId, Long userId) {
+        UploadSession session = lockOpenSession(uploadId, userId);
+        discard(session);
+    }
+
+    /**
+     * 清理过期的上传会话
+     */
+    @Scheduled(fixedDelayString = "${mail.uploads.cleanup-interval-ms:3600000}")
+    public void cleanupExpiredSessions() {
+        List<UploadSession> expired = uploadSessionRepository.findByStatusAndExpiresAtBefore(
+                UploadSession.UploadStatus.OPEN, new Date());
+        for (UploadSession session : expired) {
+            discard(session);
+        }
+        if (!expired.isEmpty()) {
+            log.info("Discarded {} expired upload sessions", expired.size());
+        }
+    }
+
+    // Helper methods
+
+    private void discard(UploadSession session) {
+        try {
+            Files.deleteIfExists(Paths.get(session.getStagingPath()));
+        } catch (IOException e) {
+            log.error("Failed to delete staging file: " + session.getStagingPath(), e);
+        }
+        digestStates.remove(session.getUploadId());
+        session.setStatus(UploadSession.UploadStatus.ABORTED);
+        uploadSessionRepository.save(session);
+    }
+
+    private UploadSession findSession(String uploadId, Long userId) {
+        return checkOwner(uploadSessionRepository.findByUploadId(uploadId), uploadId, userId);
+    }
+
+    private UploadSession findOpenSession(String uploadId, Long userId) {
+        return checkOpen(findSession(uploadId, userId));
+    }
+
+    private UploadSession lockOpenSession(String uploadId, Long userId) {
+        return checkOpen(checkOwner(uploadSessionRepository.lockByUploadId(uploadId), uploadId, userId));
+    }
+
+    private UploadSession checkOwner(Optional<UploadSession> found, String uploadId, Long userId) {
+        UploadSession session = found
+                .orElseThrow(() -> new BusinessException("Upload session not found: " + uploadId, HttpStatus.NOT_FOUND));
+        if (!session.getUser().getId().equals(userId)) {
+            throw new BusinessException("Access denied", HttpStatus.FORBIDDEN);
+        }
+        return session;
+    }
+
+    private UploadSession checkOpen(UploadSession session) {
+        if (session.getStatus() != UploadSession.UploadStatus.OPEN) {
+            throw new BusinessException("Upload session is " + session.getStatus(), HttpStatus.GONE);
+        }
+        return session;
+    }
+
+    /**
+     * Feed any received bytes directly after the hashed prefix into the digest
+     */
+    private void catchUpDigest(DigestState state, TreeMap<Long, Long> ranges, Path stagingFile) throws IOException {
+        Map.Entry<Long, Long> covering = ranges.floorEntry(state.hashedUpTo);
+        if (covering == null || covering.getValue() <= state.hashedUpTo) {
+            return;
+        }
+
+        long end = covering.getValue();
+        try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = state.hashedUpTo;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                buffer.flip();
+                state.digest.update(buffer);
+                position += read;
+            }
+            state.hashedUpTo = position;
+        }
+    }
+
+    private void addRange(TreeMap<Long, Long> ranges, long start, long end) {
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> next = ranges.ceilingEntry(start);
+        while (next != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+            next = ranges.ceilingEntry(start);
+        }
+        ranges.put(start, end);
+    }
+
+    private TreeMap<Long, Long> parseRanges(String value) {
+        TreeMap<Long, Long> ranges = new TreeMap<>();
+        if (value == null || value.isBlank()) {
+            return ranges;
+        }
+        for (String range : value.split(",")) {
+            int dash = range.indexOf('-');
+            ranges.put(Long.parseLong(range.substring(0, dash)), Long.parseLong(range.substring(dash + 1)));
+        }
+        return ranges;
+    }
+
+    private String formatRanges(TreeMap<Long, Long> ranges) {
+        StringBuilder sb = new StringBuilder();
+        ranges.forEach((start, end) -> {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(start).append('-').append(end);
+        });
+        return sb.toString();
+    }
+
+    private UploadSessionDto toDto(UploadSession session) {
+        UploadSessionDto dto = new UploadSessionDto();
+        dto.setUploadId(session.getUploadId());
+        dto.setFileName(session.getFileName());
+        dto.setContentType(session.getContentType());
+        dto.setTotalSize(session.getTotalSize());
+        dto.setReceivedBytes(session.getReceivedBytes());
+        List<String> ranges = new ArrayList<>();
+        parseRanges(session.getReceivedRanges()).forEach((start, end) -> ranges.add(start + "-" + end));
+        dto.setReceivedRanges(ranges);
+        dto.setComplete(session.getReceivedBytes().equals(session.getTotalSize()));
+        dto.setStatus(session.getStatus().name());
+        dto.setExpiresAt(session.getExpiresAt());
+        return dto;
+    }
+
+    /**
+     * Running digest over the contiguous prefix [0, hashedUpTo)
+     */
+    private static class DigestState {
+        private final MessageDigest digest;
+        private long hashedUpTo;
+
+        DigestState() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 algorithm not available", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.CompressionDictionary;
+import com.enterprise.mail.entity.Domain;
+import com.enterprise.mail.entity.EmailBody;
+import com.enterprise.mail.repository.CompressionDictionaryRepository;
+import com.enterprise.mail.repository.DomainRepository;
+import com.enterprise.mail.repository.EmailBodyRepository;
+import com.enterprise.mail.repository.EmailRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trains and caches per-domain preset dictionaries for body compression.
+ *
+ * A dictionary is built from lines that recur across a domain's recent mail
+ * (signatures, disclaimers, HTML templates), so even a short message can refer back
+ * to them instead of spelling them out.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CompressionDictionaryService {
+    
+    private final CompressionDictionaryRepository dictionaryRepository;
+    private final DomainRepository domainRepository;
+    private final EmailRepository emailRepository;
+    private final EmailBodyRepository emailBodyRepository;
+    
+    // deflate 的回溯窗口为 32KB，更大的字典没有意义
+    @Value("${mail.compression.dictionary-size:32768}")
+    private int dictionarySize;
+    
+    @Value("${mail.compression.dictionary-sample-size:300}")
+    private int sampleSize;
+    
+    @Value("${mail.compression.dictionary-max-age-days:7}")
+    private long maxAgeDays;
+    
+    private static final int MIN_LINE_LENGTH = 8;
+    private static final int MAX_SAMPLE_CHARS = 16 * 1024;
+    private static final int MIN_DICTIONARY_SIZE = 1024;
+    private static final int SAMPLE_BATCH_SIZE = 50;
+    
+    private final Map<String, CompressionDictionary> currentByDomain = new ConcurrentHashMap<>();
+    private final Map<Long, byte[]> dataById = new ConcurrentHashMap<>();
+    
+    /**
+     * Dictionary new bodies of the domain are compressed with, or null
+     */
+    public CompressionDictionary getCurrent(String domainName) {
+        return domainName != null ? currentByDomain.get(domainName.toLowerCase()) : null;
+    }
+    
+    /**
+     * Dictionary bytes by id; dictionaries never change, so they are cached forever
+     */
+    public byte[] getData(Long dictionaryId) {
+        if (dictionaryId == null) {
+            return null;
+        }
+        return dataById.computeIfAbsent(dictionaryId, id -> dictionaryRepository.findById(id)
+                .map(CompressionDictionary::getData)
+                .orElseThrow(() -> new IllegalStateException("Compression dictionary not found: " + id)));
+    }
+    
+    /**
+     * Pick up dictionaries trained elsewhere and retrain those that are missing or stale
+     */
+    @Scheduled(fixedDelayString = "${mail.compression.dictionary-refresh-ms:3600000}", initialDelay = 0)
+    public void refreshDictionaries() {
+        for (CompressionDictionary dictionary : dictionaryRepository.findLatestPerDomain()) {
+            currentByDomain.put(dictionary.getDomainName(), dictionary);
+            dataById.putIfAbsent(dictionary.getId(), dictionary.getData());
+        }
+        
+        LocalDateTime staleBefore = LocalDateTime.now().minusDays(maxAgeDays);
+        for (Domain domain : domainRepository.findAll()) {
+            String domainName = domain.getDomainName().toLowerCase();
+            CompressionDictionary current = currentByDomain.get(domainName);
+            if (current == null || current.getCreatedAt().isBefore(staleBefore)) {
+                try {
+                    train(domainName).ifPresent(trained -> {
+                        currentByDomain.put(domainName, trained);
+                        dataById.put(trained.getId(), trained.getData());
+                    });
+                } catch (RuntimeException e) {
+                    log.warn("Failed to train compression dictionary for {}: {}", domainName, e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Train a new dictionary version from the domain's most recent mail
+     */
+    public Optional<CompressionDictionary> train(String domainName) {
+        List<Long> emailIds = emailRepository.findRecentIdsByDomain(domainName, PageRequest.of(0, sampleSize));
+        if (emailIds.size() < 2) {
+            return Optional.empty();
+        }
+        
+        List<String> samples = new ArrayList<>();
+        long sampleBytes = 0;
+        // Load bodies in small batches; only a bounded prefix of each is kept as a sample
+        for (int from = 0; from < emailIds.size(); from += SAMPLE_BATCH_SIZE) {
+            List<Long> batch = emailIds.subList(from, Math.min(from + SAMPLE_BATCH_SIZE, emailIds.size()));
+            for (EmailBody body : emailBodyRepository.findByEmailIdIn(batch)) {
+                byte[] dictionary = getData(body.getDictionaryId());
+                for (byte[] data : new byte[][]{body.getTextData(), body.getHtmlData()}) {
+                    String value = BodyCodec.decode(data, dictionary);
+                    if (value != null) {
+                        String sample = value.length() > MAX_SAMPLE_CHARS ? value.substring(0, MAX_SAMPLE_CHARS) : value;
+                        samples.add(sample);
+                        sampleBytes += sample.length();
+                    }
+                }
+            }
+        }
+        
+        byte[] data = buildDictionary(samples);
+        if (data.length < MIN_DICTIONARY_SIZE) {
+            log.debug("Not enough shared content to train a dictionary for {}", domainName);
+            return Optional.empty();
+        }
+        
+        CompressionDictionary dictionary = new CompressionDictionary();
+        dictionary.setDomainName(domainName);
+        dictionary.setData(data);
+        dictionary.setSampleCount(samples.size());
+        dictionary.setSampleBytes(sampleBytes);
+        dictionary = dictionaryRepository.save(dictionary);
+        
+        log.info("Trained compression dictionary {} for {}: {} bytes from {} samples",
+                dictionary.getId(), domainName, data.length, samples.size());
+        return Optional.of(dictionary);
+    }
+    
+    // Helper methods
+    
+    /**
+     * Lines that occur in at least two samples, ranked by the bytes they would save.
+     * Deflate encodes nearer matches more cheaply, so the most valuable lines go last.
+     */
+    private byte[] buildDictionary(List<String> samples) {
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (String sample : samples) {
+            Set<String> seen = new HashSet<>();
+            for (String line : sample.split("\r?\n")) {
+                String trimmed = line.strip();
+                if (trimmed.length() >= MIN_LINE_LENGTH && seen.add(trimmed)) {
+                    documentFrequency.merge(trimmed, 1, Integer::sum);
+                }
+            }
+        }
+        
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : documentFrequency.entrySet()) {
+            if (entry.getValue() >= 2) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(
+                (long) (b.getValue() - 1) * b.getKey().length(),
+                (long) (a.getValue() - 1) * a.getKey().length()));
+        
+        List<byte[]> chosen = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            byte[] line = (candidate.getKey() + "\n").getBytes(StandardCharsets.UTF_8);
+            if (total + line.length > dictionarySize) {
+                continue;
+            }
+            chosen.add(line);
+            total += line.length;
+        }
+        Collections.reverse(chosen);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream(total);
+        chosen.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+}
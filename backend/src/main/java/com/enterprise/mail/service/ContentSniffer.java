@@ -0,0 +1,118 @@
+package com.enterprise.mail.service;
+
+/**
+ * Magic-number content type detection for attachment uploads.
+ *
+ * Only the first bytes of a stream are inspected, so sniffing can run inline
+ * while the upload is being written to disk.
+ */
+public final class ContentSniffer {
+
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    /**
+     * Bytes needed for {@link #sniff}
+     */
+    public static final int SNIFF_LENGTH = 16;
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * Detect a content type from the leading bytes, or null when unknown
+     */
+    public static String sniff(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0x25, 0x50, 0x44, 0x46)) {
+            return "application/pdf";
+        }
+        if (startsWith(head, length, 0, 0x89, 0x50, 0x4E, 0x47)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0, 0x47, 0x49, 0x46, 0x38)) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 0, 0x52, 0x49, 0x46, 0x46) && startsWith(head, length, 8, 0x57, 0x45, 0x42, 0x50)) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 0, 0x50, 0x4B, 0x03, 0x04)) {
+            return "application/zip";
+        }
+        if (startsWith(head, length, 0, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (startsWith(head, length, 0, 0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C)) {
+            return "application/x-7z-compressed";
+        }
+        if (startsWith(head, length, 0, 0x52, 0x61, 0x72, 0x21)) {
+            return "application/vnd.rar";
+        }
+        if (startsWith(head, length, 0, 0xD0, 0xCF, 0x11, 0xE0)) {
+            return "application/x-ole-storage";
+        }
+        if (startsWith(head, length, 4, 0x66, 0x74, 0x79, 0x70)) {
+            return "video/mp4";
+        }
+        if (startsWith(head, length, 0, 0x49, 0x44, 0x33)) {
+            return "audio/mpeg";
+        }
+        return null;
+    }
+
+    /**
+     * Reconcile the client-declared type with the sniffed one.
+     * A recognised signature wins, except that container formats (ZIP/OLE) keep a more
+     * specific declared type such as an Office document.
+     */
+    public static String resolve(String declared, String sniffed) {
+        boolean hasDeclared = declared != null && !declared.isBlank() && !OCTET_STREAM.equals(declared);
+        if (sniffed == null) {
+            return hasDeclared ? declared : OCTET_STREAM;
+        }
+        boolean container = "application/zip".equals(sniffed) || "application/x-ole-storage".equals(sniffed);
+        if (container && hasDeclared && declared.startsWith("application/")) {
+            return declared;
+        }
+        return sniffed;
+    }
+
+    /**
+     * Whether a content type is already compressed, so deflating it again only costs CPU
+     */
+    public static boolean isCompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        if (type.startsWith("image/")) {
+            // SVG and BMP are the common uncompressed image formats
+            return !type.startsWith("image/svg") && !type.equals("image/bmp");
+        }
+        return type.startsWith("video/")
+                || type.startsWith("audio/")
+                || type.equals("application/pdf")
+                || type.equals("application/zip")
+                || type.equals("application/gzip")
+                || type.equals("application/x-gzip")
+                || type.equals("application/x-7z-compressed")
+                || type.equals("application/vnd.rar")
+                || type.equals("application/x-bzip2")
+                || type.equals("application/x-xz")
+                || type.startsWith("application/vnd.openxmlformats-officedocument.")
+                || type.startsWith("application/vnd.oasis.opendocument.");
+    }
+    
+    private static boolean startsWith(byte[] head, int length, int offset, int... signature) {
+        if (length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,266 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dto.DeliveryActionEvent;
+import com.enterprise.mail.entity.EmailAlias;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.ratelimit.CounterStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.util.SharedFileInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forwards and vacation replies triggered by delivery.
+ *
+ * Delivery only publishes a {@link DeliveryActionEvent}; once the email is committed the
+ * work is queued on a small pool with a bounded queue. When the queue is full the actions
+ * are dropped and counted rather than run on the ingest thread, so a forwarding storm or a
+ * list blast costs delivery nothing.
+ *
+ * Both count against the sending limits of the alias, like mail its owner sends; over the
+ * limit they are dropped and counted as limited.
+ *
+ * Vacation replies go to each sender at most once per {@code mail.auto-reply.suppress-days}
+ * per alias. Each (alias, sender) pair is claimed in the shared {@link CounterStore} under a
+ * key that expires with the window, so no node answers a sender another node already did,
+ * and a restart does not answer everyone again. A reply that is limited or fails to send
+ * gives its claim back.
+ */
+@Slf4j
+@Service
+public class DeliveryActionService {
+
+    private final MailServerService mailServerService;
+    private final RawMessageService rawMessageService;
+    private final SendLimitService sendLimitService;
+    private final CounterStore counterStore;
+
+    private final Counter forwarded;
+    private final Counter replied;
+    private final Counter suppressed;
+    private final Counter dropped;
+    private final Counter limited;
+    private final Counter failed;
+
+    @Value("${mail.delivery-actions.threads:2}")
+    private int threads;
+
+    @Value("${mail.delivery-actions.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${mail.delivery-actions.max-forward-recipients:10}")
+    private int maxForwardRecipients;
+
+    @Value("${mail.auto-reply.suppress-days:7}")
+    private int suppressDays;
+
+    private static final String REPLY_KEY_PREFIX = "auto-reply:";
+
+    private ThreadPoolExecutor executor;
+
+    public DeliveryActionService(MailServerService mailServerService, RawMessageService rawMessageService,
+                                 SendLimitService sendLimitService, CounterStore counterStore,
+                                 MeterRegistry meterRegistry) {
+        this.mailServerService = mailServerService;
+        this.rawMessageService = rawMessageService;
+        this.sendLimitService = sendLimitService;
+        this.counterStore = counterStore;
+        this.forwarded = counter(meterRegistry, "forwarded");
+        this.replied = counter(meterRegistry, "replied");
+        this.suppressed = counter(meterRegistry, "suppressed");
+        this.dropped = counter(meterRegistry, "dropped");
+        this.limited = counter(meterRegistry, "limited");
+        this.failed = counter(meterRegistry, "failed");
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "DeliveryAction-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue the actions of a committed delivery; never blocks the delivering thread
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDelivered(DeliveryActionEvent event) {
+        try {
+            executor.execute(() -> run(event));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+            log.warn("Delivery action queue full, dropped forward/auto-reply for email {} to {}",
+                    event.getEmailId(), event.getAliasAddress());
+        }
+    }
+
+    // Helper methods
+
+    private void run(DeliveryActionEvent event) {
+        if (event.getForwardTo() != null && !event.getForwardTo().isEmpty()) {
+            forward(event);
+        }
+        if (event.isAutoReply()) {
+            String key = replyKey(event.getAliasId(), event.getSender());
+            if (counterStore.increment(key, 1, Duration.ofDays(Math.max(1, suppressDays))) > 1) {
+                suppressed.increment();
+            } else if (!reply(event)) {
+                // 没有发出的回复不占用抑制窗口，下一封来信还会回复
+                counterStore.delete(key);
+            }
+        }
+    }
+
+    private void forward(DeliveryActionEvent event) {
+        List<Address> recipients = new ArrayList<>();
+        for (String target : event.getForwardTo()) {
+            if (recipients.size() >= maxForwardRecipients) {
+                log.warn("Alias {} forwards to more than {} addresses, ignoring the rest",
+                        event.getAliasAddress(), maxForwardRecipients);
+                break;
+            }
+            try {
+                InternetAddress address = new InternetAddress(target.trim(), true);
+                if (!address.getAddress().equalsIgnoreCase(event.getAliasAddress())) {
+                    recipients.add(address);
+                }
+            } catch (AddressException e) {
+                log.warn("Invalid forward address '{}' on alias {}", target, event.getAliasAddress());
+            }
+        }
+        if (recipients.isEmpty() || event.getRawPath() == null) {
+            return;
+        }
+        EmailAlias alias = acquireLimit(event, "forward");
+        if (alias == null) {
+            return;
+        }
+
+        // The stored source is streamed from disk, not loaded into memory
+        try (SharedFileInputStream in = new SharedFileInputStream(rawMessageService.getRawFile(event.getRawPath()).toFile())) {
+            MimeMessage message = mailServerService.createMessage(in);
+            message.addHeader(AutoResponses.DELIVERED_TO_HEADER, event.getAliasAddress());
+            message.addHeader(AutoResponses.LOOP_HEADER, event.getAliasAddress());
+            mailServerService.relay(message, event.getAliasAddress(), recipients.toArray(new Address[0]));
+            forwarded.increment();
+            log.info("Forwarded email {} from {} to {}", event.getEmailId(), event.getAliasAddress(), recipients);
+        } catch (IOException | MessagingException | RuntimeException e) {
+            sendLimitService.release(alias.getUser(), alias);
+            failed.increment();
+            log.error("Failed to forward email {} from {}", event.getEmailId(), event.getAliasAddress(), e);
+        }
+    }
+
+    /**
+     * Send the vacation reply; false when it was limited or failed
+     */
+    private boolean reply(DeliveryActionEvent event) {
+        EmailAlias alias = acquireLimit(event, "auto-reply");
+        if (alias == null) {
+            return false;
+        }
+        try {
+            MimeMessage message = mailServerService.createMessage();
+            message.setFrom(new InternetAddress(event.getAliasAddress()));
+            message.setRecipient(Message.RecipientType.TO, new InternetAddress(event.getSender()));
+            String subject = event.getReplySubject();
+            if (subject == null || subject.isBlank()) {
+                subject = "Auto: " + (event.getSubject() != null ? event.getSubject() : "");
+            }
+            message.setSubject(subject, "UTF-8");
+            message.setSentDate(new Date());
+            if (event.getMessageId() != null) {
+                message.setHeader("In-Reply-To", event.getMessageId());
+                String references = event.getReferences() != null ? event.getReferences() + " " : "";
+                message.setHeader("References", references + event.getMessageId());
+            }
+            // RFC 3834: mark the reply as automatic so other responders leave it alone
+            message.setHeader("Auto-Submitted", "auto-replied");
+            message.setHeader("X-Auto-Response-Suppress", "All");
+            message.setHeader("Precedence", "bulk");
+            message.setText(event.getReplyMessage() != null ? event.getReplyMessage() : "", "UTF-8");
+
+            mailServerService.sendGenerated(message);
+            replied.increment();
+            log.info("Sent auto-reply from {} to {}", event.getAliasAddress(), event.getSender());
+            return true;
+        } catch (MessagingException | RuntimeException e) {
+            sendLimitService.release(alias.getUser(), alias);
+            failed.increment();
+            log.error("Failed to send auto-reply from {} to {}", event.getAliasAddress(), event.getSender(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Charge one message to the alias's sending limits; null when over the limit
+     */
+    private EmailAlias acquireLimit(DeliveryActionEvent event, String action) {
+        try {
+            return sendLimitService.acquireForAlias(event.getAliasId());
+        } catch (BusinessException e) {
+            limited.increment();
+            log.warn("Skipped {} of email {} from {}: {}", action, event.getEmailId(), event.getAliasAddress(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    private static String replyKey(Long aliasId, String sender) {
+        // FNV-1a 64 over the alias id and the lower-cased sender keeps the key short
+        long h = 0xcbf29ce484222325L ^ aliasId;
+        h *= 0x100000001b3L;
+        String normalized = sender.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < normalized.length(); i++) {
+            h ^= normalized.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return REPLY_KEY_PREFIX + aliasId + ":" + Long.toHexString(h);
+    }
+
+    private static Counter counter(MeterRegistry registry, String result) {
+        return Counter.builder("mail.delivery.actions")
+                .description("Forwards and vacation replies by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+}
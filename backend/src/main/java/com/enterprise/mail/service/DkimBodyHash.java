@@ -0,0 +1,123 @@
+package com.enterprise.mail.service;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Feeds the DKIM canonical form of a message body into a digest (RFC 6376 3.4.3, 3.4.4).
+ *
+ * Takes the whole message as it is written out, skips the header block and canonicalizes
+ * the body on the fly. Line breaks are held back until more content follows, so trailing
+ * empty lines disappear. Relaxed mode also turns whitespace runs inside a line into one
+ * space and drops whitespace at line ends; a relaxed empty body hashes as nothing, a
+ * simple one as a single CRLF. Not thread-safe.
+ */
+final class DkimBodyHash extends OutputStream {
+
+    private static final int CR = '\r';
+    private static final int LF = '\n';
+
+    private final MessageDigest digest;
+    private final boolean relaxed;
+    private final long limit;
+    private final byte[] chunk = new byte[8192];
+    private int chunkLength;
+    private long hashed;
+    private boolean inBody;
+    private int headerState;      // length of the CRLF CRLF prefix seen so far
+    private boolean pendingCr;
+    private boolean pendingSpace;
+    private int pendingLines;
+    private boolean hasContent;
+
+    /**
+     * @param limit hash only this many canonical body bytes (the l= tag), or -1 for all
+     */
+    DkimBodyHash(MessageDigest digest, boolean relaxed, long limit) {
+        this.digest = digest;
+        this.relaxed = relaxed;
+        this.limit = limit < 0 ? Long.MAX_VALUE : limit;
+    }
+
+    @Override
+    public void write(int b) {
+        b &= 0xff;
+        if (!inBody) {
+            // 查找头部结束处的空行
+            boolean expected = (headerState % 2 == 0) ? b == CR : b == LF;
+            headerState = expected ? headerState + 1 : (b == CR ? 1 : 0);
+            inBody = headerState == 4;
+            return;
+        }
+
+        if (pendingCr) {
+            pendingCr = false;
+            if (b == LF) {
+                endLine();
+                return;
+            }
+            content(CR);
+        }
+        if (b == CR) {
+            pendingCr = true;
+        } else if (b == LF) {
+            endLine();
+        } else if (relaxed && (b == ' ' || b == '\t')) {
+            pendingSpace = true;
+        } else {
+            content(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            write(bytes[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pendingCr) {
+            pendingCr = false;
+            content(CR);
+        }
+        if (hasContent || !relaxed) {
+            emit(CR);
+            emit(LF);
+        }
+        digest.update(chunk, 0, chunkLength);
+        chunkLength = 0;
+    }
+
+    // Helper methods
+
+    private void endLine() {
+        pendingSpace = false;
+        pendingLines++;
+    }
+
+    private void content(int b) {
+        for (; pendingLines > 0; pendingLines--) {
+            emit(CR);
+            emit(LF);
+        }
+        if (pendingSpace) {
+            emit(' ');
+            pendingSpace = false;
+        }
+        emit(b);
+        hasContent = true;
+    }
+
+    private void emit(int b) {
+        if (hashed++ >= limit) {
+            return;
+        }
+        if (chunkLength == chunk.length) {
+            digest.update(chunk, 0, chunkLength);
+            chunkLength = 0;
+        }
+        chunk[chunkLength++] = (byte) b;
+    }
+}
@@ -0,0 +1,262 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.dto.DkimBenchmarkDto;
+import com.enterprise.mail.entity.Domain;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.DomainRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DKIM signing of outbound mail.
+ *
+ * Each domain's private key is parsed once and kept with the domain row's version; the row
+ * is re-read at most every {@code mail.dkim.key-refresh-seconds}, and the key is parsed again
+ * only when the version moved. Mail from domains without a selector and key goes out unsigned.
+ */
+@Slf4j
+@Service
+public class DkimService {
+
+    private final MailServerConfig mailServerConfig;
+    private final DomainRepository domainRepository;
+    private final Timer signTimer;
+
+    @Value("${mail.dkim.signed-headers:from,to,cc,subject,date,message-id,reply-to,in-reply-to,references,mime-version,content-type,content-transfer-encoding}")
+    private List<String> signedHeaders;
+
+    @Value("${mail.dkim.key-refresh-seconds:60}")
+    private long keyRefreshSeconds;
+
+    @Value("${mail.dkim.benchmark.max-messages:10000}")
+    private int maxBenchmarkMessages;
+
+    private final Map<String, CachedSigner> signers = new ConcurrentHashMap<>();
+
+    // signer 为 null 表示该域未配置密钥
+    private record CachedSigner(Long version, DkimSigner signer, long checkedAt) {
+    }
+
+    public DkimService(MailServerConfig mailServerConfig, DomainRepository domainRepository,
+                       MeterRegistry meterRegistry) {
+        this.mailServerConfig = mailServerConfig;
+        this.domainRepository = domainRepository;
+        this.signTimer = Timer.builder("mail.dkim.sign")
+                .description("Time to DKIM-sign an outbound message, body hash included")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Add a DKIM-Signature header for the From domain; the message's headers must be final
+     * (saveChanges done) and it must be sent without another saveChanges afterwards
+     *
+     * @return true when the message was signed
+     */
+    public boolean sign(MimeMessage message) throws MessagingException {
+        if (!mailServerConfig.getSecurity().isDkimEnabled()) {
+            return false;
+        }
+        String domain = fromDomain(message);
+        DkimSigner signer = domain != null ? getSigner(domain) : null;
+        if (signer == null) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            message.addHeader("DKIM-Signature", signer.sign(message));
+            return true;
+        } catch (GeneralSecurityException | IOException e) {
+            // Unsigned mail is still deliverable; a broken key must not stop sending
+            log.error("DKIM signing failed for domain {}", domain, e);
+            return false;
+        } finally {
+            signTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Sign synthetic messages in parallel and report the throughput, to size send workers.
+     * Uses the domain's own key when it has one, otherwise a throwaway 2048-bit key.
+     */
+    public DkimBenchmarkDto benchmark(String domainName, int messages, int bodyBytes, int threads) {
+        if (messages < 1 || messages > maxBenchmarkMessages) {
+            throw new BusinessException("messages must be between 1 and " + maxBenchmarkMessages);
+        }
+        long maxBody = mailServerConfig.getStorage().getMaxMessageSize();
+        if (bodyBytes < 0 || bodyBytes > maxBody) {
+            throw new BusinessException("bodyBytes must be between 0 and " + maxBody);
+        }
+        int workers = Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors() * 2));
+
+        String domain = domainName != null ? domainName.toLowerCase(Locale.ROOT)
+                : mailServerConfig.getDomain().getDefaultDomain();
+        DkimSigner signer = getSigner(domain);
+        boolean domainKey = signer != null;
+        PrivateKey key;
+        try {
+            key = domainKey ? null : ephemeralKey();
+        } catch (GeneralSecurityException e) {
+            throw new BusinessException("Cannot create a benchmark key: " + e.getMessage(),
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        if (!domainKey) {
+            signer = new DkimSigner(domain, "benchmark", key, signedHeaders);
+        }
+
+        DkimSigner benchmarkSigner = signer;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<MimeMessage> samples = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                samples.add(sampleMessage(domain, bodyBytes));
+            }
+            // 预热，避免把 JIT 编译时间算进结果
+            benchmarkSigner.sign(samples.get(0));
+
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < workers; i++) {
+                MimeMessage sample = samples.get(i);
+                int share = messages / workers + (i < messages % workers ? 1 : 0);
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < share; n++) {
+                        benchmarkSigner.sign(sample);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            double perSecond = messages * 1e9 / elapsed;
+            DkimBenchmarkDto result = DkimBenchmarkDto.builder()
+                    .domain(domain)
+                    .domainKey(domainKey)
+                    .keyBits(domainKey ? null : ((RSAKey) key).getModulus().bitLength())
+                    .bodyBytes(bodyBytes)
+                    .threads(workers)
+                    .messages(messages)
+                    .elapsedMillis(elapsed / 1_000_000)
+                    .messagesPerSecond(perSecond)
+                    .messagesPerSecondPerThread(perSecond / workers)
+                    .averageMicros(elapsed / 1000.0 * workers / messages)
+                    .build();
+            log.info("DKIM benchmark: {} messages of {} bytes on {} threads, {} msg/s",
+                    messages, bodyBytes, workers, Math.round(perSecond));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("Benchmark interrupted", HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (Exception e) {
+            throw new BusinessException("Benchmark failed: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Helper methods
+
+    private DkimSigner getSigner(String domain) {
+        long now = System.currentTimeMillis();
+        CachedSigner cached = signers.get(domain);
+        if (cached != null && now - cached.checkedAt() < keyRefreshSeconds * 1000) {
+            return cached.signer();
+        }
+
+        Optional<Domain> row = domainRepository.findByDomainName(domain);
+        Long version = row.map(Domain::getVersion).orElse(null);
+        if (cached != null && Objects.equals(cached.version(), version)) {
+            signers.put(domain, new CachedSigner(version, cached.signer(), now));
+            return cached.signer();
+        }
+
+        DkimSigner signer = row.map(this::createSigner).orElse(null);
+        signers.put(domain, new CachedSigner(version, signer, now));
+        return signer;
+    }
+
+    private DkimSigner createSigner(Domain domain) {
+        String selector = domain.getDkimSelector();
+        String privateKey = domain.getDkimPrivateKey();
+        if (selector == null || selector.isBlank() || privateKey == null || privateKey.isBlank()) {
+            return null;
+        }
+        try {
+            return new DkimSigner(domain.getDomainName(), selector.trim(),
+                    DkimSigner.parseKey(privateKey), signedHeaders);
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            log.error("Invalid DKIM private key for domain {}, sending unsigned", domain.getDomainName(), e);
+            return null;
+        }
+    }
+
+    private String fromDomain(MimeMessage message) throws MessagingException {
+        Address[] from = message.getFrom();
+        if (from == null || from.length == 0 || !(from[0] instanceof InternetAddress address)) {
+            return null;
+        }
+        String email = address.getAddress();
+        int at = email != null ? email.lastIndexOf('@') : -1;
+        return at >= 0 ? email.substring(at + 1).toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static PrivateKey ephemeralKey() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair().getPrivate();
+    }
+
+    private static MimeMessage sampleMessage(String domain, int bodyBytes) throws MessagingException {
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setFrom(new InternetAddress("benchmark@" + domain));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse("recipient@" + domain));
+        message.setSubject("DKIM benchmark", "UTF-8");
+        message.setSentDate(new Date());
+
+        // Plain text lines of 76 characters, like a typical encoded body
+        StringBuilder body = new StringBuilder(bodyBytes + 80);
+        char[] line = new char[76];
+        Arrays.fill(line, 'x');
+        while (body.length() < bodyBytes) {
+            body.append(line, 0, Math.min(line.length, bodyBytes - body.length())).append("\r\n");
+        }
+        message.setText(body.toString(), "UTF-8");
+        message.saveChanges();
+        return message;
+    }
+}
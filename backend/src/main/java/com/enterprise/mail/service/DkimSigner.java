@@ -0,0 +1,141 @@
+package com.enterprise.mail.service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * rsa-sha256 DKIM signer with relaxed/relaxed canonicalization (RFC 6376) for one domain key.
+ *
+ * The body hash is computed by writing the message through {@link DkimBodyHash} straight
+ * into the digest: no copy of the message is kept, and file-backed attachments are read and
+ * encoded on the fly exactly as they are when the message goes out afterwards. Immutable;
+ * safe to share between threads.
+ */
+final class DkimSigner {
+
+    private final String domain;
+    private final String selector;
+    private final PrivateKey key;
+    private final List<String> signedHeaders;
+
+    DkimSigner(String domain, String selector, PrivateKey key, List<String> signedHeaders) {
+        this.domain = domain;
+        this.selector = selector;
+        this.key = key;
+        this.signedHeaders = signedHeaders;
+    }
+
+    String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Parse a PEM or bare base64 RSA key, either PKCS#8 or PKCS#1
+     */
+    static PrivateKey parseKey(String text) throws GeneralSecurityException {
+        boolean pkcs1 = text.contains("BEGIN RSA PRIVATE KEY");
+        String base64 = text.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        byte[] der = Base64.getDecoder().decode(base64);
+        if (pkcs1) {
+            der = wrapPkcs1(der);
+        }
+        return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(der));
+    }
+
+    /**
+     * Value of the DKIM-Signature header for a message whose headers are final
+     */
+    String sign(MimeMessage message) throws MessagingException, IOException, GeneralSecurityException {
+        // 1. Body hash: stream the whole message, canonicalizing everything after the header block
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (DkimBodyHash out = new DkimBodyHash(digest, true, -1)) {
+            message.writeTo(out);
+        }
+        String bodyHash = Base64.getEncoder().encodeToString(digest.digest());
+
+        // 2. Headers, each signed once in its last occurrence
+        List<String> names = new ArrayList<>();
+        StringBuilder data = new StringBuilder();
+        for (String name : signedHeaders) {
+            String[] values = message.getHeader(name);
+            if (values != null && values.length > 0) {
+                names.add(name);
+                data.append(canonicalHeader(name, values[values.length - 1])).append("\r\n");
+            }
+        }
+
+        String value = "v=1; a=rsa-sha256; c=relaxed/relaxed; d=" + domain + "; s=" + selector
+                + "; t=" + System.currentTimeMillis() / 1000
+                + "; h=" + String.join(":", names) + "; bh=" + bodyHash + "; b=";
+        data.append(canonicalHeader("DKIM-Signature", value));
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(key);
+        signature.update(data.toString().getBytes(StandardCharsets.UTF_8));
+        return value + Base64.getEncoder().encodeToString(signature.sign());
+    }
+
+    /**
+     * Relaxed header canonicalization: lower-case name, unfolded value, whitespace runs as one space
+     */
+    static String canonicalHeader(String name, String value) {
+        String unfolded = value.replaceAll("\r?\n", "");
+        return name.trim().toLowerCase(Locale.ROOT) + ":" + unfolded.replaceAll("[ \t]+", " ").trim();
+    }
+
+    // Helper methods
+
+    /**
+     * PKCS#8 PrivateKeyInfo around a PKCS#1 RSAPrivateKey
+     */
+    private static byte[] wrapPkcs1(byte[] pkcs1) {
+        byte[] algorithm = {
+                0x02, 0x01, 0x00,                                          // version 0
+                0x30, 0x0d, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48, (byte) 0x86,  // rsaEncryption OID
+                (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00            // NULL parameters
+        };
+        byte[] octets = concat(new byte[]{0x04}, derLength(pkcs1.length), pkcs1);
+        byte[] content = concat(algorithm, octets);
+        return concat(new byte[]{0x30}, derLength(content.length), content);
+    }
+
+    private static byte[] derLength(int length) {
+        if (length < 0x80) {
+            return new byte[]{(byte) length};
+        }
+        if (length < 0x100) {
+            return new byte[]{(byte) 0x81, (byte) length};
+        }
+        if (length < 0x10000) {
+            return new byte[]{(byte) 0x82, (byte) (length >> 8), (byte) length};
+        }
+        return new byte[]{(byte) 0x83, (byte) (length >> 16), (byte) (length >> 8), (byte) length};
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,234 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dns.DnsResolver;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Verifies the DKIM-Signature headers of a received message (RFC 6376, rsa-sha256 only,
+ * as RFC 8301 retires rsa-sha1).
+ *
+ * Each signature's public key is fetched from {@code <s>._domainkey.<d>} through the
+ * resolver. Body hashes are computed by streaming the message through {@link DkimBodyHash},
+ * once per canonicalization and length limit. Header lines are taken exactly as received.
+ */
+final class DkimVerifier {
+
+    private static final int MIN_KEY_BITS = 1024;
+
+    private final DnsResolver resolver;
+
+    /**
+     * Outcome of one signature: the signing domain, whether it verified, and why not
+     *
+     * @param temporary the failure was a DNS error and may go away on retry
+     */
+    record Result(String domain, boolean pass, boolean temporary, String reason) {
+    }
+
+    DkimVerifier(DnsResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Results for the first {@code maxSignatures} signatures; empty when the message is unsigned
+     */
+    List<Result> verify(MimeMessage message, int maxSignatures) throws MessagingException {
+        List<String> headerLines = Collections.list(message.getAllHeaderLines());
+        List<Result> results = new ArrayList<>();
+        Map<String, String> bodyHashes = new HashMap<>();
+        for (String line : headerLines) {
+            if (results.size() >= maxSignatures) {
+                break;
+            }
+            if (headerName(line).equalsIgnoreCase("DKIM-Signature")) {
+                results.add(verifySignature(message, headerLines, line, bodyHashes));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * tag=value list; whitespace inside values is removed, as in base64 and h= lists
+     */
+    static Map<String, String> parseTags(String text) {
+        Map<String, String> tags = new LinkedHashMap<>();
+        for (String part : text.split(";")) {
+            int equals = part.indexOf('=');
+            if (equals > 0) {
+                String name = part.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+                tags.putIfAbsent(name, part.substring(equals + 1).replaceAll("\\s+", ""));
+            }
+        }
+        return tags;
+    }
+
+    // Helper methods
+
+    private Result verifySignature(MimeMessage message, List<String> headerLines, String signatureLine,
+                                   Map<String, String> bodyHashes) {
+        Map<String, String> tags = parseTags(headerValue(signatureLine));
+        String domain = tags.getOrDefault("d", "").toLowerCase(Locale.ROOT);
+        String selector = tags.get("s");
+        if (!"1".equals(tags.get("v")) || domain.isEmpty() || selector == null || !tags.containsKey("b")
+                || !tags.containsKey("bh") || !tags.containsKey("h")) {
+            return fail(domain, "missing required tag");
+        }
+        if (!"rsa-sha256".equalsIgnoreCase(tags.get("a"))) {
+            return fail(domain, "unsupported algorithm " + tags.get("a"));
+        }
+        List<String> signedHeaders = new ArrayList<>();
+        for (String name : tags.get("h").split(":")) {
+            signedHeaders.add(name.trim().toLowerCase(Locale.ROOT));
+        }
+        if (!signedHeaders.contains("from")) {
+            return fail(domain, "From is not signed");
+        }
+        String identity = tags.get("i");
+        if (identity != null) {
+            String identityDomain = identity.substring(identity.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+            if (!identityDomain.equals(domain) && !identityDomain.endsWith("." + domain)) {
+                return fail(domain, "i= is not within d=");
+            }
+        }
+        if (tags.containsKey("x")) {
+            try {
+                if (Long.parseLong(tags.get("x")) < System.currentTimeMillis() / 1000) {
+                    return fail(domain, "signature expired");
+                }
+            } catch (NumberFormatException e) {
+                return fail(domain, "invalid x= tag");
+            }
+        }
+        String[] canonicalization = tags.getOrDefault("c", "simple/simple").toLowerCase(Locale.ROOT).split("/");
+        boolean relaxedHeaders = canonicalization[0].equals("relaxed");
+        boolean relaxedBody = canonicalization.length > 1 && canonicalization[1].equals("relaxed");
+
+        // 1. Public key
+        PublicKey key;
+        try {
+            DnsResolver.Answer answer = resolver.lookup(selector + "._domainkey." + domain, DnsResolver.Type.TXT);
+            if (answer.isEmpty()) {
+                return fail(domain, "no key for selector " + selector);
+            }
+            Map<String, String> record = parseTags(answer.records().get(0));
+            String keyData = record.get("p");
+            if (keyData == null || keyData.isEmpty()) {
+                return fail(domain, "key revoked");
+            }
+            if (record.containsKey("k") && !record.get("k").equalsIgnoreCase("rsa")) {
+                return fail(domain, "unsupported key type " + record.get("k"));
+            }
+            key = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(keyData)));
+            if (((RSAPublicKey) key).getModulus().bitLength() < MIN_KEY_BITS) {
+                return fail(domain, "key too short");
+            }
+        } catch (IOException e) {
+            return new Result(domain, false, true, "key lookup failed: " + e.getMessage());
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return fail(domain, "invalid key");
+        }
+
+        try {
+            // 2. Body hash
+            long limit = tags.containsKey("l") ? Long.parseLong(tags.get("l")) : -1;
+            String bodyKey = relaxedBody + "/" + limit;
+            String bodyHash = bodyHashes.get(bodyKey);
+            if (bodyHash == null) {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                try (DkimBodyHash out = new DkimBodyHash(digest, relaxedBody, limit)) {
+                    message.writeTo(out);
+                }
+                bodyHash = Base64.getEncoder().encodeToString(digest.digest());
+                bodyHashes.put(bodyKey, bodyHash);
+            }
+            if (!bodyHash.equals(tags.get("bh"))) {
+                return fail(domain, "body hash mismatch");
+            }
+
+            // 3. Header signature: named headers from the bottom up, then the signature itself without b=
+            StringBuilder data = new StringBuilder();
+            Map<String, Integer> used = new HashMap<>();
+            for (String name : signedHeaders) {
+                int skip = used.merge(name, 1, Integer::sum);
+                String line = findFromBottom(headerLines, name, skip);
+                if (line != null) {
+                    data.append(canonicalize(line, relaxedHeaders)).append("\r\n");
+                }
+            }
+            data.append(canonicalize(stripSignature(signatureLine), relaxedHeaders));
+
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initVerify(key);
+            signature.update(data.toString().getBytes(StandardCharsets.UTF_8));
+            if (!signature.verify(Base64.getMimeDecoder().decode(tags.get("b")))) {
+                return fail(domain, "signature mismatch");
+            }
+            return new Result(domain, true, false, null);
+        } catch (NumberFormatException e) {
+            return fail(domain, "invalid l= tag");
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return fail(domain, "invalid signature");
+        } catch (IOException | MessagingException e) {
+            return fail(domain, "unreadable message");
+        }
+    }
+
+    private static Result fail(String domain, String reason) {
+        return new Result(domain, false, false, reason);
+    }
+
+    /**
+     * The n-th occurrence of a header counting from the bottom, or null when there are fewer
+     */
+    private static String findFromBottom(List<String> headerLines, String name, int n) {
+        for (int i = headerLines.size() - 1; i >= 0; i--) {
+            if (headerName(headerLines.get(i)).equalsIgnoreCase(name) && --n == 0) {
+                return headerLines.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static String canonicalize(String line, boolean relaxed) {
+        if (!relaxed) {
+            return line;
+        }
+        return DkimSigner.canonicalHeader(headerName(line), headerValue(line));
+    }
+
+    /**
+     * The signature header with the value of its b= tag emptied, keeping everything else
+     */
+    private static String stripSignature(String line) {
+        return line.replaceFirst("(^[^:]*:|;)([ \\t\\r\\n]*b[ \\t\\r\\n]*=)[^;]*", "$1$2");
+    }
+
+    private static String headerName(String line) {
+        int colon = line.indexOf(':');
+        return colon > 0 ? line.substring(0, colon).trim() : "";
+    }
+
+    private static String headerValue(String line) {
+        int colon = line.indexOf(':');
+        return colon >= 0 ? line.substring(colon + 1) : "";
+    }
+}
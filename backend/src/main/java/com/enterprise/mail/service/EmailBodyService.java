@@ -0,0 +1,280 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.CompressionDictionary;
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.EmailBody;
+import com.enterprise.mail.entity.EmailSearchText;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.EmailBodyRepository;
+import com.enterprise.mail.repository.EmailRepository;
+import com.enterprise.mail.repository.EmailSearchTextRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Compressed storage for email text/HTML bodies.
+ *
+ * Bodies live in {@code email_bodies}, deflated against the owning domain's trained
+ * dictionary, and are only inflated when a body is actually read. A short plain-text
+ * preview stays on the email row for listings, and the lower-cased text that follows it,
+ * up to a bounded prefix, is kept in {@code email_search_text} for search. Bodies of cold
+ * mail are read from their pack instead.
+ */
+@Slf4j
+@Service
+@Transactional
+public class EmailBodyService {
+    
+    private final EmailBodyRepository emailBodyRepository;
+    private final EmailRepository emailRepository;
+    private final EmailSearchTextRepository searchTextRepository;
+    private final CompressionDictionaryService dictionaryService;
+    private final MessagePackService messagePackService;
+    
+    private final DistributionSummary compressionRatio;
+    private final Counter originalBytes;
+    private final Counter storedBytes;
+    private final Timer decompressTimer;
+    
+    @Value("${mail.compression.level:6}")
+    private int compressionLevel;
+    
+    @Value("${mail.compression.migration-batch-size:200}")
+    private int migrationBatchSize;
+    
+    // 可搜索的正文前缀长度（字符），超出部分不参与搜索；不大于摘要长度时只能搜索摘要
+    @Value("${mail.compression.search-prefix-chars:512}")
+    private int searchPrefixChars;
+    
+    private static final int PREVIEW_LENGTH = 200;
+    
+    // 搜索文本从摘要末尾前这么多字符开始，跨越摘要边界的词仍能匹配
+    private static final int SEARCH_OVERLAP = 64;
+    
+    // 旧数据迁移的游标，批次为空时从头开始
+    private volatile long migrationCursor = 0;
+    
+    public EmailBodyService(EmailBodyRepository emailBodyRepository, EmailRepository emailRepository,
+                            EmailSearchTextRepository searchTextRepository,
+                            CompressionDictionaryService dictionaryService, MessagePackService messagePackService,
+                            MeterRegistry meterRegistry) {
+        this.emailBodyRepository = emailBodyRepository;
+        this.emailRepository = emailRepository;
+        this.searchTextRepository = searchTextRepository;
+        this.dictionaryService = dictionaryService;
+        this.messagePackService = messagePackService;
+        this.compressionRatio = DistributionSummary.builder("mail.body.compression.ratio")
+                .description("Original to stored size of compressed message bodies")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.originalBytes = Counter.builder("mail.body.original.bytes")
+                .description("Uncompressed body bytes written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.storedBytes = Counter.builder("mail.body.stored.bytes")
+                .description("Body bytes written after compression")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.decompressTimer = Timer.builder("mail.body.decompress")
+                .description("Time to load and inflate a message body")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+    
+    /**
+     * Compress and store the body currently set on the email. The email must already have an id.
+     */
+    public void store(Email email) {
+        String text = email.getContentText();
+        String html = email.getContentHtml();
+        String plain = plainText(text, html);
+        email.setPreview(plain.length() > PREVIEW_LENGTH ? plain.substring(0, PREVIEW_LENGTH) : plain);
+        storeSearchText(email.getId(), plain);
+        
+        if (text == null && html == null) {
+            emailBodyRepository.findById(email.getId()).ifPresent(emailBodyRepository::delete);
+            return;
+        }
+        
+        CompressionDictionary dictionary = dictionaryService.getCurrent(domainOf(email));
+        byte[] dictionaryData = dictionary != null ? dictionary.getData() : null;
+        
+        EmailBody body = emailBodyRepository.findById(email.getId()).orElseGet(EmailBody::new);
+        body.setEmailId(email.getId());
+        body.setDictionaryId(dictionary != null ? dictionary.getId() : null);
+        body.setTextData(BodyCodec.encode(text, dictionaryData, compressionLevel));
+        body.setHtmlData(BodyCodec.encode(html, dictionaryData, compressionLevel));
+        
+        long original = utf8Length(text) + utf8Length(html);
+        long stored = length(body.getTextData()) + length(body.getHtmlData());
+        body.setOriginalBytes(original);
+        body.setStoredBytes(stored);
+        emailBodyRepository.save(body);
+        
+        originalBytes.increment(original);
+        storedBytes.increment(stored);
+        if (stored > 0) {
+            compressionRatio.record((double) original / stored);
+        }
+    }
+    
+    /**
+     * Inflate the stored body into the email's content fields, if not already present
+     */
+    @Transactional(readOnly = true)
+    public void load(Email email) {
+        if (email.getContentText() != null || email.getContentHtml() != null) {
+            return;
+        }
+        if (email.getLegacyContentText() != null || email.getLegacyContentHtml() != null) {
+            email.setContentText(email.getLegacyContentText());
+            email.setContentHtml(email.getLegacyContentHtml());
+            return;
+        }
+        
+        decompressTimer.record(() -> {
+            Optional<EmailBody> stored = emailBodyRepository.findById(email.getId());
+            if (stored.isPresent()) {
+                decode(email, stored.get().getDictionaryId(), stored.get().getTextData(), stored.get().getHtmlData());
+            } else if (email.getPackId() != null) {
+                // Cold message: seek into its pack
+                try {
+                    messagePackService.readBody(email.getPackId(), email.getId()).ifPresent(packed ->
+                            decode(email, packed.dictionaryId(), packed.textData(), packed.htmlData()));
+                } catch (IOException e) {
+                    log.error("Failed to read archived body of email {}", email.getId(), e);
+                    throw new BusinessException("Failed to read archived message", HttpStatus.INTERNAL_SERVER_ERROR);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Load the bodies of several emails, fetching stored rows with one query
+     */
+    @Transactional(readOnly = true)
+    public void loadAll(List<Email> emails) {
+        List<Long> ids = emails.stream()
+                .filter(email -> email.getContentText() == null && email.getContentHtml() == null)
+                .map(Email::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, EmailBody> bodies = emailBodyRepository.findByEmailIdIn(ids).stream()
+                .collect(Collectors.toMap(EmailBody::getEmailId, body -> body));
+        for (Email email : emails) {
+            EmailBody body = bodies.get(email.getId());
+            if (body != null && email.getContentText() == null && email.getContentHtml() == null) {
+                decompressTimer.record(() -> decode(email, body.getDictionaryId(), body.getTextData(), body.getHtmlData()));
+            } else {
+                load(email);
+            }
+        }
+    }
+    
+    /**
+     * Move bodies of mail stored before compression out of the emails table, one small batch per run
+     */
+    @Scheduled(fixedDelayString = "${mail.compression.migration-interval-ms:60000}", initialDelay = 120000)
+    public void migrateLegacyBodies() {
+        List<Email> emails = emailRepository.findWithLegacyBody(migrationCursor, PageRequest.of(0, migrationBatchSize));
+        if (emails.isEmpty()) {
+            migrationCursor = 0;
+            return;
+        }
+        
+        for (Email email : emails) {
+            email.setContentText(email.getLegacyContentText());
+            email.setContentHtml(email.getLegacyContentHtml());
+            store(email);
+            email.setLegacyContentText(null);
+            email.setLegacyContentHtml(null);
+            migrationCursor = email.getId();
+        }
+        log.info("Compressed {} legacy message bodies (up to email {})", emails.size(), migrationCursor);
+    }
+    
+    // Helper methods
+    
+    private void decode(Email email, Long dictionaryId, byte[] textData, byte[] htmlData) {
+        byte[] dictionary = dictionaryService.getData(dictionaryId);
+        email.setContentText(BodyCodec.decode(textData, dictionary));
+        email.setContentHtml(BodyCodec.decode(htmlData, dictionary));
+    }
+    
+    private String domainOf(Email email) {
+        if (email.getAlias() != null && email.getAlias().getDomain() != null) {
+            return email.getAlias().getDomain().getDomainName();
+        }
+        String address = email.getUser() != null ? email.getUser().getEmail() : null;
+        return address != null && address.contains("@") ? address.substring(address.indexOf('@') + 1) : null;
+    }
+    
+    /**
+     * Keep the part of the searchable prefix that the preview does not already cover
+     */
+    private void storeSearchText(Long emailId, String plain) {
+        int end = Math.min(plain.length(), searchPrefixChars);
+        if (end <= PREVIEW_LENGTH) {
+            searchTextRepository.findById(emailId).ifPresent(searchTextRepository::delete);
+            return;
+        }
+        EmailSearchText searchText = searchTextRepository.findById(emailId).orElseGet(EmailSearchText::new);
+        searchText.setEmailId(emailId);
+        searchText.setContent(plain.substring(PREVIEW_LENGTH - SEARCH_OVERLAP, end).toLowerCase(Locale.ROOT));
+        searchTextRepository.save(searchText);
+    }
+    
+    /**
+     * Body as plain text with runs of whitespace collapsed; markup is dropped when there is only HTML
+     */
+    private String plainText(String text, String html) {
+        String source = text != null && !text.isBlank() ? text
+                : html != null ? html.replaceAll("(?is)<(script|style)[^>]*>.*?</\\1>", " ").replaceAll("<[^>]+>", " ")
+                : "";
+        return source.replaceAll("\\s+", " ").strip();
+    }
+    
+    private long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    private long length(byte[] data) {
+        return data != null ? data.length : 0;
+    }
+}
@@ -1,10 +1,14 @@
 package com.enterprise.mail.service;
 
 import com.enterprise.mail.dto.AttachmentDto;
+import com.enterprise.mail.dto.DeliveryActionEvent;
+import com.enterprise.mail.dto.MailboxEvent;
+import com.enterprise.mail.dto.RawLocation;
 import com.enterprise.mail.entity.Attachment;
 import com.enterprise.mail.entity.Email;
 import com.enterprise.mail.entity.EmailAlias;
 import com.enterprise.mail.entity.EmailFolder;
+import com.enterprise.mail.entity.SenderListEntry;
 import com.enterprise.mail.entity.User;
 import com.enterprise.mail.exception.BusinessException;
 import com.enterprise.mail.repository.EmailRepository;
@@ -12,20 +16,31 @@ import com.enterprise.mail.repository.EmailAliasRepository;
 import com.enterprise.mail.repository.EmailFolderRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.mail.*;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeMessage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -43,15 +58,48 @@ public class EmailService {
     private final UserService userService;
     private final MailServerService mailServerService;
     private final AttachmentService attachmentService;
+    private final RawMessageService rawMessageService;
+    private final EmailBodyService emailBodyService;
+    private final MessagePackService messagePackService;
+    private final RuleService ruleService;
+    private final SpamFilterService spamFilterService;
+    private final SenderListService senderListService;
+    private final MailAuthService mailAuthService;
+    private final SendLimitService sendLimitService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
     
     /**
-     * Save received email
+     * Save received email. Authentication waits on DNS for up to {@code mail.auth.timeout-ms},
+     * so it runs between two short transactions instead of inside one.
+     *
+     * @param clientIp address of the SMTP peer from the session, for SPF
+     * @param helo     HELO/EHLO name from the session
      */
-    public Email saveReceivedEmail(String from, String to, MimeMessage message) throws MessagingException, IOException {
-        // Find the recipient alias
-        EmailAlias alias = aliasRepository.findByAliasAddress(to)
-                .orElseThrow(() -> new IllegalArgumentException("Recipient alias not found: " + to));
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Email saveReceivedEmail(String clientIp, String helo, String from, String to, MimeMessage message)
+            throws MessagingException, IOException {
+        // Listed senders are decided before any part of the message is parsed
+        SenderListEntry.Action listed = transactionTemplate.execute(status ->
+                senderListService.check(from, findRecipientAlias(to)));
+        if (listed == SenderListEntry.Action.REJECT) {
+            log.info("Rejected mail from {} to {} by sender list", from, to);
+            throw new BusinessException("Sender rejected: " + from, HttpStatus.FORBIDDEN);
+        }
+        
+        // SPF, DKIM and DMARC; the list cannot override DMARC, as it matches a From that failed it
+        MailAuthService.AuthResult auth = mailAuthService.verify(clientIp, helo, from, message);
+        if (auth.disposition() == MailAuthService.Disposition.REJECT) {
+            log.info("Rejected mail from {} to {} by DMARC policy", from, to);
+            throw new BusinessException("Rejected by the DMARC policy of the sender domain", HttpStatus.FORBIDDEN);
+        }
         
+        return inTransaction(() -> storeReceivedEmail(from, to, message, listed, auth));
+    }
+    
+    private Email storeReceivedEmail(String from, String to, MimeMessage message, SenderListEntry.Action listed,
+                                     MailAuthService.AuthResult auth) throws MessagingException, IOException {
+        EmailAlias alias = findRecipientAlias(to);
         User user = alias.getUser();
         
         // Find inbox folder
@@ -67,7 +115,6 @@ public class EmailService {
         email.setSubject(message.getSubject());
         email.setContentText(getTextContent(message));
         email.setContentHtml(getHtmlContent(message));
-        email.setRawContent(getRawContent(message));
         email.setStatus(Email.EmailStatus.UNREAD);
         email.setType(Email.EmailType.RECEIVED);
         email.setSentDate(message.getSentDate() != null ? message.getSentDate() : new Date());
@@ -76,20 +123,62 @@ public class EmailService {
         email.setAlias(alias);
         email.setFolder(inbox);
         email.setSizeBytes((long) message.getSize());
-        email.setHasAttachments(hasAttachments(message));
+        email.setDkimValid(auth.dkimValid());
+        email.setSpfResult(auth.spf());
+        email.setDmarcResult(auth.dmarc());
+        rawMessageService.store(message, email);
         
         // Process headers
         processHeaders(email, message);
         
+        // Block-listed and DMARC-quarantined mail goes straight to Spam; otherwise a confident
+        // spam verdict files it there unless a rule moves it. Allow-listed senders are never scored.
+        String body = email.getContentText() != null && !email.getContentText().isEmpty()
+                ? email.getContentText() : email.getContentHtml();
+        EmailFolder folder;
+        RuleMatcher.Outcome outcome = null;
+        if (listed == SenderListEntry.Action.SPAM || auth.disposition() == MailAuthService.Disposition.QUARANTINE) {
+            email.setIsSpam(true);
+            folder = folderRepository.findByUserIdAndType(user.getId(), EmailFolder.FolderType.SPAM).orElse(inbox);
+            email.setFolder(folder);
+        } else {
+            EmailFolder target = inbox;
+            OptionalDouble spamScore = listed == null
+                    ? spamFilterService.score(from, email.getSubject(), body) : OptionalDouble.empty();
+            if (spamScore.isPresent()) {
+                email.setSpamScore(spamScore.getAsDouble());
+                if (spamScore.getAsDouble() >= spamFilterService.getThreshold()) {
+                    email.setIsSpam(true);
+                    target = folderRepository.findByUserIdAndType(user.getId(), EmailFolder.FolderType.SPAM).orElse(inbox);
+                    email.setFolder(target);
+                }
+            }
+            
+            // Apply the alias' filter rules before the insert
+            outcome = ruleService.evaluate(alias, new RuleMatcher.Message(
+                    from, to, email.getSubject(), body, email.getSizeBytes(), hasAttachments(message),
+                    name -> getHeader(message, name)));
+            folder = applyRules(email, outcome, target);
+        }
+        
         // Save email
         email = emailRepository.save(email);
+        emailBodyService.store(email);
+        
+        // Stream attachment parts into attachment storage so downloads never re-parse the message
+        int attachmentCount = attachmentService.extractAttachments(message, email).size();
+        email.setAttachmentCount(attachmentCount);
+        email.setHasAttachments(attachmentCount > 0);
         
         // Update folder counts
-        updateFolderCounts(inbox);
+        updateFolderCounts(folder);
         
         // Update user storage
         updateUserStorage(user, email.getSizeBytes());
         
+        publishEvent(email, MailboxEvent.EventType.NEW);
+        publishDeliveryActions(email, alias, from, message, outcome);
+        
         log.info("Saved received email: {} from {} to {}", email.getMessageId(), from, to);
         
         return email;
@@ -118,7 +207,6 @@ public class EmailService {
         email.setSubject(message.getSubject());
         email.setContentText(getTextContent(message));
         email.setContentHtml(getHtmlContent(message));
-        email.setRawContent(getRawContent(message));
         email.setStatus(Email.EmailStatus.READ);
         email.setType(Email.EmailType.SENT);
         email.setSentDate(new Date());
@@ -126,10 +214,12 @@ public class EmailService {
         email.setAlias(alias);
         email.setFolder(sentFolder);
         email.setSizeBytes((long) message.getSize());
+        rawMessageService.store(message, email);
         email.setHasAttachments(hasAttachments(message));
         
         // Save email
         email = emailRepository.save(email);
+        emailBodyService.store(email);
         
         // Update folder counts
         updateFolderCounts(sentFolder);
@@ -137,11 +227,36 @@ public class EmailService {
         // Update user storage
         updateUserStorage(user, email.getSizeBytes());
         
+        publishEvent(email, MailboxEvent.EventType.NEW);
+        
         log.info("Saved sent email: {} from {} to {}", email.getMessageId(), from, to);
         
         return email;
     }
     
+    /**
+     * Where the RFC 822 source of a user's email is stored
+     */
+    @Transactional(readOnly = true)
+    public RawLocation getRawLocation(Long emailId, Long userId) {
+        return emailRepository.findRawLocation(emailId, userId)
+                .orElseThrow(() -> BusinessException.emailNotFound(emailId));
+    }
+    
+    /**
+     * Source file of a hot email
+     */
+    public Path getRawFile(RawLocation location) {
+        return rawMessageService.getRawFile(location.getRawPath());
+    }
+    
+    /**
+     * Source of a cold email, inflated from its pack as it is read
+     */
+    public InputStream openPackedRaw(Long emailId, RawLocation location) throws IOException {
+        return messagePackService.openRaw(location.getPackId(), emailId);
+    }
+    
     /**
      * Get emails by user
      */
@@ -179,7 +294,10 @@ public class EmailService {
             if (folder != null) {
                 folder.setUnreadCount(Math.max(0, folder.getUnreadCount() - 1));
                 folderRepository.save(folder);
+                publishFolderCounts(folder);
             }
+            
+            publishEvent(email, MailboxEvent.EventType.FLAGS);
         }
     }
     
@@ -202,6 +320,8 @@ public class EmailService {
         // Update folder counts
         updateFolderCounts(oldFolder);
         updateFolderCounts(trash);
+        
+        publishMove(email, oldFolder, MailboxEvent.EventType.DELETED);
     }
     
     /**
@@ -213,12 +333,21 @@ public class EmailService {
         
         email.setIsStarred(!email.getIsStarred());
         emailRepository.save(email);
+        
+        publishEvent(email, MailboxEvent.EventType.FLAGS);
     }
     
     /**
      * Move email to folder
      */
     public void moveToFolder(Long emailId, Long folderId) {
+        moveToFolder(emailId, folderId, true);
+    }
+    
+    /**
+     * Move email to folder; moves the user did not make (e.g. snooze) must not train the spam filter
+     */
+    public void moveToFolder(Long emailId, Long folderId, boolean trainSpamFilter) {
         Email email = emailRepository.findById(emailId)
                 .orElseThrow(() -> new IllegalArgumentException("Email not found"));
         
@@ -227,15 +356,116 @@ public class EmailService {
         
         EmailFolder oldFolder = email.getFolder();
         email.setFolder(newFolder);
+        if (trainSpamFilter) {
+            trainSpamFilter(email, oldFolder, newFolder);
+        }
         emailRepository.save(email);
         
         // Update folder counts
         updateFolderCounts(oldFolder);
         updateFolderCounts(newFolder);
+        
+        publishMove(email, oldFolder, MailboxEvent.EventType.MOVED);
     }
     
     // Helper methods
     
+    private EmailAlias findRecipientAlias(String to) {
+        return aliasRepository.findByAliasAddress(to)
+                .orElseThrow(() -> new IllegalArgumentException("Recipient alias not found: " + to));
+    }
+    
+    /**
+     * Run {@code work} in a transaction of its own, passing its checked exceptions through.
+     * Like any other failure they roll the transaction back.
+     */
+    private <T> T inTransaction(MailWork<T> work) throws MessagingException, IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                try {
+                    return work.run();
+                } catch (MessagingException | IOException e) {
+                    throw new CheckedFailure(e);
+                }
+            });
+        } catch (CheckedFailure e) {
+            if (e.getCause() instanceof MessagingException messagingException) {
+                throw messagingException;
+            }
+            throw (IOException) e.getCause();
+        }
+    }
+    
+    @FunctionalInterface
+    private interface MailWork<T> {
+        T run() throws MessagingException, IOException;
+    }
+    
+    private static class CheckedFailure extends RuntimeException {
+        CheckedFailure(Exception cause) {
+            super(cause);
+        }
+    }
+    
+    private record ClaimedDraft(Email email, EmailAlias fromAlias, List<Attachment> attachments) {
+    }
+    
+    private ClaimedDraft claimDraft(Long draftId) {
+        Email email = emailRepository.findById(draftId)
+                .orElseThrow(() -> BusinessException.emailNotFound(draftId));
+        if (email.getType() != Email.EmailType.DRAFT) {
+            throw new BusinessException("Email is not a draft: " + draftId, HttpStatus.CONFLICT);
+        }
+        
+        EmailFolder sentFolder = folderRepository.findByUserIdAndType(
+            email.getUser().getId(),
+            EmailFolder.FolderType.SENT
+        ).orElseThrow(() -> new BusinessException("Sent folder not found"));
+        
+        EmailAlias fromAlias = aliasRepository.findByAliasAddress(email.getFromAddress()).orElse(null);
+        sendLimitService.acquire(email.getUser(), fromAlias);
+        
+        emailBodyService.load(email);
+        EmailFolder oldFolder = email.getFolder();
+        email.setFolder(sentFolder);
+        email.setSentDate(new Date());
+        email.setStatus(Email.EmailStatus.SENT);
+        email.setType(Email.EmailType.SENT);
+        email.setIsDraft(false);
+        Email savedEmail = emailRepository.save(email);
+        
+        updateFolderCounts(oldFolder);
+        updateFolderCounts(sentFolder);
+        publishMove(savedEmail, oldFolder, MailboxEvent.EventType.MOVED);
+        return new ClaimedDraft(savedEmail, fromAlias, attachmentService.getAttachments(draftId));
+    }
+    
+    /**
+     * Undo {@link #claimDraft} after a failed hand-off
+     */
+    private void restoreDraft(Long draftId) {
+        Email email = emailRepository.findById(draftId).orElse(null);
+        if (email == null) {
+            return;
+        }
+        EmailFolder draftsFolder = folderRepository.findByUserIdAndType(
+            email.getUser().getId(),
+            EmailFolder.FolderType.DRAFTS
+        ).orElseThrow(() -> new BusinessException("Drafts folder not found"));
+        
+        EmailFolder oldFolder = email.getFolder();
+        email.setFolder(draftsFolder);
+        email.setSentDate(null);
+        email.setStatus(Email.EmailStatus.DRAFT);
+        email.setType(Email.EmailType.DRAFT);
+        email.setIsDraft(true);
+        emailRepository.save(email);
+        
+        updateFolderCounts(oldFolder);
+        updateFolderCounts(draftsFolder);
+        publishMove(email, oldFolder, MailboxEvent.EventType.MOVED);
+    }
+    
     private String generateMessageId() {
         return UUID.randomUUID().toString() + "@enterprise.mail";
     }
@@ -295,14 +525,6 @@ public class EmailService {
         return result.toString();
     }
     
-    private String getRawContent(MimeMessage message) throws MessagingException, IOException {
-        // Convert message to raw string safely
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            message.writeTo(baos);
-            return baos.toString("UTF-8");
-        }
-    }
-    
     private boolean hasAttachments(MimeMessage message) throws MessagingException {
         try {
             Object content = message.getContent();
@@ -324,6 +546,107 @@ public class EmailService {
         return false;
     }
     
+    /**
+     * A move is the user's verdict: into Spam teaches spam, out of Spam or filing it elsewhere teaches ham
+     */
+    private void trainSpamFilter(Email email, EmailFolder oldFolder, EmailFolder newFolder) {
+        if (!spamFilterService.isEnabled() || email.getType() != Email.EmailType.RECEIVED
+                || newFolder.getType() == EmailFolder.FolderType.TRASH
+                || (oldFolder != null && oldFolder.getId().equals(newFolder.getId()))) {
+            return;
+        }
+        boolean spam = newFolder.getType() == EmailFolder.FolderType.SPAM;
+        Boolean lesson = email.getSpamTrained();
+        if (lesson != null && lesson == spam) {
+            return;
+        }
+        
+        emailBodyService.load(email);
+        String body = email.getContentText() != null && !email.getContentText().isEmpty()
+                ? email.getContentText() : email.getContentHtml();
+        // 训练记录与移动在同一事务中写入：回滚的移动不会留下训练结果
+        if (lesson != null) {
+            spamFilterService.record(email.getFromAddress(), email.getSubject(), body, lesson, true);
+        }
+        spamFilterService.record(email.getFromAddress(), email.getSubject(), body, spam, false);
+        email.setSpamTrained(spam);
+        email.setIsSpam(spam);
+    }
+    
+    /**
+     * Apply the effect of matching filter rules to a new message; returns the folder it goes to
+     */
+    private EmailFolder applyRules(Email email, RuleMatcher.Outcome outcome, EmailFolder inbox) {
+        if (outcome.isEmpty()) {
+            return inbox;
+        }
+        
+        EmailFolder folder = resolveRuleFolder(email.getUser().getId(), outcome, inbox);
+        if (outcome.delete) {
+            email.setStatus(Email.EmailStatus.DELETED);
+        } else if (outcome.spam) {
+            email.setIsSpam(true);
+        }
+        email.setFolder(folder);
+        
+        if (outcome.markAsRead && !outcome.delete) {
+            email.setStatus(Email.EmailStatus.READ);
+        }
+        if (outcome.important != null) {
+            email.setIsImportant(outcome.important);
+        }
+        if (!outcome.labels.isEmpty()) {
+            Set<String> labels = new LinkedHashSet<>();
+            if (email.getLabels() != null && !email.getLabels().isBlank()) {
+                labels.addAll(Arrays.asList(email.getLabels().split(",")));
+            }
+            labels.addAll(outcome.labels);
+            email.setLabels(String.join(",", labels));
+        }
+        return folder;
+    }
+    
+    /**
+     * Folder a message goes to under a rule outcome; {@code current} when no rule moves it
+     */
+    EmailFolder resolveRuleFolder(Long userId, RuleMatcher.Outcome outcome, EmailFolder current) {
+        if (outcome.delete) {
+            return folderRepository.findByUserIdAndType(userId, EmailFolder.FolderType.TRASH).orElse(current);
+        }
+        if (outcome.spam) {
+            return folderRepository.findByUserIdAndType(userId, EmailFolder.FolderType.SPAM).orElse(current);
+        }
+        if (outcome.folder != null) {
+            return findRuleFolder(userId, outcome.folder).orElseGet(() -> {
+                log.warn("Rule target folder '{}' not found for user {}", outcome.folder, userId);
+                return current;
+            });
+        }
+        return current;
+    }
+    
+    /**
+     * Rule folder targets are a folder id or a folder name of the same user
+     */
+    private Optional<EmailFolder> findRuleFolder(Long userId, String target) {
+        if (target.chars().allMatch(Character::isDigit)) {
+            Optional<EmailFolder> folder = folderRepository.findById(Long.parseLong(target))
+                    .filter(f -> f.getUser().getId().equals(userId));
+            if (folder.isPresent()) {
+                return folder;
+            }
+        }
+        return folderRepository.findByUserIdAndName(userId, target);
+    }
+    
+    private String getHeader(MimeMessage message, String name) {
+        try {
+            return message.getHeader(name, ", ");
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+    
     private void processHeaders(Email email, MimeMessage message) throws MessagingException {
         // Process email headers
         String messageId = message.getMessageID();
@@ -350,6 +673,120 @@ public class EmailService {
         Long totalCount = emailRepository.countByFolderId(folder.getId());
         folder.setTotalCount(totalCount.intValue());
         folderRepository.save(folder);
+        
+        publishFolderCounts(folder);
+    }
+    
+    /**
+     * Recount a folder after messages were removed outside the regular flows
+     */
+    public void refreshFolderCounts(Long folderId) {
+        folderRepository.findById(folderId).ifPresent(this::updateFolderCounts);
+    }
+    
+    /**
+     * Apply counter deltas from a bulk update instead of recounting the folder
+     */
+    public void adjustFolderCounts(Long folderId, int totalDelta, int unreadDelta) {
+        folderRepository.findById(folderId).ifPresent(folder -> {
+            folder.setTotalCount(Math.max(0, folder.getTotalCount() + totalDelta));
+            folder.setUnreadCount(Math.max(0, folder.getUnreadCount() + unreadDelta));
+            folderRepository.save(folder);
+            publishFolderCounts(folder);
+        });
+    }
+    
+    /**
+     * Queue a mailbox change event; it is pushed to clients after commit
+     */
+    private void publishEvent(Email email, MailboxEvent.EventType type) {
+        touch(email.getUser().getId(), email.getFolder());
+        eventPublisher.publishEvent(MailboxEvent.builder()
+                .userId(email.getUser().getId())
+                .type(type)
+                .emailId(email.getId())
+                .folderId(email.getFolder() != null ? email.getFolder().getId() : null)
+                .status(email.getStatus().name())
+                .starred(email.getIsStarred())
+                .important(email.getIsImportant())
+                .build());
+    }
+    
+    /**
+     * Hand forwards and a vacation reply to the background sender; spam and deleted mail
+     * trigger neither, and loop and robot checks run here while the headers are at hand
+     */
+    private void publishDeliveryActions(Email email, EmailAlias alias, String from, MimeMessage message,
+                                        RuleMatcher.Outcome outcome) throws MessagingException {
+        if (Boolean.TRUE.equals(email.getIsSpam()) || email.getStatus() == Email.EmailStatus.DELETED) {
+            return;
+        }
+        String aliasAddress = alias.getAliasAddress();
+        
+        Set<String> forwardTo = new LinkedHashSet<>();
+        if (Boolean.TRUE.equals(alias.getForwardEnabled()) && alias.getForwardTo() != null) {
+            Arrays.stream(alias.getForwardTo().split(",")).map(String::trim).filter(s -> !s.isEmpty()).forEach(forwardTo::add);
+        }
+        if (outcome != null) {
+            forwardTo.addAll(outcome.forwardTo);
+        }
+        if (!forwardTo.isEmpty() && AutoResponses.isLooped(message, aliasAddress)) {
+            log.warn("Not forwarding email {}: it already passed through {}", email.getId(), aliasAddress);
+            forwardTo.clear();
+        }
+        
+        boolean autoReply = (Boolean.TRUE.equals(alias.getAutoReplyEnabled()) || (outcome != null && outcome.autoReply))
+                && AutoResponses.mayReply(message, from, aliasAddress);
+        if (forwardTo.isEmpty() && !autoReply) {
+            return;
+        }
+        
+        eventPublisher.publishEvent(DeliveryActionEvent.builder()
+                .emailId(email.getId())
+                .aliasId(alias.getId())
+                .aliasAddress(aliasAddress)
+                .sender(from)
+                .subject(email.getSubject())
+                .messageId(message.getMessageID())
+                .references(email.getReferences())
+                .rawPath(email.getRawPath())
+                .forwardTo(List.copyOf(forwardTo))
+                .autoReply(autoReply)
+                .replySubject(alias.getAutoReplySubject())
+                .replyMessage(alias.getAutoReplyMessage())
+                .build());
+    }
+    
+    private void publishMove(Email email, EmailFolder oldFolder, MailboxEvent.EventType type) {
+        touch(email.getUser().getId(), email.getFolder(), oldFolder);
+        eventPublisher.publishEvent(MailboxEvent.builder()
+                .userId(email.getUser().getId())
+                .type(type)
+                .emailId(email.getId())
+                .folderId(email.getFolder().getId())
+                .fromFolderId(oldFolder != null ? oldFolder.getId() : null)
+                .build());
+    }
+    
+    private void publishFolderCounts(EmailFolder folder) {
+        touch(folder.getUser().getId(), folder);
+        eventPublisher.publishEvent(MailboxEvent.builder()
+                .userId(folder.getUser().getId())
+                .type(MailboxEvent.EventType.FOLDER_COUNTS)
+                .folderId(folder.getId())
+                .unreadCount(folder.getUnreadCount())
+                .totalCount(folder.getTotalCount())
+                .build());
+    }
+    
+    /**
+     * Bump the modification counters that back the list/folder ETags
+     */
+    private void touch(Long userId, EmailFolder... folders) {
+        userService.touchMailbox(userId, Arrays.stream(folders)
+                .filter(Objects::nonNull)
+                .map(EmailFolder::getId)
+                .toList());
     }
     
     private void updateUserStorage(User user, Long sizeBytes) {
@@ -359,6 +796,17 @@ public class EmailService {
     
     // Additional methods needed by EmailController
     
+    /**
+     * Folder modification counter, used to answer conditional list requests without querying
+     */
+    public Optional<Long> getFolderModSeq(Long userId, Long folderId) {
+        return folderRepository.findModSeq(userId, folderId);
+    }
+    
+    public List<EmailFolder> getFolders(Long userId) {
+        return folderRepository.findByUserIdOrderBySortOrder(userId);
+    }
+    
     public Optional<Email> getEmailById(Long id) {
         return emailRepository.findById(id);
     }
@@ -374,6 +822,7 @@ public class EmailService {
             email.setReadDate(null);
             emailRepository.save(email);
             updateFolderCounts(email.getFolder());
+            publishEvent(email, MailboxEvent.EventType.FLAGS);
         });
     }
     
@@ -382,56 +831,31 @@ public class EmailService {
         emailRepository.findById(emailId).ifPresent(email -> {
             email.setIsImportant(!email.getIsImportant());
             emailRepository.save(email);
+            publishEvent(email, MailboxEvent.EventType.FLAGS);
         });
     }
     
-    @Transactional
-    public Email sendEmail(Email email, List<MultipartFile> attachments) throws MessagingException {
-        // Save email to sent folder
-        EmailFolder sentFolder = folderRepository.findByUserIdAndType(
-            email.getUser().getId(), 
-            EmailFolder.FolderType.SENT
-        ).orElseThrow(() -> new BusinessException("Sent folder not found"));
-        
-        email.setFolder(sentFolder);
-        email.setMessageId(generateMessageId());
-        email.setSentDate(new Date());
-        email.setStatus(Email.EmailStatus.SENT);
-        email.setType(Email.EmailType.SENT);
-        
-        // Save email first
-        Email savedEmail = emailRepository.save(email);
-        
-        // Process attachments if any
-        if (attachments != null && !attachments.isEmpty()) {
-            savedEmail.setHasAttachments(true);
-            // Save attachments to storage
-            try {
-                attachmentService.saveAttachments(attachments, savedEmail);
-                emailRepository.save(savedEmail); // Update with attachment flag
-            } catch (IOException e) {
-                log.error("Failed to save attachments", e);
-                // Continue without attachments - don't fail the entire email
-            }
-        }
-        
-        updateFolderCounts(sentFolder);
-        
-        // Send actual email via mail server
+    /**
+     * Send a newly composed message. It is first stored as a draft together with its
+     * attachments, then sent through {@link #sendDraft}, so the SMTP hand-off runs outside
+     * any transaction. When an attachment cannot be stored nothing is kept and the request
+     * fails; when the send limit refuses the message or the hand-off fails, it stays in Drafts.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Email sendEmail(Email email, List<MultipartFile> attachments) throws MessagingException, IOException {
+        Email draft;
         try {
-            mailServerService.sendEmail(
-                email.getFromAddress(),
-                email.getToAddresses(),
-                email.getSubject(),
-                email.getContentText(),
-                email.getContentHtml() != null
-            );
-        } catch (Exception e) {
-            log.error("Failed to send email via mail server", e);
-            throw new MessagingException("Failed to send email", e);
+            draft = transactionTemplate.execute(status -> {
+                try {
+                    return saveDraft(email, attachments);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        
-        return savedEmail;
+        return sendDraft(draft.getId());
     }
     
     @Transactional
@@ -447,24 +871,122 @@ public class EmailService {
         draft.setType(Email.EmailType.DRAFT);
         
         Email savedDraft = emailRepository.save(draft);
+        emailBodyService.store(savedDraft);
         updateFolderCounts(draftsFolder);
         
         return savedDraft;
     }
     
-    public AttachmentDto saveAttachment(MultipartFile file, Long userId) throws IOException {
-        // Get user to associate with attachment
-        User user = userService.findById(userId)
-                .orElseThrow(() -> new BusinessException("User not found"));
-        
-        // Create temporary email for attachment association
-        Email tempEmail = new Email();
-        tempEmail.setUser(user);
-        
-        // Save attachment using AttachmentService
-        Attachment attachment = attachmentService.saveAttachment(file, tempEmail);
-        
-        // Convert to DTO
+    /**
+     * Save a draft together with its uploaded attachments, e.g. for a scheduled send
+     */
+    @Transactional
+    public Email saveDraft(Email draft, List<MultipartFile> attachments) throws IOException {
+        Email savedDraft = saveDraft(draft);
+        if (attachments != null && !attachments.isEmpty()) {
+            List<Attachment> savedAttachments = attachmentService.saveAttachments(attachments, savedDraft);
+            savedDraft.setHasAttachments(true);
+            savedDraft.setAttachmentCount(savedAttachments.size());
+            emailRepository.save(savedDraft);
+        }
+        return savedDraft;
+    }
+    
+    /**
+     * Send a stored draft: move it to Sent and hand it to the mail server.
+     * The move is committed first so no connection or row lock is held during SMTP; when the
+     * hand-off fails the draft is put back. A crash between the two leaves the message in
+     * Sent without having gone out, so it is never sent twice.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Email sendDraft(Long draftId) throws MessagingException {
+        ClaimedDraft claimed = transactionTemplate.execute(status -> claimDraft(draftId));
+        Email email = claimed.email();
+        try {
+            mailServerService.sendEmail(email, claimed.attachments());
+        } catch (Exception e) {
+            transactionTemplate.executeWithoutResult(status -> restoreDraft(draftId));
+            sendLimitService.release(email.getUser(), claimed.fromAlias());
+            log.error("Failed to send draft {}", draftId, e);
+            throw new MessagingException("Failed to send email", e);
+        }
+        // The entity is detached now: record where its source was stored directly
+        transactionTemplate.executeWithoutResult(status ->
+                emailRepository.setRawLocation(draftId, email.getRawPath(), email.getRawSize()));
+        return email;
+    }
+    
+    /**
+     * Bring a snoozed email back: return it to its folder as unread.
+     * Does nothing when the user has already moved it out of the archive.
+     */
+    @Transactional
+    public void wakeSnoozed(Long emailId, Long folderId) {
+        Email email = emailRepository.findById(emailId).orElse(null);
+        if (email == null || email.getFolder() == null
+                || email.getFolder().getType() != EmailFolder.FolderType.ARCHIVE) {
+            return;
+        }
+        Long targetId = folderRepository.findById(folderId)
+                .or(() -> folderRepository.findByUserIdAndType(email.getUser().getId(), EmailFolder.FolderType.INBOX))
+                .map(EmailFolder::getId)
+                .orElseThrow(() -> new BusinessException("Inbox folder not found"));
+        moveToFolder(emailId, targetId, false);
+        markAsUnread(emailId);
+    }
+    
+    public AttachmentDto saveAttachment(MultipartFile file, Long userId, Long draftId) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return saveAttachment(in, file.getOriginalFilename(), file.getContentType(), userId, draftId);
+        }
+    }
+    
+    /**
+     * Save an attachment streamed straight from the request body
+     *
+     * @param draftId draft to attach to; a new empty draft is created when null
+     */
+    public AttachmentDto saveAttachment(InputStream in, String filename, String contentType, Long userId,
+                                        Long draftId) throws IOException {
+        Email draft = attachmentDraft(userId, draftId);
+        Attachment attachment = attachmentService.saveAttachment(in, filename, contentType, draft);
+        addAttachmentToDraft(draft);
         return attachmentService.toDto(attachment);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Draft that an uploaded attachment belongs to: the given draft of the user, or a new
+     * empty one. Attachments always need a persisted owner. The new draft's id comes back
+     * as the attachment's emailId, and clients pass it on every later upload of the same
+     * message, so the message keeps a single draft.
+     */
+    public Email attachmentDraft(Long userId, Long draftId) {
+        if (draftId == null) {
+            User user = userService.findById(userId);
+            Email draft = new Email();
+            draft.setUser(user);
+            draft.setFromAddress(user.getEmail());
+            draft.setFromName(user.getUsername());
+            draft.setDirection(Email.Direction.OUTBOUND);
+            return saveDraft(draft);
+        }
+        Email draft = emailRepository.findById(draftId)
+                .orElseThrow(() -> BusinessException.emailNotFound(draftId));
+        if (!draft.getUser().getId().equals(userId)) {
+            throw new BusinessException("Access denied", HttpStatus.FORBIDDEN);
+        }
+        if (draft.getStatus() != Email.EmailStatus.DRAFT) {
+            throw new BusinessException("Attachments can only be added to drafts", HttpStatus.CONFLICT);
+        }
+        return draft;
+    }
+    
+    /**
+     * Count one more attachment on a draft
+     */
+    public void addAttachmentToDraft(Email draft) {
+        draft.setHasAttachments(true);
+        draft.setAttachmentCount(draft.getAttachmentCount() + 1);
+        emailRepository.save(draft);
+    }
+}
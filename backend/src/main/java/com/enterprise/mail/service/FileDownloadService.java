@@ -0,0 +1,308 @@
+package com.enterprise.mail.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends stored files to HTTP clients with conditional, single-range and zero-copy support.
+ *
+ * When the connector supports it (Tomcat NIO/NIO2 with sendfile enabled) the byte range
+ * is handed to the container, which transmits it with sendfile(2) after the handler
+ * returns. Otherwise the range is copied with {@link FileChannel#transferTo}.
+ */
+@Slf4j
+@Service
+public class FileDownloadService {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Below this size the sendfile hand-off costs more than a plain copy
+    private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    static final long[] UNSATISFIABLE = new long[0];
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Send a file, honouring If-None-Match/If-Modified-Since, Range and If-Range
+     */
+    public void sendFile(HttpServletRequest request, HttpServletResponse response, Path file,
+                         String contentType, String contentDisposition, String etag) throws IOException {
+        sendFile(request, response, file, contentType, contentDisposition, etag, false);
+    }
+
+    /**
+     * Send a file, optionally gzip-encoding it on the fly for clients that accept it.
+     * Compression only applies to full-body responses; a Range request is always served
+     * from the identity encoding so byte offsets keep their meaning.
+     */
+    public void sendFile(HttpServletRequest request, HttpServletResponse response, Path file,
+                         String contentType, String contentDisposition, String etag,
+                         boolean compressible) throws IOException {
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        if (compressible) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (request.getHeader(HttpHeaders.RANGE) == null && acceptsGzip(request)) {
+                sendGzipped(request, response, file, contentType, contentDisposition,
+                        etag != null ? etag.substring(0, etag.length() - 1) + "-gzip\"" : null, lastModified);
+                return;
+            }
+        }
+
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(contentType);
+        if (contentDisposition != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        }
+
+        long[] range = resolveRange(request, response, length, etag, lastModified);
+        if (range == UNSATISFIABLE) {
+            return;
+        }
+        long start = range[0];
+        long end = range[1];
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+
+        if ("HEAD".equals(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        if (count >= SENDFILE_THRESHOLD && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        transfer(file, start, count, Channels.newChannel(response.getOutputStream()));
+    }
+
+    /**
+     * Copy a byte range of a file with FileChannel.transferTo
+     */
+    public void transfer(Path file, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * Send a stream of known length that cannot seek, e.g. a source inflated from a pack.
+     * A range is served by reading and discarding the bytes in front of it, so it costs
+     * the same CPU as reading up to its end, but the client only receives the range.
+     */
+    public void sendStream(HttpServletRequest request, HttpServletResponse response, StreamSource source, long length,
+                           String contentType, String contentDisposition, String etag) throws IOException {
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(contentType);
+        if (contentDisposition != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        }
+
+        long[] range = resolveRange(request, response, length, etag, -1);
+        if (range == UNSATISFIABLE) {
+            return;
+        }
+        long count = range[1] - range[0] + 1;
+        response.setContentLengthLong(count);
+
+        if ("HEAD".equals(request.getMethod()) || count <= 0) {
+            return;
+        }
+
+        try (InputStream in = source.open()) {
+            in.skipNBytes(range[0]);
+            long copied = copy(in, response.getOutputStream(), count);
+            if (copied < count) {
+                throw new EOFException("Stream ended after " + copied + " of " + count + " bytes");
+            }
+        }
+    }
+
+    /**
+     * Opens the stream to send; called at most once, after conditional checks have passed
+     */
+    @FunctionalInterface
+    public interface StreamSource {
+        InputStream open() throws IOException;
+    }
+
+    // Helper methods
+
+    /**
+     * Apply Range/If-Range to a body of the given length. Returns the inclusive byte range
+     * to send (the whole body when no range applies), or {@link #UNSATISFIABLE} after
+     * answering 416.
+     */
+    private long[] resolveRange(HttpServletRequest request, HttpServletResponse response, long length,
+                                String etag, long lastModified) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeApplicable(request, etag, lastModified)) {
+            long[] range = parseRange(rangeHeader, length);
+            if (range == UNSATISFIABLE) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return UNSATISFIABLE;
+            }
+            if (range != null) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + length);
+                return range;
+            }
+        }
+        return new long[]{0, length - 1};
+    }
+
+    private long copy(InputStream in, OutputStream out, long count) throws IOException {
+        byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+        long copied = 0;
+        while (copied < count) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, count - copied));
+            if (read < 0) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    /**
+     * Stream the file through a gzip encoder; the length is unknown up front, so the
+     * response is sent chunked
+     */
+    private void sendGzipped(HttpServletRequest request, HttpServletResponse response, Path file, String contentType,
+                             String contentDisposition, String etag, long lastModified) throws IOException {
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        if (contentDisposition != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        }
+
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER_SIZE);
+        Files.copy(file, gzip);
+        gzip.finish();
+    }
+
+    private boolean acceptsGzip(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] params = coding.trim().split(";");
+                if (params[0].trim().equalsIgnoreCase("gzip")) {
+                    // gzip;q=0 explicitly refuses the coding
+                    return params.length < 2 || !params[1].trim().matches("q=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * If-Range: only honour the Range header when the validator still matches
+     */
+    private boolean isRangeApplicable(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Weak validators never match for range requests
+            return etag != null && !ifRange.startsWith("W/") && ifRange.equals(etag);
+        }
+        long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+        return ifRangeDate != -1 && lastModified >= 0 && lastModified / 1000 <= ifRangeDate / 1000;
+    }
+
+    /**
+     * Parse a single byte range. Returns null when the header should be ignored
+     * (malformed or multi-range), {@link #UNSATISFIABLE} when no byte can be served.
+     */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (start >= length) {
+                    return UNSATISFIABLE;
+                }
+                if (end < start) {
+                    return null;
+                }
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed Range header: {}", header);
+            return null;
+        }
+    }
+}
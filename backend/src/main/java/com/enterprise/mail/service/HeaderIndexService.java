@@ -0,0 +1,349 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.dto.EmailDto;
+import com.enterprise.mail.dto.EmailHeader;
+import com.enterprise.mail.dto.MailboxEvent;
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.index.MailboxIndex;
+import com.enterprise.mail.repository.EmailRepository;
+import com.enterprise.mail.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves folder listings from per-mailbox memory-mapped header indexes.
+ *
+ * Indexes are kept current by applying mailbox events after commit, and each one counts
+ * the events it has applied. A listing is only answered from the index while that count
+ * equals the mailbox modification counter in the database; otherwise (missed events,
+ * another node wrote to the mailbox, first use) the caller falls back to the database and
+ * the index is rebuilt in the background.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HeaderIndexService {
+
+    private final EmailRepository emailRepository;
+    private final UserRepository userRepository;
+    private final MailServerConfig mailServerConfig;
+
+    @Value("${mail.index.enabled:false}")
+    private boolean enabled;
+
+    @Value("${mail.index.max-open:1000}")
+    private int maxOpen;
+
+    @Value("${mail.index.rebuild-batch-size:1000}")
+    private int rebuildBatchSize;
+
+    // 打开的索引按 LRU 淘汰，淘汰时关闭文件
+    private final Map<Long, MailboxIndex> openIndexes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Long> pendingRebuilds = ConcurrentHashMap.newKeySet();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "header-index-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * List a mailbox from its index.
+     * Returns empty when the index is missing or stale, or the requested order is not
+     * supported; the caller then queries the database.
+     *
+     * @param modSeq the mailbox modification counter read from the database
+     */
+    public Optional<Page<EmailDto>> list(Long userId, long modSeq, Long folderId, Email.EmailStatus status,
+                                         Pageable pageable) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        MailboxIndex.SortKey sortKey = MailboxIndex.SortKey.ID;
+        boolean ascending = true;
+        Sort sort = pageable.getSort();
+        if (sort.isSorted()) {
+            List<Sort.Order> orders = sort.toList();
+            if (orders.size() != 1) {
+                return Optional.empty();
+            }
+            Sort.Order order = orders.get(0);
+            switch (order.getProperty()) {
+                case "id" -> sortKey = MailboxIndex.SortKey.ID;
+                case "sentDate" -> sortKey = MailboxIndex.SortKey.SENT_DATE;
+                case "receivedDate" -> sortKey = MailboxIndex.SortKey.RECEIVED_DATE;
+                default -> {
+                    return Optional.empty();
+                }
+            }
+            ascending = order.isAscending();
+        }
+
+        MailboxIndex index = getIndex(userId);
+        if (index == null || index.getModSeq() != modSeq) {
+            scheduleRebuild(userId);
+            return Optional.empty();
+        }
+
+        try {
+            MailboxIndex.Result result = index.list(folderId, status, sortKey, ascending,
+                    pageable.getOffset(), pageable.getPageSize());
+            List<EmailDto> content = result.headers().stream().map(this::toDto).toList();
+            return Optional.of(new PageImpl<>(content, pageable, result.total()));
+        } catch (IOException e) {
+            log.warn("Mailbox index of user {} is unreadable, rebuilding: {}", userId, e.getMessage());
+            scheduleRebuild(userId);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Apply a committed mailbox change to the user's index, if one exists
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMailboxEvent(MailboxEvent event) {
+        if (!enabled) {
+            return;
+        }
+        MailboxIndex index = getIndex(event.getUserId());
+        if (index == null) {
+            return;
+        }
+
+        try {
+            boolean applied = switch (event.getType()) {
+                case NEW -> {
+                    Optional<EmailHeader> header = emailRepository.findHeader(event.getEmailId());
+                    if (header.isPresent()) {
+                        index.put(header.get());
+                    }
+                    yield header.isPresent();
+                }
+                case FLAGS -> index.updateFlags(event.getEmailId(),
+                        event.getStatus() != null ? Email.EmailStatus.valueOf(event.getStatus()) : null,
+                        event.getStarred(), event.getImportant(), updatedAt(event.getEmailId()));
+                case MOVED, DELETED -> index.updateFolder(event.getEmailId(), event.getFolderId(),
+                        updatedAt(event.getEmailId()));
+                case FOLDER_COUNTS -> true;
+            };
+
+            // 每个事件对应数据库中一次 modSeq 递增；无法应用时让索引失效
+            if (applied) {
+                index.advanceModSeq();
+            } else {
+                index.setModSeq(-1);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to apply {} to mailbox index of user {}: {}",
+                    event.getType(), event.getUserId(), e.getMessage());
+            try {
+                index.setModSeq(-1);
+            } catch (Exception ignored) {
+                // The index was closed concurrently; it is reopened or rebuilt on next use
+            }
+        }
+    }
+
+    /**
+     * Drop a permanently deleted message from the user's index.
+     * Does not count as a mailbox change; callers that bump the counter publish an event too.
+     */
+    public void remove(Long userId, Long emailId) {
+        if (!enabled) {
+            return;
+        }
+        MailboxIndex index = getIndex(userId);
+        if (index != null) {
+            index.remove(emailId);
+        }
+    }
+
+    /**
+     * Queue a rebuild of the user's index, at most one pending per user
+     */
+    public void scheduleRebuild(Long userId) {
+        if (pendingRebuilds.add(userId)) {
+            rebuildExecutor.execute(() -> {
+                try {
+                    rebuild(userId);
+                } catch (Exception e) {
+                    log.error("Failed to rebuild mailbox index of user {}", userId, e);
+                } finally {
+                    pendingRebuilds.remove(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rebuild the user's index from the database and swap it in.
+     * The counter is read before scanning, so changes committed during the scan leave the
+     * new index behind the database and it is rebuilt again on next use.
+     */
+    public void rebuild(Long userId) throws IOException {
+        Optional<Long> modSeq = userRepository.findMailboxModSeq(userId);
+        if (modSeq.isEmpty()) {
+            return;
+        }
+
+        Path directory = getIndexDirectory();
+        Files.createDirectories(directory);
+        Path recordFile = directory.resolve(userId + ".hdr");
+        Path stringFile = directory.resolve(userId + ".str");
+        Path tempRecordFile = directory.resolve(userId + ".hdr.tmp");
+        Path tempStringFile = directory.resolve(userId + ".str.tmp");
+        Files.deleteIfExists(tempRecordFile);
+        Files.deleteIfExists(tempStringFile);
+
+        long count = 0;
+        try (MailboxIndex index = MailboxIndex.create(tempRecordFile, tempStringFile)) {
+            long afterId = 0;
+            List<EmailHeader> batch;
+            do {
+                batch = emailRepository.findHeaders(userId, afterId, PageRequest.of(0, rebuildBatchSize));
+                for (EmailHeader header : batch) {
+                    index.put(header);
+                    afterId = header.getId();
+                }
+                count += batch.size();
+            } while (batch.size() == rebuildBatchSize);
+            index.setModSeq(modSeq.get());
+        }
+
+        synchronized (openIndexes) {
+            MailboxIndex previous = openIndexes.remove(userId);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+            Files.move(tempStringFile, stringFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempRecordFile, recordFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            cache(userId, MailboxIndex.open(recordFile, stringFile));
+        }
+        log.debug("Rebuilt mailbox index of user {} with {} messages at modSeq {}", userId, count, modSeq.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+        synchronized (openIndexes) {
+            openIndexes.values().forEach(this::closeQuietly);
+            openIndexes.clear();
+        }
+    }
+
+    // Helper methods
+
+    /**
+     * Open index of a user, opening it from disk if needed; null when none was built yet
+     */
+    private MailboxIndex getIndex(Long userId) {
+        synchronized (openIndexes) {
+            MailboxIndex index = openIndexes.get(userId);
+            if (index != null) {
+                return index;
+            }
+            Path directory = getIndexDirectory();
+            Path recordFile = directory.resolve(userId + ".hdr");
+            Path stringFile = directory.resolve(userId + ".str");
+            if (!Files.exists(recordFile) || !Files.exists(stringFile)) {
+                return null;
+            }
+            try {
+                return cache(userId, MailboxIndex.open(recordFile, stringFile));
+            } catch (IOException e) {
+                log.warn("Cannot open mailbox index of user {}: {}", userId, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private MailboxIndex cache(Long userId, MailboxIndex index) {
+        openIndexes.put(userId, index);
+        if (openIndexes.size() > maxOpen) {
+            Map.Entry<Long, MailboxIndex> eldest = openIndexes.entrySet().iterator().next();
+            openIndexes.remove(eldest.getKey());
+            closeQuietly(eldest.getValue());
+        }
+        return index;
+    }
+
+    private void closeQuietly(MailboxIndex index) {
+        try {
+            index.close();
+        } catch (IOException e) {
+            log.debug("Failed to close mailbox index: {}", e.getMessage());
+        }
+    }
+
+    private Path getIndexDirectory() {
+        return Paths.get(mailServerConfig.getStorage().getPath(), "index");
+    }
+
+    private LocalDateTime updatedAt(Long emailId) {
+        return emailRepository.findUpdatedAt(emailId).orElse(null);
+    }
+
+    /**
+     * Same fields as the listing built from the entity in EmailController; bodies are never
+     * part of a listing
+     */
+    private EmailDto toDto(EmailHeader header) {
+        return EmailDto.builder()
+                .id(header.getId())
+                .messageId(header.getMessageId())
+                .fromAddress(header.getFromAddress())
+                .fromName(header.getFromName())
+                .toAddresses(header.getToAddresses())
+                .ccAddresses(header.getCcAddresses())
+                .bccAddresses(header.getBccAddresses())
+                .subject(header.getSubject())
+                .preview(header.getPreview())
+                .status(header.getStatus().name())
+                .direction(header.getDirection() != null ? header.getDirection().name() : null)
+                .sentDate(header.getSentDate())
+                .receivedDate(header.getReceivedDate())
+                .isRead(header.getStatus() != Email.EmailStatus.UNREAD)
+                .isStarred(header.getIsStarred())
+                .isImportant(header.getIsImportant())
+                .hasAttachments(header.getHasAttachments())
+                .sizeBytes(header.getSizeBytes())
+                .createdAt(toDate(header.getCreatedAt()))
+                .updatedAt(toDate(header.getUpdatedAt()))
+                .build();
+    }
+
+    private static Date toDate(LocalDateTime value) {
+        return value != null ? Date.from(value.atZone(ZoneId.systemDefault()).toInstant()) : null;
+    }
+}
@@ -0,0 +1,141 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.ratelimit.CounterStore;
+import com.enterprise.mail.ratelimit.SlidingWindowCounter;
+import com.enterprise.mail.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Brute-force protection for password logins.
+ *
+ * Failed logins are counted per login name and per client IP over a sliding window of
+ * {@code security.lockout-duration}. The check runs before the password is verified, so
+ * attempts over the limit cost no BCrypt work. Counts are shared across nodes through the
+ * {@link CounterStore}; each node checks its own copy, brought up to date with the shared
+ * total whenever it records a failure, so another node's failures can let through at most
+ * one more attempt here. Reaching the per-name limit in the sliding window also locks the
+ * account (status LOCKED with locked_until), which is lifted automatically when it runs out.
+ * The lock statement only matches an unlocked account, so it takes effect once however many
+ * nodes see the limit reached.
+ */
+@Slf4j
+@Service
+public class LoginAttemptService {
+
+    private final CounterStore counterStore;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final SlidingWindowCounter failures;
+    private final Duration window;
+    private final Counter blocked;
+    private final Counter locked;
+
+    @Value("${security.max-login-attempts:5}")
+    private int maxAttemptsPerLogin;
+
+    @Value("${security.max-login-attempts-per-ip:50}")
+    private int maxAttemptsPerIp;
+
+    public LoginAttemptService(CounterStore counterStore, UserRepository userRepository,
+                               TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                               @Value("${security.lockout-duration:900}") long lockoutSeconds,
+                               @Value("${security.login-attempts.max-entries:200000}") int maxEntries) {
+        this.counterStore = counterStore;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.window = Duration.ofSeconds(lockoutSeconds);
+        this.failures = new SlidingWindowCounter(window.toMillis(), maxEntries);
+        this.blocked = Counter.builder("mail.login.blocked")
+                .description("Login attempts rejected before password verification")
+                .register(meterRegistry);
+        this.locked = Counter.builder("mail.login.locked")
+                .description("Accounts locked after too many failed logins")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reject the attempt when the login name or the IP has failed too often; no database access
+     */
+    public void checkAllowed(String login, String ip) {
+        if (failures.count(ipKey(ip)) >= maxAttemptsPerIp) {
+            blocked.increment();
+            throw new BusinessException("Too many failed login attempts, try again later",
+                    HttpStatus.TOO_MANY_REQUESTS);
+        }
+        if (failures.count(loginKey(login)) >= maxAttemptsPerLogin) {
+            blocked.increment();
+            throw BusinessException.accountLocked(login);
+        }
+    }
+
+    /**
+     * Count a failed attempt; locks the account once the sliding count reaches the limit
+     */
+    public void loginFailed(String login, String ip) {
+        record(ipKey(ip));
+        String key = loginKey(login);
+        record(key);
+        // 与 checkAllowed 使用同一个滑动窗口计数；重复到达时由条件更新保证只锁一次
+        double count = failures.count(key);
+        if (count >= maxAttemptsPerLogin) {
+            Date now = new Date();
+            Date until = new Date(now.getTime() + window.toMillis());
+            Integer updated = transactionTemplate.execute(status -> userRepository.lockUntil(login, until, now));
+            if (updated != null && updated > 0) {
+                locked.increment();
+                log.warn("Account {} locked until {} after {} failed logins", login, until, Math.round(count));
+            }
+        }
+    }
+
+    /**
+     * Clear the login name's failures; the IP's stay, since one success says little about the others
+     */
+    public void loginSucceeded(String login) {
+        String key = loginKey(login);
+        long current = failures.currentWindow();
+        failures.clear(key);
+        counterStore.delete(key + ":" + current);
+        counterStore.delete(key + ":" + (current - 1));
+    }
+
+    /**
+     * Lift temporary locks that have run out, in one statement
+     */
+    @Scheduled(fixedDelayString = "${security.unlock-interval-ms:60000}", initialDelay = 60000)
+    public void unlockExpired() {
+        Integer unlocked = transactionTemplate.execute(status -> userRepository.unlockExpired(new Date()));
+        if (unlocked != null && unlocked > 0) {
+            log.info("Unlocked {} accounts whose lockout expired", unlocked);
+        }
+        failures.purge();
+    }
+
+    // Helper methods
+
+    private void record(String key) {
+        long current = failures.currentWindow();
+        long total = counterStore.increment(key + ":" + current, 1, window.multipliedBy(2));
+        failures.observe(key, current, total);
+    }
+
+    private static String loginKey(String login) {
+        return "login:name:" + login.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String ipKey(String ip) {
+        return "login:ip:" + ip;
+    }
+}
@@ -0,0 +1,365 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.dns.DnsResolver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inbound mail authentication: SPF, DKIM and DMARC.
+ *
+ * The three checks are independent until DMARC combines them, so SPF evaluation, DKIM
+ * verification and the DMARC record lookup run concurrently; delivery waits for all of
+ * them, at most {@code mail.auth.timeout-ms}; anything unfinished is cancelled and counts
+ * as a temporary error. DNS goes through the shared {@link DnsResolver}, whose cache makes
+ * repeated senders free. Each check can be switched off in {@code mail-server.security}.
+ *
+ * Organizational domains for DMARC alignment are approximated without the public suffix
+ * list: the last two labels, or three below common second-level labels of country codes
+ * ({@code example.co.uk}).
+ */
+@Slf4j
+@Service
+public class MailAuthService {
+
+    private final MailServerConfig mailServerConfig;
+    private final DnsResolver dnsResolver;
+    private final Timer authTimer;
+
+    @Value("${mail.auth.threads:16}")
+    private int threads;
+
+    @Value("${mail.auth.timeout-ms:8000}")
+    private long timeoutMillis;
+
+    @Value("${mail.auth.max-dkim-signatures:5}")
+    private int maxDkimSignatures;
+
+    private static final Set<String> SECOND_LEVEL_LABELS = Set.of("co", "com", "net", "org", "gov", "edu", "ac", "or", "ne", "go");
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * DMARC's verdict on what to do with a message that failed it
+     */
+    public enum Disposition {
+        NONE, QUARANTINE, REJECT
+    }
+
+    /**
+     * Results as stored on the email: dkimValid null when unsigned, spf and dmarc as
+     * lower-case result names, null when the check is switched off
+     */
+    public record AuthResult(Boolean dkimValid, String spf, String dmarc, Disposition disposition) {
+    }
+
+    private record DmarcRecord(String policy, String subdomainPolicy, boolean strictDkim, boolean strictSpf,
+                               int percent, boolean organizational) {
+    }
+
+    public MailAuthService(MailServerConfig mailServerConfig, DnsResolver dnsResolver, MeterRegistry meterRegistry) {
+        this.mailServerConfig = mailServerConfig;
+        this.dnsResolver = dnsResolver;
+        this.authTimer = Timer.builder("mail.auth.verify")
+                .description("Time to authenticate an inbound message (SPF, DKIM, DMARC)")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 64),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "MailAuth-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满时由投递线程自己执行，形成背压
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Authenticate a message received from {@code clientIp}
+     *
+     * @param clientIp address of the SMTP peer as seen on the connection; never taken from
+     *                 the message, whose headers the sender writes. Null skips SPF (none)
+     * @param helo     HELO/EHLO name, used for SPF when the reverse path is null
+     * @param mailFrom envelope sender; empty or null for bounces
+     */
+    public AuthResult verify(String clientIp, String helo, String mailFrom, MimeMessage message) {
+        MailServerConfig.SecurityConfig security = mailServerConfig.getSecurity();
+        boolean spfEnabled = security.isSpfEnabled();
+        boolean dkimEnabled = security.isDkimEnabled();
+        boolean dmarcEnabled = security.isDmarcEnabled();
+        if (!spfEnabled && !dkimEnabled && !dmarcEnabled) {
+            return new AuthResult(null, null, null, Disposition.NONE);
+        }
+
+        long start = System.nanoTime();
+        String fromDomain = headerFromDomain(message);
+        String sender = mailFrom != null && !mailFrom.isBlank() ? stripBrackets(mailFrom)
+                : (helo != null ? "postmaster@" + helo : null);
+        String senderDomain = domainOf(sender);
+
+        Future<SpfEvaluator.Result> spf = spfEnabled || dmarcEnabled
+                ? executor.submit(() -> checkSpf(clientIp, sender, senderDomain, helo))
+                : CompletableFuture.completedFuture(null);
+        Future<List<DkimVerifier.Result>> dkim = dkimEnabled || dmarcEnabled
+                ? executor.submit(() -> verifyDkim(message))
+                : CompletableFuture.completedFuture(List.of());
+        Future<DmarcRecord> dmarc = dmarcEnabled && fromDomain != null
+                ? executor.submit(() -> lookupDmarc(fromDomain))
+                : CompletableFuture.completedFuture(null);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Future<?> task : List.of(spf, dkim, dmarc)) {
+            try {
+                task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Mail authentication timed out after {} ms for sender {}", timeoutMillis, sender);
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // A failed DNS lookup; reported below as a temporary error
+                log.debug("Mail authentication lookup failed for sender {}", sender, e.getCause());
+            }
+        }
+        // 超时的检查不再有用：未开始的不再执行，正在等 DNS 的线程被中断，不再占用线程池
+        spf.cancel(true);
+        dkim.cancel(true);
+        dmarc.cancel(true);
+
+        SpfEvaluator.Result spfResult = resultOr(spf, SpfEvaluator.Result.TEMPERROR);
+        List<DkimVerifier.Result> dkimResults = resultOr(dkim, null);
+        Boolean dkimValid = dkimResults == null || dkimResults.isEmpty() ? null
+                : dkimResults.stream().anyMatch(DkimVerifier.Result::pass);
+
+        String dmarcResult = null;
+        Disposition disposition = Disposition.NONE;
+        if (dmarcEnabled) {
+            if (fromDomain == null) {
+                dmarcResult = "permerror";
+            } else if (!succeeded(dmarc) || dkimResults == null) {
+                dmarcResult = "temperror";
+            } else {
+                DmarcRecord record = resultOr(dmarc, null);
+                if (record == null) {
+                    dmarcResult = "none";
+                } else if (isAligned(record, fromDomain, senderDomain, spfResult, dkimResults)) {
+                    dmarcResult = "pass";
+                } else if (spfResult == SpfEvaluator.Result.TEMPERROR
+                        || dkimResults.stream().anyMatch(DkimVerifier.Result::temporary)) {
+                    dmarcResult = "temperror";
+                } else {
+                    dmarcResult = "fail";
+                    disposition = disposition(record);
+                }
+            }
+        }
+
+        authTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.debug("Authenticated mail from {} via {}: spf={}, dkim={}, dmarc={}", sender, clientIp,
+                spfResult, dkimValid, dmarcResult);
+        return new AuthResult(dkimEnabled ? dkimValid : null, spfEnabled && spfResult != null ? spfResult.label() : null,
+                dmarcResult, disposition);
+    }
+
+    // Helper methods
+
+    private SpfEvaluator.Result checkSpf(String clientIp, String sender, String senderDomain, String helo) {
+        InetAddress ip = parseIp(clientIp);
+        if (ip == null || senderDomain == null) {
+            return SpfEvaluator.Result.NONE;
+        }
+        return new SpfEvaluator(dnsResolver, ip, sender, helo).check(senderDomain);
+    }
+
+    private List<DkimVerifier.Result> verifyDkim(MimeMessage message) {
+        try {
+            return new DkimVerifier(dnsResolver).verify(message, maxDkimSignatures);
+        } catch (MessagingException e) {
+            log.debug("Unreadable message headers", e);
+            return List.of();
+        }
+    }
+
+    private DmarcRecord lookupDmarc(String fromDomain) {
+        try {
+            DmarcRecord record = fetchDmarc(fromDomain, false);
+            String organizational = organizationalDomain(fromDomain);
+            if (record == null && !organizational.equals(fromDomain)) {
+                record = fetchDmarc(organizational, true);
+            }
+            return record;
+        } catch (IOException e) {
+            // 查询失败与"没有记录"不同，交给调用方记为 temperror
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private DmarcRecord fetchDmarc(String domain, boolean organizational) throws IOException {
+        DnsResolver.Answer answer = dnsResolver.lookup("_dmarc." + domain, DnsResolver.Type.TXT);
+        List<String> records = answer.records().stream()
+                .filter(txt -> txt.regionMatches(true, 0, "v=DMARC1", 0, 8))
+                .toList();
+        if (records.size() != 1) {
+            return null;
+        }
+        Map<String, String> tags = DkimVerifier.parseTags(records.get(0));
+        String policy = tags.getOrDefault("p", "").toLowerCase(Locale.ROOT);
+        if (!Set.of("none", "quarantine", "reject").contains(policy)) {
+            return null;
+        }
+        String subdomainPolicy = tags.getOrDefault("sp", policy).toLowerCase(Locale.ROOT);
+        int percent = 100;
+        try {
+            percent = Math.max(0, Math.min(100, Integer.parseInt(tags.getOrDefault("pct", "100"))));
+        } catch (NumberFormatException ignored) {
+            // RFC 7489: invalid values fall back to the default
+        }
+        return new DmarcRecord(policy, subdomainPolicy, "s".equalsIgnoreCase(tags.get("adkim")),
+                "s".equalsIgnoreCase(tags.get("aspf")), percent, organizational);
+    }
+
+    private boolean isAligned(DmarcRecord record, String fromDomain, String senderDomain,
+                              SpfEvaluator.Result spf, List<DkimVerifier.Result> dkim) {
+        if (spf == SpfEvaluator.Result.PASS && aligned(fromDomain, senderDomain, record.strictSpf())) {
+            return true;
+        }
+        return dkim.stream().anyMatch(result -> result.pass() && aligned(fromDomain, result.domain(), record.strictDkim()));
+    }
+
+    private boolean aligned(String fromDomain, String domain, boolean strict) {
+        if (domain == null) {
+            return false;
+        }
+        return strict ? fromDomain.equals(domain) : organizationalDomain(fromDomain).equals(organizationalDomain(domain));
+    }
+
+    private Disposition disposition(DmarcRecord record) {
+        String policy = record.organizational() ? record.subdomainPolicy() : record.policy();
+        Disposition disposition = switch (policy) {
+            case "reject" -> Disposition.REJECT;
+            case "quarantine" -> Disposition.QUARANTINE;
+            default -> Disposition.NONE;
+        };
+        // pct 抽样之外的邮件降一级处理 (RFC 7489 6.6.4)
+        if (disposition != Disposition.NONE && ThreadLocalRandom.current().nextInt(100) >= record.percent()) {
+            disposition = disposition == Disposition.REJECT ? Disposition.QUARANTINE : Disposition.NONE;
+        }
+        return disposition;
+    }
+
+    static String organizationalDomain(String domain) {
+        String[] labels = domain.split("\\.");
+        int keep = 2;
+        if (labels.length >= 3 && labels[labels.length - 1].length() == 2
+                && SECOND_LEVEL_LABELS.contains(labels[labels.length - 2])) {
+            keep = 3;
+        }
+        if (labels.length <= keep) {
+            return domain;
+        }
+        return String.join(".", List.of(labels).subList(labels.length - keep, labels.length));
+    }
+
+    private static String headerFromDomain(MimeMessage message) {
+        try {
+            Address[] from = message.getFrom();
+            // DMARC 要求恰好一个 From 地址
+            if (from == null || from.length != 1 || !(from[0] instanceof InternetAddress address)) {
+                return null;
+            }
+            return domainOf(address.getAddress());
+        } catch (MessagingException e) {
+            return null;
+        }
+    }
+
+    private static String domainOf(String address) {
+        if (address == null) {
+            return null;
+        }
+        int at = address.lastIndexOf('@');
+        String domain = address.substring(at + 1).trim().toLowerCase(Locale.ROOT);
+        while (domain.endsWith(".")) {
+            domain = domain.substring(0, domain.length() - 1);
+        }
+        return domain.isEmpty() ? null : domain;
+    }
+
+    private static String stripBrackets(String address) {
+        String value = address.trim();
+        return value.startsWith("<") && value.endsWith(">") ? value.substring(1, value.length() - 1) : value;
+    }
+
+    private static InetAddress parseIp(String value) {
+        if (value == null || !(value.contains(":") || value.matches("\\d{1,3}(\\.\\d{1,3}){3}"))) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(value);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static boolean succeeded(Future<?> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.get();
+            return true;
+        } catch (ExecutionException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static <T> T resultOr(Future<T> future, T fallback) {
+        if (!succeeded(future)) {
+            return fallback;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            return fallback;
+        }
+    }
+}
@@ -1,19 +1,29 @@
 package com.enterprise.mail.service;
 
 import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.entity.Attachment;
+import com.enterprise.mail.entity.Email;
 import com.icegreen.greenmail.util.GreenMail;
 import com.icegreen.greenmail.util.ServerSetup;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.mail.*;
 import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimePart;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
 import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Mail Server Service using GreenMail for embedded mail server
@@ -25,8 +35,14 @@ public class MailServerService {
     
     private final MailServerConfig mailServerConfig;
     private final EmailService emailService;
+    private final AttachmentService attachmentService;
+    private final RawMessageService rawMessageService;
+    private final DkimService dkimService;
     private GreenMail greenMail;
     
+    // The trace header GreenMail prepends on DATA: "Received: from <ip> (HELO <name>); <date>"
+    private static final Pattern SERVER_TRACE = Pattern.compile("^\\s*from\\s+(\\S+)\\s+\\(HELO\\s+([^)]*)\\);");
+    
     @PostConstruct
     public void startServer() {
         if (!mailServerConfig.getSmtp().isEnabled()) {
@@ -98,15 +114,7 @@ public class MailServerService {
      * Send email using SMTP
      */
     public void sendEmail(String from, String to, String subject, String body, boolean isHtml) throws MessagingException {
-        Properties props = new Properties();
-        props.put("mail.smtp.host", "localhost");
-        props.put("mail.smtp.port", mailServerConfig.getSmtp().getPort());
-        props.put("mail.smtp.auth", "false");
-        props.put("mail.smtp.starttls.enable", "false");
-        
-        Session session = Session.getInstance(props);
-        
-        MimeMessage message = new MimeMessage(session);
+        MimeMessage message = new MimeMessage(createSmtpSession());
         message.setFrom(new InternetAddress(from));
         message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
         message.setSubject(subject);
@@ -117,7 +125,7 @@ public class MailServerService {
             message.setText(body);
         }
         
-        Transport.send(message);
+        send(message);
         
         // Save sent email
         emailService.saveSentEmail(from, to, message);
@@ -125,6 +133,129 @@ public class MailServerService {
         log.info("Email sent successfully from {} to {}", from, to);
     }
     
+    /**
+     * Send a stored email together with its stored attachments.
+     *
+     * Attachment parts are backed by the stored files and declare base64 up front, so
+     * jakarta.mail neither buffers them nor pre-reads them to choose an encoding: while
+     * the message is written to the SMTP socket each file is read through a small buffer
+     * and encoded on the fly. The email is already in the Sent folder and is not saved
+     * again; only the location of its stored source is recorded.
+     */
+    public void sendEmail(Email email, List<Attachment> attachments) throws MessagingException, IOException {
+        String messageId = email.getMessageId();
+        MimeMessage message = new MimeMessage(createSmtpSession()) {
+            @Override
+            protected void updateMessageID() throws MessagingException {
+                // Keep the id stored with the email so replies thread correctly
+                setHeader("Message-ID", "<" + messageId + ">");
+            }
+        };
+        
+        message.setFrom(new InternetAddress(email.getFromAddress(), email.getFromName(), "UTF-8"));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(email.getToAddresses()));
+        if (hasText(email.getCcAddresses())) {
+            message.setRecipients(Message.RecipientType.CC, InternetAddress.parse(email.getCcAddresses()));
+        }
+        if (hasText(email.getBccAddresses())) {
+            message.setRecipients(Message.RecipientType.BCC, InternetAddress.parse(email.getBccAddresses()));
+        }
+        if (hasText(email.getReplyTo())) {
+            message.setReplyTo(InternetAddress.parse(email.getReplyTo()));
+        }
+        if (hasText(email.getInReplyTo())) {
+            message.setHeader("In-Reply-To", email.getInReplyTo());
+        }
+        if (hasText(email.getReferences())) {
+            message.setHeader("References", email.getReferences());
+        }
+        message.setSubject(email.getSubject(), "UTF-8");
+        message.setSentDate(email.getSentDate() != null ? email.getSentDate() : new Date());
+        
+        if (attachments == null || attachments.isEmpty()) {
+            setBody(message, email);
+        } else {
+            MimeMultipart mixed = new MimeMultipart("mixed");
+            MimeBodyPart bodyPart = new MimeBodyPart();
+            setBody(bodyPart, email);
+            mixed.addBodyPart(bodyPart);
+            
+            for (Attachment attachment : attachments) {
+                mixed.addBodyPart(createAttachmentPart(attachment));
+            }
+            message.setContent(mixed);
+        }
+        
+        send(message);
+        
+        // Headers are final after send. The transport leaves Bcc off the wire, but this Sent
+        // copy keeps it so the sender can still see who was blind-copied
+        rawMessageService.store(message, email);
+        
+        log.info("Email {} sent from {} to {} with {} attachment(s)", messageId, email.getFromAddress(),
+                email.getToAddresses(), attachments == null ? 0 : attachments.size());
+    }
+    
+    /**
+     * Empty message on an SMTP session, for mail the server composes itself
+     */
+    public MimeMessage createMessage() {
+        return new MimeMessage(createSmtpSession());
+    }
+    
+    /**
+     * A stored message read from {@code source}; a SharedInputStream keeps the body on disk
+     */
+    public MimeMessage createMessage(InputStream source) throws MessagingException {
+        return new MimeMessage(createSmtpSession(), source);
+    }
+    
+    /**
+     * Send a message the server composed, such as a vacation reply; DKIM-signed, not saved
+     */
+    public void sendGenerated(MimeMessage message) throws MessagingException {
+        send(message);
+    }
+    
+    /**
+     * Pass a received message on unchanged to other recipients. Its headers and body are
+     * not re-saved, so the original Message-ID and DKIM signatures survive; the alias is
+     * the envelope sender, so bounces come back to it.
+     */
+    public void relay(MimeMessage message, String envelopeFrom, Address[] recipients) throws MessagingException {
+        Session session = createSmtpSession();
+        session.getProperties().put("mail.smtp.from", envelopeFrom);
+        try (Transport transport = session.getTransport("smtp")) {
+            transport.connect();
+            transport.sendMessage(message, recipients);
+        }
+    }
+    
+    /**
+     * Deliver a message accepted by the embedded server to a local recipient.
+     *
+     * The SMTP peer's address and HELO name come from the Return-Path and Received lines the
+     * server itself writes above the received data, so they are the values seen on the
+     * connection; a client cannot put a header above them. Messages from anywhere else
+     * must go through {@link EmailService#saveReceivedEmail} with their session values.
+     */
+    public Email deliver(MimeMessage message, String to) throws MessagingException, IOException {
+        String clientIp = null;
+        String helo = null;
+        String[] received = message.getHeader("Received");
+        if (received != null && received.length > 0) {
+            Matcher matcher = SERVER_TRACE.matcher(received[0]);
+            if (matcher.find()) {
+                clientIp = matcher.group(1);
+                helo = matcher.group(2).isBlank() ? null : matcher.group(2).strip();
+            }
+        }
+        String[] returnPath = message.getHeader("Return-Path");
+        String from = returnPath != null && returnPath.length > 0
+                ? returnPath[0].strip().replaceAll("^<|>$", "") : null;
+        return emailService.saveReceivedEmail(clientIp, helo, from, to, message);
+    }
+    
     /**
      * Receive emails from the server
      */
@@ -151,4 +282,66 @@ public class MailServerService {
     public boolean isRunning() {
         return greenMail != null;
     }
+    
+    // Helper methods
+    
+    /**
+     * Finalize headers, DKIM-sign and send. Transport.send would call saveChanges again and
+     * could rewrite headers covered by the signature, so the transport is driven directly.
+     */
+    private void send(MimeMessage message) throws MessagingException {
+        message.saveChanges();
+        dkimService.sign(message);
+        try (Transport transport = message.getSession().getTransport("smtp")) {
+            transport.connect();
+            transport.sendMessage(message, message.getAllRecipients());
+        }
+    }
+    
+    private Session createSmtpSession() {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "localhost");
+        props.put("mail.smtp.port", mailServerConfig.getSmtp().getPort());
+        props.put("mail.smtp.auth", "false");
+        props.put("mail.smtp.starttls.enable", "false");
+        return Session.getInstance(props);
+    }
+    
+    private void setBody(MimePart part, Email email) throws MessagingException {
+        String text = email.getContentText();
+        String html = email.getContentHtml();
+        
+        if (hasText(html) && hasText(text)) {
+            MimeMultipart alternative = new MimeMultipart("alternative");
+            MimeBodyPart textPart = new MimeBodyPart();
+            textPart.setText(text, "UTF-8");
+            alternative.addBodyPart(textPart);
+            MimeBodyPart htmlPart = new MimeBodyPart();
+            htmlPart.setText(html, "UTF-8", "html");
+            alternative.addBodyPart(htmlPart);
+            part.setContent(alternative);
+        } else if (hasText(html)) {
+            part.setText(html, "UTF-8", "html");
+        } else {
+            part.setText(text != null ? text : "", "UTF-8");
+        }
+    }
+    
+    private MimeBodyPart createAttachmentPart(Attachment attachment) throws MessagingException, IOException {
+        MimeBodyPart part = new MimeBodyPart();
+        // File-backed data source with a fixed transfer encoding: streamed, never scanned
+        part.attachFile(attachmentService.getAttachmentFile(attachment).toFile(),
+                attachment.getContentType(), "base64");
+        part.setFileName(attachment.getOriginalFileName());
+        
+        if (hasText(attachment.getContentId())) {
+            part.setContentID("<" + attachment.getContentId() + ">");
+            part.setDisposition(Part.INLINE);
+        }
+        return part;
+    }
+    
+    private boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
 }
\ No newline at end of file
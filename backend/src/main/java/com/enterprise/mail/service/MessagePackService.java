@@ -0,0 +1,398 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.entity.MessagePack;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.MessagePackRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only pack files for cold messages.
+ *
+ * A pack is a sequence of records {@code [magic][emailId][kind][length][crc32][payload]}.
+ * The {@code .idx} sidecar holds one fixed-width entry {@code [emailId][kind][offset][length]}
+ * per record in ascending email id order, so a reader finds a record with a binary search
+ * of a few positional reads and then seeks straight to the payload.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessagePackService {
+    
+    private final MessagePackRepository messagePackRepository;
+    private final MailServerConfig mailServerConfig;
+    
+    public static final byte KIND_BODY = 1;
+    public static final byte KIND_RAW = 2;
+    
+    private static final int RECORD_MAGIC = 0x4D504B31; // "MPK1"
+    private static final int HEADER_SIZE = 4 + 8 + 1 + 4 + 4;
+    private static final int INDEX_ENTRY_SIZE = 8 + 1 + 8 + 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    // 归档包文件名不会变化，缓存 ID 到路径的映射
+    private final Map<Long, Path> packPaths = new ConcurrentHashMap<>();
+    
+    /**
+     * Body as it was stored in email_bodies: encoded blobs plus the dictionary they need
+     */
+    public record PackedBody(Long dictionaryId, byte[] textData, byte[] htmlData) {
+    }
+    
+    /**
+     * One sidecar index entry: where the payload of a record lies in the pack
+     */
+    public record PackEntry(long emailId, byte kind, long offset, int length) {
+    }
+    
+    /**
+     * Create a new pack; records must be appended in ascending email id order
+     */
+    public PackWriter createPack() throws IOException {
+        Path directory = getPackDirectory();
+        Files.createDirectories(directory);
+        
+        MessagePack pack = new MessagePack();
+        pack.setFileName("pack-" + LocalDateTime.now().format(FILE_NAME_FORMAT) + "-"
+                + UUID.randomUUID().toString().substring(0, 8) + ".pack");
+        pack = messagePackRepository.save(pack);
+        
+        return new PackWriter(pack, directory.resolve(pack.getFileName()), directory.resolve(pack.getFileName() + ".idx"));
+    }
+    
+    /**
+     * Read a packed body
+     */
+    public Optional<PackedBody> readBody(Long packId, Long emailId) throws IOException {
+        Path packFile = getPackPath(packId);
+        Optional<long[]> entry = findEntry(indexPath(packFile), emailId, KIND_BODY);
+        if (entry.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        ByteBuffer payload = ByteBuffer.allocate((int) entry.get()[1]);
+        try (FileChannel channel = FileChannel.open(packFile, StandardOpenOption.READ)) {
+            readFully(channel, payload, entry.get()[0]);
+        }
+        payload.flip();
+        
+        long dictionaryId = payload.getLong();
+        byte[] text = readBlob(payload);
+        byte[] html = readBlob(payload);
+        return Optional.of(new PackedBody(dictionaryId > 0 ? dictionaryId : null, text, html));
+    }
+    
+    /**
+     * Open a packed raw source; the stream inflates on the fly and closes the pack file when closed
+     */
+    public InputStream openRaw(Long packId, Long emailId) throws IOException {
+        Path packFile = getPackPath(packId);
+        long[] entry = findEntry(indexPath(packFile), emailId, KIND_RAW)
+                .orElseThrow(() -> new BusinessException("Message source not found in pack", HttpStatus.NOT_FOUND));
+        
+        FileChannel channel = FileChannel.open(packFile, StandardOpenOption.READ);
+        channel.position(entry[0]);
+        // deflate 数据自带结束标记，无需再限制读取长度
+        return new InflaterInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+    }
+    
+    /**
+     * Sealed packs, oldest first
+     */
+    public List<MessagePack> getSealedPacks() {
+        return messagePackRepository.findBySealedTrueOrderById();
+    }
+    
+    /**
+     * All index entries of a pack, in email id order
+     */
+    public List<PackEntry> readIndex(Long packId) throws IOException {
+        Path indexFile = indexPath(getPackPath(packId));
+        List<PackEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 1024);
+            long position = 0;
+            long size = channel.size() - channel.size() % INDEX_ENTRY_SIZE;
+            while (position < size) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), size - position));
+                readFully(channel, buffer, position);
+                position += buffer.position();
+                buffer.flip();
+                while (buffer.remaining() >= INDEX_ENTRY_SIZE) {
+                    entries.add(new PackEntry(buffer.getLong(), buffer.get(), buffer.getLong(), buffer.getInt()));
+                }
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * Remove a pack's files and row. Readers that already opened it keep their file handle.
+     */
+    public void deletePack(Long packId) throws IOException {
+        Path packFile = getPackPath(packId);
+        Files.deleteIfExists(indexPath(packFile));
+        Files.deleteIfExists(packFile);
+        messagePackRepository.deleteById(packId);
+        packPaths.remove(packId);
+    }
+    
+    // Helper methods
+    
+    private Path getPackDirectory() {
+        return Paths.get(mailServerConfig.getStorage().getPath(), "packs");
+    }
+    
+    private Path getPackPath(Long packId) {
+        return packPaths.computeIfAbsent(packId, id -> messagePackRepository.findById(id)
+                .map(pack -> getPackDirectory().resolve(pack.getFileName()))
+                .orElseThrow(() -> new BusinessException("Message pack not found: " + id, HttpStatus.NOT_FOUND)));
+    }
+    
+    private static Path indexPath(Path packFile) {
+        return packFile.resolveSibling(packFile.getFileName() + ".idx");
+    }
+    
+    /**
+     * Binary search of the sidecar index; returns {offset, length} of the payload
+     */
+    private Optional<long[]> findEntry(Path indexFile, long emailId, byte kind) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            long low = 0;
+            long high = channel.size() / INDEX_ENTRY_SIZE - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                entry.clear();
+                readFully(channel, entry, mid * INDEX_ENTRY_SIZE);
+                entry.flip();
+                
+                long entryEmailId = entry.getLong();
+                byte entryKind = entry.get();
+                int cmp = entryEmailId != emailId ? Long.compare(entryEmailId, emailId) : Byte.compare(entryKind, kind);
+                if (cmp == 0) {
+                    return Optional.of(new long[]{entry.getLong(), entry.getInt()});
+                }
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+    
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of pack file");
+            }
+            position += read;
+        }
+    }
+    
+    private static byte[] readBlob(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return data;
+    }
+    
+    /**
+     * Appends records to one pack. Data is forced to disk by {@link #sync()} before the
+     * database is switched over, so a crash can only leave unreferenced records behind.
+     */
+    public class PackWriter implements AutoCloseable {
+        
+        private final MessagePack pack;
+        private final FileChannel data;
+        private final FileChannel index;
+        private long lastEmailId = -1;
+        private byte lastKind;
+        
+        private PackWriter(MessagePack pack, Path packFile, Path indexFile) throws IOException {
+            this.pack = pack;
+            this.data = FileChannel.open(packFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            this.index = FileChannel.open(indexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        
+        public Long getPackId() {
+            return pack.getId();
+        }
+        
+        public long size() throws IOException {
+            return data.size();
+        }
+        
+        /**
+         * Append an already encoded body; returns the bytes written
+         */
+        public long appendBody(long emailId, Long dictionaryId, byte[] textData, byte[] htmlData) throws IOException {
+            int length = 8 + 4 + lengthOf(textData) + 4 + lengthOf(htmlData);
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            payload.putLong(dictionaryId != null ? dictionaryId : 0);
+            writeBlob(payload, textData);
+            writeBlob(payload, htmlData);
+            payload.flip();
+            
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            
+            long start = data.size();
+            ByteBuffer header = header(emailId, KIND_BODY, length, (int) crc.getValue());
+            writeFully(header, start);
+            writeFully(payload, start + HEADER_SIZE);
+            addIndexEntry(emailId, KIND_BODY, start + HEADER_SIZE, length);
+            return HEADER_SIZE + length;
+        }
+        
+        /**
+         * Deflate a raw source file into the pack while reading it; returns the bytes written
+         */
+        public long appendRaw(long emailId, Path rawFile) throws IOException {
+            long start = data.size();
+            long payloadStart = start + HEADER_SIZE;
+            data.position(payloadStart);
+            
+            CRC32 crc = new CRC32();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try {
+                // Not closed: closing would close the pack channel
+                CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(data), crc);
+                DeflaterOutputStream out = new DeflaterOutputStream(checked, deflater, BUFFER_SIZE);
+                Files.copy(rawFile, out);
+                out.finish();
+                checked.flush();
+            } finally {
+                deflater.end();
+            }
+            
+            long length = data.position() - payloadStart;
+            writeFully(header(emailId, KIND_RAW, (int) length, (int) crc.getValue()), start);
+            addIndexEntry(emailId, KIND_RAW, payloadStart, (int) length);
+            return HEADER_SIZE + length;
+        }
+        
+        /**
+         * Copy a record of another pack as is, header and checksum included, without
+         * inflating it; returns the bytes written
+         */
+        public long copyRecord(Long sourcePackId, PackEntry entry) throws IOException {
+            long start = data.size();
+            long length = HEADER_SIZE + (long) entry.length();
+            try (FileChannel source = FileChannel.open(getPackPath(sourcePackId), StandardOpenOption.READ)) {
+                long copied = 0;
+                while (copied < length) {
+                    long count = source.transferTo(entry.offset() - HEADER_SIZE + copied, length - copied,
+                            data.position(start + copied));
+                    if (count <= 0) {
+                        throw new IOException("Unexpected end of pack file");
+                    }
+                    copied += count;
+                }
+            }
+            addIndexEntry(entry.emailId(), entry.kind(), start + HEADER_SIZE, entry.length());
+            return length;
+        }
+        
+        /**
+         * Force pack and index to disk and record the pack's size
+         */
+        public void sync() throws IOException {
+            data.force(true);
+            index.force(true);
+            pack.setDataBytes(data.size());
+            pack.setRecordCount((int) (index.size() / INDEX_ENTRY_SIZE));
+            messagePackRepository.save(pack);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                sync();
+                pack.setSealed(true);
+                messagePackRepository.save(pack);
+            } finally {
+                data.close();
+                index.close();
+            }
+            log.info("Sealed message pack {} ({} records, {} bytes)", pack.getFileName(),
+                    pack.getRecordCount(), pack.getDataBytes());
+        }
+        
+        private ByteBuffer header(long emailId, byte kind, int length, int crc) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(RECORD_MAGIC).putLong(emailId).put(kind).putInt(length).putInt(crc);
+            header.flip();
+            return header;
+        }
+        
+        private void addIndexEntry(long emailId, byte kind, long offset, int length) throws IOException {
+            if (emailId < lastEmailId || (emailId == lastEmailId && kind <= lastKind)) {
+                throw new IllegalStateException("Pack records must be appended in ascending order");
+            }
+            lastEmailId = emailId;
+            lastKind = kind;
+            
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putLong(emailId).put(kind).putLong(offset).putInt(length);
+            entry.flip();
+            while (entry.hasRemaining()) {
+                index.write(entry);
+            }
+        }
+        
+        private void writeFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += data.write(buffer, position);
+            }
+        }
+        
+        private int lengthOf(byte[] blob) {
+            return blob != null ? blob.length : 0;
+        }
+        
+        private void writeBlob(ByteBuffer buffer, byte[] blob) {
+            if (blob == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(blob.length).put(blob);
+            }
+        }
+    }
+}
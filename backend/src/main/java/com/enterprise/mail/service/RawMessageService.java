@@ -0,0 +1,97 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.exception.BusinessException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Stores the exact RFC 822 bytes of each message as a file under
+ * {@code mail-server.storage.path/raw/{userId}}
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RawMessageService {
+    
+    private final MailServerConfig mailServerConfig;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Write the message source to storage and record its location and size on the email.
+     * The message is streamed through a fixed-size buffer, never built up in memory.
+     * Within a transaction the file is removed again if the email row is never committed.
+     */
+    public void store(MimeMessage message, Email email) throws MessagingException, IOException {
+        Path directory = Paths.get(mailServerConfig.getStorage().getPath(), "raw", email.getUser().getId().toString());
+        Files.createDirectories(directory);
+        
+        String fileName = UUID.randomUUID() + ".eml";
+        Path file = directory.resolve(fileName);
+        Path partFile = directory.resolve(fileName + ".part");
+        
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partFile), BUFFER_SIZE)) {
+            message.writeTo(out);
+        } catch (IOException | MessagingException | RuntimeException e) {
+            Files.deleteIfExists(partFile);
+            throw e;
+        }
+        Files.move(partFile, file, StandardCopyOption.ATOMIC_MOVE);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            String rawPath = file.toString();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        delete(rawPath);
+                    }
+                }
+            });
+        }
+        
+        email.setRawPath(file.toString());
+        email.setRawSize(Files.size(file));
+    }
+    
+    /**
+     * Resolve a stored message source
+     */
+    public Path getRawFile(String rawPath) {
+        Path file = Paths.get(rawPath);
+        if (!Files.isReadable(file)) {
+            throw new BusinessException("Message source not found", HttpStatus.NOT_FOUND);
+        }
+        return file;
+    }
+    
+    /**
+     * Remove a stored message source
+     */
+    public void delete(String rawPath) {
+        if (rawPath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Paths.get(rawPath));
+        } catch (IOException e) {
+            log.error("Failed to delete message source: " + rawPath, e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.EmailFolder;
+import com.enterprise.mail.entity.RetentionPolicy;
+import com.enterprise.mail.entity.User;
+import com.enterprise.mail.repository.EmailBodyRepository;
+import com.enterprise.mail.repository.EmailFolderRepository;
+import com.enterprise.mail.repository.EmailRepository;
+import com.enterprise.mail.repository.EmailSearchTextRepository;
+import com.enterprise.mail.repository.RetentionPolicyRepository;
+import com.enterprise.mail.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purges mail that has outlived the retention policy of its folder.
+ *
+ * Expired messages are found per folder in id order and deleted in small chunks, each in
+ * its own short transaction, with a pause in between so row locks on {@code emails} are
+ * only ever held for one chunk. Deleting a chunk also drops attachment blob references,
+ * body rows and raw sources, gives the bytes back to the user's quota and recounts the
+ * folder.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RetentionService {
+
+    private final RetentionPolicyRepository retentionPolicyRepository;
+    private final EmailFolderRepository folderRepository;
+    private final EmailRepository emailRepository;
+    private final EmailBodyRepository emailBodyRepository;
+    private final EmailSearchTextRepository searchTextRepository;
+    private final UserRepository userRepository;
+    private final AttachmentService attachmentService;
+    private final RawMessageService rawMessageService;
+    private final EmailService emailService;
+    private final HeaderIndexService headerIndexService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${mail.retention.enabled:true}")
+    private boolean enabled;
+
+    // 未配置策略时的默认保留天数
+    @Value("${mail.retention.trash-days:30}")
+    private int trashDays;
+
+    @Value("${mail.retention.spam-days:14}")
+    private int spamDays;
+
+    @Value("${mail.retention.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${mail.retention.pause-ms:200}")
+    private long pauseMs;
+
+    @Value("${mail.retention.max-run-minutes:30}")
+    private long maxRunMinutes;
+
+    private static final int FOLDER_PAGE_SIZE = 100;
+
+    /**
+     * One purge pass over all folders that have a retention period
+     */
+    @Scheduled(fixedDelayString = "${mail.retention.interval-ms:3600000}", initialDelay = 600000)
+    public void purgeExpiredMail() {
+        if (!enabled) {
+            return;
+        }
+
+        Map<String, Integer> policies = loadPolicies();
+        Set<EmailFolder.FolderType> types = EnumSet.noneOf(EmailFolder.FolderType.class);
+        policies.forEach((key, days) -> {
+            if (days > 0) {
+                types.add(EmailFolder.FolderType.valueOf(key.substring(key.indexOf('|') + 1)));
+            }
+        });
+        if (types.isEmpty()) {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(maxRunMinutes);
+        long afterFolderId = 0;
+        int purged = 0;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                List<EmailFolder> folders = folderRepository.findPageByTypeIn(types, afterFolderId,
+                        PageRequest.of(0, FOLDER_PAGE_SIZE));
+                if (folders.isEmpty()) {
+                    break;
+                }
+                afterFolderId = folders.get(folders.size() - 1).getId();
+
+                for (EmailFolder folder : folders) {
+                    int days = getRetentionDays(policies, domainOf(folder.getUser()), folder.getType());
+                    if (days > 0 && System.currentTimeMillis() < deadline) {
+                        purged += purgeFolder(folder, LocalDateTime.now().minusDays(days), deadline);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Retention run stopped after purging {} messages", purged, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (purged > 0) {
+            log.info("Purged {} expired messages", purged);
+        }
+    }
+
+    // Helper methods
+
+    private int purgeFolder(EmailFolder folder, LocalDateTime cutoff, long deadline) throws InterruptedException {
+        int purged = 0;
+        long afterId = 0;
+        while (System.currentTimeMillis() < deadline) {
+            List<Long> chunk = emailRepository.findExpired(folder.getId(), afterId, cutoff, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            afterId = chunk.get(chunk.size() - 1);
+            purged += purgeChunk(folder.getUser().getId(), folder.getId(), chunk, cutoff);
+            TimeUnit.MILLISECONDS.sleep(pauseMs);
+        }
+        return purged;
+    }
+
+    /**
+     * Delete one chunk in a single short transaction; files are unlinked after commit
+     */
+    private int purgeChunk(Long userId, Long folderId, List<Long> candidateIds, LocalDateTime cutoff) {
+        List<Long> deleted = new ArrayList<>();
+        List<String> rawPaths = new ArrayList<>();
+        List<Path> attachmentFiles = new ArrayList<>();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // 重新校验：候选查询之后邮件可能已被移出或修改
+            List<Email> emails = emailRepository.findAllById(candidateIds).stream()
+                    .filter(email -> email.getFolder() != null && folderId.equals(email.getFolder().getId()))
+                    .filter(email -> email.getUpdatedAt() != null && email.getUpdatedAt().isBefore(cutoff))
+                    .toList();
+            if (emails.isEmpty()) {
+                return;
+            }
+
+            List<Long> emailIds = emails.stream().map(Email::getId).toList();
+            attachmentFiles.addAll(attachmentService.deleteByEmails(emailIds));
+            emailBodyRepository.deleteAllByIdInBatch(emailIds);
+            searchTextRepository.deleteAllByIdInBatch(emailIds);
+
+            long bytes = 0;
+            for (Email email : emails) {
+                bytes += email.getSizeBytes() != null ? email.getSizeBytes() : 0;
+                if (email.getRawPath() != null) {
+                    rawPaths.add(email.getRawPath());
+                }
+            }
+            emailRepository.deleteAll(emails);
+            emailRepository.flush();
+
+            userRepository.releaseStorage(userId, bytes);
+            emailService.refreshFolderCounts(folderId);
+            deleted.addAll(emailIds);
+        });
+
+        rawPaths.forEach(rawMessageService::delete);
+        for (Path file : attachmentFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.error("Failed to delete attachment file: " + file, e);
+            }
+        }
+        deleted.forEach(emailId -> headerIndexService.remove(userId, emailId));
+        return deleted.size();
+    }
+
+    /**
+     * Retention days keyed by "domain|FOLDER_TYPE", with "*" for policies of all domains.
+     * Configured defaults fill in folder types that have no global row.
+     */
+    private Map<String, Integer> loadPolicies() {
+        Map<String, Integer> policies = new HashMap<>();
+        policies.put(policyKey(null, EmailFolder.FolderType.TRASH), trashDays);
+        policies.put(policyKey(null, EmailFolder.FolderType.SPAM), spamDays);
+        for (RetentionPolicy policy : retentionPolicyRepository.findByEnabledTrue()) {
+            policies.put(policyKey(policy.getDomainName(), policy.getFolderType()), policy.getRetentionDays());
+        }
+        return policies;
+    }
+
+    private int getRetentionDays(Map<String, Integer> policies, String domain, EmailFolder.FolderType type) {
+        Integer days = domain != null ? policies.get(policyKey(domain, type)) : null;
+        if (days == null) {
+            days = policies.get(policyKey(null, type));
+        }
+        return days != null ? days : 0;
+    }
+
+    private static String policyKey(String domain, EmailFolder.FolderType type) {
+        return (domain != null ? domain.toLowerCase() : "*") + "|" + type.name();
+    }
+
+    private static String domainOf(User user) {
+        String email = user.getEmail();
+        int at = email != null ? email.lastIndexOf('@') : -1;
+        return at >= 0 ? email.substring(at + 1) : null;
+    }
+}
@@ -0,0 +1,438 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dto.RuleJobDto;
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.EmailAlias;
+import com.enterprise.mail.entity.EmailFolder;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.EmailFolderRepository;
+import com.enterprise.mail.repository.EmailRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies an alias' filter rules to mail it has already received.
+ *
+ * A job walks the alias' mail in id order, one chunk at a time: the chunk is read in a
+ * short transaction, evaluated against the compiled rules on a shared fork-join pool, and
+ * the outcomes are grouped so each distinct effect becomes one set-based UPDATE. Folder
+ * counters are adjusted by the row counts those updates return rather than recounted.
+ * Between chunks the job pauses, and waits longer while the connection pool has threads
+ * queued for a connection, so live delivery keeps priority. Job progress is kept in memory
+ * on the node that runs it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RuleApplicationService {
+
+    private final EmailRepository emailRepository;
+    private final EmailFolderRepository folderRepository;
+    private final RuleService ruleService;
+    private final EmailService emailService;
+    private final EmailBodyService emailBodyService;
+    private final UserService userService;
+    private final TransactionTemplate transactionTemplate;
+    private final DataSource dataSource;
+
+    @Value("${mail.rules.apply.chunk-size:500}")
+    private int chunkSize;
+
+    // 0 表示使用除一个核心外的全部核心
+    @Value("${mail.rules.apply.parallelism:0}")
+    private int parallelism;
+
+    @Value("${mail.rules.apply.max-jobs:2}")
+    private int maxJobs;
+
+    @Value("${mail.rules.apply.pause-ms:100}")
+    private long pauseMs;
+
+    @Value("${mail.rules.apply.busy-pause-ms:1000}")
+    private long busyPauseMs;
+
+    @Value("${mail.rules.apply.default-days:365}")
+    private int defaultDays;
+
+    @Value("${mail.rules.apply.keep-finished-minutes:60}")
+    private long keepFinishedMinutes;
+
+    // Sent mail, drafts and mail already thrown away are not re-filtered unless asked for
+    private static final Set<EmailFolder.FolderType> SKIPPED_TYPES = EnumSet.of(
+            EmailFolder.FolderType.SENT, EmailFolder.FolderType.DRAFTS,
+            EmailFolder.FolderType.TRASH, EmailFolder.FolderType.SPAM);
+
+    private static final int MAX_BUSY_WAITS = 30;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor jobPool;
+    private ForkJoinPool evaluationPool;
+
+    public enum JobStatus {
+        QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    private static final class Job {
+        final String id = UUID.randomUUID().toString();
+        final Long userId;
+        final Long aliasId;
+        final Long folderId;
+        final Date since;
+        volatile JobStatus status = JobStatus.QUEUED;
+        volatile boolean cancelled;
+        volatile long total;
+        volatile long processed;
+        volatile long matched;
+        volatile long moved;
+        volatile long startedMillis;
+        volatile LocalDateTime startedAt;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        Job(Long userId, Long aliasId, Long folderId, Date since) {
+            this.userId = userId;
+            this.aliasId = aliasId;
+            this.folderId = folderId;
+            this.since = since;
+        }
+
+        boolean isActive() {
+            return status == JobStatus.QUEUED || status == JobStatus.RUNNING;
+        }
+    }
+
+    // Emails that share a source folder, a target folder and a status change
+    private record MoveKey(Long sourceId, Long targetId, Email.EmailStatus status) {
+    }
+
+    private record Planned(Email email, RuleMatcher.Outcome outcome) {
+    }
+
+    @PostConstruct
+    public void start() {
+        int threads = parallelism > 0 ? parallelism : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        evaluationPool = new ForkJoinPool(threads);
+
+        AtomicInteger counter = new AtomicInteger();
+        jobPool = new ThreadPoolExecutor(maxJobs, maxJobs, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxJobs * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "RuleApply-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        jobs.values().forEach(job -> job.cancelled = true);
+        jobPool.shutdownNow();
+        evaluationPool.shutdownNow();
+    }
+
+    /**
+     * Queue a run of the alias' active rules over its mail received in the last {@code days}
+     *
+     * @param folderId only this folder, or null for all folders except sent, drafts, trash and spam
+     */
+    public RuleJobDto submit(Long aliasId, Long folderId, Integer days, String username) {
+        EmailAlias alias = ruleService.findAliasWithPermission(aliasId, username);
+        Long userId = alias.getUser().getId();
+        if (folderId != null) {
+            folderRepository.findById(folderId)
+                    .filter(folder -> folder.getUser().getId().equals(userId))
+                    .orElseThrow(() -> new BusinessException("Folder not found", HttpStatus.NOT_FOUND));
+        }
+        pruneFinished();
+
+        Optional<Job> running = jobs.values().stream()
+                .filter(job -> job.aliasId.equals(aliasId) && job.isActive())
+                .findFirst();
+        if (running.isPresent()) {
+            throw new BusinessException("Rules are already being applied to this alias", HttpStatus.CONFLICT);
+        }
+
+        int lookback = days != null && days > 0 ? days : defaultDays;
+        Date since = Date.from(LocalDateTime.now().minusDays(lookback).atZone(ZoneId.systemDefault()).toInstant());
+        Job job = new Job(userId, aliasId, folderId, since);
+        RuleMatcher matcher = ruleService.getMatcher(alias);
+        try {
+            jobs.put(job.id, job);
+            jobPool.execute(() -> run(job, matcher));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new BusinessException("Too many rule runs in progress, try again later", HttpStatus.TOO_MANY_REQUESTS);
+        }
+
+        log.info("Queued rule run {} for alias {} ({} rules, folder {}, last {} days)",
+                job.id, alias.getAliasAddress(), matcher.size(), folderId, lookback);
+        return toDto(job);
+    }
+
+    /**
+     * Progress of a run
+     */
+    public RuleJobDto getJob(Long aliasId, String jobId, String username) {
+        return toDto(findJob(aliasId, jobId, username));
+    }
+
+    /**
+     * Stop a run after its current chunk; changes already applied stay
+     */
+    public RuleJobDto cancel(Long aliasId, String jobId, String username) {
+        Job job = findJob(aliasId, jobId, username);
+        if (job.isActive()) {
+            job.cancelled = true;
+        }
+        return toDto(job);
+    }
+
+    // Helper methods
+
+    private void run(Job job, RuleMatcher matcher) {
+        job.status = JobStatus.RUNNING;
+        job.startedMillis = System.currentTimeMillis();
+        job.startedAt = LocalDateTime.now();
+        try {
+            if (matcher.size() > 0) {
+                job.total = emailRepository.countForRules(job.aliasId, job.folderId, SKIPPED_TYPES, job.since);
+                long afterId = 0;
+                while (!job.cancelled) {
+                    long cursor = afterId;
+                    List<Email> chunk = transactionTemplate.execute(status -> {
+                        List<Email> emails = emailRepository.findForRules(job.aliasId, job.folderId, SKIPPED_TYPES,
+                                job.since, cursor, PageRequest.of(0, chunkSize));
+                        if (matcher.usesBody()) {
+                            emailBodyService.loadAll(emails);
+                        }
+                        return emails;
+                    });
+                    if (chunk == null || chunk.isEmpty()) {
+                        break;
+                    }
+                    afterId = chunk.get(chunk.size() - 1).getId();
+
+                    List<Planned> planned = evaluate(matcher, chunk);
+                    if (!planned.isEmpty()) {
+                        job.moved += transactionTemplate.execute(status -> applyChunk(job.userId, planned));
+                    }
+                    job.processed += chunk.size();
+                    job.matched += planned.size();
+                    throttle();
+                }
+            }
+            job.status = job.cancelled ? JobStatus.CANCELLED : JobStatus.COMPLETED;
+            log.info("Rule run {} {}: {} messages checked, {} matched, {} moved",
+                    job.id, job.status, job.processed, job.matched, job.moved);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.status = JobStatus.CANCELLED;
+        } catch (Exception e) {
+            log.error("Rule run {} for alias {} failed", job.id, job.aliasId, e);
+            job.error = e.getMessage();
+            job.status = JobStatus.FAILED;
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private List<Planned> evaluate(RuleMatcher matcher, List<Email> emails) throws InterruptedException, ExecutionException {
+        return evaluationPool.submit(() -> emails.parallelStream()
+                .map(email -> new Planned(email, matcher.evaluate(toMessage(email))))
+                .filter(planned -> !planned.outcome().isEmpty())
+                .toList()).get();
+    }
+
+    /**
+     * Turn one chunk's outcomes into grouped updates; returns the number of messages moved
+     */
+    private int applyChunk(Long userId, List<Planned> planned) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Optional<EmailFolder>> targets = new HashMap<>();
+        Map<MoveKey, List<Long>> moves = new HashMap<>();
+        Map<Boolean, List<Long>> importance = new HashMap<>();
+        Map<String, List<Long>> labels = new HashMap<>();
+        List<Long> spam = new ArrayList<>();
+
+        for (Planned plan : planned) {
+            RuleMatcher.Outcome outcome = plan.outcome();
+            Email email = plan.email();
+            Long sourceId = email.getFolder().getId();
+
+            String targetKey = outcome.delete ? "#trash" : outcome.spam ? "#spam" : outcome.folder;
+            Long targetId = null;
+            if (targetKey != null) {
+                targetId = targets.computeIfAbsent(targetKey,
+                                key -> Optional.ofNullable(emailService.resolveRuleFolder(userId, outcome, null)))
+                        .map(EmailFolder::getId)
+                        .filter(id -> !id.equals(sourceId))
+                        .orElse(null);
+            }
+            Email.EmailStatus status = outcome.delete ? Email.EmailStatus.DELETED
+                    : outcome.markAsRead ? Email.EmailStatus.READ : null;
+            if (targetId != null || status != null) {
+                moves.computeIfAbsent(new MoveKey(sourceId, targetId, status), key -> new ArrayList<>()).add(email.getId());
+            }
+
+            if (outcome.spam && !Boolean.TRUE.equals(email.getIsSpam())) {
+                spam.add(email.getId());
+            }
+            if (outcome.important != null && !outcome.important.equals(email.getIsImportant())) {
+                importance.computeIfAbsent(outcome.important, key -> new ArrayList<>()).add(email.getId());
+            }
+            if (!outcome.labels.isEmpty()) {
+                Set<String> merged = new LinkedHashSet<>();
+                if (email.getLabels() != null && !email.getLabels().isBlank()) {
+                    merged.addAll(Arrays.asList(email.getLabels().split(",")));
+                }
+                if (merged.addAll(outcome.labels)) {
+                    labels.computeIfAbsent(String.join(",", merged), key -> new ArrayList<>()).add(email.getId());
+                }
+            }
+        }
+
+        // 计数增量：folderId -> {total, unread}
+        Map<Long, int[]> deltas = new HashMap<>();
+        int moved = 0;
+        for (Map.Entry<MoveKey, List<Long>> entry : moves.entrySet()) {
+            MoveKey key = entry.getKey();
+            List<Long> ids = entry.getValue();
+            if (key.status() != null) {
+                int read = emailRepository.updateUnreadStatus(ids, key.sourceId(), key.status(), now);
+                delta(deltas, key.sourceId())[1] -= read;
+                if (key.status() == Email.EmailStatus.DELETED) {
+                    emailRepository.updateStatus(ids, key.sourceId(), key.status(), now);
+                }
+            }
+            if (key.targetId() != null) {
+                EmailFolder target = folderRepository.getReferenceById(key.targetId());
+                int unread = emailRepository.moveBatch(ids, key.sourceId(), target, true, now);
+                int rest = emailRepository.moveBatch(ids, key.sourceId(), target, false, now);
+                int[] source = delta(deltas, key.sourceId());
+                source[0] -= unread + rest;
+                source[1] -= unread;
+                int[] destination = delta(deltas, key.targetId());
+                destination[0] += unread + rest;
+                destination[1] += unread;
+                moved += unread + rest;
+            }
+        }
+        if (!spam.isEmpty()) {
+            emailRepository.markSpam(spam, now);
+        }
+        importance.forEach((important, ids) -> emailRepository.updateImportant(ids, important, now));
+        labels.forEach((value, ids) -> emailRepository.updateLabels(ids, value, now));
+
+        deltas.forEach((folderId, delta) -> {
+            if (delta[0] != 0 || delta[1] != 0) {
+                emailService.adjustFolderCounts(folderId, delta[0], delta[1]);
+            }
+        });
+        // Bulk updates publish no per-message events: one extra bump marks cached header indexes stale
+        userService.touchMailbox(userId);
+        return moved;
+    }
+
+    private static int[] delta(Map<Long, int[]> deltas, Long folderId) {
+        return deltas.computeIfAbsent(folderId, key -> new int[2]);
+    }
+
+    private static RuleMatcher.Message toMessage(Email email) {
+        String body = email.getContentText() != null && !email.getContentText().isEmpty()
+                ? email.getContentText() : email.getContentHtml();
+        // 已存储的邮件没有原始头部，HEADER 条件不参与匹配
+        return new RuleMatcher.Message(email.getFromAddress(), email.getToAddresses(), email.getSubject(), body,
+                email.getSizeBytes() != null ? email.getSizeBytes() : 0L,
+                Boolean.TRUE.equals(email.getHasAttachments()), null);
+    }
+
+    /**
+     * Pause between chunks, and longer while requests are queued for a database connection
+     */
+    private void throttle() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(pauseMs);
+        for (int waits = 0; waits < MAX_BUSY_WAITS && poolBusy(); waits++) {
+            TimeUnit.MILLISECONDS.sleep(busyPauseMs);
+        }
+    }
+
+    private boolean poolBusy() {
+        if (dataSource instanceof HikariDataSource hikari && hikari.getHikariPoolMXBean() != null) {
+            return hikari.getHikariPoolMXBean().getThreadsAwaitingConnection() > 0;
+        }
+        return false;
+    }
+
+    private Job findJob(Long aliasId, String jobId, String username) {
+        ruleService.findAliasWithPermission(aliasId, username);
+        Job job = jobs.get(jobId);
+        if (job == null || !job.aliasId.equals(aliasId)) {
+            throw new BusinessException("Rule run not found", HttpStatus.NOT_FOUND);
+        }
+        return job;
+    }
+
+    private void pruneFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(keepFinishedMinutes);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private RuleJobDto toDto(Job job) {
+        long total = job.total;
+        long processed = job.processed;
+        Long eta = null;
+        if (job.status == JobStatus.RUNNING && processed > 0) {
+            long elapsed = System.currentTimeMillis() - job.startedMillis;
+            eta = Math.max(0, total - processed) * elapsed / processed / 1000;
+        }
+        Integer percent = total > 0 ? (int) Math.min(100, processed * 100 / total)
+                : job.status == JobStatus.COMPLETED ? 100 : 0;
+        return RuleJobDto.builder()
+                .id(job.id)
+                .aliasId(job.aliasId)
+                .folderId(job.folderId)
+                .status(job.status.name())
+                .total(total)
+                .processed(processed)
+                .matched(job.matched)
+                .moved(job.moved)
+                .percent(percent)
+                .etaSeconds(eta)
+                .startedAt(job.startedAt)
+                .finishedAt(job.finishedAt)
+                .error(job.error)
+                .build();
+    }
+}
@@ -0,0 +1,508 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.EmailRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The active rules of one alias, compiled for delivery-time evaluation.
+ *
+ * Text conditions on FROM, TO, SUBJECT and BODY are folded into one Aho-Corasick automaton
+ * per field, so each field is scanned once however many rules test it. CONTAINS is any
+ * match, STARTS_WITH / ENDS_WITH / EQUALS are matches anchored at the start, the end or
+ * both. A long body is scanned at its start and its end, so STARTS_WITH and ENDS_WITH
+ * still see the real edges; EQUALS cannot hold for it. The remaining conditions (SIZE,
+ * HAS_ATTACHMENT, HEADER, empty values) are cheap and checked directly. Immutable once built; safe to share between threads.
+ */
+final class RuleMatcher {
+
+    // Long bodies are scanned at their start and their end only
+    private static final int BODY_SCAN_LIMIT = 64 * 1024;
+
+    private static final EmailRule.ConditionType[] TEXT_FIELDS = {
+            EmailRule.ConditionType.FROM, EmailRule.ConditionType.TO,
+            EmailRule.ConditionType.SUBJECT, EmailRule.ConditionType.BODY
+    };
+
+    private final List<Rule> rules;
+    private final Automaton[] automata = new Automaton[TEXT_FIELDS.length];
+
+    /**
+     * Message properties rules can test. The header lookup returns null for an absent
+     * header; pass no lookup at all when headers are unknown, so HEADER rules never match.
+     */
+    record Message(String from, String to, String subject, String body, long sizeBytes,
+                   boolean hasAttachments, Function<String, String> header) {
+    }
+
+    /**
+     * Combined effect of the matching rules, in evaluation order
+     */
+    static final class Outcome {
+        String folder;               // MOVE_TO_FOLDER target (id or name), first one wins
+        boolean delete;
+        boolean spam;
+        boolean markAsRead;
+        Boolean important;
+        final Set<String> labels = new LinkedHashSet<>();
+        final Set<String> forwardTo = new LinkedHashSet<>();
+        boolean autoReply;
+        int matchedRules;
+
+        boolean isEmpty() {
+            return matchedRules == 0;
+        }
+    }
+
+    private record Rule(EmailRule.ConditionType type, EmailRule.ConditionOperator operator, String field,
+                        String value, EmailRule.ActionType action, String actionValue, boolean stop) {
+    }
+
+    // One anchored test of a pattern in a field, owned by a rule
+    private record Probe(int rule, boolean anchorStart, boolean anchorEnd) {
+    }
+
+    private RuleMatcher(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Compile rules given in evaluation order
+     */
+    static RuleMatcher compile(List<EmailRule> emailRules) {
+        List<Rule> rules = new ArrayList<>(emailRules.size());
+        for (EmailRule rule : emailRules) {
+            EmailRule.ConditionOperator operator = rule.getConditionOperator() != null
+                    ? rule.getConditionOperator() : EmailRule.ConditionOperator.CONTAINS;
+            rules.add(new Rule(rule.getConditionType(), operator, rule.getConditionField(),
+                    rule.getConditionValue() != null ? rule.getConditionValue().toLowerCase(Locale.ROOT) : "",
+                    rule.getActionType(), rule.getActionValue(), Boolean.TRUE.equals(rule.getStopProcessing())));
+        }
+
+        RuleMatcher matcher = new RuleMatcher(rules);
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            int field = fieldIndex(rule.type());
+            if (field < 0 || rule.value().isEmpty()) {
+                continue;
+            }
+            Probe probe = switch (rule.operator()) {
+                case CONTAINS, NOT_CONTAINS -> new Probe(i, false, false);
+                case STARTS_WITH -> new Probe(i, true, false);
+                case ENDS_WITH -> new Probe(i, false, true);
+                case EQUALS, NOT_EQUALS -> new Probe(i, true, true);
+                default -> null;
+            };
+            if (probe != null) {
+                if (matcher.automata[field] == null) {
+                    matcher.automata[field] = new Automaton();
+                }
+                matcher.automata[field].add(rule.value(), probe);
+            }
+        }
+        for (Automaton automaton : matcher.automata) {
+            if (automaton != null) {
+                automaton.build();
+            }
+        }
+        return matcher;
+    }
+
+    int size() {
+        return rules.size();
+    }
+
+    /**
+     * Whether any rule looks at the body, so callers can skip loading it
+     */
+    boolean usesBody() {
+        return rules.stream().anyMatch(rule -> rule.type() == EmailRule.ConditionType.BODY);
+    }
+
+    /**
+     * Evaluate all rules against a message
+     */
+    Outcome evaluate(Message message) {
+        Outcome outcome = new Outcome();
+        if (rules.isEmpty()) {
+            return outcome;
+        }
+
+        // 每个字段只扫描一次，记录命中的规则
+        BitSet hits = new BitSet(rules.size());
+        for (int field = 0; field < TEXT_FIELDS.length; field++) {
+            if (automata[field] == null) {
+                continue;
+            }
+            if (TEXT_FIELDS[field] == EmailRule.ConditionType.BODY) {
+                scanBody(automata[field], message.body(), hits);
+            } else {
+                automata[field].scan(normalize(fieldText(message, TEXT_FIELDS[field])), hits, true, true);
+            }
+        }
+
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
+            if (!matches(rule, i, hits, message)) {
+                continue;
+            }
+            apply(rule, outcome);
+            if (rule.stop()) {
+                break;
+            }
+        }
+        return outcome;
+    }
+
+    // Helper methods
+
+    private boolean matches(Rule rule, int index, BitSet hits, Message message) {
+        int field = fieldIndex(rule.type());
+        if (field >= 0) {
+            if (rule.value().isEmpty()) {
+                String text = normalize(fieldText(message, rule.type()));
+                return compare(rule.operator(), text, "");
+            }
+            boolean hit = hits.get(index);
+            return switch (rule.operator()) {
+                case NOT_CONTAINS, NOT_EQUALS -> !hit;
+                case CONTAINS, STARTS_WITH, ENDS_WITH, EQUALS -> hit;
+                default -> false;
+            };
+        }
+
+        return switch (rule.type()) {
+            case SIZE -> compareNumber(rule.operator(), message.sizeBytes(), rule.value());
+            case HAS_ATTACHMENT -> {
+                boolean expected = rule.value().isEmpty() || Boolean.parseBoolean(rule.value());
+                yield rule.operator() == EmailRule.ConditionOperator.NOT_EQUALS
+                        ? message.hasAttachments() != expected
+                        : message.hasAttachments() == expected;
+            }
+            case HEADER -> {
+                if (message.header() == null || rule.field() == null || rule.field().isBlank()) {
+                    yield false;
+                }
+                String value = message.header().apply(rule.field());
+                yield compare(rule.operator(), normalize(value), rule.value());
+            }
+            default -> false;
+        };
+    }
+
+    private static boolean compare(EmailRule.ConditionOperator operator, String text, String value) {
+        return switch (operator) {
+            case CONTAINS -> text.contains(value);
+            case NOT_CONTAINS -> !text.contains(value);
+            case EQUALS -> text.equals(value);
+            case NOT_EQUALS -> !text.equals(value);
+            case STARTS_WITH -> text.startsWith(value);
+            case ENDS_WITH -> text.endsWith(value);
+            default -> false;
+        };
+    }
+
+    private static boolean compareNumber(EmailRule.ConditionOperator operator, long actual, String value) {
+        long expected;
+        try {
+            expected = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return switch (operator) {
+            case GREATER_THAN -> actual > expected;
+            case LESS_THAN -> actual < expected;
+            case EQUALS -> actual == expected;
+            case NOT_EQUALS -> actual != expected;
+            default -> false;
+        };
+    }
+
+    private static void apply(Rule rule, Outcome outcome) {
+        outcome.matchedRules++;
+        String value = rule.actionValue();
+        switch (rule.action()) {
+            case MOVE_TO_FOLDER -> {
+                if (outcome.folder == null && value != null && !value.isBlank()) {
+                    outcome.folder = value.trim();
+                }
+            }
+            case DELETE -> outcome.delete = true;
+            case MARK_AS_SPAM -> outcome.spam = true;
+            case MARK_AS_READ -> outcome.markAsRead = true;
+            case ADD_LABEL -> {
+                if (value != null && !value.isBlank()) {
+                    outcome.labels.add(value.trim());
+                }
+            }
+            case SET_IMPORTANCE -> outcome.important = value == null || value.isBlank() || Boolean.parseBoolean(value);
+            case FORWARD_TO -> {
+                if (value != null) {
+                    for (String address : value.split(",")) {
+                        if (!address.isBlank()) {
+                            outcome.forwardTo.add(address.trim());
+                        }
+                    }
+                }
+            }
+            case AUTO_REPLY -> outcome.autoReply = true;
+        }
+    }
+
+    private static int fieldIndex(EmailRule.ConditionType type) {
+        for (int i = 0; i < TEXT_FIELDS.length; i++) {
+            if (TEXT_FIELDS[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String fieldText(Message message, EmailRule.ConditionType type) {
+        return switch (type) {
+            case FROM -> message.from();
+            case TO -> message.to();
+            case SUBJECT -> message.subject();
+            case BODY -> message.body() != null && message.body().length() > BODY_SCAN_LIMIT
+                    ? message.body().substring(0, BODY_SCAN_LIMIT) : message.body();
+            default -> null;
+        };
+    }
+
+    /**
+     * Scan a body, trimmed like {@link #normalize}. Past the limit only the head and the tail
+     * are lower-cased and scanned: the head decides STARTS_WITH, the tail ENDS_WITH.
+     */
+    private static void scanBody(Automaton automaton, String body, BitSet hits) {
+        if (body == null) {
+            return;
+        }
+        int start = 0;
+        int end = body.length();
+        while (start < end && body.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && body.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start <= BODY_SCAN_LIMIT) {
+            automaton.scan(body.substring(start, end).toLowerCase(Locale.ROOT), hits, true, true);
+            return;
+        }
+        automaton.scan(body.substring(start, start + BODY_SCAN_LIMIT).toLowerCase(Locale.ROOT), hits, true, false);
+        automaton.scan(body.substring(end - BODY_SCAN_LIMIT, end).toLowerCase(Locale.ROOT), hits, false, true);
+    }
+
+    private static String normalize(String text) {
+        return text != null ? text.trim().toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * Aho-Corasick automaton over chars; each pattern carries the rule probes that use it.
+     *
+     * Transitions live in one open-addressing table keyed by (node, char), so a step is a
+     * hash probe on primitive arrays with no boxing. The trie keeps first-child / next-sibling
+     * links only to walk the nodes while building.
+     */
+    private static final class Automaton {
+
+        private static final int[] NONE = new int[0];
+
+        private final Map<String, Integer> patternIds = new HashMap<>();
+        private final List<List<Probe>> patternProbes = new ArrayList<>();
+        private int[] patternLength = new int[8];
+
+        private char[] label = new char[16];
+        private int[] firstChild = new int[16];
+        private int[] nextSibling = new int[16];
+        private int[][] output = new int[16][];
+        private int nodes;
+
+        // (node << 16 | char) -> child; -1 marks a free slot
+        private long[] edgeKeys = emptyKeys(32);
+        private int[] edgeTargets = new int[32];
+        private int edges;
+
+        private int[] fail;
+        private Probe[][] probes;
+
+        Automaton() {
+            newNode(-1, '\0');
+        }
+
+        void add(String pattern, Probe probe) {
+            Integer id = patternIds.get(pattern);
+            if (id == null) {
+                id = patternProbes.size();
+                patternIds.put(pattern, id);
+                patternProbes.add(new ArrayList<>());
+                if (id == patternLength.length) {
+                    patternLength = Arrays.copyOf(patternLength, id * 2);
+                }
+                patternLength[id] = pattern.length();
+
+                int node = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    char c = pattern.charAt(i);
+                    int child = child(node, c);
+                    node = child >= 0 ? child : newNode(node, c);
+                }
+                output[node] = append(output[node], id);
+            }
+            patternProbes.get(id).add(probe);
+        }
+
+        void build() {
+            fail = new int[nodes];
+            int[] queue = new int[nodes];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = 0;
+            while (head < tail) {
+                int node = queue[head++];
+                for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                    char c = label[child];
+                    int state = fail[node];
+                    int target = child(state, c);
+                    while (target < 0 && state != 0) {
+                        state = fail[state];
+                        target = child(state, c);
+                    }
+                    fail[child] = target >= 0 && target != child ? target : 0;
+                    // 合并后缀节点的输出，匹配时无需沿失败链回溯
+                    output[child] = concat(output[child], output[fail[child]]);
+                    queue[tail++] = child;
+                }
+            }
+
+            probes = new Probe[patternProbes.size()][];
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = patternProbes.get(i).toArray(new Probe[0]);
+            }
+        }
+
+        /**
+         * Record the probes matching in {@code text}. {@code atStart} / {@code atEnd} tell
+         * whether the text begins / ends where the field does; anchored probes need them.
+         */
+        void scan(String text, BitSet hits, boolean atStart, boolean atEnd) {
+            int state = 0;
+            int last = text.length() - 1;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                int target = child(state, c);
+                while (target < 0 && state != 0) {
+                    state = fail[state];
+                    target = child(state, c);
+                }
+                state = target >= 0 ? target : 0;
+
+                int[] matched = output[state];
+                for (int id : matched) {
+                    boolean startsField = atStart && i - patternLength[id] + 1 == 0;
+                    boolean endsField = atEnd && i == last;
+                    for (Probe probe : probes[id]) {
+                        if ((!probe.anchorStart() || startsField) && (!probe.anchorEnd() || endsField)) {
+                            hits.set(probe.rule());
+                        }
+                    }
+                }
+            }
+        }
+
+        private int child(int node, char c) {
+            long key = (long) node << 16 | c;
+            int mask = edgeKeys.length - 1;
+            for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+                long k = edgeKeys[slot];
+                if (k == key) {
+                    return edgeTargets[slot];
+                }
+                if (k == -1) {
+                    return -1;
+                }
+            }
+        }
+
+        private int newNode(int parent, char c) {
+            if (nodes == label.length) {
+                int capacity = nodes * 2;
+                label = Arrays.copyOf(label, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                output = Arrays.copyOf(output, capacity);
+            }
+            int node = nodes++;
+            label[node] = c;
+            firstChild[node] = -1;
+            nextSibling[node] = -1;
+            output[node] = NONE;
+            if (parent >= 0) {
+                nextSibling[node] = firstChild[parent];
+                firstChild[parent] = node;
+                putEdge((long) parent << 16 | c, node);
+            }
+            return node;
+        }
+
+        private void putEdge(long key, int target) {
+            if (++edges * 2 > edgeKeys.length) {
+                long[] oldKeys = edgeKeys;
+                int[] oldTargets = edgeTargets;
+                edgeKeys = emptyKeys(oldKeys.length * 2);
+                edgeTargets = new int[oldKeys.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != -1) {
+                        insert(oldKeys[i], oldTargets[i]);
+                    }
+                }
+            }
+            insert(key, target);
+        }
+
+        private void insert(long key, int target) {
+            int mask = edgeKeys.length - 1;
+            int slot = hash(key) & mask;
+            while (edgeKeys[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            edgeKeys[slot] = key;
+            edgeTargets[slot] = target;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32);
+        }
+
+        private static long[] emptyKeys(int size) {
+            long[] keys = new long[size];
+            Arrays.fill(keys, -1);
+            return keys;
+        }
+
+        private static int[] append(int[] values, int value) {
+            int[] result = Arrays.copyOf(values, values.length + 1);
+            result[values.length] = value;
+            return result;
+        }
+
+        private static int[] concat(int[] a, int[] b) {
+            if (b.length == 0) {
+                return a;
+            }
+            int[] result = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, result, a.length, b.length);
+            return result;
+        }
+    }
+}
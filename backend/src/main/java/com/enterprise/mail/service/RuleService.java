@@ -0,0 +1,187 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dto.RuleDto;
+import com.enterprise.mail.dto.RuleRequest;
+import com.enterprise.mail.entity.EmailAlias;
+import com.enterprise.mail.entity.EmailRule;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.EmailAliasRepository;
+import com.enterprise.mail.repository.EmailRuleRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rule Service - 邮件过滤规则管理与投递时匹配
+ *
+ * Compiled matchers are cached per alias and tagged with the alias' rulesVersion, which
+ * every rule change increments; delivery recompiles only when the version it sees on the
+ * alias differs, so nodes that did not handle the change pick it up on their next message.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class RuleService {
+
+    private final EmailRuleRepository ruleRepository;
+    private final EmailAliasRepository aliasRepository;
+
+    private final Map<Long, CompiledRules> compiledRules = new ConcurrentHashMap<>();
+
+    private record CompiledRules(long version, RuleMatcher matcher) {
+    }
+
+    /**
+     * 获取别名的规则列表
+     */
+    @Transactional(readOnly = true)
+    public List<RuleDto> getRules(Long aliasId, String username) {
+        findAliasWithPermission(aliasId, username);
+        return ruleRepository.findByAliasIdOrderByPriorityDescIdAsc(aliasId).stream()
+                .map(this::toDto)
+                .toList();
+    }
+
+    /**
+     * 创建规则
+     */
+    public RuleDto createRule(Long aliasId, RuleRequest request, String username) {
+        EmailAlias alias = findAliasWithPermission(aliasId, username);
+
+        EmailRule rule = new EmailRule();
+        rule.setAlias(alias);
+        copy(request, rule);
+        rule = ruleRepository.save(rule);
+        rulesChanged(aliasId);
+
+        log.info("Created rule {} on alias {}", rule.getId(), alias.getAliasAddress());
+        return toDto(rule);
+    }
+
+    /**
+     * 更新规则
+     */
+    public RuleDto updateRule(Long aliasId, Long ruleId, RuleRequest request, String username) {
+        findAliasWithPermission(aliasId, username);
+        EmailRule rule = findRule(aliasId, ruleId);
+
+        copy(request, rule);
+        rule = ruleRepository.save(rule);
+        rulesChanged(aliasId);
+
+        return toDto(rule);
+    }
+
+    /**
+     * 删除规则
+     */
+    public void deleteRule(Long aliasId, Long ruleId, String username) {
+        findAliasWithPermission(aliasId, username);
+        ruleRepository.delete(findRule(aliasId, ruleId));
+        rulesChanged(aliasId);
+    }
+
+    /**
+     * Evaluate the alias' active rules against an incoming message
+     */
+    @Transactional(readOnly = true)
+    RuleMatcher.Outcome evaluate(EmailAlias alias, RuleMatcher.Message message) {
+        return getMatcher(alias).evaluate(message);
+    }
+
+    /**
+     * Compiled matcher for the alias' active rules, recompiled when its rules version changed
+     */
+    @Transactional(readOnly = true)
+    RuleMatcher getMatcher(EmailAlias alias) {
+        long version = alias.getRulesVersion() != null ? alias.getRulesVersion() : 0L;
+        CompiledRules compiled = compiledRules.get(alias.getId());
+        if (compiled == null || compiled.version() != version) {
+            List<EmailRule> rules = ruleRepository.findByAliasIdAndIsActiveTrueOrderByPriorityDescIdAsc(alias.getId());
+            compiled = new CompiledRules(version, RuleMatcher.compile(rules));
+            compiledRules.put(alias.getId(), compiled);
+            log.debug("Compiled {} rules for alias {} at version {}", rules.size(), alias.getId(), version);
+        }
+        return compiled.matcher();
+    }
+
+    // Helper methods
+
+    private void rulesChanged(Long aliasId) {
+        aliasRepository.incrementRulesVersion(aliasId);
+        compiledRules.remove(aliasId);
+    }
+
+    private void copy(RuleRequest request, EmailRule rule) {
+        if (request.getConditionType() == EmailRule.ConditionType.HEADER
+                && (request.getConditionField() == null || request.getConditionField().isBlank())) {
+            throw new BusinessException("Header name is required for HEADER conditions");
+        }
+        if (request.getConditionType() == EmailRule.ConditionType.SIZE) {
+            try {
+                Long.parseLong(request.getConditionValue() != null ? request.getConditionValue().trim() : "");
+            } catch (NumberFormatException e) {
+                throw new BusinessException("Size condition needs a byte count");
+            }
+        }
+
+        rule.setName(request.getName());
+        rule.setDescription(request.getDescription());
+        rule.setIsActive(request.getIsActive() == null || request.getIsActive());
+        rule.setPriority(request.getPriority() != null ? request.getPriority() : 0);
+        rule.setConditionType(request.getConditionType());
+        rule.setConditionField(request.getConditionField());
+        rule.setConditionOperator(request.getConditionOperator());
+        rule.setConditionValue(request.getConditionValue());
+        rule.setActionType(request.getActionType());
+        rule.setActionValue(request.getActionValue());
+        rule.setStopProcessing(Boolean.TRUE.equals(request.getStopProcessing()));
+    }
+
+    private EmailRule findRule(Long aliasId, Long ruleId) {
+        EmailRule rule = ruleRepository.findById(ruleId)
+                .orElseThrow(() -> new BusinessException("Rule not found", HttpStatus.NOT_FOUND));
+        if (!rule.getAlias().getId().equals(aliasId)) {
+            throw new BusinessException("Rule not found", HttpStatus.NOT_FOUND);
+        }
+        return rule;
+    }
+
+    EmailAlias findAliasWithPermission(Long aliasId, String username) {
+        EmailAlias alias = aliasRepository.findById(aliasId)
+                .orElseThrow(() -> new BusinessException("Alias not found", HttpStatus.NOT_FOUND));
+
+        if (!alias.getUser().getUsername().equals(username)) {
+            throw new BusinessException("Access denied", HttpStatus.FORBIDDEN);
+        }
+
+        return alias;
+    }
+
+    private RuleDto toDto(EmailRule rule) {
+        return RuleDto.builder()
+                .id(rule.getId())
+                .aliasId(rule.getAlias().getId())
+                .name(rule.getName())
+                .description(rule.getDescription())
+                .isActive(rule.getIsActive())
+                .priority(rule.getPriority())
+                .conditionType(rule.getConditionType().name())
+                .conditionField(rule.getConditionField())
+                .conditionOperator(rule.getConditionOperator() != null ? rule.getConditionOperator().name() : null)
+                .conditionValue(rule.getConditionValue())
+                .actionType(rule.getActionType().name())
+                .actionValue(rule.getActionValue())
+                .stopProcessing(rule.getStopProcessing())
+                .createdAt(rule.getCreatedAt())
+                .updatedAt(rule.getUpdatedAt())
+                .build();
+    }
+}
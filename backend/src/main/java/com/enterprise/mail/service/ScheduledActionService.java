@@ -0,0 +1,353 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.EmailAlias;
+import com.enterprise.mail.entity.EmailFolder;
+import com.enterprise.mail.entity.ScheduledAction;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.EmailAliasRepository;
+import com.enterprise.mail.repository.EmailFolderRepository;
+import com.enterprise.mail.repository.ScheduledActionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Durable delayed actions: send later, snooze and temporary alias expiry.
+ *
+ * Actions live in {@code scheduled_actions}. A periodic load pulls the rows due within
+ * the look-ahead window into an in-memory hierarchical timing wheel, so pending timers
+ * cost one range query per load instead of one poll each, and far-future rows never
+ * leave the database. When a timer fires the row is claimed with a conditional update
+ * (so each action runs once across nodes, and cancelled rows are skipped) and the action
+ * runs on a bounded worker pool. Actions claimed by a node that died are returned to the
+ * pending state after a timeout; after a restart overdue rows run on the first load.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScheduledActionService {
+
+    private final ScheduledActionRepository actionRepository;
+    private final EmailFolderRepository folderRepository;
+    private final EmailAliasRepository aliasRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${mail.scheduler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mail.scheduler.tick-ms:1000}")
+    private long tickMillis;
+
+    @Value("${mail.scheduler.look-ahead-minutes:10}")
+    private long lookAheadMinutes;
+
+    @Value("${mail.scheduler.load-batch-size:1000}")
+    private int loadBatchSize;
+
+    @Value("${mail.scheduler.max-loaded:100000}")
+    private int maxLoaded;
+
+    @Value("${mail.scheduler.workers:4}")
+    private int workers;
+
+    @Value("${mail.scheduler.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${mail.scheduler.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${mail.scheduler.stale-after-minutes:10}")
+    private long staleAfterMinutes;
+
+    // 6 bits x 4 levels of 1s ticks covers about 194 days
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_LEVELS = 4;
+
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName() + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    // 已放入时间轮的动作，避免重复加载
+    private final Set<Long> loaded = ConcurrentHashMap.newKeySet();
+    private TimingWheel<Long> wheel;
+    private ScheduledExecutorService ticker;
+    private ThreadPoolExecutor workerPool;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        wheel = new TimingWheel<>(tickMillis, WHEEL_BITS, WHEEL_LEVELS, System.currentTimeMillis());
+
+        AtomicInteger threads = new AtomicInteger();
+        workerPool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "ScheduledAction-" + threads.incrementAndGet()));
+
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ScheduledAction-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            workerPool.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Persist a delayed action; it is put on the wheel directly when due within the window,
+     * once the row has been committed
+     */
+    @Transactional
+    public ScheduledAction schedule(ScheduledAction.ActionType type, Long userId, Long targetId,
+                                    String payload, LocalDateTime dueAt) {
+        ScheduledAction action = new ScheduledAction();
+        action.setType(type);
+        action.setUserId(userId);
+        action.setTargetId(targetId);
+        action.setPayload(payload);
+        action.setDueAt(dueAt);
+        action = actionRepository.save(action);
+
+        if (enabled && dueAt.isBefore(LocalDateTime.now().plusMinutes(lookAheadMinutes))) {
+            ScheduledAction saved = action;
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // 提交后再上时间轮：提交前触发会认领不到尚不可见的行；回滚则不入队
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        enqueue(saved);
+                    }
+                });
+            } else {
+                enqueue(saved);
+            }
+        }
+        return action;
+    }
+
+    /**
+     * Cancel pending actions of a type for a target; a timer already on the wheel is
+     * skipped when it fires because the claim no longer matches
+     */
+    @Transactional
+    public int cancel(ScheduledAction.ActionType type, Long targetId) {
+        return actionRepository.cancel(type, targetId);
+    }
+
+    /**
+     * Send a saved draft at the given time
+     */
+    @Transactional
+    public void scheduleSend(Email draft, LocalDateTime sendAt) {
+        cancel(ScheduledAction.ActionType.SEND_LATER, draft.getId());
+        schedule(ScheduledAction.ActionType.SEND_LATER, draft.getUser().getId(), draft.getId(), null, sendAt);
+    }
+
+    /**
+     * Hide an email in the archive until the given time, then return it to its folder as unread
+     */
+    @Transactional
+    public void snooze(Email email, LocalDateTime until) {
+        Long userId = email.getUser().getId();
+        EmailFolder archive = folderRepository.findByUserIdAndType(userId, EmailFolder.FolderType.ARCHIVE)
+                .orElseThrow(() -> new BusinessException("Archive folder not found"));
+        if (email.getFolder() == null || email.getFolder().getId().equals(archive.getId())) {
+            throw new BusinessException("Email cannot be snoozed from this folder");
+        }
+
+        Long originalFolderId = email.getFolder().getId();
+        cancel(ScheduledAction.ActionType.SNOOZE, email.getId());
+        emailService.moveToFolder(email.getId(), archive.getId(), false);
+        schedule(ScheduledAction.ActionType.SNOOZE, userId, email.getId(), String.valueOf(originalFolderId), until);
+    }
+
+    /**
+     * Load actions due within the look-ahead window onto the wheel
+     */
+    @Scheduled(fixedDelayString = "${mail.scheduler.load-interval-ms:60000}", initialDelay = 5000)
+    public void loadDueActions() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime horizon = LocalDateTime.now().plusMinutes(lookAheadMinutes);
+        long afterId = 0;
+        int added = 0;
+        while (loaded.size() < maxLoaded) {
+            List<ScheduledAction> batch = actionRepository.findPendingBefore(horizon, afterId,
+                    PageRequest.of(0, loadBatchSize));
+            for (ScheduledAction action : batch) {
+                if (enqueue(action)) {
+                    added++;
+                }
+            }
+            if (batch.size() < loadBatchSize) {
+                break;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+
+        if (added > 0) {
+            log.debug("Loaded {} scheduled actions, {} on the wheel", added, loaded.size());
+        }
+    }
+
+    /**
+     * Return actions stuck in RUNNING (their node stopped mid-run) to PENDING
+     */
+    @Scheduled(fixedDelayString = "${mail.scheduler.stale-check-interval-ms:300000}", initialDelay = 60000)
+    public void releaseStaleActions() {
+        if (!enabled) {
+            return;
+        }
+        Integer released = transactionTemplate.execute(status ->
+                actionRepository.releaseStale(LocalDateTime.now().minusMinutes(staleAfterMinutes)));
+        if (released != null && released > 0) {
+            log.warn("Released {} scheduled actions abandoned mid-run", released);
+        }
+    }
+
+    // Helper methods
+
+    private boolean enqueue(ScheduledAction action) {
+        if (!loaded.add(action.getId())) {
+            return false;
+        }
+        long dueMillis = action.getDueAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        boolean onWheel;
+        synchronized (wheel) {
+            onWheel = wheel.add(action.getId(), dueMillis);
+        }
+        if (!onWheel) {
+            dispatch(action.getId());
+        }
+        return true;
+    }
+
+    private void tick() {
+        try {
+            synchronized (wheel) {
+                wheel.advance(System.currentTimeMillis(), this::dispatch);
+            }
+        } catch (RuntimeException e) {
+            log.error("Scheduled action wheel tick failed", e);
+        }
+    }
+
+    private void dispatch(Long actionId) {
+        try {
+            workerPool.execute(() -> run(actionId));
+        } catch (RejectedExecutionException e) {
+            // 工作队列已满：保持 PENDING，下次加载时重试
+            loaded.remove(actionId);
+            log.debug("Scheduled action {} deferred, worker queue full", actionId);
+        }
+    }
+
+    private void run(Long actionId) {
+        try {
+            Boolean claimed = transactionTemplate.execute(status ->
+                    actionRepository.claim(actionId, nodeId, LocalDateTime.now()) == 1);
+            if (!Boolean.TRUE.equals(claimed)) {
+                return;
+            }
+
+            ScheduledAction action = actionRepository.findById(actionId).orElse(null);
+            if (action == null) {
+                return;
+            }
+            try {
+                perform(action);
+                finish(actionId, ScheduledAction.ActionStatus.DONE, null, action.getDueAt());
+            } catch (RuntimeException e) {
+                retryOrFail(action, e);
+            }
+        } catch (RuntimeException e) {
+            log.error("Scheduled action {} could not be processed", actionId, e);
+        } finally {
+            loaded.remove(actionId);
+        }
+    }
+
+    /**
+     * Run the action. Sending manages its own transactions so the SMTP hand-off happens
+     * outside of one; the others run in a single transaction.
+     */
+    private void perform(ScheduledAction action) {
+        switch (action.getType()) {
+            case SEND_LATER -> {
+                try {
+                    emailService.sendDraft(action.getTargetId());
+                } catch (MessagingException e) {
+                    throw new BusinessException("Scheduled send failed: " + e.getMessage(), e);
+                }
+            }
+            case SNOOZE -> transactionTemplate.executeWithoutResult(status ->
+                    emailService.wakeSnoozed(action.getTargetId(), Long.valueOf(action.getPayload())));
+            case ALIAS_EXPIRY -> transactionTemplate.executeWithoutResult(status ->
+                    aliasRepository.findById(action.getTargetId()).ifPresent(alias -> {
+                        if (alias.getStatus() == EmailAlias.AliasStatus.ACTIVE) {
+                            alias.setStatus(EmailAlias.AliasStatus.INACTIVE);
+                            aliasRepository.save(alias);
+                            log.info("Temporary alias expired: {}", alias.getAliasAddress());
+                        }
+                    }));
+        }
+    }
+
+    private void retryOrFail(ScheduledAction action, RuntimeException e) {
+        int attempts = action.getAttempts();
+        String error = e.getMessage() != null && e.getMessage().length() > 500
+                ? e.getMessage().substring(0, 500) : e.getMessage();
+        if (attempts >= maxAttempts) {
+            log.error("Scheduled action {} ({}) failed permanently", action.getId(), action.getType(), e);
+            finish(action.getId(), ScheduledAction.ActionStatus.FAILED, error, action.getDueAt());
+            return;
+        }
+        // 指数退避：1, 2, 4, 8... 分钟
+        LocalDateTime retryAt = LocalDateTime.now().plusMinutes(1L << Math.min(attempts - 1, 10));
+        log.warn("Scheduled action {} ({}) failed, retrying at {}: {}", action.getId(), action.getType(), retryAt, error);
+        finish(action.getId(), ScheduledAction.ActionStatus.PENDING, error, retryAt);
+    }
+
+    private void finish(Long actionId, ScheduledAction.ActionStatus status, String error, LocalDateTime dueAt) {
+        transactionTemplate.executeWithoutResult(tx -> actionRepository.finish(actionId, status, error, dueAt));
+    }
+}
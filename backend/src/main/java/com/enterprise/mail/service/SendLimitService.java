@@ -0,0 +1,251 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.EmailAlias;
+import com.enterprise.mail.entity.User;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.ratelimit.CounterStore;
+import com.enterprise.mail.ratelimit.LeasedQuota;
+import com.enterprise.mail.ratelimit.TokenBucket;
+import com.enterprise.mail.repository.EmailAliasRepository;
+import com.enterprise.mail.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound sending limits per user and per alias.
+ *
+ * Two limits apply to each: a burst bucket (node-local, lock-free) that smooths bursts, and a
+ * daily count (the alias's maxSendPerDay, mail.send-limits.user-per-day for users) shared by
+ * all nodes through the {@link CounterStore}. Daily quota is reserved in blocks, so most sends
+ * are decided in memory. Counts are added to sent_today in the database periodically, tagged
+ * with the day in sent_date, and sent_today is cleared after midnight with one statement per
+ * table. Forwards and vacation replies count against the alias that sends them.
+ */
+@Slf4j
+@Service
+public class SendLimitService {
+
+    private final CounterStore counterStore;
+    private final EmailAliasRepository aliasRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter allowed;
+    private final Counter limited;
+
+    @Value("${mail.send-limits.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mail.send-limits.user-per-day:2000}")
+    private int userPerDay;
+
+    @Value("${mail.send-limits.user-burst:30}")
+    private int userBurst;
+
+    @Value("${mail.send-limits.user-per-minute:60}")
+    private double userPerMinute;
+
+    @Value("${mail.send-limits.alias-burst:20}")
+    private int aliasBurst;
+
+    @Value("${mail.send-limits.alias-per-minute:30}")
+    private double aliasPerMinute;
+
+    @Value("${mail.send-limits.lease-size:20}")
+    private int leaseSize;
+
+    private final Map<Long, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<Long, TokenBucket> aliasBuckets = new ConcurrentHashMap<>();
+    private final Map<Long, LeasedQuota> userQuotas = new ConcurrentHashMap<>();
+    private final Map<Long, LeasedQuota> aliasQuotas = new ConcurrentHashMap<>();
+
+    public SendLimitService(CounterStore counterStore, EmailAliasRepository aliasRepository,
+                            UserRepository userRepository, TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry) {
+        this.counterStore = counterStore;
+        this.aliasRepository = aliasRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.allowed = Counter.builder("mail.send.limit")
+                .description("Outbound messages by send limit decision")
+                .tag("result", "allowed")
+                .register(meterRegistry);
+        this.limited = Counter.builder("mail.send.limit")
+                .description("Outbound messages by send limit decision")
+                .tag("result", "limited")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Take one message from the user's and the alias's limits, or fail with 429.
+     * Pair with {@link #release} when the message is not sent after all.
+     *
+     * @param alias the alias the message is sent from, or null for the user's own address
+     */
+    public void acquire(User user, EmailAlias alias) {
+        if (!enabled) {
+            return;
+        }
+        // 1. Burst buckets, in memory only
+        TokenBucket userBucket = userBuckets.computeIfAbsent(user.getId(),
+                id -> new TokenBucket(userBurst, userPerMinute));
+        long wait = userBucket.tryAcquire();
+        if (wait > 0) {
+            throw tooMany("Sending too fast, retry in " + seconds(wait) + "s");
+        }
+        TokenBucket aliasBucket = null;
+        if (alias != null) {
+            aliasBucket = aliasBuckets.computeIfAbsent(alias.getId(), id -> new TokenBucket(aliasBurst, aliasPerMinute));
+            wait = aliasBucket.tryAcquire();
+            if (wait > 0) {
+                userBucket.release();
+                throw tooMany("Sending too fast from " + alias.getAliasAddress() + ", retry in " + seconds(wait) + "s");
+            }
+        }
+
+        // 2. Daily counts, shared across nodes
+        LocalDate date = LocalDate.now();
+        long today = date.toEpochDay();
+        LeasedQuota userQuota = userQuotas.computeIfAbsent(user.getId(),
+                id -> new LeasedQuota("send:user:" + id, leaseSize));
+        if (!userQuota.tryAcquire(today, userPerDay, counterStore,
+                () -> sentToday(user.getSentToday(), user.getSentDate(), date))) {
+            releaseBuckets(userBucket, aliasBucket);
+            throw tooMany("Daily sending limit of " + userPerDay + " messages reached");
+        }
+        if (alias != null && alias.getMaxSendPerDay() != null) {
+            LeasedQuota aliasQuota = aliasQuotas.computeIfAbsent(alias.getId(),
+                    id -> new LeasedQuota("send:alias:" + id, leaseSize));
+            if (!aliasQuota.tryAcquire(today, alias.getMaxSendPerDay(), counterStore,
+                    () -> sentToday(alias.getSentToday(), alias.getSentDate(), date))) {
+                userQuota.release();
+                releaseBuckets(userBucket, aliasBucket);
+                throw tooMany("Daily sending limit of " + alias.getMaxSendPerDay() + " messages reached for "
+                        + alias.getAliasAddress());
+            }
+        }
+        allowed.increment();
+    }
+
+    /**
+     * Take one message for mail the server sends on an alias's behalf (forwards, vacation
+     * replies), charged to the alias and its owner like mail they send themselves
+     *
+     * @return the alias to pass to {@link #release} if the message does not go out
+     */
+    public EmailAlias acquireForAlias(Long aliasId) {
+        EmailAlias alias = aliasRepository.findWithUserById(aliasId)
+                .orElseThrow(() -> new BusinessException("Alias not found", HttpStatus.NOT_FOUND));
+        acquire(alias.getUser(), alias);
+        return alias;
+    }
+
+    /**
+     * Give back what {@link #acquire} took, for a message that failed to go out
+     */
+    public void release(User user, EmailAlias alias) {
+        if (!enabled) {
+            return;
+        }
+        releaseBuckets(userBuckets.get(user.getId()), alias != null ? aliasBuckets.get(alias.getId()) : null);
+        LeasedQuota userQuota = userQuotas.get(user.getId());
+        if (userQuota != null) {
+            userQuota.release();
+        }
+        if (alias != null && alias.getMaxSendPerDay() != null) {
+            LeasedQuota aliasQuota = aliasQuotas.get(alias.getId());
+            if (aliasQuota != null) {
+                aliasQuota.release();
+            }
+        }
+    }
+
+    /**
+     * Add this node's sends since the last flush to sent_today, and drop full buckets and
+     * the quotas of past days
+     */
+    @Scheduled(fixedDelayString = "${mail.send-limits.flush-interval-ms:30000}", initialDelay = 30000)
+    public void flush() {
+        LocalDate date = LocalDate.now();
+        long today = date.toEpochDay();
+        transactionTemplate.executeWithoutResult(status -> {
+            userQuotas.forEach((userId, quota) -> {
+                int count = (int) quota.drainUsed(today);
+                if (count != 0) {
+                    userRepository.addSentToday(userId, count, date);
+                }
+            });
+            aliasQuotas.forEach((aliasId, quota) -> {
+                int count = (int) quota.drainUsed(today);
+                if (count != 0) {
+                    aliasRepository.addSentToday(aliasId, count, date);
+                }
+            });
+        });
+        // 已过期且已清空的额度不再保留，新的一天首次发送时重建；与并发发送竞争时
+        // 最多少记几封到 sent_today，共享计数不受影响
+        userQuotas.values().removeIf(quota -> quota.isIdle(today));
+        aliasQuotas.values().removeIf(quota -> quota.isIdle(today));
+        userBuckets.values().removeIf(TokenBucket::isIdle);
+        aliasBuckets.values().removeIf(TokenBucket::isIdle);
+    }
+
+    /**
+     * 每天零点清零 sent_today。只清 sent_date 早于今天的行，节点晚到执行也不会抹掉当天的计数，
+     * 因此每个节点都执行、重复执行都无害
+     */
+    @Scheduled(cron = "${mail.send-limits.reset-cron:0 0 0 * * *}")
+    public void resetDailyCounts() {
+        LocalDate today = LocalDate.now();
+        int[] reset = transactionTemplate.execute(status -> new int[]{
+                userRepository.resetSentToday(today), aliasRepository.resetSentToday(today)});
+        if (reset != null) {
+            log.info("Reset daily send counts of {} users and {} aliases", reset[0], reset[1]);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush send counts on shutdown", e);
+        }
+        userQuotas.values().forEach(quota -> quota.returnLease(counterStore));
+        aliasQuotas.values().forEach(quota -> quota.returnLease(counterStore));
+    }
+
+    // Helper methods
+
+    private static void releaseBuckets(TokenBucket userBucket, TokenBucket aliasBucket) {
+        if (userBucket != null) {
+            userBucket.release();
+        }
+        if (aliasBucket != null) {
+            aliasBucket.release();
+        }
+    }
+
+    private static long sentToday(Integer value, LocalDate sentDate, LocalDate today) {
+        return value != null && today.equals(sentDate) ? value : 0;
+    }
+
+    private static long seconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + 999_999_999L));
+    }
+
+    private static BusinessException tooMany(String message) {
+        return new BusinessException(message, HttpStatus.TOO_MANY_REQUESTS);
+    }
+}
@@ -0,0 +1,199 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.SenderListEntry;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One owner's allow/block list, compiled for lookups at delivery.
+ *
+ * Exact addresses are kept as 64-bit hashes in an open-addressing table, so an address
+ * lookup is one hash and a probe or two. Domains go into a trie over reversed labels
+ * ({@code com -> example -> mail}); a lookup walks the sender's domain once and the
+ * deepest entry wins, so {@code mail.example.com} beats {@code *.example.com}. An address
+ * entry beats any domain entry. When one pattern is listed with several actions, ALLOW
+ * wins over REJECT and REJECT over SPAM. Immutable once built; safe to share between threads.
+ */
+final class SenderList {
+
+    static final SenderList EMPTY = compile(List.of());
+
+    private final long[] addressKeys;
+    private final byte[] addressActions;
+    private final int mask;
+    private final Node root = new Node();
+
+    // Action codes as from code(); 0 means no entry
+    private static final class Node {
+        Map<String, Node> children;
+        byte exact;
+        byte wildcard;
+    }
+
+    private SenderList(int addresses) {
+        int capacity = Integer.highestOneBit(Math.max(8, addresses * 2 - 1)) << 1;
+        this.addressKeys = new long[capacity];
+        this.addressActions = new byte[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Compile entries whose patterns are already normalized (see {@link #normalize})
+     */
+    static SenderList compile(List<SenderListEntry> entries) {
+        int addresses = (int) entries.stream().filter(entry -> entry.getPattern().indexOf('@') >= 0).count();
+        SenderList list = new SenderList(addresses);
+        for (SenderListEntry entry : entries) {
+            String pattern = entry.getPattern();
+            byte code = code(entry.getAction());
+            if (pattern.indexOf('@') >= 0) {
+                list.putAddress(hash(pattern), code);
+            } else if (pattern.startsWith("*.")) {
+                Node node = list.node(pattern.substring(2));
+                node.wildcard = (byte) Math.max(node.wildcard, code);
+            } else {
+                Node node = list.node(pattern);
+                node.exact = (byte) Math.max(node.exact, code);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Lower-case a pattern and reduce it to address, domain or {@code *.domain}; null if invalid
+     */
+    static String normalize(String pattern) {
+        if (pattern == null) {
+            return null;
+        }
+        String value = pattern.trim().toLowerCase(Locale.ROOT);
+        if (value.startsWith("*@") || value.startsWith("@")) {
+            value = value.substring(value.indexOf('@') + 1);
+        }
+        while (value.endsWith(".")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        String domain = value.startsWith("*.") ? value.substring(2) : value;
+        int at = domain.lastIndexOf('@');
+        if (at >= 0) {
+            if (at == 0 || domain.indexOf('@') != at || value.startsWith("*.")) {
+                return null;
+            }
+            domain = domain.substring(at + 1);
+        }
+        if (domain.isEmpty() || domain.startsWith(".") || domain.contains("..") || domain.contains("*")
+                || domain.chars().anyMatch(Character::isWhitespace)) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Action for a sender address, or null when the list does not mention it
+     */
+    SenderListEntry.Action match(String sender) {
+        if (sender == null) {
+            return null;
+        }
+        String address = sender.trim().toLowerCase(Locale.ROOT);
+        if (address.startsWith("<") && address.endsWith(">")) {
+            address = address.substring(1, address.length() - 1);
+        }
+
+        byte code = getAddress(hash(address));
+        if (code != 0) {
+            return decode(code);
+        }
+
+        int at = address.lastIndexOf('@');
+        String domain = at >= 0 ? address.substring(at + 1) : address;
+        if (root.children == null) {
+            return null;
+        }
+        // 从顶级域开始逐级向下，越深的匹配越具体
+        Node node = root;
+        int end = domain.length();
+        while (end > 0) {
+            int dot = domain.lastIndexOf('.', end - 1);
+            node = node.children != null ? node.children.get(domain.substring(dot + 1, end)) : null;
+            if (node == null) {
+                break;
+            }
+            end = dot;
+            if (end < 0) {
+                code = node.exact != 0 ? node.exact : code;
+            } else if (node.wildcard != 0) {
+                // The sender's domain lies below this node
+                code = node.wildcard;
+            }
+        }
+        return code != 0 ? decode(code) : null;
+    }
+
+    // Helper methods
+
+    private Node node(String domain) {
+        Node node = root;
+        int end = domain.length();
+        while (end > 0) {
+            int dot = domain.lastIndexOf('.', end - 1);
+            String label = domain.substring(dot + 1, end);
+            if (node.children == null) {
+                node.children = new HashMap<>(4);
+            }
+            node = node.children.computeIfAbsent(label, key -> new Node());
+            end = dot;
+        }
+        return node;
+    }
+
+    private void putAddress(long key, byte code) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (addressKeys[slot] != 0 && addressKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        addressKeys[slot] = key;
+        addressActions[slot] = (byte) Math.max(addressActions[slot], code);
+    }
+
+    private byte getAddress(long key) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (addressKeys[slot] != 0) {
+            if (addressKeys[slot] == key) {
+                return addressActions[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private static long hash(String value) {
+        // FNV-1a 64
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h != 0 ? h : 1;
+    }
+
+    private static byte code(SenderListEntry.Action action) {
+        // 放行优先于拒收，拒收优先于进垃圾箱
+        return (byte) switch (action) {
+            case ALLOW -> 3;
+            case REJECT -> 2;
+            case SPAM -> 1;
+        };
+    }
+
+    private static SenderListEntry.Action decode(byte code) {
+        return switch (code) {
+            case 3 -> SenderListEntry.Action.ALLOW;
+            case 2 -> SenderListEntry.Action.REJECT;
+            default -> SenderListEntry.Action.SPAM;
+        };
+    }
+}
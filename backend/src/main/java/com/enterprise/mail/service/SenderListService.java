@@ -0,0 +1,211 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dto.SenderListDto;
+import com.enterprise.mail.dto.SenderListRequest;
+import com.enterprise.mail.entity.Domain;
+import com.enterprise.mail.entity.EmailAlias;
+import com.enterprise.mail.entity.SenderListEntry;
+import com.enterprise.mail.entity.User;
+import com.enterprise.mail.exception.BusinessException;
+import com.enterprise.mail.repository.DomainRepository;
+import com.enterprise.mail.repository.SenderListEntryRepository;
+import com.enterprise.mail.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Sender List Service - 用户与域级发件人黑白名单
+ *
+ * Lists are compiled into {@link SenderList}s and cached per user and per domain, tagged
+ * with the owner's senderListVersion, which every change increments. Delivery already has
+ * the recipient's user and domain loaded, so it notices a change on any node without an
+ * extra query. A user's own list is consulted first; the domain list only decides for
+ * senders the user has not listed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class SenderListService {
+
+    private final SenderListEntryRepository entryRepository;
+    private final UserRepository userRepository;
+    private final DomainRepository domainRepository;
+
+    private final Map<Long, CompiledList> userLists = new ConcurrentHashMap<>();
+    private final Map<String, CompiledList> domainLists = new ConcurrentHashMap<>();
+
+    private record CompiledList(long version, SenderList list) {
+    }
+
+    /**
+     * 获取用户的名单
+     */
+    @Transactional(readOnly = true)
+    public List<SenderListDto> getUserEntries(String username) {
+        User user = findUser(username);
+        return entryRepository.findByUserIdOrderByIdAsc(user.getId()).stream()
+                .map(this::toDto)
+                .toList();
+    }
+
+    /**
+     * 添加用户名单条目
+     */
+    public SenderListDto addUserEntry(SenderListRequest request, String username) {
+        User user = findUser(username);
+        String pattern = normalize(request.getPattern());
+        if (entryRepository.existsByUserIdAndPattern(user.getId(), pattern)) {
+            throw new BusinessException("Sender is already listed: " + pattern, HttpStatus.CONFLICT);
+        }
+
+        SenderListEntry entry = new SenderListEntry();
+        entry.setUserId(user.getId());
+        entry.setPattern(pattern);
+        entry.setAction(request.getAction());
+        entry.setNote(request.getNote());
+        entry = entryRepository.save(entry);
+
+        userRepository.incrementSenderListVersion(user.getId());
+        userLists.remove(user.getId());
+        return toDto(entry);
+    }
+
+    /**
+     * 删除用户名单条目
+     */
+    public void deleteUserEntry(Long entryId, String username) {
+        User user = findUser(username);
+        SenderListEntry entry = entryRepository.findById(entryId)
+                .filter(e -> user.getId().equals(e.getUserId()))
+                .orElseThrow(() -> new BusinessException("Entry not found", HttpStatus.NOT_FOUND));
+
+        entryRepository.delete(entry);
+        userRepository.incrementSenderListVersion(user.getId());
+        userLists.remove(user.getId());
+    }
+
+    /**
+     * 获取域级名单
+     */
+    @Transactional(readOnly = true)
+    public List<SenderListDto> getDomainEntries(String domainName) {
+        Domain domain = findDomain(domainName);
+        return entryRepository.findByUserIdIsNullAndDomainNameOrderByIdAsc(domain.getDomainName()).stream()
+                .map(this::toDto)
+                .toList();
+    }
+
+    /**
+     * 添加域级名单条目
+     */
+    public SenderListDto addDomainEntry(String domainName, SenderListRequest request) {
+        Domain domain = findDomain(domainName);
+        String pattern = normalize(request.getPattern());
+        if (entryRepository.existsByUserIdIsNullAndDomainNameAndPattern(domain.getDomainName(), pattern)) {
+            throw new BusinessException("Sender is already listed: " + pattern, HttpStatus.CONFLICT);
+        }
+
+        SenderListEntry entry = new SenderListEntry();
+        entry.setDomainName(domain.getDomainName());
+        entry.setPattern(pattern);
+        entry.setAction(request.getAction());
+        entry.setNote(request.getNote());
+        entry = entryRepository.save(entry);
+
+        domainChanged(domain.getDomainName());
+        log.info("Added {} entry for {} to the sender list of {}", entry.getAction(), pattern, domain.getDomainName());
+        return toDto(entry);
+    }
+
+    /**
+     * 删除域级名单条目
+     */
+    public void deleteDomainEntry(String domainName, Long entryId) {
+        Domain domain = findDomain(domainName);
+        SenderListEntry entry = entryRepository.findById(entryId)
+                .filter(e -> e.getUserId() == null && domain.getDomainName().equals(e.getDomainName()))
+                .orElseThrow(() -> new BusinessException("Entry not found", HttpStatus.NOT_FOUND));
+
+        entryRepository.delete(entry);
+        domainChanged(domain.getDomainName());
+    }
+
+    /**
+     * Verdict for mail from {@code sender} to an alias, or null when neither list mentions the sender
+     */
+    @Transactional(readOnly = true)
+    public SenderListEntry.Action check(String sender, EmailAlias alias) {
+        User user = alias.getUser();
+        long userVersion = user.getSenderListVersion() != null ? user.getSenderListVersion() : 0L;
+        SenderListEntry.Action action = getList(userLists, user.getId(), userVersion,
+                () -> entryRepository.findByUserIdOrderByIdAsc(user.getId())).match(sender);
+        if (action != null) {
+            return action;
+        }
+
+        Domain domain = alias.getDomain();
+        if (domain == null) {
+            return null;
+        }
+        String domainName = domain.getDomainName();
+        long domainVersion = domain.getSenderListVersion() != null ? domain.getSenderListVersion() : 0L;
+        return getList(domainLists, domainName, domainVersion,
+                () -> entryRepository.findByUserIdIsNullAndDomainNameOrderByIdAsc(domainName)).match(sender);
+    }
+
+    // Helper methods
+
+    private <K> SenderList getList(Map<K, CompiledList> cache, K key, long version,
+                                   Supplier<List<SenderListEntry>> loader) {
+        CompiledList compiled = cache.get(key);
+        if (compiled == null || compiled.version() != version) {
+            List<SenderListEntry> entries = loader.get();
+            compiled = new CompiledList(version, entries.isEmpty() ? SenderList.EMPTY : SenderList.compile(entries));
+            cache.put(key, compiled);
+        }
+        return compiled.list();
+    }
+
+    private void domainChanged(String domainName) {
+        domainRepository.incrementSenderListVersion(domainName);
+        domainLists.remove(domainName);
+    }
+
+    private String normalize(String pattern) {
+        String normalized = SenderList.normalize(pattern);
+        if (normalized == null) {
+            throw new BusinessException("Expected an address, a domain or *.domain: " + pattern);
+        }
+        return normalized;
+    }
+
+    private User findUser(String username) {
+        return userRepository.findByUsername(username)
+                .orElseThrow(() -> new BusinessException("User not found", HttpStatus.NOT_FOUND));
+    }
+
+    private Domain findDomain(String domainName) {
+        return domainRepository.findByDomainName(domainName)
+                .orElseThrow(() -> new BusinessException("Domain not found", HttpStatus.NOT_FOUND));
+    }
+
+    private SenderListDto toDto(SenderListEntry entry) {
+        return SenderListDto.builder()
+                .id(entry.getId())
+                .domainName(entry.getDomainName())
+                .pattern(entry.getPattern())
+                .action(entry.getAction().name())
+                .note(entry.getNote())
+                .createdAt(entry.getCreatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,459 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.entity.SpamLesson;
+import com.enterprise.mail.repository.SpamLessonRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Token-based Bayesian spam classifier.
+ *
+ * Messages are reduced to a sorted set of 64-bit token hashes (words of the subject, the
+ * sender and the start of the body; CJK text as character bigrams). Per-token spam and ham
+ * counts live in a {@link TokenTable}, and a message is scored by combining the most
+ * telling token probabilities with Fisher's method, giving 0 (ham) to 1 (spam).
+ *
+ * The model is trained incrementally from user corrections: moving mail into Spam learns
+ * it as spam, moving it out or filing it into another folder learns it as ham. A correction
+ * is recorded as a {@link SpamLesson} in the same transaction as the move, and every node
+ * applies the lessons in id order, so all nodes hold the same model. The model is kept in
+ * memory and saved to {@code mail-server.storage.path/spam/model.bin} together with the id
+ * of the last lesson in it. Any node's save is a valid snapshot, so a starting node loads
+ * whichever was written last and replays the lessons after it.
+ *
+ * Nodes can still diverge slightly. A lesson committed more than {@code lesson-settle-ms}
+ * after it was written is skipped by nodes that have already passed its id. A node that
+ * was down for longer than {@code lesson-retention-days} misses the lessons deleted in the
+ * meantime.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SpamFilterService {
+
+    private final MailServerConfig mailServerConfig;
+    private final SpamLessonRepository lessonRepository;
+
+    @Value("${mail.spam.threshold:0.9}")
+    private double threshold;
+
+    // 两类样本都达到该数量前不参与投递判定
+    @Value("${mail.spam.min-messages:20}")
+    private int minMessages;
+
+    @Value("${mail.spam.max-tokens:2000000}")
+    private int maxTokens;
+
+    // 训练记录写入后等待这么久才应用，让写入它的事务先提交
+    @Value("${mail.spam.lesson-settle-ms:30000}")
+    private long lessonSettleMs;
+
+    @Value("${mail.spam.lesson-retention-days:30}")
+    private int lessonRetentionDays;
+
+    private static final int MAGIC = 0x53504d32; // "SPM2"
+    private static final int SYNC_BATCH_SIZE = 500;
+    private static final int BODY_SCAN_LIMIT = 32 * 1024;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 32;
+    private static final int MAX_SCORED_TOKENS = 150;
+    private static final double STRENGTH = 1.0;       // weight of the 0.5 prior per token
+    private static final double MIN_DEVIATION = 0.1;  // ignore tokens this close to neutral
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TokenTable table = new TokenTable(1024);
+    private int spamMessages;
+    private int hamMessages;
+    private long lastLessonId;
+    private volatile boolean dirty;
+
+    @PostConstruct
+    public void load() {
+        Path file = modelFile();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                log.warn("Ignoring spam model with unknown format: {}", file);
+                return;
+            }
+            long lessonId = in.readLong();
+            int spam = in.readInt();
+            int ham = in.readInt();
+            TokenTable loaded = TokenTable.read(in);
+            lock.writeLock().lock();
+            try {
+                spamMessages = spam;
+                hamMessages = ham;
+                table = loaded;
+                lastLessonId = lessonId;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Loaded spam model up to lesson {}: {} spam, {} ham messages, {} tokens",
+                    lessonId, spam, ham, loaded.size());
+        } catch (IOException e) {
+            log.error("Failed to load spam model from {}", file, e);
+        }
+    }
+
+    /**
+     * Write the model if it changed since the last save
+     */
+    @Scheduled(fixedDelayString = "${mail.spam.save-interval-ms:300000}", initialDelay = 300000)
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        TokenTable snapshot;
+        long lessonId;
+        int spam;
+        int ham;
+        lock.readLock().lock();
+        try {
+            snapshot = table.copy();
+            lessonId = lastLessonId;
+            spam = spamMessages;
+            ham = hamMessages;
+            dirty = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Path file = modelFile();
+        // 各节点共用同一个文件，临时文件名不能冲突
+        Path temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeLong(lessonId);
+                out.writeInt(spam);
+                out.writeInt(ham);
+                snapshot.write(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // 下次保存用新的临时文件，不影响
+            }
+            dirty = true;
+            log.error("Failed to save spam model to {}", file, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        save();
+    }
+
+    public boolean isEnabled() {
+        return mailServerConfig.getSecurity().isSpamFilterEnabled();
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Spam probability of a message; empty while the filter is off or not trained enough
+     */
+    public OptionalDouble score(String from, String subject, String body) {
+        if (!isEnabled()) {
+            return OptionalDouble.empty();
+        }
+        long[] tokens = tokenize(from, subject, body);
+
+        double[] probabilities = new double[tokens.length];
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            if (spamMessages < Math.max(1, minMessages) || hamMessages < Math.max(1, minMessages)) {
+                return OptionalDouble.empty();
+            }
+            for (long token : tokens) {
+                int index = table.indexOf(token);
+                if (index < 0) {
+                    continue;
+                }
+                int spam = table.spamAt(index);
+                int ham = table.hamAt(index);
+                double spamRatio = (double) spam / spamMessages;
+                double hamRatio = (double) ham / hamMessages;
+                double p = spamRatio / (spamRatio + hamRatio);
+                // Robinson: 罕见词的概率向 0.5 收缩
+                double f = (STRENGTH * 0.5 + (spam + ham) * p) / (STRENGTH + spam + ham);
+                if (Math.abs(f - 0.5) >= MIN_DEVIATION) {
+                    probabilities[count++] = f;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return OptionalDouble.of(combine(probabilities, count));
+    }
+
+    /**
+     * Record a lesson: learn a message as spam or ham, or forget an earlier lesson with
+     * {@code forget}. It is saved in the caller's transaction and reaches the model of every
+     * node, this one included, on the next sync after it has settled.
+     */
+    public void record(String from, String subject, String body, boolean spam, boolean forget) {
+        long[] tokens = tokenize(from, subject, body);
+        ByteBuffer data = ByteBuffer.allocate(tokens.length * Long.BYTES);
+        data.asLongBuffer().put(tokens);
+
+        SpamLesson lesson = new SpamLesson();
+        lesson.setTokens(data.array());
+        lesson.setSpam(spam);
+        lesson.setForget(forget);
+        lessonRepository.save(lesson);
+    }
+
+    /**
+     * Apply the settled lessons this node has not seen yet, in id order
+     */
+    @Scheduled(fixedDelayString = "${mail.spam.sync-interval-ms:5000}", initialDelay = 10000)
+    public void syncLessons() {
+        LocalDateTime settled = LocalDateTime.now().minus(lessonSettleMs, ChronoUnit.MILLIS);
+        List<SpamLesson> lessons;
+        int applied = 0;
+        do {
+            long after;
+            lock.readLock().lock();
+            try {
+                after = lastLessonId;
+            } finally {
+                lock.readLock().unlock();
+            }
+            lessons = lessonRepository.findByIdGreaterThanAndCreatedAtBeforeOrderByIdAsc(
+                    after, settled, PageRequest.of(0, SYNC_BATCH_SIZE));
+            for (SpamLesson lesson : lessons) {
+                long[] tokens = new long[lesson.getTokens().length / Long.BYTES];
+                ByteBuffer.wrap(lesson.getTokens()).asLongBuffer().get(tokens);
+                train(tokens, lesson.getSpam(), lesson.getForget(), lesson.getId());
+            }
+            applied += lessons.size();
+        } while (lessons.size() == SYNC_BATCH_SIZE);
+        if (applied > 0) {
+            log.debug("Applied {} spam lessons", applied);
+        }
+    }
+
+    /**
+     * Delete lessons older than the retention period; saved models already contain them
+     */
+    @Scheduled(cron = "${mail.spam.lesson-cleanup-cron:0 30 3 * * *}")
+    @Transactional
+    public void cleanupLessons() {
+        int deleted = lessonRepository.deleteCreatedBefore(LocalDateTime.now().minusDays(lessonRetentionDays));
+        if (deleted > 0) {
+            log.info("Deleted {} spam lessons older than {} days", deleted, lessonRetentionDays);
+        }
+    }
+
+    // Helper methods
+
+    private void train(long[] tokens, boolean spam, boolean forget, long lessonId) {
+        int delta = forget ? -1 : 1;
+
+        lock.writeLock().lock();
+        try {
+            for (long token : tokens) {
+                table.add(token, spam ? delta : 0, spam ? 0 : delta);
+            }
+            if (spam) {
+                spamMessages = Math.max(0, spamMessages + delta);
+            } else {
+                hamMessages = Math.max(0, hamMessages + delta);
+            }
+            if (table.size() > maxTokens) {
+                int before = table.size();
+                table = table.pruned(2);
+                log.info("Pruned spam model from {} to {} tokens", before, table.size());
+            }
+            lastLessonId = lessonId;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Fisher's method over the most extreme probabilities, as in SpamBayes
+     */
+    private static double combine(double[] probabilities, int count) {
+        if (count == 0) {
+            return 0.5;
+        }
+        Arrays.sort(probabilities, 0, count);
+        // 两端的概率离 0.5 最远，从两端交替取
+        int low = 0;
+        int high = count - 1;
+        int used = 0;
+        double hamLog = 0;
+        double spamLog = 0;
+        while (low <= high && used < MAX_SCORED_TOKENS) {
+            double f = 0.5 - probabilities[low] >= probabilities[high] - 0.5 ? probabilities[low++] : probabilities[high--];
+            hamLog += Math.log(f);
+            spamLog += Math.log(1.0 - f);
+            used++;
+        }
+        double spamminess = 1.0 - chi2Q(-2.0 * spamLog, 2 * used);
+        double hamminess = 1.0 - chi2Q(-2.0 * hamLog, 2 * used);
+        return (spamminess - hamminess + 1.0) / 2.0;
+    }
+
+    /**
+     * Upper tail of the chi-square distribution for even degrees of freedom
+     */
+    private static double chi2Q(double chi, int degrees) {
+        double m = chi / 2.0;
+        double term = Math.exp(-m);
+        double sum = term;
+        for (int i = 1; i < degrees / 2; i++) {
+            term *= m / i;
+            sum += term;
+        }
+        return Math.min(sum, 1.0);
+    }
+
+    private static long[] tokenize(String from, String subject, String body) {
+        long[] tokens = new long[64];
+        int[] count = {0};
+        tokens = addTokens(tokens, count, 'f', from, Integer.MAX_VALUE, false);
+        tokens = addTokens(tokens, count, 's', subject, Integer.MAX_VALUE, false);
+        boolean html = body != null && body.indexOf('<') >= 0 && body.indexOf('>') >= 0;
+        tokens = addTokens(tokens, count, 'b', body, BODY_SCAN_LIMIT, html);
+
+        // 去重，每个词在一封邮件中只计一次
+        Arrays.sort(tokens, 0, count[0]);
+        int distinct = 0;
+        for (int i = 0; i < count[0]; i++) {
+            if (distinct == 0 || tokens[distinct - 1] != tokens[i]) {
+                tokens[distinct++] = tokens[i];
+            }
+        }
+        return Arrays.copyOf(tokens, distinct);
+    }
+
+    private static long[] addTokens(long[] tokens, int[] count, char field, String text, int limit, boolean skipTags) {
+        if (text == null) {
+            return tokens;
+        }
+        int end = Math.min(text.length(), limit);
+        int start = -1;
+        char previousIdeograph = 0;
+        for (int i = 0; i <= end; i++) {
+            char c = i < end ? text.charAt(i) : ' ';
+            if (skipTags && c == '<') {
+                int close = text.indexOf('>', i);
+                if (close > 0 && close < end) {
+                    tokens = addWord(tokens, count, field, text, start, i);
+                    start = -1;
+                    previousIdeograph = 0;
+                    i = close;
+                    continue;
+                }
+            }
+            if (Character.isIdeographic(c)) {
+                tokens = addWord(tokens, count, field, text, start, i);
+                start = -1;
+                // 中日文无空格分词，用相邻字的二元组
+                if (previousIdeograph != 0) {
+                    tokens = append(tokens, count, hash(field, previousIdeograph, c));
+                }
+                previousIdeograph = c;
+            } else if (Character.isLetterOrDigit(c) || c == '$' || c == '\'' || (start >= 0 && (c == '.' || c == '-' || c == '@'))) {
+                if (start < 0) {
+                    start = i;
+                }
+                previousIdeograph = 0;
+            } else {
+                tokens = addWord(tokens, count, field, text, start, i);
+                start = -1;
+                previousIdeograph = 0;
+            }
+        }
+        return tokens;
+    }
+
+    private static long[] addWord(long[] tokens, int[] count, char field, String text, int start, int end) {
+        if (start < 0) {
+            return tokens;
+        }
+        // 去掉词尾的标点
+        while (end > start && !Character.isLetterOrDigit(text.charAt(end - 1))) {
+            end--;
+        }
+        int length = end - start;
+        if (length < MIN_TOKEN_LENGTH) {
+            return tokens;
+        }
+        if (length > MAX_TOKEN_LENGTH) {
+            // Overlong words are hashed by length bucket, like SpamBayes' "skip" tokens
+            return append(tokens, count, hash(field, (char) 0, (char) (length / 10)));
+        }
+
+        // FNV-1a over the lower-cased word, seeded with the field
+        long h = 0xcbf29ce484222325L ^ field;
+        h *= 0x100000001b3L;
+        for (int i = start; i < end; i++) {
+            h ^= Character.toLowerCase(text.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        return append(tokens, count, h != 0 ? h : 1);
+    }
+
+    private static long hash(char field, char first, char second) {
+        long h = 0x84222325cbf29ce4L ^ field;
+        h *= 0x100000001b3L;
+        h ^= first;
+        h *= 0x100000001b3L;
+        h ^= second;
+        h *= 0x100000001b3L;
+        return h != 0 ? h : 1;
+    }
+
+    private static long[] append(long[] tokens, int[] count, long token) {
+        if (count[0] == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        tokens[count[0]++] = token;
+        return tokens;
+    }
+
+    private Path modelFile() {
+        return Paths.get(mailServerConfig.getStorage().getPath(), "spam", "model.bin");
+    }
+}
@@ -0,0 +1,412 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dns.DnsResolver;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SPF check_host() (RFC 7208) for one connecting address.
+ *
+ * Supports all, include, a, mx, ip4, ip6, exists and the redirect modifier, with macro
+ * expansion in domain specs and the limits of section 4.6.4: at most 10 lookup terms, 10
+ * MX hosts per term and 2 lookups that find nothing. {@code ptr} is slow, unreliable and
+ * deprecated by the RFC; it is counted as a lookup but never matches. One instance per
+ * evaluation, since it carries the lookup counters.
+ */
+final class SpfEvaluator {
+
+    enum Result {
+        PASS, FAIL, SOFTFAIL, NEUTRAL, NONE, TEMPERROR, PERMERROR;
+
+        /**
+         * Lower-case name as used in Received-SPF and Authentication-Results
+         */
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final int MAX_LOOKUPS = 10;
+    private static final int MAX_VOID_LOOKUPS = 2;
+    private static final int MAX_MX_HOSTS = 10;
+
+    private final DnsResolver resolver;
+    private final InetAddress ip;
+    private final String sender;
+    private final String helo;
+    private int lookups;
+    private int voidLookups;
+
+    private static final class SpfException extends Exception {
+        final Result result;
+
+        SpfException(Result result, String message) {
+            super(message, null, false, false);
+            this.result = result;
+        }
+    }
+
+    /**
+     * @param sender MAIL FROM address, or postmaster@helo for a null reverse path
+     */
+    SpfEvaluator(DnsResolver resolver, InetAddress ip, String sender, String helo) {
+        this.resolver = resolver;
+        this.ip = ip;
+        this.sender = sender;
+        this.helo = helo != null ? helo : "unknown";
+    }
+
+    Result check(String domain) {
+        try {
+            return checkHost(domain);
+        } catch (SpfException e) {
+            return e.result;
+        }
+    }
+
+    // Helper methods
+
+    private Result checkHost(String domain) throws SpfException {
+        if (!isValidDomain(domain)) {
+            return Result.NONE;
+        }
+        DnsResolver.Answer answer = lookup(domain, DnsResolver.Type.TXT);
+        String record = null;
+        for (String txt : answer.records()) {
+            String lower = txt.toLowerCase(Locale.ROOT);
+            if (lower.equals("v=spf1") || lower.startsWith("v=spf1 ")) {
+                if (record != null) {
+                    throw new SpfException(Result.PERMERROR, "multiple SPF records for " + domain);
+                }
+                record = txt;
+            }
+        }
+        if (record == null) {
+            return Result.NONE;
+        }
+
+        String redirect = null;
+        String[] terms = record.trim().split("\\s+");
+        for (int i = 1; i < terms.length; i++) {
+            String term = terms[i];
+            int equals = term.indexOf('=');
+            int colon = term.indexOf(':');
+            int slash = term.indexOf('/');
+            if (equals > 0 && (colon < 0 || equals < colon) && (slash < 0 || equals < slash)) {
+                // Modifier; unknown ones are ignored, exp= only matters for rejection texts
+                if (term.substring(0, equals).equalsIgnoreCase("redirect")) {
+                    if (redirect != null) {
+                        throw new SpfException(Result.PERMERROR, "duplicate redirect in " + domain);
+                    }
+                    redirect = term.substring(equals + 1);
+                }
+                continue;
+            }
+
+            Result qualifier = Result.PASS;
+            switch (term.charAt(0)) {
+                case '+' -> term = term.substring(1);
+                case '-' -> { qualifier = Result.FAIL; term = term.substring(1); }
+                case '~' -> { qualifier = Result.SOFTFAIL; term = term.substring(1); }
+                case '?' -> { qualifier = Result.NEUTRAL; term = term.substring(1); }
+                default -> { }
+            }
+            if (matches(term, domain)) {
+                return qualifier;
+            }
+        }
+
+        if (redirect != null) {
+            countLookup();
+            Result result = checkHost(expand(redirect, domain));
+            return result == Result.NONE ? Result.PERMERROR : result;
+        }
+        return Result.NEUTRAL;
+    }
+
+    private boolean matches(String term, String domain) throws SpfException {
+        int split = indexOfAny(term, ':', '/');
+        String mechanism = (split < 0 ? term : term.substring(0, split)).toLowerCase(Locale.ROOT);
+        String argument = split < 0 ? "" : term.substring(split);
+
+        switch (mechanism) {
+            case "all":
+                return true;
+            case "include": {
+                countLookup();
+                Result result = checkHost(expand(requireDomain(argument, term), domain));
+                return switch (result) {
+                    case PASS -> true;
+                    case FAIL, SOFTFAIL, NEUTRAL -> false;
+                    case TEMPERROR -> throw new SpfException(Result.TEMPERROR, "include failed: " + term);
+                    default -> throw new SpfException(Result.PERMERROR, "include without SPF record: " + term);
+                };
+            }
+            case "a": {
+                countLookup();
+                String[] target = splitCidr(argument, domain);
+                return matchesAnyAddress(lookupAddresses(target[0]), target);
+            }
+            case "mx": {
+                countLookup();
+                String[] target = splitCidr(argument, domain);
+                List<String> hosts = lookupVoidable(target[0], DnsResolver.Type.MX).records();
+                if (hosts.size() > MAX_MX_HOSTS) {
+                    throw new SpfException(Result.PERMERROR, "too many MX hosts for " + target[0]);
+                }
+                for (String host : hosts) {
+                    if (matchesAnyAddress(lookup(host, addressType()).records(), target)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            case "ip4":
+            case "ip6": {
+                if (!argument.startsWith(":")) {
+                    throw new SpfException(Result.PERMERROR, "missing address: " + term);
+                }
+                boolean v4 = mechanism.equals("ip4");
+                if (v4 != (ip instanceof Inet4Address)) {
+                    return false;
+                }
+                String value = argument.substring(1);
+                int prefixAt = value.indexOf('/');
+                String address = prefixAt < 0 ? value : value.substring(0, prefixAt);
+                int prefix = prefixAt < 0 ? (v4 ? 32 : 128) : parsePrefix(value.substring(prefixAt + 1), v4 ? 32 : 128);
+                return inNetwork(parseLiteral(address, v4), prefix);
+            }
+            case "exists": {
+                countLookup();
+                return !lookupVoidable(expand(requireDomain(argument, term), domain), DnsResolver.Type.A).isEmpty();
+            }
+            case "ptr":
+                countLookup();
+                return false;
+            default:
+                throw new SpfException(Result.PERMERROR, "unknown mechanism: " + term);
+        }
+    }
+
+    /**
+     * Target domain plus IPv4 and IPv6 prefix lengths of an a or mx term
+     */
+    private String[] splitCidr(String argument, String domain) throws SpfException {
+        String spec = argument;
+        String cidr4 = "32";
+        String cidr6 = "128";
+        int double6 = spec.indexOf("//");
+        if (double6 >= 0) {
+            cidr6 = spec.substring(double6 + 2);
+            spec = spec.substring(0, double6);
+        }
+        int single = spec.startsWith(":") ? spec.indexOf('/') : (spec.startsWith("/") ? 0 : -1);
+        if (single >= 0) {
+            cidr4 = spec.substring(single + 1);
+            spec = spec.substring(0, single);
+        }
+        String target = spec.startsWith(":") ? expand(spec.substring(1), domain) : domain;
+        return new String[]{target, cidr4, cidr6};
+    }
+
+    private boolean matchesAnyAddress(List<String> addresses, String[] target) throws SpfException {
+        boolean v4 = ip instanceof Inet4Address;
+        int prefix = v4 ? parsePrefix(target[1], 32) : parsePrefix(target[2], 128);
+        for (String address : addresses) {
+            if (inNetwork(parseLiteral(address, v4), prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> lookupAddresses(String domain) throws SpfException {
+        return lookupVoidable(domain, addressType()).records();
+    }
+
+    private DnsResolver.Type addressType() {
+        return ip instanceof Inet4Address ? DnsResolver.Type.A : DnsResolver.Type.AAAA;
+    }
+
+    private DnsResolver.Answer lookupVoidable(String domain, DnsResolver.Type type) throws SpfException {
+        DnsResolver.Answer answer = lookup(domain, type);
+        if (answer.isEmpty() && ++voidLookups > MAX_VOID_LOOKUPS) {
+            throw new SpfException(Result.PERMERROR, "too many void lookups");
+        }
+        return answer;
+    }
+
+    private DnsResolver.Answer lookup(String domain, DnsResolver.Type type) throws SpfException {
+        try {
+            return resolver.lookup(domain, type);
+        } catch (IOException e) {
+            throw new SpfException(Result.TEMPERROR, e.getMessage());
+        }
+    }
+
+    private void countLookup() throws SpfException {
+        if (++lookups > MAX_LOOKUPS) {
+            throw new SpfException(Result.PERMERROR, "more than " + MAX_LOOKUPS + " DNS lookups");
+        }
+    }
+
+    private boolean inNetwork(InetAddress network, int prefix) {
+        byte[] a = ip.getAddress();
+        byte[] b = network.getAddress();
+        if (a.length != b.length) {
+            return false;
+        }
+        int full = prefix / 8;
+        for (int i = 0; i < full; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        int rest = prefix % 8;
+        if (rest == 0) {
+            return true;
+        }
+        int mask = 0xff << (8 - rest);
+        return (a[full] & mask) == (b[full] & mask);
+    }
+
+    /**
+     * Expand macros of a domain spec (RFC 7208 section 7)
+     */
+    private String expand(String spec, String domain) throws SpfException {
+        if (spec.indexOf('%') < 0) {
+            return spec;
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if (c != '%') {
+                out.append(c);
+                continue;
+            }
+            if (i + 1 >= spec.length()) {
+                throw new SpfException(Result.PERMERROR, "bad macro: " + spec);
+            }
+            char next = spec.charAt(++i);
+            switch (next) {
+                case '%' -> out.append('%');
+                case '_' -> out.append(' ');
+                case '-' -> out.append("%20");
+                case '{' -> {
+                    int close = spec.indexOf('}', i);
+                    if (close < 0 || close == i + 1) {
+                        throw new SpfException(Result.PERMERROR, "bad macro: " + spec);
+                    }
+                    out.append(expandMacro(spec.substring(i + 1, close), domain));
+                    i = close;
+                }
+                default -> throw new SpfException(Result.PERMERROR, "bad macro: " + spec);
+            }
+        }
+        return out.toString();
+    }
+
+    private String expandMacro(String macro, String domain) throws SpfException {
+        char letter = Character.toLowerCase(macro.charAt(0));
+        int at = sender.lastIndexOf('@');
+        String value = switch (letter) {
+            case 's' -> sender;
+            case 'l' -> at > 0 ? sender.substring(0, at) : "postmaster";
+            case 'o' -> sender.substring(at + 1);
+            case 'd' -> domain;
+            case 'i' -> ipMacro();
+            case 'v' -> ip instanceof Inet4Address ? "in-addr" : "ip6";
+            case 'h' -> helo;
+            default -> throw new SpfException(Result.PERMERROR, "unsupported macro: %{" + macro + "}");
+        };
+
+        // Transformers: keep the rightmost N parts, r reverses; then the delimiters
+        int position = 1;
+        int keep = 0;
+        while (position < macro.length() && Character.isDigit(macro.charAt(position))) {
+            keep = keep * 10 + (macro.charAt(position++) - '0');
+        }
+        boolean reverse = position < macro.length() && Character.toLowerCase(macro.charAt(position)) == 'r';
+        if (reverse) {
+            position++;
+        }
+        String delimiters = position < macro.length() ? macro.substring(position) : ".";
+        if (!delimiters.matches("[.\\-+,/_=]+")) {
+            throw new SpfException(Result.PERMERROR, "bad macro delimiters: %{" + macro + "}");
+        }
+
+        List<String> parts = new ArrayList<>(List.of(value.split("[" + delimiters.replaceAll("(.)", "\\\\$1") + "]", -1)));
+        if (reverse) {
+            Collections.reverse(parts);
+        }
+        if (keep > 0 && keep < parts.size()) {
+            parts = parts.subList(parts.size() - keep, parts.size());
+        }
+        return String.join(".", parts);
+    }
+
+    private String ipMacro() {
+        if (ip instanceof Inet4Address) {
+            return ip.getHostAddress();
+        }
+        // IPv6: dot-separated nibbles
+        StringBuilder out = new StringBuilder();
+        for (byte b : ip.getAddress()) {
+            if (out.length() > 0) {
+                out.append('.');
+            }
+            out.append(Character.forDigit((b >> 4) & 0xf, 16)).append('.').append(Character.forDigit(b & 0xf, 16));
+        }
+        return out.toString();
+    }
+
+    private static String requireDomain(String argument, String term) throws SpfException {
+        if (!argument.startsWith(":") || argument.length() == 1) {
+            throw new SpfException(Result.PERMERROR, "missing domain: " + term);
+        }
+        return argument.substring(1);
+    }
+
+    private static int parsePrefix(String value, int max) throws SpfException {
+        try {
+            int prefix = Integer.parseInt(value);
+            if (prefix < 0 || prefix > max) {
+                throw new NumberFormatException();
+            }
+            return prefix;
+        } catch (NumberFormatException e) {
+            throw new SpfException(Result.PERMERROR, "bad prefix length: " + value);
+        }
+    }
+
+    private static InetAddress parseLiteral(String address, boolean v4) throws SpfException {
+        // Only literals reach getByName, so it never resolves names
+        boolean literal = v4 ? address.matches("\\d{1,3}(\\.\\d{1,3}){3}") : address.contains(":");
+        if (!literal) {
+            throw new SpfException(Result.PERMERROR, "bad address: " + address);
+        }
+        try {
+            return InetAddress.getByName(address);
+        } catch (UnknownHostException e) {
+            throw new SpfException(Result.PERMERROR, "bad address: " + address);
+        }
+    }
+
+    private static boolean isValidDomain(String domain) {
+        return domain != null && !domain.isEmpty() && domain.length() <= 253 && domain.indexOf('.') > 0
+                && !domain.contains("..") && domain.chars().noneMatch(Character::isWhitespace);
+    }
+
+    private static int indexOfAny(String value, char first, char second) {
+        int a = value.indexOf(first);
+        int b = value.indexOf(second);
+        return a < 0 ? b : (b < 0 ? a : Math.min(a, b));
+    }
+}
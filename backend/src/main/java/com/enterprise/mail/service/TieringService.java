@@ -0,0 +1,290 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.Email;
+import com.enterprise.mail.entity.EmailBody;
+import com.enterprise.mail.entity.EmailFolder;
+import com.enterprise.mail.entity.MessagePack;
+import com.enterprise.mail.repository.EmailBodyRepository;
+import com.enterprise.mail.repository.EmailRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves bodies and raw sources of aged mail from hot storage into pack files.
+ *
+ * Each run walks eligible emails in id order, appends them to a fresh pack, forces the
+ * pack to disk and only then switches the emails over in the database and removes the
+ * hot copies. Reads and writes are paced to an I/O budget so the live workload keeps
+ * its disk bandwidth.
+ *
+ * Packs are append-only, so records of messages deleted later stay behind as dead bytes.
+ * Compaction copies the live records of a mostly dead pack into a new one, switches the
+ * emails over and removes the old pack.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TieringService {
+    
+    private final EmailRepository emailRepository;
+    private final EmailBodyRepository emailBodyRepository;
+    private final MessagePackService messagePackService;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${mail.tiering.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${mail.tiering.min-age-days:180}")
+    private long minAgeDays;
+    
+    @Value("${mail.tiering.folder-types:INBOX,SENT,ARCHIVE,CUSTOM}")
+    private String folderTypes;
+    
+    @Value("${mail.tiering.io-budget-bytes-per-second:4194304}") // 4MB/s
+    private long ioBudgetBytesPerSecond;
+    
+    @Value("${mail.tiering.batch-size:100}")
+    private int batchSize;
+    
+    @Value("${mail.tiering.max-run-minutes:30}")
+    private long maxRunMinutes;
+    
+    @Value("${mail.tiering.max-pack-bytes:268435456}") // 256MB
+    private long maxPackBytes;
+    
+    // 存活数据占比低于该值的归档包会被重写
+    @Value("${mail.tiering.compact-below-live-ratio:0.5}")
+    private double compactBelowLiveRatio;
+    
+    private static final int REPACK_BATCH_SIZE = 1000;
+    
+    /**
+     * One incremental tiering pass
+     */
+    @Scheduled(fixedDelayString = "${mail.tiering.interval-ms:3600000}", initialDelay = 300000)
+    public void moveColdMessages() {
+        if (!enabled) {
+            return;
+        }
+        
+        Date cutoff = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(minAgeDays));
+        List<EmailFolder.FolderType> types = Arrays.stream(folderTypes.split(","))
+                .map(String::trim)
+                .map(EmailFolder.FolderType::valueOf)
+                .toList();
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(maxRunMinutes);
+        IoBudget budget = new IoBudget(ioBudgetBytesPerSecond);
+        
+        long afterId = 0;
+        int moved = 0;
+        MessagePackService.PackWriter writer = null;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                List<Long> batch = emailRepository.findTieringCandidates(afterId, cutoff, types, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                afterId = batch.get(batch.size() - 1);
+                
+                if (writer != null && writer.size() >= maxPackBytes) {
+                    writer.close();
+                    writer = null;
+                }
+                if (writer == null) {
+                    writer = messagePackService.createPack();
+                }
+                moved += moveBatch(batch, writer, budget);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Tiering run stopped after moving {} messages", moved, e);
+        } finally {
+            closeQuietly(writer);
+        }
+        
+        if (moved > 0) {
+            log.info("Moved {} messages to cold storage", moved);
+        }
+    }
+    
+    /**
+     * Rewrite sealed packs whose live records have fallen below the configured share
+     */
+    @Scheduled(fixedDelayString = "${mail.tiering.compaction-interval-ms:86400000}", initialDelay = 600000)
+    public void compactPacks() {
+        if (!enabled) {
+            return;
+        }
+        IoBudget budget = new IoBudget(ioBudgetBytesPerSecond);
+        int compacted = 0;
+        for (MessagePack pack : messagePackService.getSealedPacks()) {
+            try {
+                if (compact(pack, budget)) {
+                    compacted++;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to compact message pack {}", pack.getFileName(), e);
+            }
+        }
+        if (compacted > 0) {
+            log.info("Compacted {} message packs", compacted);
+        }
+    }
+    
+    // Helper methods
+    
+    private boolean compact(MessagePack pack, IoBudget budget) throws IOException {
+        List<MessagePackService.PackEntry> entries = messagePackService.readIndex(pack.getId());
+        Set<Long> live = new HashSet<>(emailRepository.findIdsByPackId(pack.getId()));
+        long totalBytes = 0;
+        long liveBytes = 0;
+        for (MessagePackService.PackEntry entry : entries) {
+            totalBytes += entry.length();
+            if (live.contains(entry.emailId())) {
+                liveBytes += entry.length();
+            }
+        }
+        if (totalBytes == 0 || liveBytes >= totalBytes * compactBelowLiveRatio) {
+            return false;
+        }
+        
+        if (liveBytes > 0) {
+            try (MessagePackService.PackWriter writer = messagePackService.createPack()) {
+                for (MessagePackService.PackEntry entry : entries) {
+                    if (live.contains(entry.emailId())) {
+                        budget.acquire(writer.copyRecord(pack.getId(), entry));
+                    }
+                }
+                // Durable before the database points at it
+                writer.sync();
+                
+                List<Long> ids = new ArrayList<>(live);
+                for (int from = 0; from < ids.size(); from += REPACK_BATCH_SIZE) {
+                    List<Long> batch = ids.subList(from, Math.min(from + REPACK_BATCH_SIZE, ids.size()));
+                    transactionTemplate.executeWithoutResult(status ->
+                            emailRepository.repack(batch, pack.getId(), writer.getPackId()));
+                }
+            }
+        }
+        
+        if (!emailRepository.findIdsByPackId(pack.getId()).isEmpty()) {
+            log.warn("Message pack {} is still referenced after compaction, keeping it", pack.getFileName());
+            return false;
+        }
+        messagePackService.deletePack(pack.getId());
+        log.info("Compacted message pack {}: kept {} of {} bytes", pack.getFileName(), liveBytes, totalBytes);
+        return true;
+    }
+    
+    private int moveBatch(List<Long> emailIds, MessagePackService.PackWriter writer, IoBudget budget) throws IOException {
+        List<Long> appended = new ArrayList<>();
+        List<Path> rawFiles = new ArrayList<>();
+        
+        for (Long emailId : emailIds) {
+            Optional<Email> email = emailRepository.findById(emailId);
+            if (email.isEmpty() || email.get().getPackId() != null) {
+                continue;
+            }
+            
+            long bytes = 0;
+            Optional<EmailBody> body = emailBodyRepository.findById(emailId);
+            if (body.isPresent()) {
+                bytes += writer.appendBody(emailId, body.get().getDictionaryId(),
+                        body.get().getTextData(), body.get().getHtmlData());
+            }
+            
+            // 原始文件按读取的字节计入预算（写入的是压缩后的更少字节），每个字节只计一次
+            Path rawFile = email.get().getRawPath() != null ? Paths.get(email.get().getRawPath()) : null;
+            if (rawFile != null && Files.isReadable(rawFile)) {
+                budget.acquire(Files.size(rawFile));
+                writer.appendRaw(emailId, rawFile);
+                rawFiles.add(rawFile);
+            } else {
+                rawFiles.add(null);
+            }
+            
+            appended.add(emailId);
+            budget.acquire(bytes);
+        }
+        if (appended.isEmpty()) {
+            return 0;
+        }
+        
+        // Durable before the database points at it
+        writer.sync();
+        
+        int moved = 0;
+        for (int i = 0; i < appended.size(); i++) {
+            Long emailId = appended.get(i);
+            Boolean switched = transactionTemplate.execute(status -> {
+                if (emailRepository.markPacked(emailId, writer.getPackId()) == 0) {
+                    return false;
+                }
+                emailBodyRepository.deleteById(emailId);
+                return true;
+            });
+            if (Boolean.TRUE.equals(switched)) {
+                moved++;
+                if (rawFiles.get(i) != null) {
+                    Files.deleteIfExists(rawFiles.get(i));
+                }
+            }
+        }
+        return moved;
+    }
+    
+    private void closeQuietly(MessagePackService.PackWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to seal message pack", e);
+        }
+    }
+    
+    /**
+     * Simple pacing: sleeps whenever the bytes moved so far run ahead of the budget
+     */
+    private static class IoBudget {
+        
+        private final long bytesPerSecond;
+        private final long startNanos = System.nanoTime();
+        private long consumed;
+        
+        IoBudget(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+        
+        void acquire(long bytes) {
+            consumed += bytes;
+            long dueNanos = (long) (consumed * 1e9 / bytesPerSecond);
+            long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+            if (aheadNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.enterprise.mail.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel.
+ *
+ * Level 0 has one slot per tick; every higher level has slots {@code 2^bits} times wider.
+ * Adding a timer and expiring a tick are O(1); when the clock reaches the start of a
+ * coarse slot its timers are cascaded into the finer levels. Timers further out than the
+ * top level covers wait in its last slot and are re-placed when it comes round.
+ * Not thread-safe.
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final ArrayDeque<Timer<T>>[][] slots;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int bits, int levels, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.slots = new ArrayDeque[levels][1 << bits];
+        for (ArrayDeque<Timer<T>>[] level : slots) {
+            for (int i = 0; i < level.length; i++) {
+                level[i] = new ArrayDeque<>();
+            }
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Add a timer; returns false without adding it when it is already due
+     */
+    boolean add(T payload, long dueMillis) {
+        long dueTick = dueMillis / tickMillis;
+        if (dueTick <= currentTick) {
+            return false;
+        }
+        place(new Timer<>(payload, dueTick));
+        size++;
+        return true;
+    }
+
+    /**
+     * Move the clock to {@code nowMillis}, handing every expired timer to {@code expired}
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // 从高层到低层级联，使定时器可以连续下沉
+            for (int level = slots.length - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (bits * level)) - 1)) == 0) {
+                    cascade(level, (int) ((currentTick >>> (bits * level)) & mask), expired);
+                }
+            }
+
+            ArrayDeque<Timer<T>> slot = slots[0][(int) (currentTick & mask)];
+            List<Timer<T>> replace = new ArrayList<>();
+            while (!slot.isEmpty()) {
+                Timer<T> timer = slot.poll();
+                if (timer.dueTick <= currentTick) {
+                    size--;
+                    expired.accept(timer.payload);
+                } else {
+                    replace.add(timer);
+                }
+            }
+            replace.forEach(this::place);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Helper methods
+
+    private void cascade(int level, int index, Consumer<T> expired) {
+        ArrayDeque<Timer<T>> slot = slots[level][index];
+        List<Timer<T>> timers = new ArrayList<>(slot);
+        slot.clear();
+        for (Timer<T> timer : timers) {
+            if (timer.dueTick <= currentTick) {
+                size--;
+                expired.accept(timer.payload);
+            } else {
+                place(timer);
+            }
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        long delta = timer.dueTick - currentTick;
+        for (int level = 0; level < slots.length; level++) {
+            if (delta < (1L << (bits * (level + 1)))) {
+                slots[level][(int) ((timer.dueTick >>> (bits * level)) & mask)].add(timer);
+                return;
+            }
+        }
+        // Beyond the top level: park in the slot visited last before a full revolution
+        int top = slots.length - 1;
+        slots[top][(int) (((currentTick >>> (bits * top)) - 1) & mask)].add(timer);
+    }
+
+    private record Timer<T>(T payload, long dueTick) {
+    }
+}
@@ -0,0 +1,206 @@
+package com.enterprise.mail.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Spam and ham counts per hashed token, in parallel primitive arrays.
+ *
+ * Open addressing with linear probing; key 0 marks an empty slot, so callers never pass
+ * it. Removal shifts later entries of the probe run back instead of leaving tombstones.
+ * Not thread-safe.
+ */
+final class TokenTable {
+
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private int[] spam;
+    private int[] ham;
+    private int mask;
+    private int size;
+
+    TokenTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Slot of a key, or -1 when absent
+     */
+    int indexOf(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int spamAt(int index) {
+        return spam[index];
+    }
+
+    int hamAt(int index) {
+        return ham[index];
+    }
+
+    /**
+     * Add to a token's counts; the token is dropped once both counts reach zero
+     */
+    void add(long key, int spamDelta, int hamDelta) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                spam[slot] = Math.max(0, spam[slot] + spamDelta);
+                ham[slot] = Math.max(0, ham[slot] + hamDelta);
+                if (spam[slot] == 0 && ham[slot] == 0) {
+                    removeAt(slot);
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (spamDelta <= 0 && hamDelta <= 0) {
+            return;
+        }
+
+        keys[slot] = key;
+        spam[slot] = Math.max(0, spamDelta);
+        ham[slot] = Math.max(0, hamDelta);
+        if (++size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * Copy without the tokens seen fewer than {@code minTotal} times
+     */
+    TokenTable pruned(int minTotal) {
+        TokenTable copy = new TokenTable(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && spam[i] + ham[i] >= minTotal) {
+                copy.add(keys[i], spam[i], ham[i]);
+            }
+        }
+        return copy;
+    }
+
+    TokenTable copy() {
+        return pruned(0);
+    }
+
+    /**
+     * Entries as key plus variable-length counts; small counts dominate, so most take 10 bytes
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                out.writeLong(keys[i]);
+                writeVarInt(out, spam[i]);
+                writeVarInt(out, ham[i]);
+            }
+        }
+    }
+
+    static TokenTable read(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        TokenTable table = new TokenTable(count);
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            table.add(key, readVarInt(in), readVarInt(in));
+        }
+        return table;
+    }
+
+    // Helper methods
+
+    private int slot(long key) {
+        // murmur3 finalizer 打散低位
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private void removeAt(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (keys[next] == EMPTY) {
+                break;
+            }
+            int home = slot(keys[next]);
+            // The entry may fill the hole unless its home lies cyclically in (hole, next]
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                keys[hole] = keys[next];
+                spam[hole] = spam[next];
+                ham[hole] = ham[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        spam[hole] = 0;
+        ham[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSpam = spam;
+        int[] oldHam = ham;
+        int count = size;
+        allocate(capacity);
+        size = count;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                spam[slot] = oldSpam[i];
+                ham[slot] = oldHam[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        spam = new int[capacity];
+        ham = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed count in spam model");
+    }
+}
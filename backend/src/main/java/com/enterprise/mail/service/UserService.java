@@ -12,10 +12,17 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * User Service
@@ -174,6 +181,47 @@ public class UserService implements UserDetailsService {
         return userRepository.save(user);
     }
     
+    /**
+     * Bump the user's mailbox modification counter
+     */
+    public void touchMailbox(Long userId) {
+        touchMailbox(userId, List.of());
+    }
+    
+    /**
+     * Bump the mailbox counter once per change and the given folders' counters.
+     *
+     * Inside a transaction the bumps are collected and written in one UPDATE per table just
+     * before commit, so a delivery that changes several things costs two statements instead
+     * of two per change. The user counter still grows by the number of changes, which the
+     * header index relies on to stay in step with the events it applies.
+     */
+    public void touchMailbox(Long userId, Collection<Long> folderIds) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            writeModSeq(Map.of(userId, 1L), folderIds);
+            return;
+        }
+        PendingTouches pending = (PendingTouches) TransactionSynchronizationManager.getResource(PendingTouches.class);
+        if (pending == null) {
+            PendingTouches created = new PendingTouches();
+            TransactionSynchronizationManager.bindResource(PendingTouches.class, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    writeModSeq(created.users, created.folders);
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PendingTouches.class);
+                }
+            });
+            pending = created;
+        }
+        pending.users.merge(userId, 1L, Long::sum);
+        pending.folders.addAll(folderIds);
+    }
+    
     /**
      * Get all users
      */
@@ -218,4 +266,21 @@ public class UserService implements UserDetailsService {
         }
         return str.substring(0, 1).toUpperCase() + str.substring(1).toLowerCase();
     }
-}
\ No newline at end of file
+    
+    // Helper methods
+    
+    private void writeModSeq(Map<Long, Long> users, Collection<Long> folderIds) {
+        users.forEach(userRepository::addMailboxModSeq);
+        if (!folderIds.isEmpty()) {
+            folderRepository.incrementModSeq(List.copyOf(folderIds));
+        }
+    }
+    
+    /**
+     * Mod-seq bumps collected during one transaction
+     */
+    private static final class PendingTouches {
+        private final Map<Long, Long> users = new HashMap<>();
+        private final Set<Long> folders = new LinkedHashSet<>();
+    }
+}
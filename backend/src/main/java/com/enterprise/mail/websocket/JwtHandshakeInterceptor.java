@@ -0,0 +1,72 @@
+package com.enterprise.mail.websocket;
+
+import com.enterprise.mail.security.JwtTokenUtil;
+import com.enterprise.mail.service.UserService;
+import io.jsonwebtoken.Claims;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Authenticates the WebSocket handshake.
+ *
+ * Clients that can set headers send the JWT as a Bearer token. Browsers cannot, so they
+ * pass a one-time {@code ticket} from {@link WebSocketTicketService} in the query string;
+ * the access token itself is never accepted from the URL.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JwtHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final JwtTokenUtil jwtTokenUtil;
+    private final UserService userService;
+    private final WebSocketTicketService ticketService;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String username = authenticate(request);
+        if (username == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        return userService.findByUsername(username)
+                .map(user -> {
+                    attributes.put(MailboxWebSocketHandler.USER_ID_ATTRIBUTE, user.getId());
+                    return true;
+                })
+                .orElseGet(() -> {
+                    response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                    return false;
+                });
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        if (exception != null) {
+            log.warn("Mailbox channel handshake failed: {}", exception.getMessage());
+        }
+    }
+
+    private String authenticate(ServerHttpRequest request) {
+        String bearerToken = request.getHeaders().getFirst("Authorization");
+        if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+            Claims claims = jwtTokenUtil.parseClaims(bearerToken.substring(7));
+            return claims != null && jwtTokenUtil.isAccessToken(claims) ? claims.getSubject() : null;
+        }
+        String ticket = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("ticket");
+        return StringUtils.hasText(ticket) ? ticketService.redeem(ticket) : null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.enterprise.mail.websocket;
+
+import com.enterprise.mail.dto.MailboxEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user mailbox change channel.
+ *
+ * Sessions are grouped by user id; every committed mailbox change is serialized
+ * once and fanned out to that user's sessions. Each session is wrapped in a
+ * {@link ConcurrentWebSocketSessionDecorator} so a slow consumer only ever holds a
+ * bounded send buffer - when it overflows the session is closed and the client
+ * resynchronizes with a single list request after reconnecting.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MailboxWebSocketHandler extends TextWebSocketHandler {
+
+    public static final String USER_ID_ATTRIBUTE = "mailbox.userId";
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${mail.websocket.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    @Value("${mail.websocket.buffer-size-limit:65536}")
+    private int bufferSizeLimit;
+
+    private final Map<Long, Set<WebSocketSession>> sessionsByUser = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        Long userId = (Long) session.getAttributes().get(USER_ID_ATTRIBUTE);
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, bufferSizeLimit);
+        sessionsByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(decorated);
+        log.debug("Mailbox channel opened for user {} ({})", userId, session.getId());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        // The channel is push-only; client frames are ignored
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Long userId = (Long) session.getAttributes().get(USER_ID_ATTRIBUTE);
+        sessionsByUser.computeIfPresent(userId, (id, sessions) -> {
+            sessions.removeIf(s -> s.getId().equals(session.getId()));
+            return sessions.isEmpty() ? null : sessions;
+        });
+        log.debug("Mailbox channel closed for user {} ({})", userId, status);
+    }
+
+    /**
+     * Push an event once the transaction that produced it has committed
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMailboxEvent(MailboxEvent event) {
+        Set<WebSocketSession> sessions = sessionsByUser.get(event.getUserId());
+        if (sessions == null || sessions.isEmpty()) {
+            return;
+        }
+
+        TextMessage message;
+        try {
+            message = new TextMessage(objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize mailbox event", e);
+            return;
+        }
+
+        for (WebSocketSession session : sessions) {
+            send(session, message);
+        }
+    }
+
+    /**
+     * Number of open mailbox channels
+     */
+    public int getOpenSessionCount() {
+        return sessionsByUser.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private void send(WebSocketSession session, TextMessage message) {
+        if (!session.isOpen()) {
+            return;
+        }
+        try {
+            session.sendMessage(message);
+        } catch (SessionLimitExceededException e) {
+            // The decorator has already closed the session; the client will reconnect and resync
+            log.warn("Dropping slow mailbox consumer {}: {}", session.getId(), e.getMessage());
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Failed to push mailbox event to {}: {}", session.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.enterprise.mail.websocket;
+
+import com.enterprise.mail.ratelimit.CounterStore;
+import com.enterprise.mail.security.JwtTokenUtil;
+import io.jsonwebtoken.Claims;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * One-time tickets for the mailbox WebSocket handshake.
+ *
+ * Browsers cannot put an Authorization header on a WebSocket upgrade, and a JWT in the URL
+ * ends up in access and proxy logs. The client therefore trades its access token for a
+ * ticket over a normal request and opens the socket with that. A ticket is good for a few
+ * seconds and for one handshake, on any node, so a logged URL is useless.
+ */
+@Component
+@RequiredArgsConstructor
+public class WebSocketTicketService {
+
+    private final JwtTokenUtil jwtTokenUtil;
+    private final CounterStore counterStore;
+
+    @Value("${mail.websocket.ticket-ttl-ms:30000}")
+    private long ticketTtlMillis;
+
+    public String issue(String username) {
+        return jwtTokenUtil.generateWebSocketTicket(username, ticketTtlMillis);
+    }
+
+    /**
+     * Username of a valid ticket not redeemed before, or null
+     */
+    public String redeem(String ticket) {
+        Claims claims = jwtTokenUtil.parseClaims(ticket);
+        if (claims == null || jwtTokenUtil.isAccessToken(claims) || claims.getId() == null) {
+            return null;
+        }
+        Duration ttl = Duration.ofMillis(ticketTtlMillis * 2);
+        if (counterStore.increment("ws-ticket:" + claims.getId(), 1, ttl) != 1) {
+            return null;
+        }
+        return claims.getSubject();
+    }
+}
@@ -0,0 +1,67 @@
+package com.enterprise.mail.dns;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process resolver for tests: answers from a fixed zone, everything else is NXDOMAIN.
+ * Names added with {@link #fail} throw like a timed-out server.
+ */
+public class StubDnsResolver implements DnsResolver {
+
+    private final Map<String, List<String>> records = new HashMap<>();
+    private final Set<String> failing = new HashSet<>();
+    private int lookups;
+
+    public StubDnsResolver txt(String name, String... values) {
+        return add(name, Type.TXT, values);
+    }
+
+    public StubDnsResolver a(String name, String... addresses) {
+        return add(name, Type.A, addresses);
+    }
+
+    public StubDnsResolver mx(String name, String... hosts) {
+        return add(name, Type.MX, hosts);
+    }
+
+    public StubDnsResolver fail(String name) {
+        failing.add(name.toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    public int getLookups() {
+        return lookups;
+    }
+
+    @Override
+    public synchronized Answer lookup(String name, Type type) throws IOException {
+        lookups++;
+        String key = name.toLowerCase(Locale.ROOT);
+        if (failing.contains(key)) {
+            throw new IOException("SERVFAIL for " + name);
+        }
+        List<String> values = records.get(key(key, type));
+        if (values != null) {
+            return new Answer(values, false, 300);
+        }
+        boolean exists = records.keySet().stream().anyMatch(k -> k.startsWith(key + "/"));
+        return exists ? new Answer(List.of(), false, 300) : Answer.notFound(300);
+    }
+
+    // Helper methods
+
+    private StubDnsResolver add(String name, Type type, String... values) {
+        records.put(key(name.toLowerCase(Locale.ROOT), type), List.of(values));
+        return this;
+    }
+
+    private static String key(String name, Type type) {
+        return name + "/" + type;
+    }
+}
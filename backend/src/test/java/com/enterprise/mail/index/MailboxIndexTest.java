@@ -0,0 +1,155 @@
+package com.enterprise.mail.index;
+
+import com.enterprise.mail.dto.EmailHeader;
+import com.enterprise.mail.entity.Email;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailboxIndexTest {
+
+    private static final long INBOX = 1;
+    private static final long ARCHIVE = 2;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void listsAPageInDateOrderWithTheTotal() throws IOException {
+        try (MailboxIndex index = create()) {
+            for (long id = 1; id <= 10; id++) {
+                // sent dates run opposite to ids
+                index.put(header(id, INBOX, 1_000_000 - id * 1000, "Subject " + id));
+            }
+
+            MailboxIndex.Result page = index.list(INBOX, null, MailboxIndex.SortKey.SENT_DATE, false, 2, 3);
+
+            assertEquals(10, page.total());
+            assertEquals(List.of(3L, 4L, 5L), ids(page));
+            assertEquals("Subject 3", page.headers().get(0).getSubject());
+        }
+    }
+
+    @Test
+    void filtersByFolderAndStatus() throws IOException {
+        try (MailboxIndex index = create()) {
+            index.put(header(1, INBOX, 1000, "a"));
+            index.put(header(2, ARCHIVE, 2000, "b"));
+            EmailHeader read = header(3, INBOX, 3000, "c");
+            read.setStatus(Email.EmailStatus.READ);
+            index.put(read);
+
+            assertEquals(List.of(1L, 3L), ids(index.list(INBOX, null, MailboxIndex.SortKey.ID, true, 0, 10)));
+            assertEquals(List.of(3L), ids(index.list(INBOX, Email.EmailStatus.READ, MailboxIndex.SortKey.ID, true, 0, 10)));
+            assertEquals(3, index.list(null, null, MailboxIndex.SortKey.ID, true, 0, 10).total());
+        }
+    }
+
+    @Test
+    void updatesInPlaceAndRemoves() throws IOException {
+        try (MailboxIndex index = create()) {
+            index.put(header(1, INBOX, 1000, "a"));
+            index.put(header(2, INBOX, 2000, "b"));
+
+            assertTrue(index.updateFlags(1, Email.EmailStatus.READ, true, null, LocalDateTime.now()));
+            assertTrue(index.updateFolder(2, ARCHIVE, LocalDateTime.now()));
+            assertFalse(index.updateFolder(9, ARCHIVE, LocalDateTime.now()));
+
+            EmailHeader first = index.list(INBOX, null, MailboxIndex.SortKey.ID, true, 0, 10).headers().get(0);
+            assertEquals(Email.EmailStatus.READ, first.getStatus());
+            assertTrue(first.getIsStarred());
+            assertFalse(first.getIsImportant());
+            assertEquals(List.of(2L), ids(index.list(ARCHIVE, null, MailboxIndex.SortKey.ID, true, 0, 10)));
+
+            assertTrue(index.remove(1));
+            assertFalse(index.remove(1));
+            assertEquals(0, index.list(INBOX, null, MailboxIndex.SortKey.ID, true, 0, 10).total());
+        }
+    }
+
+    @Test
+    void rewritingAMessageKeepsOneRecord() throws IOException {
+        try (MailboxIndex index = create()) {
+            index.put(header(1, INBOX, 1000, "old"));
+            index.put(header(1, INBOX, 1000, "new"));
+
+            MailboxIndex.Result page = index.list(INBOX, null, MailboxIndex.SortKey.ID, true, 0, 10);
+            assertEquals(1, page.total());
+            assertEquals("new", page.headers().get(0).getSubject());
+        }
+    }
+
+    @Test
+    void growsPastTheInitialCapacity() throws IOException {
+        try (MailboxIndex index = create()) {
+            for (long id = 1; id <= 3000; id++) {
+                index.put(header(id, INBOX, id * 1000, null));
+            }
+
+            MailboxIndex.Result page = index.list(INBOX, null, MailboxIndex.SortKey.RECEIVED_DATE, false, 0, 2);
+            assertEquals(3000, page.total());
+            assertEquals(List.of(3000L, 2999L), ids(page));
+            assertNull(page.headers().get(0).getSubject());
+        }
+    }
+
+    @Test
+    void reopensWithRecordsAndModSeq() throws IOException {
+        try (MailboxIndex index = create()) {
+            index.put(header(1, INBOX, 1000, "kept"));
+            index.put(header(2, INBOX, 2000, "removed"));
+            index.remove(2);
+            index.setModSeq(41);
+            index.advanceModSeq();
+        }
+
+        try (MailboxIndex index = MailboxIndex.open(dir.resolve("box.hdr"), dir.resolve("box.str"))) {
+            assertEquals(42, index.getModSeq());
+            MailboxIndex.Result page = index.list(INBOX, null, MailboxIndex.SortKey.ID, true, 0, 10);
+            assertEquals(List.of(1L), ids(page));
+            assertEquals("kept", page.headers().get(0).getSubject());
+        }
+    }
+
+    @Test
+    void createRefusesExistingFiles() throws IOException {
+        create().close();
+
+        assertThrows(IOException.class, this::create);
+    }
+
+    // Helper methods
+
+    private MailboxIndex create() throws IOException {
+        return MailboxIndex.create(dir.resolve("box.hdr"), dir.resolve("box.str"));
+    }
+
+    private static EmailHeader header(long id, long folderId, long date, String subject) {
+        EmailHeader header = new EmailHeader();
+        header.setId(id);
+        header.setFolderId(folderId);
+        header.setStatus(Email.EmailStatus.UNREAD);
+        header.setSentDate(new Date(date));
+        header.setReceivedDate(new Date(date));
+        header.setSizeBytes(100L);
+        header.setFromAddress("sender@example.com");
+        header.setSubject(subject);
+        header.setDirection(Email.Direction.INBOUND);
+        return header;
+    }
+
+    private static List<Long> ids(MailboxIndex.Result page) {
+        return page.headers().stream().map(EmailHeader::getId).toList();
+    }
+}
@@ -0,0 +1,118 @@
+package com.enterprise.mail.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeasedQuotaTest {
+
+    private static final Duration TTL = Duration.ofDays(1);
+
+    private final CounterStore store = new InMemoryCounterStore();
+
+    @Test
+    void grantsExactlyTheLimit() {
+        LeasedQuota quota = new LeasedQuota("q", 20);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(quota.tryAcquire(1, 100, store, () -> 0));
+        }
+        assertFalse(quota.tryAcquire(1, 100, store, () -> 0));
+        assertEquals(100, shared("q", 1));
+    }
+
+    @Test
+    void nodesSharingACounterStayWithinTheLimit() {
+        LeasedQuota first = new LeasedQuota("q", 20);
+        LeasedQuota second = new LeasedQuota("q", 20);
+
+        int granted = 0;
+        for (int i = 0; i < 200; i++) {
+            LeasedQuota node = i % 3 == 0 ? first : second;
+            if (node.tryAcquire(1, 50, store, () -> 0)) {
+                granted++;
+            }
+        }
+
+        assertEquals(50, granted);
+    }
+
+    @Test
+    void seedsWithWhatWasAlreadyUsed() {
+        LeasedQuota quota = new LeasedQuota("q", 20);
+
+        int granted = 0;
+        while (quota.tryAcquire(1, 100, store, () -> 95)) {
+            granted++;
+        }
+
+        assertEquals(5, granted);
+    }
+
+    @Test
+    void releasedUnitCanBeTakenAgain() {
+        LeasedQuota quota = new LeasedQuota("q", 20);
+        assertTrue(quota.tryAcquire(1, 1, store, () -> 0));
+        assertFalse(quota.tryAcquire(1, 1, store, () -> 0));
+
+        quota.release();
+
+        assertTrue(quota.tryAcquire(1, 1, store, () -> 0));
+    }
+
+    @Test
+    void newPeriodStartsOver() {
+        LeasedQuota quota = new LeasedQuota("q", 20);
+        assertTrue(quota.tryAcquire(1, 1, store, () -> 0));
+        assertFalse(quota.tryAcquire(1, 1, store, () -> 0));
+
+        assertTrue(quota.tryAcquire(2, 1, store, () -> 0));
+    }
+
+    @Test
+    void drainReportsUsedUnitsOfTheCurrentPeriodOnce() {
+        LeasedQuota quota = new LeasedQuota("q", 20);
+        for (int i = 0; i < 7; i++) {
+            quota.tryAcquire(1, 100, store, () -> 0);
+        }
+
+        assertEquals(7, quota.drainUsed(1));
+        assertEquals(0, quota.drainUsed(1));
+
+        quota.tryAcquire(1, 100, store, () -> 0);
+        assertEquals(0, quota.drainUsed(2));
+    }
+
+    @Test
+    void idleOnceItsPeriodEndedAndWasDrained() {
+        LeasedQuota quota = new LeasedQuota("q", 20);
+        quota.tryAcquire(1, 100, store, () -> 0);
+        assertFalse(quota.isIdle(1));
+        assertFalse(quota.isIdle(2));
+
+        quota.drainUsed(2);
+
+        assertTrue(quota.isIdle(2));
+    }
+
+    @Test
+    void returnedLeaseGoesBackToTheSharedCount() {
+        LeasedQuota quota = new LeasedQuota("q", 20);
+        quota.tryAcquire(1, 100, store, () -> 0);
+        assertEquals(10, shared("q", 1));
+
+        quota.returnLease(store);
+
+        assertEquals(1, shared("q", 1));
+    }
+
+    // Helper methods
+
+    private long shared(String key, long period) {
+        return store.increment(key + ":" + period, 0, TTL);
+    }
+}
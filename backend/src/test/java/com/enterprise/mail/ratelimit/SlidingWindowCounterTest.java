@@ -0,0 +1,67 @@
+package com.enterprise.mail.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SlidingWindowCounterTest {
+
+    private static final long HOUR = 3_600_000;
+
+    private final SlidingWindowCounter counter = new SlidingWindowCounter(HOUR, 1000);
+
+    @Test
+    void countsTheCurrentWindow() {
+        long window = counter.currentWindow();
+        counter.observe("k", window, 3);
+
+        assertEquals(3, counter.count("k"), 1e-9);
+        assertEquals(0, counter.count("other"), 1e-9);
+    }
+
+    @Test
+    void keepsTheHighestTotalSeen() {
+        long window = counter.currentWindow();
+        counter.observe("k", window, 5);
+        counter.observe("k", window, 3);
+
+        assertEquals(5, counter.count("k"), 1e-9);
+    }
+
+    @Test
+    void weighsThePreviousWindowByItsOverlap() {
+        long window = counter.currentWindow();
+        counter.observe("k", window - 1, 10);
+        counter.observe("k", window, 2);
+
+        double elapsed = (double) (System.currentTimeMillis() % HOUR) / HOUR;
+        assertEquals(10 * (1 - elapsed) + 2, counter.count("k"), 0.01);
+    }
+
+    @Test
+    void ignoresOlderWindows() {
+        long window = counter.currentWindow();
+        counter.observe("k", window - 2, 10);
+        assertEquals(0, counter.count("k"), 1e-9);
+
+        counter.observe("k", window, 1);
+        counter.observe("k", window - 1, 10);
+        assertEquals(1, counter.count("k"), 1e-9);
+    }
+
+    @Test
+    void saturatesAtSixteenBits() {
+        counter.observe("k", counter.currentWindow(), 100_000);
+
+        assertEquals(0xFFFF, counter.count("k"), 1e-9);
+    }
+
+    @Test
+    void clearForgetsTheKey() {
+        counter.observe("k", counter.currentWindow(), 4);
+
+        counter.clear("k");
+
+        assertEquals(0, counter.count("k"), 1e-9);
+    }
+}
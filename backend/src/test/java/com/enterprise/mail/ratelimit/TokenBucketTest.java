@@ -0,0 +1,97 @@
+package com.enterprise.mail.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void burstUpToCapacityThenWait() {
+        TokenBucket bucket = new TokenBucket(5, 60);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+        long wait = bucket.tryAcquire();
+
+        assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(1), "one refill interval at most: " + wait);
+    }
+
+    @Test
+    void refusedTakeLeavesBucketUnchanged() {
+        TokenBucket bucket = new TokenBucket(2, 60);
+        bucket.tryAcquire();
+        bucket.tryAcquire();
+
+        assertTrue(bucket.tryAcquire() > 0);
+        assertTrue(bucket.tryAcquire() > 0);
+        bucket.release();
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void weightedTakeCountsAllTokens() {
+        TokenBucket bucket = new TokenBucket(5, 60);
+
+        assertEquals(0, bucket.tryAcquire(3));
+        assertTrue(bucket.tryAcquire(3) > 0);
+        assertEquals(0, bucket.tryAcquire(2));
+
+        bucket.release(3);
+        assertEquals(0, bucket.tryAcquire(3));
+        assertTrue(bucket.tryAcquire(1) > 0);
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 6_000); // one token per 10 ms
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+
+        Thread.sleep(20);
+
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void idleOnlyWhenFull() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(3, 6_000);
+        assertTrue(bucket.isIdle());
+
+        bucket.tryAcquire();
+        assertFalse(bucket.isIdle());
+
+        Thread.sleep(20);
+        assertTrue(bucket.isIdle());
+    }
+
+    @Test
+    void concurrentTakesNeverExceedCapacity() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000, 1);
+        int[] taken = new int[8];
+        Thread[] threads = new Thread[taken.length];
+        for (int t = 0; t < threads.length; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (bucket.tryAcquire() == 0) {
+                        taken[index]++;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        int total = 0;
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            total += taken[t];
+        }
+
+        assertEquals(1000, total);
+    }
+}
@@ -0,0 +1,79 @@
+package com.enterprise.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodyCodecTest {
+
+    private static final String SIGNATURE = "\n--\nJane Doe | Example Corp | +1 555 0100\n"
+            + "This message may contain confidential information. If you are not the intended "
+            + "recipient, please delete it and notify the sender.\n";
+
+    private static final byte[] DICTIONARY = SIGNATURE.getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void shortValuesStayPlain() {
+        byte[] encoded = BodyCodec.encode("Hi there", null, Deflater.DEFAULT_COMPRESSION);
+
+        assertEquals(0, encoded[0]);
+        assertEquals("Hi there", BodyCodec.decode(encoded, null));
+    }
+
+    @Test
+    void compressibleValuesRoundTrip() {
+        String body = "Lorem ipsum dolor sit amet. ".repeat(50) + "Grüße, 你好";
+        byte[] encoded = BodyCodec.encode(body, null, 6);
+
+        assertEquals(1, encoded[0]);
+        assertTrue(encoded.length < body.length() / 4);
+        assertEquals(body, BodyCodec.decode(encoded, null));
+    }
+
+    @Test
+    void compressesFromTheMinimumSize() {
+        assertEquals(0, BodyCodec.encode("a".repeat(63), null, 6)[0]);
+        assertEquals(1, BodyCodec.encode("a".repeat(64), null, 6)[0]);
+    }
+
+    @Test
+    void dictionaryShrinksSharedBoilerplate() {
+        String body = "Can we move the call to Thursday?" + SIGNATURE;
+
+        byte[] without = BodyCodec.encode(body, null, 6);
+        byte[] with = BodyCodec.encode(body, DICTIONARY, 6);
+
+        assertTrue(with.length < without.length / 2, with.length + " vs " + without.length);
+        assertEquals(body, BodyCodec.decode(with, DICTIONARY));
+    }
+
+    @Test
+    void missingDictionaryIsReported() {
+        byte[] encoded = BodyCodec.encode("Can we move the call to Thursday?" + SIGNATURE, DICTIONARY, 6);
+
+        assertThrows(IllegalStateException.class, () -> BodyCodec.decode(encoded, null));
+    }
+
+    @Test
+    void truncatedDataIsReported() {
+        byte[] encoded = BodyCodec.encode("Lorem ipsum dolor sit amet. ".repeat(50), null, 6);
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+
+        assertThrows(IllegalStateException.class, () -> BodyCodec.decode(truncated, null));
+    }
+
+    @Test
+    void nullAndEmpty() {
+        assertNull(BodyCodec.encode(null, null, 6));
+        assertNull(BodyCodec.decode(null, null));
+        assertNull(BodyCodec.decode(new byte[0], null));
+        assertEquals("", BodyCodec.decode(BodyCodec.encode("", null, 6), null));
+    }
+}
@@ -0,0 +1,77 @@
+package com.enterprise.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentSnifferTest {
+
+    @Test
+    void recognisesCommonSignatures() {
+        assertEquals("application/pdf", sniff(0x25, 0x50, 0x44, 0x46, 0x2D, 0x31));
+        assertEquals("image/png", sniff(0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A));
+        assertEquals("image/jpeg", sniff(0xFF, 0xD8, 0xFF, 0xE0));
+        assertEquals("application/zip", sniff(0x50, 0x4B, 0x03, 0x04));
+        assertEquals("image/webp", sniff(0x52, 0x49, 0x46, 0x46, 0, 0, 0, 0, 0x57, 0x45, 0x42, 0x50));
+        assertEquals("video/mp4", sniff(0, 0, 0, 0x18, 0x66, 0x74, 0x79, 0x70));
+    }
+
+    @Test
+    void unknownOrShortInputGivesNull() {
+        assertNull(sniff('h', 'e', 'l', 'l', 'o'));
+        assertNull(sniff(0x25, 0x50));
+        // RIFF without the WEBP tag is some other format
+        assertNull(sniff(0x52, 0x49, 0x46, 0x46, 0, 0, 0, 0, 0x41, 0x56, 0x49, 0x20));
+    }
+
+    @Test
+    void onlyTheGivenLengthIsRead() {
+        byte[] head = {0x25, 0x50, 0x44, 0x46};
+
+        assertNull(ContentSniffer.sniff(head, 3));
+    }
+
+    @Test
+    void sniffedTypeWinsOverDeclared() {
+        assertEquals("image/png", ContentSniffer.resolve("application/pdf", "image/png"));
+        assertEquals("application/pdf", ContentSniffer.resolve("application/pdf", null));
+        assertEquals(ContentSniffer.OCTET_STREAM, ContentSniffer.resolve(null, null));
+        assertEquals(ContentSniffer.OCTET_STREAM, ContentSniffer.resolve(" ", null));
+    }
+
+    @Test
+    void containersKeepASpecificDeclaredType() {
+        String docx = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+        assertEquals(docx, ContentSniffer.resolve(docx, "application/zip"));
+        assertEquals("application/msword", ContentSniffer.resolve("application/msword", "application/x-ole-storage"));
+        assertEquals("application/zip", ContentSniffer.resolve("text/plain", "application/zip"));
+        assertEquals("application/zip", ContentSniffer.resolve(ContentSniffer.OCTET_STREAM, "application/zip"));
+    }
+
+    @Test
+    void compressedTypesAreNotDeflatedAgain() {
+        assertTrue(ContentSniffer.isCompressed("image/jpeg"));
+        assertTrue(ContentSniffer.isCompressed("Video/MP4"));
+        assertTrue(ContentSniffer.isCompressed("application/pdf"));
+        assertTrue(ContentSniffer.isCompressed("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+        assertFalse(ContentSniffer.isCompressed("image/svg+xml"));
+        assertFalse(ContentSniffer.isCompressed("image/bmp"));
+        assertFalse(ContentSniffer.isCompressed("text/plain"));
+        assertFalse(ContentSniffer.isCompressed("application/msword"));
+        assertFalse(ContentSniffer.isCompressed(null));
+    }
+
+    // Helper methods
+
+    private static String sniff(int... bytes) {
+        byte[] head = new byte[ContentSniffer.SNIFF_LENGTH];
+        for (int i = 0; i < bytes.length; i++) {
+            head[i] = (byte) bytes[i];
+        }
+        return ContentSniffer.sniff(head, bytes.length);
+    }
+}
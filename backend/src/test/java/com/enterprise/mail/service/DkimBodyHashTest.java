@@ -0,0 +1,74 @@
+package com.enterprise.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class DkimBodyHashTest {
+
+    private static final String HEADERS = "From: a@example.com\r\nSubject: x\r\n\r\n";
+
+    @Test
+    void relaxedBodyFromRfcExample() throws Exception {
+        // RFC 6376 3.4.5
+        assertBody(" C\r\nD E\r\n", " C \r\nD \t E\r\n\r\n\r\n", true);
+    }
+
+    @Test
+    void simpleBodyFromRfcExample() throws Exception {
+        assertBody(" C \r\nD \t E\r\n", " C \r\nD \t E\r\n\r\n\r\n", false);
+    }
+
+    @Test
+    void emptyBody() throws Exception {
+        assertBody("", "", true);
+        assertBody("\r\n", "", false);
+        assertBody("", "\r\n\r\n", true);
+        assertBody("\r\n", "\r\n\r\n", false);
+    }
+
+    @Test
+    void missingFinalLineBreakIsAdded() throws Exception {
+        assertBody("abc\r\n", "abc", false);
+        assertBody("abc\r\n", "abc  ", true);
+    }
+
+    @Test
+    void emptyLinesInsideTheBodyAreKept() throws Exception {
+        assertBody("a\r\n\r\nb\r\n", "a\r\n \r\nb\r\n", true);
+        assertBody("a\r\n \r\nb\r\n", "a\r\n \r\nb\r\n", false);
+    }
+
+    @Test
+    void bareLineFeedsEndLines() throws Exception {
+        assertBody("a\r\nb\r\n", "a\nb\n\n", true);
+    }
+
+    @Test
+    void lengthLimitCutsTheCanonicalBody() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (DkimBodyHash hash = new DkimBodyHash(digest, true, 4)) {
+            hash.write((HEADERS + "a  b\r\ncd\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+
+        assertArrayEquals(sha256("a b\r"), digest.digest());
+    }
+
+    // Helper methods
+
+    private static void assertBody(String canonical, String body, boolean relaxed) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (DkimBodyHash hash = new DkimBodyHash(digest, relaxed, -1)) {
+            byte[] message = (HEADERS + body).getBytes(StandardCharsets.US_ASCII);
+            hash.write(message, 0, message.length);
+        }
+        assertArrayEquals(sha256(canonical), digest.digest(), (relaxed ? "relaxed: " : "simple: ") + body);
+    }
+
+    private static byte[] sha256(String text) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
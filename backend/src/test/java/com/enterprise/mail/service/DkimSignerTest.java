@@ -0,0 +1,48 @@
+package com.enterprise.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DkimSignerTest {
+
+    @Test
+    void relaxedHeaderUnfoldsAndCollapsesWhitespace() {
+        // RFC 6376 3.4.5
+        assertEquals("a:X", DkimSigner.canonicalHeader("A", " X\r\n"));
+        assertEquals("b:Y Z", DkimSigner.canonicalHeader("B ", " Y\t\r\n\tZ  "));
+        assertEquals("subject:hello world", DkimSigner.canonicalHeader("Subject", "hello\r\n world"));
+    }
+
+    @Test
+    void parsesPkcs8AndPkcs1Keys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keys = generator.generateKeyPair();
+        byte[] pkcs8 = keys.getPrivate().getEncoded();
+        // PrivateKeyInfo: SEQUENCE (4), version (3), algorithm (15), OCTET STRING header (4)
+        byte[] pkcs1 = Arrays.copyOfRange(pkcs8, 26, pkcs8.length);
+
+        PrivateKey fromPkcs8 = DkimSigner.parseKey(pem("PRIVATE KEY", pkcs8));
+        PrivateKey fromPkcs1 = DkimSigner.parseKey(pem("RSA PRIVATE KEY", pkcs1));
+        PrivateKey bare = DkimSigner.parseKey(Base64.getEncoder().encodeToString(pkcs8));
+
+        assertArrayEquals(pkcs8, fromPkcs8.getEncoded());
+        assertArrayEquals(pkcs8, fromPkcs1.getEncoded());
+        assertArrayEquals(pkcs8, bare.getEncoded());
+    }
+
+    // Helper methods
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+    }
+}
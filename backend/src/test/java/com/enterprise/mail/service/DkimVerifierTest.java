@@ -0,0 +1,90 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dns.StubDnsResolver;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DkimVerifierTest {
+
+    private static KeyPair keys;
+
+    private final StubDnsResolver dns = new StubDnsResolver();
+
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        keys = TestMessages.rsaKeys();
+    }
+
+    @Test
+    void ownSignatureVerifies() throws Exception {
+        dns.txt("s1._domainkey.example.com", TestMessages.keyRecord(keys));
+
+        DkimVerifier.Result result = verifyOne(signed());
+
+        assertTrue(result.pass(), result.reason());
+        assertEquals("example.com", result.domain());
+    }
+
+    @Test
+    void relaxedHeadersTolerateWhitespace() throws Exception {
+        dns.txt("s1._domainkey.example.com", TestMessages.keyRecord(keys));
+
+        String raw = signed().replace("Subject: Invoice 42", "Subject:   Invoice \t 42  ");
+
+        assertTrue(verifyOne(raw).pass());
+    }
+
+    @Test
+    void changedBodyOrHeaderFails() throws Exception {
+        dns.txt("s1._domainkey.example.com", TestMessages.keyRecord(keys));
+
+        assertEquals("body hash mismatch", verifyOne(signed().replace("Please pay", "Please wire")).reason());
+        assertEquals("signature mismatch", verifyOne(signed().replace("Invoice 42", "Invoice 43")).reason());
+    }
+
+    @Test
+    void unknownSelectorFails() throws Exception {
+        DkimVerifier.Result result = verifyOne(signed());
+
+        assertFalse(result.pass());
+        assertFalse(result.temporary());
+    }
+
+    @Test
+    void keyLookupFailureIsTemporary() throws Exception {
+        dns.fail("s1._domainkey.example.com");
+
+        DkimVerifier.Result result = verifyOne(signed());
+
+        assertFalse(result.pass());
+        assertTrue(result.temporary());
+    }
+
+    @Test
+    void unsignedMessageHasNoResults() throws Exception {
+        List<DkimVerifier.Result> results = new DkimVerifier(dns)
+                .verify(TestMessages.parse(TestMessages.raw("alice@example.com", "Hi", "Hello")), 5);
+
+        assertTrue(results.isEmpty());
+    }
+
+    // Helper methods
+
+    private static String signed() throws Exception {
+        return TestMessages.signed("alice@example.com", "Invoice 42", "Please pay by Friday.\r\n",
+                "example.com", "s1", keys);
+    }
+
+    private DkimVerifier.Result verifyOne(String raw) throws Exception {
+        List<DkimVerifier.Result> results = new DkimVerifier(dns).verify(TestMessages.parse(raw), 5);
+        assertEquals(1, results.size());
+        return results.get(0);
+    }
+}
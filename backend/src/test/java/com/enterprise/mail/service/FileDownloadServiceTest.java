@@ -0,0 +1,51 @@
+package com.enterprise.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileDownloadServiceTest {
+
+    private static final long LENGTH = 1000;
+
+    @Test
+    void closedRange() {
+        assertArrayEquals(new long[]{0, 99}, FileDownloadService.parseRange("bytes=0-99", LENGTH));
+        assertArrayEquals(new long[]{999, 999}, FileDownloadService.parseRange("bytes=999-999", LENGTH));
+    }
+
+    @Test
+    void openRangeRunsToTheEnd() {
+        assertArrayEquals(new long[]{500, 999}, FileDownloadService.parseRange("bytes=500-", LENGTH));
+    }
+
+    @Test
+    void suffixRangeTakesTheLastBytes() {
+        assertArrayEquals(new long[]{900, 999}, FileDownloadService.parseRange("bytes=-100", LENGTH));
+        assertArrayEquals(new long[]{0, 999}, FileDownloadService.parseRange("bytes=-2000", LENGTH));
+    }
+
+    @Test
+    void endPastTheLengthIsClamped() {
+        assertArrayEquals(new long[]{0, 999}, FileDownloadService.parseRange("bytes=0-5000", LENGTH));
+    }
+
+    @Test
+    void unsatisfiableRanges() {
+        assertTrue(FileDownloadService.parseRange("bytes=1000-", LENGTH) == FileDownloadService.UNSATISFIABLE);
+        assertTrue(FileDownloadService.parseRange("bytes=-0", LENGTH) == FileDownloadService.UNSATISFIABLE);
+        assertTrue(FileDownloadService.parseRange("bytes=-100", 0) == FileDownloadService.UNSATISFIABLE);
+    }
+
+    @Test
+    void malformedOrMultipleRangesAreIgnored() {
+        assertNull(FileDownloadService.parseRange("bytes=0-1,5-9", LENGTH));
+        assertNull(FileDownloadService.parseRange("items=0-99", LENGTH));
+        assertNull(FileDownloadService.parseRange("bytes=a-b", LENGTH));
+        assertNull(FileDownloadService.parseRange("bytes=5-2", LENGTH));
+        assertNull(FileDownloadService.parseRange("bytes=5", LENGTH));
+        assertNull(FileDownloadService.parseRange("bytes=-", LENGTH));
+    }
+}
@@ -0,0 +1,145 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.config.MailServerConfig;
+import com.enterprise.mail.dns.StubDnsResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.KeyPair;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MailAuthServiceTest {
+
+    private static KeyPair keys;
+
+    private final StubDnsResolver dns = new StubDnsResolver();
+    private MailAuthService service;
+
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        keys = TestMessages.rsaKeys();
+    }
+
+    @BeforeEach
+    void setUp() {
+        service = new MailAuthService(new MailServerConfig(), dns, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "threads", 2);
+        ReflectionTestUtils.setField(service, "timeoutMillis", 5000L);
+        ReflectionTestUtils.setField(service, "maxDkimSignatures", 5);
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void alignedSpfPassesDmarc() throws Exception {
+        dns.txt("example.com", "v=spf1 ip4:192.0.2.10 -all")
+                .txt("_dmarc.example.com", "v=DMARC1; p=reject");
+
+        MailAuthService.AuthResult result = verify("192.0.2.10", "alice@example.com", plain("alice@example.com"));
+
+        assertEquals("pass", result.spf());
+        assertEquals("pass", result.dmarc());
+        assertNull(result.dkimValid());
+        assertEquals(MailAuthService.Disposition.NONE, result.disposition());
+    }
+
+    @Test
+    void failingMailIsHandledByPolicy() throws Exception {
+        dns.txt("example.com", "v=spf1 ip4:192.0.2.10 -all")
+                .txt("_dmarc.example.com", "v=DMARC1; p=quarantine");
+
+        MailAuthService.AuthResult result = verify("198.51.100.1", "alice@example.com", plain("alice@example.com"));
+
+        assertEquals("fail", result.spf());
+        assertEquals("fail", result.dmarc());
+        assertEquals(MailAuthService.Disposition.QUARANTINE, result.disposition());
+    }
+
+    @Test
+    void spfPassForAnotherDomainIsNotAligned() throws Exception {
+        dns.txt("bulk-mailer.net", "v=spf1 ip4:192.0.2.10 -all")
+                .txt("_dmarc.example.com", "v=DMARC1; p=reject");
+
+        MailAuthService.AuthResult result = verify("192.0.2.10", "bounce@bulk-mailer.net", plain("alice@example.com"));
+
+        assertEquals("pass", result.spf());
+        assertEquals("fail", result.dmarc());
+        assertEquals(MailAuthService.Disposition.REJECT, result.disposition());
+    }
+
+    @Test
+    void relaxedAlignmentAcceptsSubdomainsUnlessStrict() throws Exception {
+        dns.txt("bounce.example.com", "v=spf1 ip4:192.0.2.10 -all")
+                .txt("_dmarc.example.com", "v=DMARC1; p=reject");
+        assertEquals("pass", verify("192.0.2.10", "b@bounce.example.com", plain("alice@example.com")).dmarc());
+
+        dns.txt("_dmarc.example.com", "v=DMARC1; p=reject; aspf=s");
+        assertEquals("fail", verify("192.0.2.10", "b@bounce.example.com", plain("alice@example.com")).dmarc());
+    }
+
+    @Test
+    void alignedDkimPassesDmarcWithoutSpf() throws Exception {
+        dns.txt("s1._domainkey.example.com", TestMessages.keyRecord(keys))
+                .txt("_dmarc.example.com", "v=DMARC1; p=reject");
+        MimeMessage message = TestMessages.parse(TestMessages.signed("alice@example.com", "Hi", "Hello\r\n",
+                "example.com", "s1", keys));
+
+        MailAuthService.AuthResult result = verify("198.51.100.1", "alice@example.com", message);
+
+        assertEquals("none", result.spf());
+        assertEquals(Boolean.TRUE, result.dkimValid());
+        assertEquals("pass", result.dmarc());
+    }
+
+    @Test
+    void subdomainFallsBackToOrganizationalPolicy() throws Exception {
+        dns.txt("mail.example.com", "v=spf1 -all")
+                .txt("_dmarc.example.com", "v=DMARC1; p=none; sp=reject");
+
+        MailAuthService.AuthResult result = verify("192.0.2.10", "alice@mail.example.com",
+                plain("alice@mail.example.com"));
+
+        assertEquals("fail", result.dmarc());
+        assertEquals(MailAuthService.Disposition.REJECT, result.disposition());
+    }
+
+    @Test
+    void missingRecordAndDnsFailure() throws Exception {
+        assertEquals("none", verify("192.0.2.10", "alice@example.com", plain("alice@example.com")).dmarc());
+
+        dns.fail("_dmarc.example.com");
+        assertEquals("temperror", verify("192.0.2.10", "alice@example.com", plain("alice@example.com")).dmarc());
+    }
+
+    @Test
+    void clientAddressIsNeverTakenFromHeaders() throws Exception {
+        dns.txt("example.com", "v=spf1 ip4:192.0.2.10 -all");
+        MimeMessage message = TestMessages.parse("Received: from mx.example.com ([192.0.2.10])\r\n"
+                + TestMessages.raw("alice@example.com", "Hi", "Hello"));
+
+        MailAuthService.AuthResult result = service.verify(null, null, "alice@example.com", message);
+
+        assertEquals("none", result.spf());
+    }
+
+    // Helper methods
+
+    private MailAuthService.AuthResult verify(String clientIp, String mailFrom, MimeMessage message) {
+        return service.verify(clientIp, "mx.sender.test", mailFrom, message);
+    }
+
+    private static MimeMessage plain(String from) throws Exception {
+        return TestMessages.parse(TestMessages.raw(from, "Hi", "Hello"));
+    }
+}
@@ -0,0 +1,210 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.EmailRule;
+import com.enterprise.mail.entity.EmailRule.ActionType;
+import com.enterprise.mail.entity.EmailRule.ConditionOperator;
+import com.enterprise.mail.entity.EmailRule.ConditionType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleMatcherTest {
+
+    private static final ConditionOperator[] TEXT_OPERATORS = {
+            ConditionOperator.CONTAINS, ConditionOperator.NOT_CONTAINS, ConditionOperator.EQUALS,
+            ConditionOperator.NOT_EQUALS, ConditionOperator.STARTS_WITH, ConditionOperator.ENDS_WITH
+    };
+
+    @Test
+    void textOperatorsIgnoreCaseAndSurroundingSpace() {
+        RuleMatcher.Message message = message("  Boss@Example.com ", "Quarterly REPORT due", "body");
+
+        assertTrue(matches(message, rule(ConditionType.FROM, ConditionOperator.EQUALS, "boss@example.com")));
+        assertTrue(matches(message, rule(ConditionType.FROM, ConditionOperator.ENDS_WITH, "@EXAMPLE.COM")));
+        assertTrue(matches(message, rule(ConditionType.SUBJECT, ConditionOperator.STARTS_WITH, "quarterly")));
+        assertTrue(matches(message, rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "report")));
+        assertFalse(matches(message, rule(ConditionType.SUBJECT, ConditionOperator.STARTS_WITH, "report")));
+        assertFalse(matches(message, rule(ConditionType.SUBJECT, ConditionOperator.EQUALS, "report")));
+        assertTrue(matches(message, rule(ConditionType.SUBJECT, ConditionOperator.NOT_CONTAINS, "invoice")));
+        assertTrue(matches(message, rule(ConditionType.SUBJECT, ConditionOperator.NOT_EQUALS, "quarterly")));
+    }
+
+    @Test
+    void overlappingPatternsInOneFieldAllMatch() {
+        List<EmailRule> rules = List.of(
+                label(rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "he"), "1"),
+                label(rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "she"), "2"),
+                label(rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "hers"), "3"),
+                label(rule(ConditionType.SUBJECT, ConditionOperator.ENDS_WITH, "rs"), "4"),
+                label(rule(ConditionType.SUBJECT, ConditionOperator.STARTS_WITH, "he"), "5"));
+
+        RuleMatcher.Outcome outcome = RuleMatcher.compile(rules).evaluate(message("a@b.c", "ushers", ""));
+
+        assertEquals(Set.of("1", "2", "3", "4"), outcome.labels);
+    }
+
+    @Test
+    void agreesWithPlainStringComparison() {
+        Random random = new Random(11);
+        for (int round = 0; round < 2_000; round++) {
+            List<EmailRule> rules = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(8); i++) {
+                ConditionOperator operator = TEXT_OPERATORS[random.nextInt(TEXT_OPERATORS.length)];
+                rules.add(label(rule(ConditionType.SUBJECT, operator, text(random, 1 + random.nextInt(3))),
+                        String.valueOf(i)));
+            }
+            String subject = text(random, random.nextInt(10));
+
+            RuleMatcher.Outcome outcome = RuleMatcher.compile(rules).evaluate(message("a@b.c", subject, ""));
+
+            for (EmailRule rule : rules) {
+                boolean expected = compare(rule.getConditionOperator(), subject, rule.getConditionValue());
+                assertEquals(expected, outcome.labels.contains(rule.getActionValue()),
+                        rule.getConditionOperator() + " '" + rule.getConditionValue() + "' on '" + subject + "'");
+            }
+        }
+    }
+
+    @Test
+    void longBodyIsJudgedByItsStartAndEnd() {
+        String body = "  Hello " + "x".repeat(200_000) + " middle " + "y".repeat(200_000) + " Goodbye\n";
+        RuleMatcher.Message message = message("a@b.c", "s", body);
+
+        assertTrue(matches(message, rule(ConditionType.BODY, ConditionOperator.STARTS_WITH, "hello")));
+        assertTrue(matches(message, rule(ConditionType.BODY, ConditionOperator.ENDS_WITH, "goodbye")));
+        assertTrue(matches(message, rule(ConditionType.BODY, ConditionOperator.CONTAINS, "goodbye")));
+        assertFalse(matches(message, rule(ConditionType.BODY, ConditionOperator.ENDS_WITH, "hello")));
+        assertFalse(matches(message, rule(ConditionType.BODY, ConditionOperator.EQUALS, body.trim())));
+        assertFalse(matches(message, rule(ConditionType.BODY, ConditionOperator.CONTAINS, "middle")));
+    }
+
+    @Test
+    void emptyValueComparesTheWholeField() {
+        assertTrue(matches(message("a@b.c", "", ""), rule(ConditionType.SUBJECT, ConditionOperator.EQUALS, "")));
+        assertFalse(matches(message("a@b.c", "x", ""), rule(ConditionType.SUBJECT, ConditionOperator.EQUALS, "")));
+        assertTrue(matches(message("a@b.c", null, ""), rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, null)));
+    }
+
+    @Test
+    void sizeAttachmentAndHeaderConditions() {
+        RuleMatcher.Message message = new RuleMatcher.Message("a@b.c", "to@b.c", "s", "", 2_048, true,
+                Map.of("List-Id", "<dev.example.com>")::get);
+
+        assertTrue(matches(message, rule(ConditionType.SIZE, ConditionOperator.GREATER_THAN, "1024")));
+        assertFalse(matches(message, rule(ConditionType.SIZE, ConditionOperator.LESS_THAN, "1024")));
+        assertFalse(matches(message, rule(ConditionType.SIZE, ConditionOperator.GREATER_THAN, "big")));
+        assertTrue(matches(message, rule(ConditionType.HAS_ATTACHMENT, ConditionOperator.EQUALS, "true")));
+        assertFalse(matches(message, rule(ConditionType.HAS_ATTACHMENT, ConditionOperator.NOT_EQUALS, "")));
+
+        EmailRule header = rule(ConditionType.HEADER, ConditionOperator.CONTAINS, "DEV.example");
+        header.setConditionField("List-Id");
+        assertTrue(matches(message, header));
+        header.setConditionField("X-Other");
+        assertFalse(matches(message, header));
+    }
+
+    @Test
+    void headerRulesNeverMatchWithoutHeaders() {
+        EmailRule header = rule(ConditionType.HEADER, ConditionOperator.NOT_CONTAINS, "x");
+        header.setConditionField("List-Id");
+
+        assertFalse(matches(message("a@b.c", "s", ""), header));
+    }
+
+    @Test
+    void actionsCombineInOrderUntilStop() {
+        EmailRule first = rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "a", ActionType.MOVE_TO_FOLDER, " Work ");
+        EmailRule second = rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "a", ActionType.MOVE_TO_FOLDER, "Other");
+        EmailRule forward = rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "a", ActionType.FORWARD_TO,
+                "x@b.c, y@b.c,");
+        forward.setStopProcessing(true);
+        EmailRule after = rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "a", ActionType.DELETE, null);
+
+        RuleMatcher.Outcome outcome = RuleMatcher.compile(List.of(first, second, forward, after))
+                .evaluate(message("a@b.c", "abc", ""));
+
+        assertEquals("Work", outcome.folder);
+        assertEquals(Set.of("x@b.c", "y@b.c"), outcome.forwardTo);
+        assertFalse(outcome.delete);
+        assertEquals(3, outcome.matchedRules);
+    }
+
+    @Test
+    void noRulesGiveAnEmptyOutcome() {
+        RuleMatcher.Outcome outcome = RuleMatcher.compile(List.of()).evaluate(message("a@b.c", "s", "b"));
+
+        assertTrue(outcome.isEmpty());
+        assertNull(outcome.folder);
+    }
+
+    @Test
+    void usesBodyOnlyWithBodyRules() {
+        assertFalse(RuleMatcher.compile(List.of(rule(ConditionType.SUBJECT, ConditionOperator.CONTAINS, "x")))
+                .usesBody());
+        assertTrue(RuleMatcher.compile(List.of(rule(ConditionType.BODY, ConditionOperator.CONTAINS, "x")))
+                .usesBody());
+    }
+
+    // Helper methods
+
+    private static boolean matches(RuleMatcher.Message message, EmailRule rule) {
+        return !RuleMatcher.compile(List.of(rule)).evaluate(message).isEmpty();
+    }
+
+    private static RuleMatcher.Message message(String from, String subject, String body) {
+        return new RuleMatcher.Message(from, "to@example.com", subject, body, 100, false, null);
+    }
+
+    private static EmailRule rule(ConditionType type, ConditionOperator operator, String value) {
+        return rule(type, operator, value, ActionType.MARK_AS_READ, null);
+    }
+
+    private static EmailRule rule(ConditionType type, ConditionOperator operator, String value,
+                                  ActionType action, String actionValue) {
+        EmailRule rule = new EmailRule();
+        rule.setConditionType(type);
+        rule.setConditionOperator(operator);
+        rule.setConditionValue(value);
+        rule.setActionType(action);
+        rule.setActionValue(actionValue);
+        return rule;
+    }
+
+    private static EmailRule label(EmailRule rule, String label) {
+        rule.setActionType(ActionType.ADD_LABEL);
+        rule.setActionValue(label);
+        return rule;
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append("abA".charAt(random.nextInt(3)));
+        }
+        return text.toString();
+    }
+
+    private static boolean compare(ConditionOperator operator, String text, String value) {
+        String field = text.trim().toLowerCase(Locale.ROOT);
+        String pattern = value.toLowerCase(Locale.ROOT);
+        return switch (operator) {
+            case CONTAINS -> field.contains(pattern);
+            case NOT_CONTAINS -> !field.contains(pattern);
+            case EQUALS -> field.equals(pattern);
+            case NOT_EQUALS -> !field.equals(pattern);
+            case STARTS_WITH -> field.startsWith(pattern);
+            case ENDS_WITH -> field.endsWith(pattern);
+            default -> false;
+        };
+    }
+}
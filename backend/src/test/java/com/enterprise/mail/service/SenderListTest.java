@@ -0,0 +1,112 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.entity.SenderListEntry;
+import com.enterprise.mail.entity.SenderListEntry.Action;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SenderListTest {
+
+    @Test
+    void normalizesPatterns() {
+        assertEquals("bob@example.com", SenderList.normalize("  Bob@Example.COM "));
+        assertEquals("example.com", SenderList.normalize("@example.com"));
+        assertEquals("example.com", SenderList.normalize("*@example.com."));
+        assertEquals("*.example.com", SenderList.normalize("*.Example.com"));
+    }
+
+    @Test
+    void rejectsInvalidPatterns() {
+        assertNull(SenderList.normalize(null));
+        assertNull(SenderList.normalize(""));
+        assertNull(SenderList.normalize("@"));
+        assertNull(SenderList.normalize("a@b@example.com"));
+        assertNull(SenderList.normalize("*.bob@example.com"));
+        assertNull(SenderList.normalize("exa mple.com"));
+        assertNull(SenderList.normalize("example..com"));
+        assertNull(SenderList.normalize("*.*.example.com"));
+    }
+
+    @Test
+    void addressEntryBeatsDomainEntries() {
+        SenderList list = compile(
+                entry("example.com", Action.REJECT),
+                entry("bob@example.com", Action.ALLOW));
+
+        assertEquals(Action.ALLOW, list.match("<Bob@Example.com>"));
+        assertEquals(Action.REJECT, list.match("eve@example.com"));
+    }
+
+    @Test
+    void deepestDomainEntryWins() {
+        SenderList list = compile(
+                entry("*.example.com", Action.SPAM),
+                entry("mail.example.com", Action.ALLOW));
+
+        assertEquals(Action.ALLOW, list.match("a@mail.example.com"));
+        assertEquals(Action.SPAM, list.match("a@news.example.com"));
+        assertEquals(Action.SPAM, list.match("a@x.mail.example.com"));
+    }
+
+    @Test
+    void wildcardDoesNotCoverTheDomainItself() {
+        SenderList list = compile(entry("*.example.com", Action.SPAM));
+
+        assertNull(list.match("a@example.com"));
+        assertNull(list.match("a@badexample.com"));
+        assertEquals(Action.SPAM, list.match("a@sub.example.com"));
+    }
+
+    @Test
+    void allowWinsOverRejectAndRejectOverSpam() {
+        SenderList list = compile(
+                entry("example.com", Action.SPAM),
+                entry("example.com", Action.REJECT),
+                entry("example.org", Action.REJECT),
+                entry("example.org", Action.ALLOW));
+
+        assertEquals(Action.REJECT, list.match("a@example.com"));
+        assertEquals(Action.ALLOW, list.match("a@example.org"));
+    }
+
+    @Test
+    void unlistedSendersGiveNull() {
+        SenderList list = compile(entry("bob@example.com", Action.REJECT));
+
+        assertNull(list.match("alice@example.com"));
+        assertNull(list.match(null));
+        assertNull(SenderList.EMPTY.match("bob@example.com"));
+    }
+
+    @Test
+    void manyAddressesStayFindable() {
+        List<SenderListEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            entries.add(entry("user" + i + "@example.com", i % 2 == 0 ? Action.ALLOW : Action.SPAM));
+        }
+        SenderList list = SenderList.compile(entries);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(i % 2 == 0 ? Action.ALLOW : Action.SPAM, list.match("user" + i + "@example.com"));
+        }
+        assertNull(list.match("user1000@example.com"));
+    }
+
+    // Helper methods
+
+    private static SenderList compile(SenderListEntry... entries) {
+        return SenderList.compile(List.of(entries));
+    }
+
+    private static SenderListEntry entry(String pattern, Action action) {
+        SenderListEntry entry = new SenderListEntry();
+        entry.setPattern(SenderList.normalize(pattern));
+        entry.setAction(action);
+        return entry;
+    }
+}
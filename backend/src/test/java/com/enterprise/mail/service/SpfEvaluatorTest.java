@@ -0,0 +1,89 @@
+package com.enterprise.mail.service;
+
+import com.enterprise.mail.dns.StubDnsResolver;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpfEvaluatorTest {
+
+    private final StubDnsResolver dns = new StubDnsResolver();
+
+    @Test
+    void ip4InRangePasses() throws Exception {
+        dns.txt("example.com", "v=spf1 ip4:192.0.2.0/24 -all");
+
+        assertEquals(SpfEvaluator.Result.PASS, check("192.0.2.10"));
+        assertEquals(SpfEvaluator.Result.FAIL, check("198.51.100.1"));
+    }
+
+    @Test
+    void qualifierOfAllDecidesUnlistedHosts() throws Exception {
+        dns.txt("example.com", "v=spf1 ip4:192.0.2.1 ~all");
+
+        assertEquals(SpfEvaluator.Result.SOFTFAIL, check("198.51.100.1"));
+    }
+
+    @Test
+    void includeAndRedirectFollowOtherDomains() throws Exception {
+        dns.txt("example.com", "v=spf1 include:_spf.provider.net redirect=_spf.example.net")
+                .txt("_spf.provider.net", "v=spf1 ip4:198.51.100.7 -all")
+                .txt("_spf.example.net", "v=spf1 ip4:203.0.113.0/28 -all");
+
+        assertEquals(SpfEvaluator.Result.PASS, check("198.51.100.7"));
+        assertEquals(SpfEvaluator.Result.PASS, check("203.0.113.5"));
+        assertEquals(SpfEvaluator.Result.FAIL, check("203.0.113.99"));
+    }
+
+    @Test
+    void aAndMxMatchTheirAddresses() throws Exception {
+        dns.txt("example.com", "v=spf1 mx a:relay.example.com/30 -all")
+                .mx("example.com", "mail.example.com")
+                .a("mail.example.com", "192.0.2.25")
+                .a("relay.example.com", "192.0.2.40");
+
+        assertEquals(SpfEvaluator.Result.PASS, check("192.0.2.25"));
+        assertEquals(SpfEvaluator.Result.PASS, check("192.0.2.42"));
+        assertEquals(SpfEvaluator.Result.FAIL, check("192.0.2.44"));
+    }
+
+    @Test
+    void existsExpandsMacros() throws Exception {
+        dns.txt("example.com", "v=spf1 exists:%{i}._spf.%{d} -all")
+                .a("192.0.2.10._spf.example.com", "127.0.0.2");
+
+        assertEquals(SpfEvaluator.Result.PASS, check("192.0.2.10"));
+        assertEquals(SpfEvaluator.Result.FAIL, check("192.0.2.11"));
+    }
+
+    @Test
+    void missingAndDuplicateRecords() throws Exception {
+        assertEquals(SpfEvaluator.Result.NONE, check("192.0.2.10"));
+
+        dns.txt("example.com", "v=spf1 -all", "v=spf1 +all");
+        assertEquals(SpfEvaluator.Result.PERMERROR, check("192.0.2.10"));
+    }
+
+    @Test
+    void lookupLimitEndsIncludeLoops() throws Exception {
+        dns.txt("example.com", "v=spf1 include:example.com -all");
+
+        assertEquals(SpfEvaluator.Result.PERMERROR, check("192.0.2.10"));
+    }
+
+    @Test
+    void dnsFailureIsTemporary() throws Exception {
+        dns.fail("example.com");
+
+        assertEquals(SpfEvaluator.Result.TEMPERROR, check("192.0.2.10"));
+    }
+
+    // Helper methods
+
+    private SpfEvaluator.Result check(String ip) throws Exception {
+        return new SpfEvaluator(dns, InetAddress.getByName(ip), "alice@example.com", "mx.example.com")
+                .check("example.com");
+    }
+}
@@ -0,0 +1,79 @@
+package com.enterprise.mail.service;
+
+import jakarta.mail.Message;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Messages as they arrive from the wire, optionally DKIM-signed, for authentication tests
+ */
+final class TestMessages {
+
+    static final Session SESSION = Session.getInstance(new Properties());
+
+    private TestMessages() {
+    }
+
+    static KeyPair rsaKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * TXT record publishing the public half of a key
+     */
+    static String keyRecord(KeyPair keys) {
+        return "v=DKIM1; k=rsa; p=" + Base64.getEncoder().encodeToString(keys.getPublic().getEncoded());
+    }
+
+    /**
+     * Wire form of a plain text message
+     */
+    static String raw(String from, String subject, String body) throws Exception {
+        return raw(message(from, subject, body));
+    }
+
+    /**
+     * Wire form of a plain text message with a DKIM-Signature on top
+     */
+    static String signed(String from, String subject, String body, String domain, String selector, KeyPair keys)
+            throws Exception {
+        MimeMessage message = message(from, subject, body);
+        DkimSigner signer = new DkimSigner(domain, selector, keys.getPrivate(),
+                List.of("From", "To", "Subject", "Message-ID"));
+        return "DKIM-Signature: " + signer.sign(message) + "\r\n" + raw(message);
+    }
+
+    static MimeMessage parse(String raw) throws Exception {
+        return new MimeMessage(SESSION, new ByteArrayInputStream(raw.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Helper methods
+
+    private static MimeMessage message(String from, String subject, String body) throws Exception {
+        MimeMessage message = new MimeMessage(SESSION);
+        message.setFrom(new InternetAddress(from));
+        message.setRecipients(Message.RecipientType.TO, "bob@enterprise.mail");
+        message.setSubject(subject);
+        message.setText(body);
+        message.saveChanges();
+        return message;
+    }
+
+    private static String raw(MimeMessage message) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,87 @@
+package com.enterprise.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private final TimingWheel<String> wheel = new TimingWheel<>(TICK, 4, 3, 1_000);
+
+    @Test
+    void refusesTimersThatAreAlreadyDue() {
+        assertFalse(wheel.add("past", 500));
+        assertFalse(wheel.add("now", 1_005));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void firesOnTheDueTickAndNotBefore() {
+        List<String> fired = new ArrayList<>();
+        assertTrue(wheel.add("a", 1_050));
+
+        wheel.advance(1_049, fired::add);
+        assertTrue(fired.isEmpty());
+
+        wheel.advance(1_050, fired::add);
+        assertEquals(List.of("a"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesTimersFromHigherLevels() {
+        List<String> fired = new ArrayList<>();
+        wheel.add("level1", 1_000 + 40 * TICK);
+        wheel.add("level2", 1_000 + 700 * TICK);
+        wheel.add("beyond", 1_000 + 10_000 * TICK);
+        assertEquals(3, wheel.size());
+
+        wheel.advance(1_000 + 699 * TICK, fired::add);
+        assertEquals(List.of("level1"), fired);
+
+        wheel.advance(1_000 + 9_999 * TICK, fired::add);
+        assertEquals(List.of("level1", "level2"), fired);
+
+        wheel.advance(1_000 + 10_000 * TICK, fired::add);
+        assertEquals(List.of("level1", "level2", "beyond"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void everyTimerFiresInTheAdvanceThatPassesItsDueTick() {
+        Random random = new Random(42);
+        TimingWheel<Long> timers = new TimingWheel<>(TICK, 4, 3, 0);
+        Map<Long, Long> firedAt = new HashMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            long due = TICK + random.nextInt(60_000) * TICK / 2;
+            if (!firedAt.containsKey(due)) {
+                timers.add(due, due);
+                firedAt.put(due, -1L);
+            }
+        }
+
+        long now = 0;
+        while (timers.size() > 0) {
+            long previous = now;
+            now += 1 + random.nextInt(2_000);
+            long current = now;
+            timers.advance(current, due -> {
+                assertTrue(due / TICK <= current / TICK, "fired early: " + due + " at " + current);
+                assertTrue(due / TICK > previous / TICK, "fired late: " + due + " at " + current);
+                firedAt.put(due, current);
+            });
+        }
+
+        assertFalse(firedAt.containsValue(-1L));
+    }
+}
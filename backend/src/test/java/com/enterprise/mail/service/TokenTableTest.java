@@ -0,0 +1,124 @@
+package com.enterprise.mail.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenTableTest {
+
+    @Test
+    void addsAndRemovesCounts() {
+        TokenTable table = new TokenTable(4);
+        table.add(7, 2, 1);
+        table.add(7, 1, 0);
+
+        int index = table.indexOf(7);
+        assertEquals(3, table.spamAt(index));
+        assertEquals(1, table.hamAt(index));
+
+        table.add(7, -3, -1);
+        assertEquals(-1, table.indexOf(7));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void countsNeverGoNegative() {
+        TokenTable table = new TokenTable(4);
+        table.add(7, 1, 2);
+        table.add(7, -5, 0);
+
+        int index = table.indexOf(7);
+        assertEquals(0, table.spamAt(index));
+        assertEquals(2, table.hamAt(index));
+
+        table.add(8, -1, -1);
+        assertEquals(-1, table.indexOf(8));
+    }
+
+    @Test
+    void matchesAMapUnderRandomAddsAndRemovals() {
+        Random random = new Random(7);
+        TokenTable table = new TokenTable(16);
+        Map<Long, int[]> expected = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            // few distinct keys, so probe runs fill up and shrink again
+            long key = 1 + random.nextInt(2_000);
+            int spamDelta = random.nextInt(5) - 2;
+            int hamDelta = random.nextInt(5) - 2;
+            table.add(key, spamDelta, hamDelta);
+
+            int[] counts = expected.get(key);
+            if (counts == null) {
+                if (spamDelta > 0 || hamDelta > 0) {
+                    expected.put(key, new int[]{Math.max(0, spamDelta), Math.max(0, hamDelta)});
+                }
+            } else {
+                counts[0] = Math.max(0, counts[0] + spamDelta);
+                counts[1] = Math.max(0, counts[1] + hamDelta);
+                if (counts[0] == 0 && counts[1] == 0) {
+                    expected.remove(key);
+                }
+            }
+        }
+
+        assertContains(table, expected);
+    }
+
+    @Test
+    void prunedKeepsFrequentTokens() {
+        TokenTable table = new TokenTable(4);
+        table.add(1, 1, 0);
+        table.add(2, 2, 1);
+        table.add(3, 0, 5);
+
+        TokenTable pruned = table.pruned(3);
+
+        assertEquals(2, pruned.size());
+        assertEquals(-1, pruned.indexOf(1));
+        assertEquals(5, pruned.hamAt(pruned.indexOf(3)));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    void writeAndReadRoundTrip() throws Exception {
+        Random random = new Random(3);
+        TokenTable table = new TokenTable(100);
+        Map<Long, int[]> expected = new HashMap<>();
+        for (int i = 0; i < 1_000; i++) {
+            long key = random.nextLong() | 1;
+            int spam = random.nextInt(1 << 20);
+            int ham = random.nextInt(200);
+            table.add(key, spam, ham);
+            expected.put(key, new int[]{spam, ham});
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            table.write(out);
+        }
+        TokenTable read = TokenTable.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertContains(read, expected);
+    }
+
+    // Helper methods
+
+    private static void assertContains(TokenTable table, Map<Long, int[]> expected) {
+        assertEquals(expected.size(), table.size());
+        expected.forEach((key, counts) -> {
+            int index = table.indexOf(key);
+            assertTrue(index >= 0, "missing key " + key);
+            assertEquals(counts[0], table.spamAt(index));
+            assertEquals(counts[1], table.hamAt(index));
+        });
+    }
+}
@@ -1,5 +1,5 @@
 import request from '@/utils/request'
-import type { Email, SendEmailRequest, EmailListResponse, DraftRequest } from '@/types/email'
+import type { Email, SendEmailRequest, EmailListResponse, DraftRequest, Folder, Attachment } from '@/types/email'
 
 // 获取邮件列表
 export const getEmails = (params?: {
@@ -12,6 +12,16 @@ export const getEmails = (params?: {
   return request.get<EmailListResponse>('/emails', { params })
 }
 
+// 获取文件夹列表（含未读数）
+export const getFolders = () => {
+  return request.get<Folder[]>('/emails/folders')
+}
+
+// 获取推送通道的一次性连接票据
+export const getMailboxTicket = () => {
+  return request.post<{ ticket: string }>('/mailbox/ticket')
+}
+
 // 获取邮件详情
 export const getEmailById = (id: number) => {
   return request.get<Email>(`/emails/${id}`)
@@ -62,13 +72,60 @@ export const moveEmail = (id: number, folderId: number) => {
   return request.put(`/emails/${id}/move`, { folderId })
 }
 
-// 上传附件
-export const uploadAttachment = (file: File) => {
+// 稍后提醒：移入归档，到时间后以未读状态移回
+export const snoozeEmail = (id: number, until: string) => {
+  return request.put(`/emails/${id}/snooze`, null, { params: { until } })
+}
+
+// 取消定时发送
+export const cancelSendLater = (id: number) => {
+  return request.delete(`/emails/${id}/send-later`)
+}
+
+// 上传附件（不传 emailId 时后端会新建一封草稿作为附件归属，返回值的 emailId 即该草稿）
+export const uploadAttachment = (file: File, emailId?: number): Promise<Attachment> => {
   const formData = new FormData()
   formData.append('file', file)
+  if (emailId) {
+    formData.append('emailId', emailId.toString())
+  }
   return request.post('/emails/attachments', formData, {
     headers: {
       'Content-Type': 'multipart/form-data'
     }
   })
+}
+
+// 同一封新邮件的附件上传：第一个文件建出的草稿用于之后的每个文件，
+// 第一个上传完成前的其他文件先等待，避免每个文件各建一封空草稿
+export const createAttachmentUploader = (draftId?: number) => {
+  let knownDraftId = draftId
+  let first: Promise<void> | undefined
+
+  const upload = async (file: File) => {
+    while (knownDraftId === undefined && first) {
+      const waiting = first
+      await waiting
+      if (first === waiting) {
+        // 第一个上传失败时由下一个文件重新建草稿
+        first = undefined
+      }
+    }
+    if (knownDraftId !== undefined) {
+      return uploadAttachment(file, knownDraftId)
+    }
+    const response = uploadAttachment(file)
+    first = response.then(
+      (attachment) => {
+        knownDraftId = attachment.emailId
+      },
+      () => undefined
+    )
+    return response
+  }
+
+  return {
+    upload,
+    draftId: () => knownDraftId
+  }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+import { defineStore } from 'pinia'
+import { ref, computed } from 'vue'
+import { getFolders } from '@/api/email'
+import type { Folder } from '@/types/email'
+import {
+  connectMailboxSocket,
+  disconnectMailboxSocket,
+  onMailboxEvent,
+  onMailboxResync,
+  type MailboxEvent
+} from '@/utils/mailboxSocket'
+
+// 邮箱状态：文件夹计数由推送通道实时更新，不再定时轮询
+export const useMailboxStore = defineStore('mailbox', () => {
+  const folders = ref<Folder[]>([])
+  // 每收到一次变更加一，列表页监听它按需刷新
+  const changeSeq = ref(0)
+  const lastEvent = ref<MailboxEvent | null>(null)
+  let unsubscribe: Array<() => void> = []
+
+  const inbox = computed(() => folders.value.find((folder) => folder.type === 'INBOX'))
+  const unreadCount = computed(() => inbox.value?.unreadCount || 0)
+
+  const loadFolders = async () => {
+    try {
+      folders.value = await getFolders()
+    } catch (error) {
+      // 拉取失败时保留旧计数，等下一次推送或重连
+    }
+  }
+
+  const applyEvent = (event: MailboxEvent) => {
+    lastEvent.value = event
+    changeSeq.value++
+    if (event.type === 'FOLDER_COUNTS' && event.folderId != null) {
+      const folder = folders.value.find((item) => item.id === event.folderId)
+      if (folder) {
+        folder.unreadCount = event.unreadCount ?? folder.unreadCount
+        folder.totalCount = event.totalCount ?? folder.totalCount
+      } else {
+        loadFolders()
+      }
+    }
+  }
+
+  const start = () => {
+    if (unsubscribe.length > 0) {
+      return
+    }
+    unsubscribe = [onMailboxEvent(applyEvent), onMailboxResync(loadFolders)]
+    loadFolders()
+    connectMailboxSocket()
+  }
+
+  const stop = () => {
+    unsubscribe.forEach((off) => off())
+    unsubscribe = []
+    disconnectMailboxSocket()
+    folders.value = []
+  }
+
+  return {
+    folders,
+    changeSeq,
+    lastEvent,
+    unreadCount,
+    loadFolders,
+    start,
+    stop
+  }
+})
@@ -4,6 +4,7 @@ import { login, register, logout, refreshToken } from '@/api/auth'
 import { LoginRequest, RegisterRequest, UserInfo } from '@/types/user'
 import { ElMessage } from 'element-plus'
 import router from '@/router'
+import { disconnectMailboxSocket } from '@/utils/mailboxSocket'
 
 export const useUserStore = defineStore('user', () => {
   const token = ref<string>(localStorage.getItem('token') || '')
@@ -23,6 +24,7 @@ export const useUserStore = defineStore('user', () => {
   }
 
   const clearToken = () => {
+    disconnectMailboxSocket()
     token.value = ''
     refreshTokenValue.value = ''
     userInfo.value = null
@@ -11,6 +11,7 @@ export interface Email {
   subject: string
   contentText: string
   contentHtml?: string
+  preview?: string
   status: EmailStatus
   direction: EmailDirection
   sentDate: string
@@ -53,6 +54,7 @@ export interface SendEmailRequest {
   isImportant?: boolean
   requestReadReceipt?: boolean
   priority?: 'HIGH' | 'NORMAL' | 'LOW'
+  sendAt?: string // 定时发送时间 (ISO 8601)
 }
 
 export interface DraftRequest {
@@ -80,4 +82,18 @@ export interface Attachment {
   fileSize: number
   downloadUrl: string
   uploadDate: string
-}
\ No newline at end of file
+  emailId?: number
+}
+
+export interface Folder {
+  id: number
+  name: string
+  type: string
+  icon?: string
+  color?: string
+  sortOrder?: number
+  isSystem?: boolean
+  unreadCount: number
+  totalCount: number
+  parentId?: number
+}
@@ -0,0 +1,98 @@
+import { useUserStore } from '@/stores/user'
+import { getMailboxTicket } from '@/api/email'
+
+// 邮箱变更推送事件
+export interface MailboxEvent {
+  type: 'NEW' | 'FLAGS' | 'MOVED' | 'DELETED' | 'FOLDER_COUNTS'
+  emailId?: number
+  folderId?: number
+  fromFolderId?: number
+  status?: string
+  starred?: boolean
+  important?: boolean
+  unreadCount?: number
+  totalCount?: number
+}
+
+type Listener = (event: MailboxEvent) => void
+
+const KEEPALIVE_INTERVAL = 60000
+const MAX_RECONNECT_DELAY = 30000
+
+let socket: WebSocket | null = null
+let keepAliveTimer: number | undefined
+let reconnectDelay = 1000
+let closedByUser = false
+let connecting = false
+const listeners = new Set<Listener>()
+const resyncListeners = new Set<() => void>()
+
+// 连接邮箱推送通道（替代轮询 /emails）
+// 令牌不放进 URL：先用 Authorization 头换一张短期一次性票据，再用票据握手
+export const connectMailboxSocket = async () => {
+  const userStore = useUserStore()
+  if (!userStore.token || socket || connecting) {
+    return
+  }
+
+  closedByUser = false
+  connecting = true
+  let ticket: string
+  try {
+    ticket = (await getMailboxTicket()).ticket
+  } catch (error) {
+    connecting = false
+    scheduleReconnect()
+    return
+  }
+  connecting = false
+  if (closedByUser) {
+    return
+  }
+
+  const protocol = window.location.protocol === 'https:' ? 'wss' : 'ws'
+  socket = new WebSocket(`${protocol}://${window.location.host}/api/ws/mailbox?ticket=${encodeURIComponent(ticket)}`)
+
+  socket.onopen = () => {
+    reconnectDelay = 1000
+    // 重连后可能错过了事件，通知页面重新拉取一次
+    resyncListeners.forEach((listener) => listener())
+    keepAliveTimer = window.setInterval(() => socket?.send('ping'), KEEPALIVE_INTERVAL)
+  }
+
+  socket.onmessage = (message) => {
+    const event = JSON.parse(message.data) as MailboxEvent
+    listeners.forEach((listener) => listener(event))
+  }
+
+  socket.onclose = () => {
+    window.clearInterval(keepAliveTimer)
+    socket = null
+    scheduleReconnect()
+  }
+}
+
+const scheduleReconnect = () => {
+  if (!closedByUser) {
+    window.setTimeout(connectMailboxSocket, reconnectDelay)
+    reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY)
+  }
+}
+
+// 断开推送通道
+export const disconnectMailboxSocket = () => {
+  closedByUser = true
+  socket?.close()
+}
+
+// 订阅邮箱变更事件，返回取消订阅函数
+export const onMailboxEvent = (listener: Listener) => {
+  listeners.add(listener)
+  return () => listeners.delete(listener)
+}
+
+// 订阅重连事件（需要整页刷新时触发）
+export const onMailboxResync = (listener: () => void) => {
+  resyncListeners.add(listener)
+  return () => resyncListeners.delete(listener)
+}